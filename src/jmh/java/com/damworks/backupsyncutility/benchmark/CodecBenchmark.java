@@ -0,0 +1,117 @@
+package com.damworks.backupsyncutility.benchmark;
+
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression and decompression of a SQL dump sample with each codec at the levels worth
+ * considering, single-threaded and block-parallel. The compressed size of each setting is
+ * printed during setup, so speed can be weighed against ratio.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CodecBenchmark {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * Codec and level as {@code <codec>:<level>}.
+     */
+    @Param({"NONE:0", "GZIP:1", "GZIP:6", "ZSTD:1", "ZSTD:3", "ZSTD:9"})
+    public String setting;
+
+    /**
+     * Compression threads; 1 is the plain single-stream codec.
+     */
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"32"})
+    public int sampleMegabytes;
+
+    private CompressionCodec codec;
+    private ExecutorService executor;
+    private int level;
+    private byte[] sample;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] parts = setting.split(":");
+        codec = CompressionCodec.valueOf(parts[0]);
+        level = Integer.parseInt(parts[1]);
+        sample = SqlDumpSample.generate(sampleMegabytes * 1024 * 1024);
+        executor = Executors.newFixedThreadPool(threads);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sample.length);
+        try (OutputStream compressor = compressor(out)) {
+            compressor.write(sample);
+        }
+        compressed = out.toByteArray();
+        System.out.printf("%n%s x%d: %d -> %d bytes (ratio %.2f)%n", setting, threads, sample.length,
+                compressed.length, (double) sample.length / compressed.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public long compress() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        try (OutputStream compressor = compressor(out)) {
+            for (int offset = 0; offset < sample.length; offset += BUFFER_SIZE) {
+                compressor.write(sample, offset, Math.min(BUFFER_SIZE, sample.length - offset));
+            }
+        }
+        return out.count;
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        try (InputStream in = threads > 1
+                ? codec.decompress(new ByteArrayInputStream(compressed), executor, 2 * threads)
+                : codec.decompress(new ByteArrayInputStream(compressed))) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private OutputStream compressor(OutputStream out) throws IOException {
+        return threads > 1
+                ? codec.compress(out, level, BLOCK_SIZE, executor, 2 * threads)
+                : codec.compress(out, level);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
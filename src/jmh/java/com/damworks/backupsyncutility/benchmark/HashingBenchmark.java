@@ -0,0 +1,77 @@
+package com.damworks.backupsyncutility.benchmark;
+
+import com.damworks.backupsyncutility.verify.ChecksumOutputStream;
+import com.damworks.backupsyncutility.verify.XXHash64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Hashes a SQL dump sample in 64 KiB writes, as the dump writers do. "ALL" is the
+ * {@link ChecksumOutputStream} that computes every checksum of a dump in one pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HashingBenchmark {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({"SHA-256", "MD5", "CRC32", "CRC32C", "XXH64", "ALL"})
+    public String algorithm;
+
+    @Param({"32"})
+    public int sampleMegabytes;
+
+    private byte[] sample;
+
+    @Setup
+    public void setUp() {
+        sample = SqlDumpSample.generate(sampleMegabytes * 1024 * 1024);
+    }
+
+    @Benchmark
+    public Object hash() throws IOException, NoSuchAlgorithmException {
+        switch (algorithm) {
+            case "CRC32":
+                return checksum(new CRC32());
+            case "CRC32C":
+                return checksum(new CRC32C());
+            case "XXH64":
+                return checksum(new XXHash64());
+            case "ALL":
+                try (ChecksumOutputStream out = new ChecksumOutputStream(OutputStream.nullOutputStream())) {
+                    for (int offset = 0; offset < sample.length; offset += BUFFER_SIZE) {
+                        out.write(sample, offset, Math.min(BUFFER_SIZE, sample.length - offset));
+                    }
+                    return out.getChecksums();
+                }
+            default:
+                MessageDigest digest = MessageDigest.getInstance(algorithm);
+                for (int offset = 0; offset < sample.length; offset += BUFFER_SIZE) {
+                    digest.update(sample, offset, Math.min(BUFFER_SIZE, sample.length - offset));
+                }
+                return digest.digest();
+        }
+    }
+
+    private long checksum(Checksum checksum) {
+        for (int offset = 0; offset < sample.length; offset += BUFFER_SIZE) {
+            checksum.update(sample, offset, Math.min(BUFFER_SIZE, sample.length - offset));
+        }
+        return checksum.getValue();
+    }
+}
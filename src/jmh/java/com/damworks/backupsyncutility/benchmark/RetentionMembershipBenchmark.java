@@ -0,0 +1,66 @@
+package com.damworks.backupsyncutility.benchmark;
+
+import com.damworks.backupsyncutility.rotate.RetentionEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The membership check {@code RotateManager} applies to every remote copy: map the remote file
+ * name to its backup stem and look it up in the set of backups to keep. Copies are a mix of
+ * dumps, chunk manifests and parallel-dump parts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RetentionMembershipBenchmark {
+    private static final String[] SUFFIXES = {".sql.gz", ".sql.zst.chunks", ".orders.0003.sql.zst", ".manifest"};
+
+    @Param({"1000", "10000", "100000"})
+    public int copies;
+
+    @Param({"30"})
+    public int kept;
+
+    private List<String> remoteNames;
+    private Set<String> keep;
+
+    @Setup
+    public void setUp() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_HHmmss");
+        long newest = System.currentTimeMillis();
+        remoteNames = new ArrayList<>(copies);
+        keep = new HashSet<>();
+        for (int i = 0; i < copies; i++) {
+            String stem = "shop_" + format.format(new Date(newest - TimeUnit.HOURS.toMillis(i)));
+            remoteNames.add(stem + SUFFIXES[i % SUFFIXES.length]);
+            if (i < kept) {
+                keep.add(stem);
+            }
+        }
+    }
+
+    @Benchmark
+    public int countExpired() {
+        int expired = 0;
+        for (String remoteName : remoteNames) {
+            if (!keep.contains(RetentionEngine.stemOf(remoteName))) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,81 @@
+package com.damworks.backupsyncutility.benchmark;
+
+import com.damworks.backupsyncutility.rotate.RetentionEngine;
+import com.damworks.backupsyncutility.rotate.RetentionPolicy;
+import com.damworks.backupsyncutility.rotate.RotationHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotation of a database directory holding 1k, 10k or 100k backups, one every hour.
+ * <p>
+ * {@link #rotateFiles} runs {@link RotationHandler#rotateFiles} with a policy that keeps
+ * everything, so the directory is unchanged between invocations and the cost measured is the
+ * scan, grouping and sorting. {@link #select} measures the retention decision alone on an
+ * already scanned directory with the example configuration's policy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RotationBenchmark {
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    private Path directory;
+    private RetentionPolicy keepAll;
+    private RetentionPolicy policy;
+    private List<RetentionEngine.Backup> backups;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("rotation-benchmark");
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_HHmmss");
+        long newest = System.currentTimeMillis();
+        for (int i = 0; i < files; i++) {
+            Files.createFile(directory.resolve("shop_" + format.format(new Date(newest - i * HOUR_MILLIS)) + ".sql.gz"));
+        }
+        keepAll = new RetentionPolicy(files, 0, 0, 0, 0);
+        policy = new RetentionPolicy(7, 7, 4, 12, 0);
+        backups = RetentionEngine.scan(directory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Set<String> rotateFiles() throws IOException {
+        return RotationHandler.rotateFiles(directory.toString(), keepAll, file -> {
+        });
+    }
+
+    @Benchmark
+    public Set<String> select() {
+        return RetentionEngine.select(backups, policy);
+    }
+}
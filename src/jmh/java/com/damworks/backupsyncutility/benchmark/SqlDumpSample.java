@@ -0,0 +1,96 @@
+package com.damworks.backupsyncutility.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates mysqldump-like content: a header, table definitions and extended INSERT lines
+ * with a realistic mix of integers, dates, decimals, short enums and free text. The output is
+ * deterministic, so every run compresses and hashes the same bytes.
+ */
+final class SqlDumpSample {
+    private static final String[] FIRST_NAMES = {"Anna", "Marco", "Giulia", "Luca", "Sofia", "Matteo", "Chiara",
+            "Davide", "Elena", "Paolo"};
+    private static final String[] LAST_NAMES = {"Rossi", "Bianchi", "Romano", "Colombo", "Ricci", "Marino",
+            "Greco", "Bruno", "Gallo", "Conti"};
+    private static final String[] STATUSES = {"pending", "paid", "shipped", "delivered", "cancelled", "refunded"};
+    private static final String[] WORDS = {"order", "customer", "requested", "delivery", "before", "weekend",
+            "please", "call", "on", "arrival", "gift", "wrap", "invoice", "company", "address", "floor", "door",
+            "code", "leave", "with", "neighbour", "fragile", "items", "handle", "care"};
+    // mysqldump starts a new INSERT once a line approaches net_buffer_length (1 MiB by default)
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private SqlDumpSample() {
+    }
+
+    /**
+     * @param size Approximate size of the sample in bytes.
+     * @return UTF-8 dump text of at least {@code size} bytes.
+     */
+    static byte[] generate(int size) {
+        Random random = new Random(42);
+        StringBuilder dump = new StringBuilder(size + MAX_LINE_BYTES);
+        dump.append("-- MySQL dump 10.13  Distrib 8.0.36, for Linux (x86_64)\n")
+                .append("--\n-- Host: localhost    Database: shop\n")
+                .append("-- ------------------------------------------------------\n")
+                .append("/*!40101 SET NAMES utf8mb4 */;\n")
+                .append("/*!40014 SET @OLD_UNIQUE_CHECKS=@@UNIQUE_CHECKS, UNIQUE_CHECKS=0 */;\n\n")
+                .append("DROP TABLE IF EXISTS `orders`;\n")
+                .append("CREATE TABLE `orders` (\n")
+                .append("  `id` bigint NOT NULL AUTO_INCREMENT,\n")
+                .append("  `created_at` datetime NOT NULL,\n")
+                .append("  `customer` varchar(120) NOT NULL,\n")
+                .append("  `total` decimal(10,2) NOT NULL,\n")
+                .append("  `status` enum('pending','paid','shipped','delivered','cancelled','refunded') NOT NULL,\n")
+                .append("  `notes` text,\n")
+                .append("  PRIMARY KEY (`id`)\n")
+                .append(") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;\n\n")
+                .append("LOCK TABLES `orders` WRITE;\n");
+
+        long id = 1;
+        while (dump.length() < size) {
+            int lineStart = dump.length();
+            dump.append("INSERT INTO `orders` VALUES ");
+            boolean first = true;
+            while (dump.length() - lineStart < MAX_LINE_BYTES && dump.length() < size) {
+                if (!first) {
+                    dump.append(',');
+                }
+                first = false;
+                appendRow(dump, random, id++);
+            }
+            dump.append(";\n");
+        }
+        dump.append("UNLOCK TABLES;\n-- Dump completed on 2024-05-01 02:00:03\n");
+        return dump.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendRow(StringBuilder dump, Random random, long id) {
+        dump.append('(').append(id)
+                .append(",'2024-").append(pad(1 + random.nextInt(12))).append('-').append(pad(1 + random.nextInt(28)))
+                .append(' ').append(pad(random.nextInt(24))).append(':').append(pad(random.nextInt(60)))
+                .append(':').append(pad(random.nextInt(60))).append("','")
+                .append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append(' ')
+                .append(LAST_NAMES[random.nextInt(LAST_NAMES.length)]).append("',")
+                .append(random.nextInt(100000) / 100).append('.').append(pad(random.nextInt(100))).append(",'")
+                .append(STATUSES[random.nextInt(STATUSES.length)]).append("',");
+        if (random.nextInt(3) == 0) {
+            dump.append("NULL");
+        } else {
+            dump.append('\'');
+            int words = 3 + random.nextInt(12);
+            for (int i = 0; i < words; i++) {
+                if (i > 0) {
+                    dump.append(' ');
+                }
+                dump.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            dump.append('\'');
+        }
+        dump.append(')');
+    }
+
+    private static String pad(int value) {
+        return value < 10 ? "0" + value : Integer.toString(value);
+    }
+}
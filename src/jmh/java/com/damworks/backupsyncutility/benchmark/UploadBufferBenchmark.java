@@ -0,0 +1,98 @@
+package com.damworks.backupsyncutility.benchmark;
+
+import com.damworks.backupsyncutility.pipeline.BoundedPipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a dump the way uploads do, at several buffer sizes.
+ * <p>
+ * {@link #fileToSocketBuffer} mirrors {@code FTPHandler.upload}: commons-net copies the
+ * unbuffered file stream with a fixed buffer (1 KiB unless {@code setBufferSize} is called) into
+ * a buffered socket stream. {@link #boundedPipe} mirrors the upload pipeline: the producer's
+ * chunks pass through a {@link BoundedPipe} to a consumer thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UploadBufferBenchmark {
+    private static final int PIPE_CAPACITY = 16;
+
+    @Param({"1024", "8192", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"32"})
+    public int sampleMegabytes;
+
+    private byte[] sample;
+    private Path sampleFile;
+    private ExecutorService consumer;
+
+    @Setup
+    public void setUp() throws IOException {
+        sample = SqlDumpSample.generate(sampleMegabytes * 1024 * 1024);
+        sampleFile = Files.createTempFile("upload-benchmark", ".sql");
+        Files.write(sampleFile, sample);
+        consumer = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        consumer.shutdownNow();
+        Files.deleteIfExists(sampleFile);
+    }
+
+    @Benchmark
+    public long fileToSocketBuffer() throws IOException {
+        try (InputStream in = new FileInputStream(sampleFile.toFile());
+             OutputStream out = new BufferedOutputStream(OutputStream.nullOutputStream(), bufferSize)) {
+            return copy(in, out, bufferSize);
+        }
+    }
+
+    @Benchmark
+    public long boundedPipe() throws IOException, InterruptedException, ExecutionException {
+        BoundedPipe pipe = new BoundedPipe(PIPE_CAPACITY);
+        Future<Long> read = consumer.submit(() -> {
+            try (InputStream in = pipe.inputStream()) {
+                return copy(in, OutputStream.nullOutputStream(), bufferSize);
+            }
+        });
+        for (int offset = 0; offset < sample.length; offset += bufferSize) {
+            pipe.write(sample, offset, Math.min(bufferSize, sample.length - offset));
+        }
+        pipe.close();
+        return read.get();
+    }
+
+    private static long copy(InputStream in, OutputStream out, int bufferSize) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+}
@@ -1,33 +1,208 @@
 package com.damworks.backupsyncutility;
 
 import com.damworks.backupsyncutility.backup.BackupManager;
+import com.damworks.backupsyncutility.backup.DumpResult;
+import com.damworks.backupsyncutility.backup.DumpTarget;
+import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.crypto.EncryptionKey;
+import com.damworks.backupsyncutility.metrics.Metrics;
+import com.damworks.backupsyncutility.metrics.MetricsExporter;
+import com.damworks.backupsyncutility.restore.RestoreManager;
 import com.damworks.backupsyncutility.rotate.RotateManager;
+import com.damworks.backupsyncutility.schedule.Daemon;
+import com.damworks.backupsyncutility.schedule.ScheduledJob;
+import com.damworks.backupsyncutility.sync.FTPConnectionPool;
 import com.damworks.backupsyncutility.sync.SyncManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
 /**
  * Main class to execute the backup process.
  */
 public class BackupSyncUtility {
     private static final Logger logger = LoggerFactory.getLogger(BackupSyncUtility.class);
+    // Runs of different jobs dump and synchronize concurrently, but rotation (which may collect
+    // deduplicated chunks another run is still uploading) waits until no other run is active
+    private static final ReentrantReadWriteLock RUN_LOCK = new ReentrantReadWriteLock();
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("restore")) {
+            restore(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("daemon")) {
+            daemon();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("keygen")) {
+            keygen(args);
+            return;
+        }
+
+        MetricsExporter.start(false);
+        try {
+            runBackup(DumpTarget.fromConfig(), database -> true);
+        } catch (Exception e) {
+            logger.error("An error occurred during the Backup and Synchronization process.", e);
+        } finally {
+            MetricsExporter.writeTextfile();
+            FTPConnectionPool.shutdownShared();
+        }
+    }
+
+    /**
+     * Dumps, synchronizes and rotates backups once.
+     *
+     * @param targets Databases to dump.
+     * @param rotated Selects the databases whose backups are rotated, by target name.
+     * @throws InterruptedException If the run is interrupted.
+     */
+    private static void runBackup(List<DumpTarget> targets, Predicate<String> rotated) throws InterruptedException {
         logger.info("Starting the Backup and Synchronization process...");
 
+        List<DumpResult> dumpResults;
+        RUN_LOCK.readLock().lock();
         try {
             // Step 1: Dump databases locally
-            String[] dumpFiles = BackupManager.executeDump();
+            long stageStart = System.nanoTime();
+            dumpResults = BackupManager.executeDump(targets);
+            String[] dumpFiles = BackupManager.getDumpFiles(dumpResults);
+            Metrics.STAGE_DURATION.labels("dump").observe(Metrics.secondsSince(stageStart));
 
-            // Step 2: Synchronize files
-            SyncManager.syncFiles(dumpFiles);
+            // Step 2: Synchronize files (only the leftovers if the dumps were streamed)
+            stageStart = System.nanoTime();
+            if (AppConfig.isPipelineEnabled()) {
+                SyncManager.syncPending(dumpResults);
+            } else {
+                SyncManager.syncFiles(dumpFiles);
+            }
+            Metrics.STAGE_DURATION.labels("sync").observe(Metrics.secondsSince(stageStart));
+        } finally {
+            RUN_LOCK.readLock().unlock();
+        }
 
-            // Step 3: Rotate files locally and on other protocols
-            RotateManager.rotateFiles();
+        // Step 3: Rotate files locally and on other protocols
+        RUN_LOCK.writeLock().lock();
+        try {
+            long stageStart = System.nanoTime();
+            RotateManager.rotateFiles(rotated);
+            Metrics.STAGE_DURATION.labels("rotate").observe(Metrics.secondsSince(stageStart));
+        } finally {
+            RUN_LOCK.writeLock().unlock();
+        }
 
+        long failedDumps = dumpResults.stream().filter(result -> !result.isSuccess()).count();
+        if (failedDumps > 0) {
+            Metrics.RUNS.labels("failure").inc();
+            logger.warn("Backup and Synchronization process completed with {} failed dump(s).", failedDumps);
+        } else {
+            Metrics.RUNS.labels("success").inc();
+            Metrics.RUN_LAST_SUCCESS.labels().set(Metrics.now());
             logger.info("Backup and Synchronization process completed successfully.");
+        }
+    }
+
+    /**
+     * Runs the jobs in {@code daemon.jobs} on their schedules until the process is terminated.
+     * FTP sessions, the Drive client and the catalog stay loaded between runs; each run starts
+     * with fresh FTP directory listings.
+     */
+    private static void daemon() {
+        List<ScheduledJob> jobs;
+        try {
+            jobs = ScheduledJob.fromConfig();
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid daemon configuration: {}", e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (jobs.isEmpty()) {
+            logger.error("No jobs configured; set daemon.jobs.");
+            System.exit(2);
+        }
+
+        Daemon daemon = new Daemon(jobs, (job, databases) -> {
+            FTPConnectionPool.invalidateSharedSnapshots();
+            try {
+                runBackup(DumpTarget.select(databases), Set.of(databases)::contains);
+            } finally {
+                MetricsExporter.writeTextfile();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.stop(Duration.ofSeconds(AppConfig.getDaemonShutdownGraceSeconds()));
+            MetricsExporter.stop();
+            FTPConnectionPool.shutdownShared();
+        }, "daemon-shutdown"));
+
+        MetricsExporter.start(true);
+        daemon.start();
+        try {
+            daemon.awaitStop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Restores a backup: {@code restore <database> [--backup <name>] [--from <destination>] [--into <database>]}.
+     * Without --backup the newest backup is restored; without --from the first configured destination is used.
+     *
+     * @param args Command-line arguments, starting with "restore".
+     */
+    private static void restore(String[] args) {
+        if (args.length < 2) {
+            logger.error("Usage: restore <database> [--backup <name>] [--from <destination>] [--into <database>]");
+            System.exit(2);
+        }
+
+        String backup = null;
+        String destination = null;
+        String target = null;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--backup" -> backup = args[i + 1];
+                case "--from" -> destination = args[i + 1];
+                case "--into" -> target = args[i + 1];
+                default -> logger.warn("Ignoring unknown option: {}", args[i]);
+            }
+        }
+
+        try {
+            RestoreManager.restore(args[1], backup, destination, target);
         } catch (Exception e) {
-            logger.error("An error occurred during the Backup and Synchronization process: {}", e.getMessage());
+            logger.error("Restore failed.", e);
+            System.exit(1);
+        } finally {
+            FTPConnectionPool.shutdownShared();
+        }
+    }
+
+    /**
+     * Writes a new encryption key: {@code keygen <path>}. The file must not exist yet.
+     *
+     * @param args Command-line arguments, starting with "keygen".
+     */
+    private static void keygen(String[] args) {
+        if (args.length < 2) {
+            logger.error("Usage: keygen <path>");
+            System.exit(2);
+        }
+        try {
+            EncryptionKey.generate(Paths.get(args[1]));
+            logger.info("Encryption key written to {}; set backup.encryption.keyfile to use it and keep a copy "
+                    + "in a safe place.", args[1]);
+        } catch (IOException e) {
+            logger.error("Failed to write the encryption key.", e);
+            System.exit(1);
         }
     }
 }
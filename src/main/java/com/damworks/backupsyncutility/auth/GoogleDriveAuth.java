@@ -13,6 +13,8 @@ import com.google.api.services.drive.DriveScopes;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Provides authentication and access to the Google Drive API.
@@ -20,6 +22,7 @@ import java.security.GeneralSecurityException;
 public class GoogleDriveAuth {
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
     private static final HttpTransport HTTP_TRANSPORT;
+    private static final Map<String, Drive> SERVICES = new HashMap<>();
 
     static {
         try {
@@ -30,20 +33,27 @@ public class GoogleDriveAuth {
     }
 
     /**
-     * Returns a Google Drive service instance using the provided credentials.
+     * Returns a Google Drive service instance using the provided credentials. The client is built
+     * once per credentials file and reused, so later runs of a long-lived process skip credential
+     * parsing and keep the cached access token, which refreshes itself when it expires.
      *
      * @param credentialsFile Service account credentials JSON file.
      * @return An authorized Drive API client service.
      * @throws IOException              If the credentials file cannot be read.
      * @throws GeneralSecurityException If the credentials are invalid.
      */
-    public static Drive getDriveService(String credentialsFile) throws IOException, GeneralSecurityException {
-        // Load service account credentials
-        ServiceAccountCredentials credentials = getCredentials(credentialsFile);
+    public static synchronized Drive getDriveService(String credentialsFile) throws IOException, GeneralSecurityException {
+        Drive service = SERVICES.get(credentialsFile);
+        if (service == null) {
+            // Load service account credentials
+            ServiceAccountCredentials credentials = getCredentials(credentialsFile);
 
-        return new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, new HttpCredentialsAdapter(credentials))
-                .setApplicationName("BackupSyncUtility")
-                .build();
+            service = new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, new HttpCredentialsAdapter(credentials))
+                    .setApplicationName("BackupSyncUtility")
+                    .build();
+            SERVICES.put(credentialsFile, service);
+        }
+        return service;
     }
 
     /**
@@ -1,17 +1,29 @@
 package com.damworks.backupsyncutility.backup;
 
+import com.damworks.backupsyncutility.catalog.BackupCatalog;
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+import com.damworks.backupsyncutility.crypto.Encryption;
 import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.metrics.Metrics;
+import com.damworks.backupsyncutility.pipeline.UploadPipeline;
+import com.damworks.backupsyncutility.sync.Destination;
+import com.damworks.backupsyncutility.sync.SyncManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-/**
- * Manages the database backup and its transfers
- */
 /**
  * Manages the database dump process and ensures the backup directory exists.
  */
@@ -20,42 +32,273 @@ public class BackupManager {
     private static final Logger logger = LoggerFactory.getLogger(BackupManager.class);
 
     /**
-     * Executes the database dump process and returns the list of generated dump files.
+     * Dumps all configured databases of all configured hosts.
      *
+     * @return One result per configured database, in configuration order.
+     * @throws InterruptedException If the thread is interrupted while waiting for the dumps.
+     * @see #executeDump(List)
+     */
+    public static List<DumpResult> executeDump() throws InterruptedException {
+        return executeDump(DumpTarget.fromConfig());
+    }
+
+    /**
+     * Dumps the given databases on the process-wide dump workers, limiting the number of
+     * concurrent dumps against each MySQL host. Dumps wait in a queue rather than in a worker,
+     * and hosts take turns, so a host at its limit never keeps the workers from the other hosts.
+     * The caps hold across concurrent calls, e.g. overlapping daemon jobs. Each database succeeds
+     * or fails on its own. In pipeline mode the dumps are uploaded to the configured destinations
+     * while they are written.
+     *
+     * @param targets Databases to dump.
+     * @return One result per database, in the given order.
+     * @throws InterruptedException If the thread is interrupted while waiting for the dumps.
+     */
+    public static List<DumpResult> executeDump(List<DumpTarget> targets) throws InterruptedException {
+        // Fleet entries pointing at the same server share its lowest limit
+        Map<String, Integer> hostThreads = new HashMap<>();
+        targets.forEach(target -> hostThreads.merge(target.getHost().getKey(), target.getHost().getDumpThreads(),
+                Math::min));
+        logger.info("Dumping {} database(s) of {} host(s) with {} worker(s), per host at most {}; {} dump(s) queued.",
+                targets.size(), hostThreads.size(), DumpScheduler.getThreads(), hostThreads,
+                DumpScheduler.getQueued());
+
+        List<Destination> destinations = AppConfig.isPipelineEnabled() ? SyncManager.createDestinations() : List.of();
+        UploadPipeline pipeline = AppConfig.isPipelineEnabled()
+                ? new UploadPipeline(destinations, AppConfig.getPipelineBufferChunks(), AppConfig.getPipelineChunkSize())
+                : null;
+
+        List<Future<DumpResult>> futures = new ArrayList<>();
+        try {
+            for (DumpTarget target : targets) {
+                futures.add(DumpScheduler.submit(target.getHost(), () -> dumpDatabase(target, pipeline)));
+            }
+
+            List<DumpResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                DumpTarget target = targets.get(i);
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException | CancellationException e) {
+                    // Interrupted or cancelled dumps, and errors that escaped dumpDatabase
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    logger.error("Dump failed for database {}: {}", target.getName(), cause.toString());
+                    Metrics.DUMP_FAILURES.labels(target.getName()).inc();
+                    results.add(DumpResult.failure(target.getName(), target.getHost().getKey(), 0, cause));
+                }
+            }
+
+            logSummary(results);
+            return results;
+        } finally {
+            // Only reached with dumps pending if interrupted; the workers are shared with other runs
+            futures.forEach(future -> future.cancel(true));
+            if (pipeline != null) {
+                pipeline.getStats().forEach(stats -> logger.info("Pipeline statistics - {}", stats));
+                pipeline.close();
+                SyncManager.closeDestinations(destinations);
+            }
+        }
+    }
+
+    /**
+     * Returns the dump files of the successful results, including every file of multi-file dumps.
+     *
+     * @param results Results returned by {@link #executeDump()}.
      * @return Array of file paths for the generated dump files.
-     * @throws IOException          If there is an issue with directory creation or dump process.
-     * @throws InterruptedException If the dump process is interrupted.
      */
-    public static String[] executeDump() throws IOException, InterruptedException {
-        String[] databases = AppConfig.getDatabases();
-        String localBackupPath = AppConfig.getLocalBackupPath();
-        List<String> dumpFiles = new ArrayList<>();
+    public static String[] getDumpFiles(List<DumpResult> results) {
+        return results.stream()
+                .flatMap(result -> result.getDumpFiles().stream())
+                .toArray(String[]::new);
+    }
 
-        for (String database : databases) {
-            logger.info("Starting dump for database: {}", database);
+    /**
+     * Dumps a single database; the scheduler only runs it once its host may serve another dump.
+     *
+     * @return The result of the dump; never throws for dump failures.
+     */
+    private static DumpResult dumpDatabase(DumpTarget target, UploadPipeline pipeline) throws InterruptedException {
+        DatabaseHost host = target.getHost();
+        String database = target.getDatabase();
+        String name = target.getName();
+        String hostKey = host.getKey();
+        long start = System.nanoTime();
+        try {
+            logger.info("Starting dump for database: {}", name);
 
             // Ensure the database directory exists
-            String databasePath = localBackupPath + File.separator + database;
-            File databaseDir = new File(databasePath);
-            if (!databaseDir.exists() && !databaseDir.mkdirs()) {
-                throw new IOException("Failed to create directory for database: " + database);
+            String databasePath = AppConfig.getLocalBackupPath() + File.separator + name;
+            createBackupDirectory(databasePath);
+
+            // Skip databases that did not change since their previous backup
+            ChangeDetector detector = AppConfig.isSkipUnchangedEnabled() ? ChangeDetector.fromConfig() : null;
+            Map<String, String> fingerprint = detector != null ? fingerprint(detector, target) : null;
+            if (fingerprint != null) {
+                DumpFile previous = findUnchanged(detector, name, fingerprint);
+                if (previous != null) {
+                    logger.info("Database {} is unchanged; keeping {}", name, previous.getPath());
+                    Metrics.DUMP_SKIPPED.labels(name).inc();
+                    Metrics.DUMP_LAST_SUCCESS.labels(name).set(Metrics.now());
+                    return DumpResult.unchanged(name, hostKey, previous, elapsedMillis(start));
+                }
+            }
+
+            // Execute the dump with the configured engine
+            DumpFile dumpFile;
+            if (AppConfig.isParallelDumpEngine()) {
+                dumpFile = ParallelDumper.dump(
+                        host.getAddress(),
+                        host.getPort(),
+                        host.getUser(),
+                        host.getPassword(),
+                        database,
+                        databasePath,
+                        AppConfig.getCompressionCodec(),
+                        AppConfig.getCompressionLevel(),
+                        AppConfig.getParallelDumpConnections(),
+                        AppConfig.getParallelDumpChunkRows()
+                );
+            } else {
+                dumpFile = DatabaseDumper.dump(
+                        host.getAddress(),
+                        host.getPort(),
+                        host.getUser(),
+                        host.getPassword(),
+                        database,
+                        databasePath,
+                        AppConfig.getCompressionCodec(),
+                        AppConfig.getCompressionLevel(),
+                        pipeline
+                );
+            }
+
+            writeChecksums(dumpFile);
+            recordInCatalog(name, dumpFile);
+            recordMetrics(name, dumpFile, start);
+            if (fingerprint != null) {
+                recordFingerprint(detector, name, fingerprint, dumpFile);
+            }
+            logger.info("Dump completed for database: {}", name);
+            return DumpResult.success(name, hostKey, dumpFile, elapsedMillis(start));
+        } catch (IOException | RuntimeException e) {
+            // Runtime failures (bad configuration, catalog or codec errors) fail this dump only
+            logger.error("Dump failed for database {}: {}", name, e.getMessage());
+            Metrics.DUMP_FAILURES.labels(name).inc();
+            return DumpResult.failure(name, hostKey, elapsedMillis(start), e);
+        }
+    }
+
+    /**
+     * Fingerprints a database before its dump. A database that cannot be fingerprinted is dumped.
+     *
+     * @return The fingerprint, or null if it could not be taken.
+     */
+    private static Map<String, String> fingerprint(ChangeDetector detector, DumpTarget target) {
+        DatabaseHost host = target.getHost();
+        try {
+            return detector.fingerprint(host.getAddress(), host.getPort(), host.getUser(), host.getPassword(),
+                    target.getDatabase());
+        } catch (SQLException e) {
+            logger.warn("Failed to fingerprint {}; dumping it: {}", target.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the previous backup of an unchanged database. A database whose fingerprint file
+     * cannot be read is dumped, which replaces the file.
+     *
+     * @return The previous backup, or null if the database has to be dumped.
+     */
+    private static DumpFile findUnchanged(ChangeDetector detector, String database, Map<String, String> fingerprint) {
+        try {
+            return detector.findUnchanged(database, fingerprint);
+        } catch (IOException e) {
+            logger.warn("Failed to read the fingerprint of {}; dumping it: {}", database, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records the fingerprint a new dump was taken at. Without it the next run simply dumps again.
+     */
+    private static void recordFingerprint(ChangeDetector detector, String database, Map<String, String> fingerprint,
+                                          DumpFile dumpFile) {
+        try {
+            detector.record(database, fingerprint, dumpFile);
+        } catch (IOException e) {
+            logger.warn("Failed to record the fingerprint of {}: {}", database, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the checksum sidecar of every file of a dump. The checksums were computed while the
+     * files were written, so this never reads a dump back. A missing sidecar only means the
+     * file is not re-checked before it is synchronized.
+     */
+    private static void writeChecksums(DumpFile dumpFile) {
+        List<DumpFile> files = new ArrayList<>(dumpFile.getParts());
+        files.add(dumpFile);
+        for (DumpFile file : files) {
+            try {
+                file.getChecksums().write(Paths.get(file.getPath()));
+            } catch (IOException e) {
+                logger.warn("Failed to write checksums of {}: {}", file.getPath(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records a new dump and the copies the upload pipeline already made in the backup catalog.
+     * A catalog failure only means the next reconciliation has to find the copies again.
+     */
+    private static void recordInCatalog(String database, DumpFile dumpFile) {
+        String fileName = Paths.get(dumpFile.getPath()).getFileName().toString();
+        try {
+            BackupCatalog catalog = BackupCatalog.shared();
+            for (DumpFile part : dumpFile.getParts()) {
+                String partName = Paths.get(part.getPath()).getFileName().toString();
+                catalog.recordDump(database, partName, part.getCreatedAt(), part.getSize(), part.getChecksum(),
+                        CompressionCodec.fromFileName(Encryption.stripExtension(partName)).name().toLowerCase());
             }
+            catalog.recordDump(database, fileName, dumpFile.getCreatedAt(), dumpFile.getSize(), dumpFile.getChecksum(),
+                    CompressionCodec.fromFileName(Encryption.stripExtension(fileName)).name().toLowerCase());
+            for (Map.Entry<String, String> copy : dumpFile.getStreamedCopies().entrySet()) {
+                catalog.recordCopy(copy.getKey(), database, fileName, fileName, copy.getValue());
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Failed to record {} in the catalog: {}", fileName, e.getMessage());
+        }
+    }
+
+    private static void recordMetrics(String database, DumpFile dumpFile, long startNanos) {
+        double seconds = Metrics.secondsSince(startNanos);
+        long bytes = dumpFile.getSize() + dumpFile.getParts().stream().mapToLong(DumpFile::getSize).sum();
+        Metrics.DUMP_DURATION.labels(database).observe(seconds);
+        Metrics.DUMP_BYTES.labels(database).inc(bytes);
+        if (seconds > 0) {
+            Metrics.DUMP_THROUGHPUT.labels(database).set(bytes / seconds);
+        }
+        Metrics.DUMP_LAST_SUCCESS.labels(database).set(Metrics.now());
+    }
 
-            // Execute the dump
-            String dumpFile = DatabaseDumper.dump(
-                    AppConfig.getDatabaseHost(),
-                    AppConfig.getDatabasePort(),
-                    AppConfig.getDatabaseUser(),
-                    AppConfig.getDatabasePassword(),
-                    database,
-                    databasePath
-            );
-
-            logger.info("Dump completed for database: {}", database);
-            dumpFiles.add(dumpFile);
+    private static void logSummary(List<DumpResult> results) {
+        long failed = results.stream().filter(r -> !r.isSuccess()).count();
+        long unchanged = results.stream().filter(DumpResult::isUnchanged).count();
+        logger.info("Dump summary: {} succeeded, {} unchanged, {} failed.", results.size() - failed - unchanged,
+                unchanged, failed);
+        for (DumpResult result : results) {
+            if (result.isSuccess()) {
+                logger.info("  {}", result);
+            } else {
+                logger.error("  {}", result);
+            }
         }
+    }
 
-        return dumpFiles.toArray(new String[0]);
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
     }
 
     /**
@@ -69,7 +312,7 @@ public class BackupManager {
 
         if (!directory.exists()) {
             logger.info("Backup directory does not exist. Attempting to create: {}", path);
-            if (!directory.mkdirs()) {
+            if (!directory.mkdirs() && !directory.isDirectory()) {
                 throw new IOException("Failed to create backup directory: " + path);
             }
             logger.info("Backup directory created successfully: {}", path);
@@ -0,0 +1,359 @@
+package com.damworks.backupsyncutility.backup;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Detects databases that have not changed since their last backup, so that their dump and
+ * upload can be skipped and the previous backup carried forward.
+ * <p>
+ * Before each dump, every table, view and trigger is fingerprinted from information_schema:
+ * tables by engine, data and index length, AUTO_INCREMENT, create and update time and a digest
+ * of their columns, plus the row count where it is exact (InnoDB only estimates it); views and
+ * triggers by their definition. The fingerprint is stored with the backup it led to in
+ * {@code <state>/fingerprints/<database>.fingerprint}. A later run skips the database if the
+ * fingerprint is identical, the previous backup is still on disk and younger than
+ * {@code backup.unchanged.max.age.days}.
+ * <p>
+ * InnoDB does not persist UPDATE_TIME across restarts and leaves it empty for partitioned
+ * tables. A table without a trustworthy update time is therefore verified with
+ * {@code CHECKSUM TABLE} (mode "auto"), or counted as changed (mode "never"); mode "always"
+ * checksums every table.
+ */
+public class ChangeDetector {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeDetector.class);
+    private static final String HEADER = "# backupsyncutility fingerprints v1";
+    private static final String EXTENSION = ".fingerprint";
+    private static final String UNKNOWN = "?";
+
+    /**
+     * When table contents are verified with CHECKSUM TABLE, which reads the whole table.
+     */
+    public enum ChecksumMode { NEVER, AUTO, ALWAYS }
+
+    private final Path stateDirectory;
+    private final ChecksumMode checksumMode;
+    private final long maxAgeMillis;
+
+    /**
+     * @param stateDirectory Directory of the fingerprint files.
+     * @param checksumMode   When to verify tables with CHECKSUM TABLE.
+     * @param maxAgeDays     Age after which a database is dumped even if unchanged; 0 for no limit.
+     */
+    public ChangeDetector(Path stateDirectory, ChecksumMode checksumMode, int maxAgeDays) {
+        this.stateDirectory = stateDirectory;
+        this.checksumMode = checksumMode;
+        this.maxAgeMillis = TimeUnit.DAYS.toMillis(maxAgeDays);
+    }
+
+    /**
+     * @return A detector configured from the application settings.
+     */
+    public static ChangeDetector fromConfig() {
+        return new ChangeDetector(Paths.get(AppConfig.getStatePath(), "fingerprints"),
+                ChecksumMode.valueOf(AppConfig.getUnchangedChecksumMode().toUpperCase()),
+                AppConfig.getUnchangedMaxAgeDays());
+    }
+
+    /**
+     * Fingerprints every table, view and trigger of a database.
+     *
+     * @return Digest per object, keyed by "table:", "view:" or "trigger:" and the object name.
+     *         Objects whose state cannot be determined have the digest {@value #UNKNOWN}.
+     * @throws SQLException If information_schema cannot be read.
+     */
+    public Map<String, String> fingerprint(String host, int port, String user, String password, String database)
+            throws SQLException {
+        String url = String.format("jdbc:mysql://%s:%d/?characterEncoding=UTF-8", host, port);
+        Map<String, String> fingerprint = new TreeMap<>();
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            try (Statement statement = connection.createStatement()) {
+                // MySQL 8 caches table statistics for a day by default; MariaDB has no such cache
+                statement.execute("SET SESSION information_schema_stats_expiry = 0");
+            } catch (SQLException e) {
+                logger.debug("information_schema_stats_expiry not supported: {}", e.getMessage());
+            }
+
+            Map<String, String> columns = columnDigests(connection, database);
+            Timestamp now = serverTime(connection);
+            List<String> toChecksum = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT TABLE_NAME, TABLE_TYPE, ENGINE, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH, AUTO_INCREMENT, "
+                            + "CREATE_TIME, UPDATE_TIME, TABLE_COLLATION FROM information_schema.TABLES "
+                            + "WHERE TABLE_SCHEMA = ?")) {
+                statement.setString(1, database);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        String table = rs.getString(1);
+                        if ("VIEW".equals(rs.getString(2))) {
+                            continue;
+                        }
+                        Timestamp updated = rs.getTimestamp(9);
+                        // A write in the same second as this fingerprint would not move UPDATE_TIME
+                        boolean trusted = updated != null && updated.getTime() < now.getTime() - 1000;
+                        if (checksumMode == ChecksumMode.ALWAYS || (!trusted && checksumMode == ChecksumMode.AUTO)) {
+                            toChecksum.add(table);
+                        }
+                        // InnoDB row counts are estimates that move when statistics are recalculated
+                        String rows = "InnoDB".equalsIgnoreCase(rs.getString(3)) ? null : rs.getString(4);
+                        fingerprint.put("table:" + table, trusted || checksumMode != ChecksumMode.NEVER
+                                ? digest(rs.getString(3), rows, rs.getString(5), rs.getString(6),
+                                        rs.getString(7), rs.getString(8), String.valueOf(updated), rs.getString(10),
+                                        columns.get(table))
+                                : UNKNOWN);
+                    }
+                }
+            }
+            for (Map.Entry<String, String> checksum : checksumTables(connection, database, toChecksum).entrySet()) {
+                String key = "table:" + checksum.getKey();
+                fingerprint.put(key, digest(fingerprint.get(key), checksum.getValue()));
+            }
+
+            query(connection, "SELECT TABLE_NAME, VIEW_DEFINITION, CHECK_OPTION, SECURITY_TYPE "
+                    + "FROM information_schema.VIEWS WHERE TABLE_SCHEMA = ?", database, "view:", fingerprint);
+            query(connection, "SELECT TRIGGER_NAME, EVENT_OBJECT_TABLE, EVENT_MANIPULATION, ACTION_TIMING, "
+                    + "ACTION_STATEMENT FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = ?",
+                    database, "trigger:", fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Decides whether a database can be skipped.
+     *
+     * @param database    Database name.
+     * @param fingerprint Its current fingerprint.
+     * @return The previous backup, which still describes the database, or null if it must be dumped.
+     * @throws IOException If the fingerprint file cannot be read or is malformed.
+     */
+    public DumpFile findUnchanged(String database, Map<String, String> fingerprint) throws IOException {
+        State state = read(database);
+        if (state == null) {
+            return null;
+        }
+        if (maxAgeMillis > 0 && System.currentTimeMillis() - state.createdAt > maxAgeMillis) {
+            logger.info("Previous backup of {} is older than {} day(s); dumping.", database,
+                    TimeUnit.MILLISECONDS.toDays(maxAgeMillis));
+            return null;
+        }
+        for (String file : state.files) {
+            if (!Files.isRegularFile(Paths.get(file))) {
+                logger.info("Previous backup file of {} is gone ({}); dumping.", database, file);
+                return null;
+            }
+        }
+
+        TreeSet<String> changed = new TreeSet<>();
+        for (String key : union(fingerprint, state.fingerprint)) {
+            String current = fingerprint.get(key);
+            if (current == null || UNKNOWN.equals(current) || !current.equals(state.fingerprint.get(key))) {
+                changed.add(key);
+            }
+        }
+        if (!changed.isEmpty()) {
+            logger.info("{} changed since its previous backup ({} object(s)): {}{}", database, changed.size(),
+                    changed.stream().limit(10).collect(Collectors.joining(", ")), changed.size() > 10 ? ", ..." : "");
+            return null;
+        }
+
+        String main = state.files.get(state.files.size() - 1);
+        List<DumpFile> parts = new ArrayList<>();
+        for (String part : state.files.subList(0, state.files.size() - 1)) {
+            parts.add(new DumpFile(part, Files.size(Paths.get(part)), null, state.createdAt, Map.of()));
+        }
+        return new DumpFile(main, Files.size(Paths.get(main)), null, state.createdAt, Map.of(), parts);
+    }
+
+    /**
+     * Records the fingerprint taken before a successful dump, so the next run compares against it.
+     *
+     * @param database    Database name.
+     * @param fingerprint Fingerprint taken before the dump started.
+     * @param dumpFile    The new backup.
+     * @throws IOException If the fingerprint file cannot be written.
+     */
+    public void record(String database, Map<String, String> fingerprint, DumpFile dumpFile) throws IOException {
+        Files.createDirectories(stateDirectory);
+        Path file = stateDirectory.resolve(database + EXTENSION);
+        Path temp = stateDirectory.resolve(database + EXTENSION + ".part");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + "\n");
+            writer.write("created " + dumpFile.getCreatedAt() + "\n");
+            for (DumpFile part : dumpFile.getParts()) {
+                writer.write("file " + part.getPath() + "\n");
+            }
+            writer.write("file " + dumpFile.getPath() + "\n");
+            for (Map.Entry<String, String> entry : fingerprint.entrySet()) {
+                writer.write(entry.getValue() + " " + entry.getKey() + "\n");
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param database Database name.
+     * @return Main file of the backup the stored fingerprint describes, or null if there is none.
+     *         Rotation keeps that backup, since later runs may carry it forward.
+     */
+    public String getRecordedBackup(String database) {
+        try {
+            State state = read(database);
+            return state != null ? state.files.get(state.files.size() - 1) : null;
+        } catch (IOException e) {
+            logger.warn("Failed to read the fingerprint of {}: {}", database, e.getMessage());
+            return null;
+        }
+    }
+
+    private State read(String database) throws IOException {
+        Path file = stateDirectory.resolve(database + EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        State state = new State();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException("Not a fingerprint file: " + file);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 2);
+                if (parts.length != 2) {
+                    continue;
+                }
+                switch (parts[0]) {
+                    case "created" -> state.createdAt = parseCreated(parts[1], file);
+                    case "file" -> state.files.add(parts[1]);
+                    default -> state.fingerprint.put(parts[1], parts[0]);
+                }
+            }
+        }
+        return state.files.isEmpty() ? null : state;
+    }
+
+    private static long parseCreated(String value, Path file) throws IOException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed creation time in " + file + ": " + value, e);
+        }
+    }
+
+    private static Map<String, String> columnDigests(Connection connection, String database) throws SQLException {
+        Map<String, List<String>> columns = new TreeMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT TABLE_NAME, COLUMN_NAME, ORDINAL_POSITION, COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT, EXTRA, "
+                        + "COLUMN_KEY, COLLATION_NAME FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? "
+                        + "ORDER BY TABLE_NAME, ORDINAL_POSITION")) {
+            statement.setString(1, database);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    columns.computeIfAbsent(rs.getString(1), table -> new ArrayList<>()).add(digest(
+                            rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6),
+                            rs.getString(7), rs.getString(8), rs.getString(9)));
+                }
+            }
+        }
+        Map<String, String> digests = new TreeMap<>();
+        columns.forEach((table, list) -> digests.put(table, digest(list.toArray(new String[0]))));
+        return digests;
+    }
+
+    private static Map<String, String> checksumTables(Connection connection, String database, List<String> tables)
+            throws SQLException {
+        Map<String, String> checksums = new TreeMap<>();
+        try (Statement statement = connection.createStatement()) {
+            for (String table : tables) {
+                try (ResultSet rs = statement.executeQuery("CHECKSUM TABLE " + quote(database) + "." + quote(table))) {
+                    checksums.put(table, rs.next() ? String.valueOf(rs.getString(2)) : UNKNOWN);
+                }
+            }
+        }
+        return checksums;
+    }
+
+    private static void query(Connection connection, String sql, String database, String prefix,
+                              Map<String, String> fingerprint) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, database);
+            try (ResultSet rs = statement.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    String[] values = new String[columns - 1];
+                    for (int i = 2; i <= columns; i++) {
+                        values[i - 2] = rs.getString(i);
+                    }
+                    fingerprint.put(prefix + rs.getString(1), digest(values));
+                }
+            }
+        }
+    }
+
+    private static Timestamp serverTime(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT NOW()")) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    private static TreeSet<String> union(Map<String, String> a, Map<String, String> b) {
+        TreeSet<String> keys = new TreeSet<>(a.keySet());
+        keys.addAll(b.keySet());
+        return keys;
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    private static String digest(String... values) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                sha256.update(Objects.toString(value, "\\N").getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : sha256.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static class State {
+        long createdAt;
+        final List<String> files = new ArrayList<>();
+        final Map<String, String> fingerprint = new TreeMap<>();
+    }
+}
@@ -1,11 +1,29 @@
 package com.damworks.backupsyncutility.backup;
 
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+import com.damworks.backupsyncutility.compress.ParallelCompression;
+import com.damworks.backupsyncutility.crypto.Encryption;
+import com.damworks.backupsyncutility.pipeline.PipelineSession;
+import com.damworks.backupsyncutility.pipeline.UploadPipeline;
+import com.damworks.backupsyncutility.verify.ChecksumOutputStream;
+import com.damworks.backupsyncutility.verify.Checksums;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.Date;
 import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Handles the creation of database dumps using mysqldump.
@@ -13,9 +31,10 @@ import java.text.SimpleDateFormat;
 public class DatabaseDumper {
 
     private static final Logger logger = LoggerFactory.getLogger(DatabaseDumper.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     /**
-     * Dumps the specified database to a file.
+     * Dumps the specified database to a file, streaming mysqldump's output through the given codec.
      *
      * @param host       Host of the database server.
      * @param port       Port of the database server.
@@ -23,37 +42,99 @@ public class DatabaseDumper {
      * @param password   Database password.
      * @param database   Name of the database to dump.
      * @param backupPath Directory where the dump file will be stored.
-     * @return Path to the created dump file.
+     * @param codec      Compression codec applied to the dump stream, before encryption if it is enabled.
+     * @param level      Compression level for the codec.
+     * @param pipeline   Pipeline that uploads the dump while it is written, or null to only write locally.
+     * @return The created dump file.
      * @throws IOException          If an I/O error occurs.
      * @throws InterruptedException If the process is interrupted.
      */
-    public static String dump(String host, int port, String user, String password, String database, String backupPath)
+    public static DumpFile dump(String host, int port, String user, String password, String database, String backupPath,
+                                CompressionCodec codec, int level, UploadPipeline pipeline)
             throws IOException, InterruptedException {
 
         // Generate a timestamped filename
-        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        String dumpFileName = String.format("%s_%s.sql", database, timestamp);
-        String dumpFilePath = backupPath + "/" + dumpFileName;
+        Date createdAt = new Date();
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(createdAt);
+        String dumpFileName = String.format("%s_%s.sql%s%s", database, timestamp, codec.getExtension(),
+                Encryption.extension());
+        Path dumpFilePath = Paths.get(backupPath, dumpFileName);
+        Path partFilePath = Paths.get(backupPath, dumpFileName + ".part");
 
         logger.info("Creating database dump for '{}@{}:{}' in file: {}", database, host, port, dumpFilePath);
 
-        // Build the mysqldump command
-        String command = String.format(
-                "mysqldump -h%s -P%d -u%s -p%s %s -r %s",
-                host, port, user, password, database, dumpFilePath
-        );
-
-        // Execute the command
-        Process process = Runtime.getRuntime().exec(command);
-
-        // Wait for the process to complete
-        int exitCode = process.waitFor();
-        if (exitCode == 0) {
-            logger.info("Database dump created successfully: {}", dumpFilePath);
-        } else {
-            throw new IOException("mysqldump failed with exit code: " + exitCode);
+        // Wait for upload slots before connecting, so a saturated uplink does not hold a MySQL session;
+        // the remote folder is named after the backup directory, like that of a synchronized file
+        PipelineSession session = pipeline != null
+                ? pipeline.open(Paths.get(backupPath).getFileName().toString(), dumpFileName)
+                : null;
+        Map<String, String> streamedCopies = Collections.emptyMap();
+        Checksums checksums;
+        boolean completed = false;
+        Process process = null;
+        try {
+            // Build the mysqldump command; the dump is read from stdout instead of written with -r.
+            // The password goes through the environment, which unlike argv other users cannot read
+            List<String> command = List.of(
+                    "mysqldump", "-h" + host, "-P" + port, "-u" + user, database
+            );
+            ProcessBuilder builder = new ProcessBuilder(command);
+            if (password != null) {
+                builder.environment().put("MYSQL_PWD", password);
+            }
+            process = builder.start();
+
+            // Drain stderr concurrently so a chatty mysqldump can never block on a full pipe
+            StderrCollector stderr = StderrCollector.start(process, "mysqldump-stderr-" + database);
+
+            // Checksums cover the bytes as written, which are also the bytes every destination receives;
+            // with encryption enabled those are the ciphertext of the compressed dump
+            ChecksumOutputStream fileStream = new ChecksumOutputStream(openOutput(partFilePath, session));
+            try (InputStream dumpStream = process.getInputStream();
+                 fileStream;
+                 OutputStream out = ParallelCompression.compress(codec, Encryption.encrypt(fileStream), level)) {
+                dumpStream.transferTo(out);
+            }
+            checksums = fileStream.getChecksums();
+
+            // Wait for the process to complete
+            int exitCode = process.waitFor();
+            stderr.join();
+            if (exitCode != 0) {
+                throw new IOException("mysqldump failed with exit code: " + exitCode + stderr.describe());
+            }
+
+            Files.move(partFilePath, dumpFilePath, StandardCopyOption.ATOMIC_MOVE);
+            if (session != null) {
+                streamedCopies = session.complete();
+            }
+            completed = true;
+            logger.info("Database dump created successfully: {} ({} bytes)", dumpFilePath, Files.size(dumpFilePath));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // Always end the session, so its upload slots are returned
+            if (session != null) {
+                session.abort(e instanceof IOException ? (IOException) e
+                        : e instanceof InterruptedException ? new InterruptedIOException("Dump interrupted.")
+                        : new IOException(e.getMessage(), e));
+            }
+            throw e;
+        } finally {
+            if (!completed) {
+                if (process != null) {
+                    process.destroyForcibly();
+                }
+                Files.deleteIfExists(partFilePath);
+            }
         }
 
-        return dumpFilePath;
+        return new DumpFile(dumpFilePath.toString(), Files.size(dumpFilePath), checksums,
+                createdAt.getTime(), streamedCopies);
+    }
+
+    private static OutputStream openOutput(Path file, PipelineSession session) throws IOException {
+        OutputStream fileStream = Files.newOutputStream(file);
+        return session != null
+                ? session.tee(fileStream)
+                : new BufferedOutputStream(fileStream, BUFFER_SIZE);
     }
 }
@@ -0,0 +1,118 @@
+package com.damworks.backupsyncutility.backup;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MySQL server whose databases are backed up, with its credentials and the number of dumps it
+ * may serve at once. Without {@code fleet.hosts} there is a single unnamed host configured by
+ * {@code mysql.*}; otherwise there is one named host per entry of {@code fleet.hosts}.
+ */
+public class DatabaseHost {
+    private final String name;
+    private final String address;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final List<String> databases;
+    private final int dumpThreads;
+
+    /**
+     * @param name        Fleet name of the host, or null for the host configured by {@code mysql.*}.
+     * @param address     Host name or IP address of the server.
+     * @param port        Port of the server.
+     * @param user        Database username.
+     * @param password    Database password.
+     * @param databases   Databases backed up on this host.
+     * @param dumpThreads Maximum number of concurrent dumps against this host.
+     */
+    public DatabaseHost(String name, String address, int port, String user, String password, List<String> databases,
+                        int dumpThreads) {
+        if (dumpThreads < 1) {
+            throw new IllegalArgumentException("Dump threads of " + address + " must be at least 1: " + dumpThreads);
+        }
+        this.name = name;
+        this.address = address;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+        this.databases = List.copyOf(databases);
+        this.dumpThreads = dumpThreads;
+    }
+
+    /**
+     * Reads the hosts listed in {@code fleet.hosts}, or the single host of {@code mysql.*} if
+     * there are none.
+     *
+     * @return The configured hosts.
+     * @throws IllegalArgumentException If a fleet host has no address or no databases.
+     */
+    public static List<DatabaseHost> fromConfig() {
+        String[] names = AppConfig.getFleetHosts();
+        if (names.length == 0) {
+            return List.of(new DatabaseHost(null, AppConfig.getDatabaseHost(), AppConfig.getDatabasePort(),
+                    AppConfig.getDatabaseUser(), AppConfig.getDatabasePassword(), List.of(AppConfig.getDatabases()),
+                    AppConfig.getDumpThreadsPerHost()));
+        }
+
+        List<DatabaseHost> hosts = new ArrayList<>();
+        for (String name : names) {
+            String address = AppConfig.getFleetHostAddress(name);
+            if (address == null) {
+                throw new IllegalArgumentException("No address configured for fleet host: " + name);
+            }
+            String[] databases = AppConfig.getFleetHostDatabases(name);
+            if (databases == null) {
+                throw new IllegalArgumentException("No databases configured for fleet host: " + name);
+            }
+            hosts.add(new DatabaseHost(name, address, AppConfig.getFleetHostPort(name), AppConfig.getFleetHostUser(name),
+                    AppConfig.getFleetHostPassword(name), List.of(databases), AppConfig.getFleetHostDumpThreads(name)));
+        }
+        return hosts;
+    }
+
+    /**
+     * @return Fleet name of the host, or null for the host configured by {@code mysql.*}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public List<String> getDatabases() {
+        return databases;
+    }
+
+    public int getDumpThreads() {
+        return dumpThreads;
+    }
+
+    /**
+     * @return "address:port", which identifies the server; fleet entries for the same server share its limits.
+     */
+    public String getKey() {
+        return address + ":" + port;
+    }
+
+    @Override
+    public String toString() {
+        return name != null ? name + " (" + getKey() + ")" : getKey();
+    }
+}
@@ -0,0 +1,88 @@
+package com.damworks.backupsyncutility.backup;
+
+import com.damworks.backupsyncutility.verify.Checksums;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A dump file written by {@link DatabaseDumper}. A multi-file dump written by {@link ParallelDumper}
+ * is represented by its manifest, with the schema and data files as parts.
+ */
+public class DumpFile {
+    private final String path;
+    private final long size;
+    private final Checksums checksums;
+    private final long createdAt;
+    private final Map<String, String> streamedCopies;
+    private final List<DumpFile> parts;
+
+    public DumpFile(String path, long size, Checksums checksums, long createdAt, Map<String, String> streamedCopies) {
+        this(path, size, checksums, createdAt, streamedCopies, Collections.emptyList());
+    }
+
+    public DumpFile(String path, long size, Checksums checksums, long createdAt, Map<String, String> streamedCopies,
+                    List<DumpFile> parts) {
+        this.path = path;
+        this.size = size;
+        this.checksums = checksums;
+        this.createdAt = createdAt;
+        this.streamedCopies = Collections.unmodifiableMap(streamedCopies);
+        this.parts = List.copyOf(parts);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return Size in bytes; for a multi-file dump, the size of all its files.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Hex SHA-256 of the file as written, computed while it was written.
+     */
+    public String getChecksum() {
+        return checksums.getSha256();
+    }
+
+    /**
+     * @return All checksums of the file as written; for a multi-file dump, those of the manifest.
+     */
+    public Checksums getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * @return Time the dump was started, in milliseconds since the epoch.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return Names of the destinations that already received this file through the upload pipeline.
+     */
+    public Set<String> getStreamedDestinations() {
+        return streamedCopies.keySet();
+    }
+
+    /**
+     * @return Remote references of the streamed copies, keyed by destination name.
+     */
+    public Map<String, String> getStreamedCopies() {
+        return streamedCopies;
+    }
+
+    /**
+     * @return The other files of a multi-file dump; empty for a single-file dump.
+     */
+    public List<DumpFile> getParts() {
+        return parts;
+    }
+}
@@ -0,0 +1,208 @@
+package com.damworks.backupsyncutility.backup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a multi-file dump written by {@link ParallelDumper}: the schema file, every
+ * table (or table chunk) file and the trigger file, in the order they must be restored.
+ * <p>
+ * The manifest is a small text file named {@code <database>_<timestamp>.manifest}:
+ * <pre>
+ * # backupsyncutility parallel dump v1
+ * database mydb
+ * created 20240101_020000
+ * codec gzip
+ * binlog mysql-bin.000042 1337
+ * schema - mydb_20240101_020000.schema.sql.gz 0 2048 &lt;sha256&gt;
+ * data orders mydb_20240101_020000.orders.00000.sql.gz 1000000 73400320 &lt;sha256&gt;
+ * triggers - mydb_20240101_020000.triggers.sql.gz 0 512 &lt;sha256&gt;
+ * </pre>
+ * Each file line holds kind, table (URL-encoded), file name, rows, bytes and SHA-256.
+ */
+public class DumpManifest {
+    public static final String EXTENSION = ".manifest";
+    private static final String HEADER = "# backupsyncutility parallel dump v1";
+
+    private final String database;
+    private final String created;
+    private final String codec;
+    private final String binlogFile;
+    private final long binlogPosition;
+    private final List<Entry> entries;
+
+    public DumpManifest(String database, String created, String codec, String binlogFile, long binlogPosition,
+                        List<Entry> entries) {
+        this.database = database;
+        this.created = created;
+        this.codec = codec;
+        this.binlogFile = binlogFile;
+        this.binlogPosition = binlogPosition;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * @return Snapshot time as {@code yyyyMMdd_HHmmss}.
+     */
+    public String getCreated() {
+        return created;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return Binary log file at the snapshot, or null if the server did not report one.
+     */
+    public String getBinlogFile() {
+        return binlogFile;
+    }
+
+    public long getBinlogPosition() {
+        return binlogPosition;
+    }
+
+    /**
+     * @return The files of the dump: schema first, then data, then triggers.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write(HEADER + "\n");
+        writer.write("database " + database + "\n");
+        writer.write("created " + created + "\n");
+        writer.write("codec " + codec + "\n");
+        if (binlogFile != null) {
+            writer.write("binlog " + binlogFile + " " + binlogPosition + "\n");
+        }
+        for (Entry entry : entries) {
+            writer.write(String.join(" ", entry.getKind(), entry.getTable() != null ? URLEncoder.encode(entry.getTable(), StandardCharsets.UTF_8) : "-",
+                    entry.getFileName(), Long.toString(entry.getRows()), Long.toString(entry.getBytes()),
+                    entry.getChecksum()) + "\n");
+        }
+        writer.flush();
+    }
+
+    public static DumpManifest read(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        if (!HEADER.equals(reader.readLine())) {
+            throw new IOException("Not a dump manifest.");
+        }
+
+        String database = null;
+        String created = null;
+        String codec = "none";
+        String binlogFile = null;
+        long binlogPosition = 0;
+        List<Entry> entries = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] parts = line.split(" ");
+            switch (parts[0]) {
+                case "database":
+                    database = parts[1];
+                    break;
+                case "created":
+                    created = parts[1];
+                    break;
+                case "codec":
+                    codec = parts[1];
+                    break;
+                case "binlog":
+                    binlogFile = parts[1];
+                    binlogPosition = Long.parseLong(parts[2]);
+                    break;
+                default:
+                    if (parts.length != 6) {
+                        throw new IOException("Malformed manifest line: " + line);
+                    }
+                    entries.add(new Entry(parts[0], parts[1].equals("-") ? null : URLDecoder.decode(parts[1], StandardCharsets.UTF_8), parts[2],
+                            Long.parseLong(parts[3]), Long.parseLong(parts[4]), parts[5]));
+            }
+        }
+        return new DumpManifest(database, created, codec, binlogFile, binlogPosition, entries);
+    }
+
+    /**
+     * One file of the dump.
+     */
+    public static class Entry {
+        public static final String SCHEMA = "schema";
+        public static final String DATA = "data";
+        public static final String TRIGGERS = "triggers";
+
+        private final String kind;
+        private final String table;
+        private final String fileName;
+        private final long rows;
+        private final long bytes;
+        private final String checksum;
+
+        public Entry(String kind, String table, String fileName, long rows, long bytes, String checksum) {
+            this.kind = kind;
+            this.table = table;
+            this.fileName = fileName;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.checksum = checksum;
+        }
+
+        /**
+         * @return {@link #SCHEMA}, {@link #DATA} or {@link #TRIGGERS}.
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        /**
+         * @return Table name, or null for the schema and trigger files.
+         */
+        public String getTable() {
+            return table;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return Size of the file as written (compressed) in bytes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return Hex SHA-256 of the file as written.
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.damworks.backupsyncutility.backup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outcome of a single database dump.
+ */
+public class DumpResult {
+    private final String database;
+    private final String host;
+    private final DumpFile dumpFile;
+    private final long durationMillis;
+    private final DumpFile carriedForward;
+    private final Exception error;
+
+    private DumpResult(String database, String host, DumpFile dumpFile, DumpFile carriedForward, long durationMillis,
+                       Exception error) {
+        this.database = database;
+        this.host = host;
+        this.dumpFile = dumpFile;
+        this.carriedForward = carriedForward;
+        this.durationMillis = durationMillis;
+        this.error = error;
+    }
+
+    public static DumpResult success(String database, String host, DumpFile dumpFile, long durationMillis) {
+        return new DumpResult(database, host, dumpFile, null, durationMillis, null);
+    }
+
+    /**
+     * A database that did not change since its previous backup, which is kept instead of a new dump.
+     * It counts as a success, but has no dump files, so nothing is synchronized for it.
+     */
+    public static DumpResult unchanged(String database, String host, DumpFile previous, long durationMillis) {
+        return new DumpResult(database, host, null, previous, durationMillis, null);
+    }
+
+    public static DumpResult failure(String database, String host, long durationMillis, Exception error) {
+        return new DumpResult(database, host, null, null, durationMillis, error);
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return Path of the dump file (the manifest of a multi-file dump), or null if the dump failed
+     *         or was skipped.
+     */
+    public String getDumpFile() {
+        return dumpFile != null ? dumpFile.getPath() : null;
+    }
+
+    /**
+     * @return Paths of all files of the dump, data files first and the main file (manifest) last;
+     *         empty if the dump failed or was skipped.
+     */
+    public List<String> getDumpFiles() {
+        List<String> files = new ArrayList<>();
+        if (dumpFile != null) {
+            dumpFile.getParts().forEach(part -> files.add(part.getPath()));
+            files.add(dumpFile.getPath());
+        }
+        return files;
+    }
+
+    /**
+     * @return Names of the destinations that already received the dump through the upload pipeline.
+     */
+    public Set<String> getStreamedDestinations() {
+        return dumpFile != null ? dumpFile.getStreamedDestinations() : Collections.emptySet();
+    }
+
+    /**
+     * @return Remote references of the copies made by the upload pipeline, keyed by destination name.
+     */
+    public Map<String, String> getStreamedCopies() {
+        return dumpFile != null ? dumpFile.getStreamedCopies() : Collections.emptyMap();
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return The error that caused the dump to fail, or null on success.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return Whether the dump was skipped because the database did not change.
+     */
+    public boolean isUnchanged() {
+        return carriedForward != null;
+    }
+
+    /**
+     * @return The previous backup kept for an unchanged database, or null.
+     */
+    public DumpFile getCarriedForward() {
+        return carriedForward;
+    }
+
+    @Override
+    public String toString() {
+        if (isUnchanged()) {
+            return String.format("%s@%s: UNCHANGED in %d ms (kept %s)", database, host, durationMillis,
+                    carriedForward.getPath());
+        }
+        return isSuccess()
+                ? String.format("%s@%s: OK in %d ms (%s, %s)", database, host, durationMillis, getDumpFile(),
+                        dumpFile.getChecksums())
+                : String.format("%s@%s: FAILED in %d ms (%s)", database, host, durationMillis, error.getMessage());
+    }
+}
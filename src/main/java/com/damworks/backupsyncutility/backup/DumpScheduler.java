@@ -0,0 +1,66 @@
+package com.damworks.backupsyncutility.backup;
+
+import com.damworks.backupsyncutility.concurrent.KeyedScheduler;
+import com.damworks.backupsyncutility.config.AppConfig;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide scheduler of database dumps. At most {@code backup.dump.threads} dumps run at
+ * once, and at most the limit of each MySQL host against it, whichever run or daemon job
+ * submitted them; overlapping jobs queue behind one another instead of each getting the full caps.
+ */
+final class DumpScheduler {
+    // Lowest limit of each server, by host key; fleet entries pointing at the same server share it
+    private static final Map<String, Integer> hostThreads = new ConcurrentHashMap<>();
+    private static KeyedScheduler scheduler;
+    private static int threads;
+
+    private DumpScheduler() {
+    }
+
+    /**
+     * Queues a dump. It runs as soon as the global cap and the cap of its host allow.
+     *
+     * @param host The host the dump runs against.
+     * @param dump The dump.
+     * @return The result of the dump.
+     */
+    static <T> Future<T> submit(DatabaseHost host, Callable<T> dump) {
+        hostThreads.merge(host.getKey(), host.getDumpThreads(), Math::min);
+        return scheduler().submit(host.getKey(), dump);
+    }
+
+    /**
+     * @return Maximum number of dumps running at once.
+     */
+    static synchronized int getThreads() {
+        scheduler();
+        return threads;
+    }
+
+    /**
+     * @return Number of dumps waiting to run.
+     */
+    static int getQueued() {
+        return scheduler().getQueued();
+    }
+
+    private static synchronized KeyedScheduler scheduler() {
+        if (scheduler == null) {
+            threads = Math.max(1, AppConfig.getDumpThreads());
+            AtomicInteger counter = new AtomicInteger();
+            scheduler = new KeyedScheduler(Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "dump-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }), threads, key -> hostThreads.getOrDefault(key, 1));
+        }
+        return scheduler;
+    }
+}
@@ -0,0 +1,117 @@
+package com.damworks.backupsyncutility.backup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A database on a {@link DatabaseHost}. Its name labels everything stored for it: the local
+ * backup directory, the remote folders, the catalog and the metrics. Databases of the
+ * {@code mysql.*} host keep their plain name; databases of a fleet host are named
+ * {@code <database>@<host>}, so equally named databases of different hosts never mix.
+ */
+public class DumpTarget {
+    private static final String SEPARATOR = "@";
+
+    private final DatabaseHost host;
+    private final String database;
+
+    public DumpTarget(DatabaseHost host, String database) {
+        this.host = host;
+        this.database = database;
+    }
+
+    /**
+     * @return Every configured database of every host.
+     * @throws IllegalArgumentException If the fleet configuration is invalid.
+     */
+    public static List<DumpTarget> fromConfig() {
+        return select(null);
+    }
+
+    /**
+     * Selects configured databases by name. A selector is either a target name
+     * ({@code <database>@<host>} in a fleet), a plain database name, which selects that database
+     * on every host having it, or {@code @<host>}, which selects all databases of a fleet host.
+     * Without a fleet, a database that is not in {@code mysql.databases} is still selected.
+     *
+     * @param selectors Selectors, or null for all configured databases.
+     * @return The selected databases, in host and database order of the configuration.
+     * @throws IllegalArgumentException If a selector matches nothing in a fleet, or the fleet configuration is invalid.
+     */
+    public static List<DumpTarget> select(String[] selectors) {
+        List<DatabaseHost> hosts = DatabaseHost.fromConfig();
+        List<DumpTarget> all = new ArrayList<>();
+        for (DatabaseHost host : hosts) {
+            host.getDatabases().forEach(database -> all.add(new DumpTarget(host, database.trim())));
+        }
+        if (selectors == null) {
+            return all;
+        }
+
+        Set<DumpTarget> selected = new LinkedHashSet<>();
+        for (String selector : selectors) {
+            String trimmed = selector.trim();
+            List<DumpTarget> matches = all.stream().filter(target -> target.matches(trimmed)).toList();
+            if (!matches.isEmpty()) {
+                selected.addAll(matches);
+            } else if (hosts.size() == 1 && hosts.get(0).getName() == null && !trimmed.contains(SEPARATOR)) {
+                selected.add(new DumpTarget(hosts.get(0), trimmed));
+            } else {
+                throw new IllegalArgumentException("No configured database matches: " + trimmed);
+            }
+        }
+        return new ArrayList<>(selected);
+    }
+
+    /**
+     * @param name Name of a target, as returned by {@link #getName()}.
+     * @return The target of that name; without a fleet, any database of the {@code mysql.*} host.
+     * @throws IllegalArgumentException If no fleet database has that name.
+     */
+    public static DumpTarget find(String name) {
+        return select(new String[]{name}).stream()
+                .filter(target -> target.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No configured database is named: " + name));
+    }
+
+    public DatabaseHost getHost() {
+        return host;
+    }
+
+    /**
+     * @return Name of the database on its host.
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * @return Name of the backups of this database: the database name, qualified by the fleet host name.
+     */
+    public String getName() {
+        return host.getName() != null ? database + SEPARATOR + host.getName() : database;
+    }
+
+    private boolean matches(String selector) {
+        return selector.equals(getName()) || selector.equals(database)
+                || (host.getName() != null && selector.equals(SEPARATOR + host.getName()));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof DumpTarget && ((DumpTarget) other).getName().equals(getName());
+    }
+
+    @Override
+    public int hashCode() {
+        return getName().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
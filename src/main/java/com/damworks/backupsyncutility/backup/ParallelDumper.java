@@ -0,0 +1,683 @@
+package com.damworks.backupsyncutility.backup;
+
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+import com.damworks.backupsyncutility.compress.ParallelCompression;
+import com.damworks.backupsyncutility.crypto.Encryption;
+import com.damworks.backupsyncutility.verify.ChecksumOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Dumps a database over several JDBC connections at once, as an alternative to a single
+ * mysqldump process.
+ * <p>
+ * A short global read lock lets every worker connection open a transaction on the same
+ * consistent snapshot; the lock is released before any data is read. Tables are then dumped
+ * concurrently, and tables larger than {@code chunkRows} with a single-column integer primary
+ * key are split into key ranges. Every table (or chunk) goes to its own compressed file named
+ * {@code <database>_<timestamp>.<table>.<chunk>.sql<ext>}, described by a {@link DumpManifest}.
+ * Triggers go to a separate file that is restored after the data, so they do not fire while
+ * rows are loaded. All files share the backup stem, so rotation and synchronization treat them
+ * as one backup.
+ */
+public class ParallelDumper {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelDumper.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_STATEMENT_BYTES = 1024 * 1024;
+    private static final int FETCH_STREAMING = Integer.MIN_VALUE;
+    private static final Pattern GENERATED_COLUMN = Pattern.compile("\\b(VIRTUAL|STORED|PERSISTENT) GENERATED\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Dumps the specified database into per-table files plus a manifest.
+     *
+     * @param host       Host of the database server.
+     * @param port       Port of the database server.
+     * @param user       Database username.
+     * @param password   Database password.
+     * @param database   Name of the database to dump.
+     * @param backupPath Directory where the dump files will be stored.
+     * @param codec      Compression codec applied to every file except the manifest.
+     * @param level      Compression level for the codec.
+     * @param threads    Number of worker connections.
+     * @param chunkRows  Approximate number of rows per file for tables that can be split.
+     * @return The manifest as main file, with the schema and data files as parts.
+     * @throws IOException          If the database cannot be read or a file cannot be written.
+     * @throws InterruptedException If the dump is interrupted.
+     */
+    public static DumpFile dump(String host, int port, String user, String password, String database, String backupPath,
+                                CompressionCodec codec, int level, int threads, long chunkRows)
+            throws IOException, InterruptedException {
+        Date createdAt = new Date();
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(createdAt);
+        String stem = database + "_" + timestamp;
+        Path directory = Paths.get(backupPath);
+        String url = String.format("jdbc:mysql://%s:%d/%s?tinyInt1isBit=false&yearIsDateType=false"
+                + "&characterEncoding=UTF-8&useCursorFetch=false", host, port, database);
+
+        logger.info("Creating parallel dump for '{}@{}:{}' with {} connection(s) in: {}",
+                database, host, port, threads, directory.resolve(stem + DumpManifest.EXTENSION));
+
+        List<Connection> workers = new ArrayList<>();
+        List<DumpFile> parts = Collections.synchronizedList(new ArrayList<>());
+        boolean completed = false;
+        ExecutorService executor = null;
+        try {
+            String[] binlog = openSnapshot(url, user, password, Math.max(1, threads), workers);
+
+            // Schema first, on the first worker's snapshot
+            List<TableInfo> tables = listTables(workers.get(0), database);
+            List<DumpManifest.Entry> schemaEntries = new ArrayList<>();
+            writeSchema(workers.get(0), tables, directory, stem, codec, level, parts, schemaEntries);
+
+            DumpManifest.Entry triggerEntry = writeTriggers(workers.get(0), database, directory, stem, codec, level, parts);
+
+            ConcurrentLinkedQueue<DumpTask> tasks = new ConcurrentLinkedQueue<>(planTasks(workers.get(0), tables, chunkRows));
+            logger.info("Dumping {} table(s) of '{}' as {} file(s).", tables.size(), database, tasks.size());
+
+            Map<DumpTask, DumpManifest.Entry> dataEntries = Collections.synchronizedMap(new LinkedHashMap<>());
+            executor = Executors.newFixedThreadPool(workers.size());
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Connection connection : workers) {
+                futures.add(executor.submit(() -> {
+                    DumpTask task;
+                    while ((task = tasks.poll()) != null) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException("Dump interrupted.");
+                        }
+                        dataEntries.put(task, dumpTask(connection, task, directory, stem, codec, level, parts));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+                }
+            }
+
+            // Manifest: schema, then data in table and chunk order, then triggers
+            List<DumpManifest.Entry> entries = new ArrayList<>(schemaEntries);
+            dataEntries.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey(Comparator.comparing((DumpTask task) -> task.table.name)
+                            .thenComparingInt(task -> task.chunk)))
+                    .forEach(entry -> entries.add(entry.getValue()));
+            if (triggerEntry != null) {
+                entries.add(triggerEntry);
+            }
+            DumpManifest manifest = new DumpManifest(database, timestamp, codec.name().toLowerCase(),
+                    binlog != null ? binlog[0] : null, binlog != null ? Long.parseLong(binlog[1]) : 0, entries);
+            DumpFile manifestFile = writeManifest(directory, stem, manifest, createdAt.getTime(), parts);
+
+            completed = true;
+            logger.info("Parallel dump created successfully: {} ({} file(s), {} bytes)",
+                    manifestFile.getPath(), parts.size(), manifestFile.getSize());
+            return manifestFile;
+        } catch (SQLException e) {
+            throw new IOException("Parallel dump of " + database + " failed: " + e.getMessage(), e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Connection connection : workers) {
+                closeQuietly(connection);
+            }
+            if (!completed) {
+                deleteBackup(directory, stem);
+            }
+        }
+    }
+
+    /**
+     * Opens the worker connections on one consistent snapshot. A global read lock is held only
+     * while the transactions start; without the RELOAD privilege the lock is skipped, and only
+     * tables that are not written during the start-up are guaranteed to be consistent.
+     *
+     * @return Binary log file and position at the snapshot, or null if unavailable.
+     */
+    private static String[] openSnapshot(String url, String user, String password, int threads,
+                                         List<Connection> workers) throws SQLException {
+        String[] binlog = null;
+        try (Connection coordinator = DriverManager.getConnection(url, user, password);
+             Statement statement = coordinator.createStatement()) {
+            boolean locked = false;
+            try {
+                statement.execute("FLUSH TABLES WITH READ LOCK");
+                locked = true;
+            } catch (SQLException e) {
+                logger.warn("Could not take a global read lock ({}); worker snapshots may differ slightly.",
+                        e.getMessage());
+            }
+
+            for (int i = 0; i < threads; i++) {
+                Connection connection = DriverManager.getConnection(url, user, password);
+                workers.add(connection);
+                try (Statement worker = connection.createStatement()) {
+                    worker.execute("SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+                    worker.execute("SET SESSION time_zone = '+00:00'");
+                    worker.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+                }
+            }
+
+            try (ResultSet status = statement.executeQuery("SHOW MASTER STATUS")) {
+                if (status.next()) {
+                    binlog = new String[]{status.getString(1), status.getString(2)};
+                }
+            } catch (SQLException e) {
+                logger.debug("No binary log position available: {}", e.getMessage());
+            }
+
+            if (locked) {
+                statement.execute("UNLOCK TABLES");
+            }
+        }
+        return binlog;
+    }
+
+    private static List<TableInfo> listTables(Connection connection, String database) throws SQLException {
+        List<TableInfo> tables = new ArrayList<>();
+        Map<String, TableInfo> byName = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT TABLE_NAME, TABLE_TYPE, COALESCE(TABLE_ROWS, 0) FROM information_schema.TABLES "
+                        + "WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME")) {
+            statement.setString(1, database);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    TableInfo table = new TableInfo(rs.getString(1), "VIEW".equals(rs.getString(2)), rs.getLong(3));
+                    tables.add(table);
+                    byName.put(table.name, table);
+                }
+            }
+        }
+
+        // Generated columns are computed by the server and must not appear in an INSERT
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT TABLE_NAME, COLUMN_NAME, EXTRA FROM information_schema.COLUMNS "
+                        + "WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, ORDINAL_POSITION")) {
+            statement.setString(1, database);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    TableInfo table = byName.get(rs.getString(1));
+                    String extra = rs.getString(3);
+                    if (table != null && (extra == null || !GENERATED_COLUMN.matcher(extra).find())) {
+                        table.columns.add(rs.getString(2));
+                    }
+                }
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT k.TABLE_NAME, MIN(k.COLUMN_NAME), MIN(c.DATA_TYPE), COUNT(*) "
+                        + "FROM information_schema.KEY_COLUMN_USAGE k JOIN information_schema.COLUMNS c "
+                        + "ON c.TABLE_SCHEMA = k.TABLE_SCHEMA AND c.TABLE_NAME = k.TABLE_NAME AND c.COLUMN_NAME = k.COLUMN_NAME "
+                        + "WHERE k.TABLE_SCHEMA = ? AND k.CONSTRAINT_NAME = 'PRIMARY' GROUP BY k.TABLE_NAME")) {
+            statement.setString(1, database);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String type = rs.getString(3).toLowerCase();
+                    TableInfo table = byName.get(rs.getString(1));
+                    if (table != null && rs.getInt(4) == 1 && type.endsWith("int")) {
+                        table.integerKey = rs.getString(2);
+                    }
+                }
+            }
+        }
+        return tables;
+    }
+
+    private static void writeSchema(Connection connection, List<TableInfo> tables, Path directory, String stem,
+                                    CompressionCodec codec, int level, List<DumpFile> parts,
+                                    List<DumpManifest.Entry> entries) throws IOException, SQLException {
+        String fileName = stem + ".schema.sql" + codec.getExtension() + Encryption.extension();
+        try (DumpWriter writer = new DumpWriter(directory.resolve(fileName), codec, level)) {
+            writer.write("SET NAMES utf8mb4;\nSET FOREIGN_KEY_CHECKS=0;\n\n");
+            // Tables before views, since views may reference any table
+            for (TableInfo table : tables) {
+                if (!table.view) {
+                    writeCreate(connection, writer, "TABLE", table.name);
+                }
+            }
+            // Like mysqldump, a placeholder for every view first, so a view may select from any
+            // other view regardless of name order; each is replaced by the real view below
+            for (TableInfo table : tables) {
+                if (table.view && !table.columns.isEmpty()) {
+                    writer.write("DROP TABLE IF EXISTS " + quote(table.name) + ";\n");
+                    writer.write("DROP VIEW IF EXISTS " + quote(table.name) + ";\n");
+                    writer.write("CREATE VIEW " + quote(table.name) + " AS SELECT "
+                            + table.columns.stream().map(column -> "1 AS " + quote(column)).collect(Collectors.joining(", "))
+                            + ";\n\n");
+                }
+            }
+            for (TableInfo table : tables) {
+                if (table.view) {
+                    writeCreate(connection, writer, "VIEW", table.name);
+                }
+            }
+            writer.write("SET FOREIGN_KEY_CHECKS=1;\n");
+            DumpFile part = writer.finish();
+            parts.add(part);
+            entries.add(new DumpManifest.Entry(DumpManifest.Entry.SCHEMA, null, fileName, 0, part.getSize(), part.getChecksum()));
+        }
+    }
+
+    private static void writeCreate(Connection connection, DumpWriter writer, String type, String name)
+            throws IOException, SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SHOW CREATE " + type + " " + quote(name))) {
+            if (rs.next()) {
+                writer.write("DROP " + type + " IF EXISTS " + quote(name) + ";\n");
+                writer.write(rs.getString(2) + ";\n\n");
+            }
+        }
+    }
+
+    /**
+     * Writes the triggers of the database, as mysqldump would, with the SQL mode each was created
+     * under. They are restored after the data so they do not fire for the dumped rows.
+     *
+     * @return The manifest entry of the trigger file, or null if the database has no triggers.
+     */
+    private static DumpManifest.Entry writeTriggers(Connection connection, String database, Path directory, String stem,
+                                                    CompressionCodec codec, int level, List<DumpFile> parts)
+            throws IOException, SQLException {
+        List<String> triggers = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT TRIGGER_NAME FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = ? "
+                        + "ORDER BY EVENT_OBJECT_TABLE, ACTION_TIMING, EVENT_MANIPULATION, ACTION_ORDER")) {
+            statement.setString(1, database);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    triggers.add(rs.getString(1));
+                }
+            }
+        }
+        if (triggers.isEmpty()) {
+            return null;
+        }
+
+        String fileName = stem + ".triggers.sql" + codec.getExtension() + Encryption.extension();
+        try (DumpWriter writer = new DumpWriter(directory.resolve(fileName), codec, level)) {
+            writer.write("SET NAMES utf8mb4;\nSET @saved_sql_mode = @@sql_mode;\n\n");
+            for (String trigger : triggers) {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SHOW CREATE TRIGGER " + quote(trigger))) {
+                    if (rs.next()) {
+                        StringBuilder text = new StringBuilder("SET sql_mode = ");
+                        appendQuoted(text, rs.getString(2));
+                        // Trigger bodies may contain semicolons
+                        text.append(";\nDROP TRIGGER IF EXISTS ").append(quote(trigger)).append(";\n")
+                                .append("DELIMITER ;;\n").append(rs.getString(3)).append(";;\nDELIMITER ;\n\n");
+                        writer.write(text);
+                    }
+                }
+            }
+            writer.write("SET sql_mode = @saved_sql_mode;\n");
+            DumpFile part = writer.finish();
+            parts.add(part);
+            return new DumpManifest.Entry(DumpManifest.Entry.TRIGGERS, null, fileName, 0, part.getSize(), part.getChecksum());
+        }
+    }
+
+    private static List<DumpTask> planTasks(Connection connection, List<TableInfo> tables, long chunkRows)
+            throws SQLException {
+        return planTasks(tables, chunkRows, table -> keyRange(connection, table));
+    }
+
+    /**
+     * Splits each base table into one task, or into primary-key ranges if it is large and has
+     * a single integer key. Larger tasks come first so the slowest tables start early. The last
+     * range of a table has no upper bound.
+     *
+     * @param tables    Tables and views of the database.
+     * @param chunkRows Target rows per task; 0 or less dumps every table as one task.
+     * @param keyRanges Finds the lowest and highest key of a table.
+     * @return Tasks, largest first.
+     * @throws SQLException If a key range cannot be queried.
+     */
+    static List<DumpTask> planTasks(List<TableInfo> tables, long chunkRows, KeyRangeQuery keyRanges)
+            throws SQLException {
+        List<DumpTask> tasks = new ArrayList<>();
+        for (TableInfo table : tables) {
+            if (table.view) {
+                continue;
+            }
+            long chunks = chunkRows > 0 ? (table.estimatedRows + chunkRows - 1) / chunkRows : 1;
+            long[] range = chunks > 1 && table.integerKey != null ? keyRanges.find(table) : null;
+            if (range == null) {
+                tasks.add(new DumpTask(table, 0, null, null, table.estimatedRows));
+                continue;
+            }
+
+            // Unsigned arithmetic: the span of signed keys may not fit in a long
+            long min = range[0];
+            long max = range[1];
+            long step = Long.divideUnsigned(max - min, chunks) + 1;
+            int chunk = 0;
+            long lower = min;
+            while (true) {
+                boolean last = Long.compareUnsigned(max - lower, step) < 0;
+                tasks.add(new DumpTask(table, chunk++, lower, last ? null : lower + step, table.estimatedRows / chunks));
+                if (last) {
+                    break;
+                }
+                lower += step;
+            }
+        }
+        tasks.sort(Comparator.comparingLong((DumpTask task) -> task.estimatedRows).reversed());
+        return tasks;
+    }
+
+    /**
+     * @return The lowest and highest key of a table, or null if it is empty or its keys do not
+     *         fit in a long.
+     */
+    private static long[] keyRange(Connection connection, TableInfo table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MIN(" + quote(table.integerKey) + "), MAX("
+                     + quote(table.integerKey) + ") FROM " + quote(table.name))) {
+            rs.next();
+            try {
+                return new long[]{Long.parseLong(rs.getString(1)), Long.parseLong(rs.getString(2))};
+            } catch (NumberFormatException e) {
+                // Empty table, or unsigned keys beyond the range of a long
+                return null;
+            }
+        }
+    }
+
+    private static DumpManifest.Entry dumpTask(Connection connection, DumpTask task, Path directory, String stem,
+                                               CompressionCodec codec, int level, List<DumpFile> parts)
+            throws IOException, SQLException {
+        String fileName = String.format("%s.%s.%05d.sql%s%s", stem, encodeName(task.table.name), task.chunk,
+                codec.getExtension(), Encryption.extension());
+        String columns = task.table.columns.stream().map(ParallelDumper::quote).collect(Collectors.joining(", "));
+        String query = "SELECT " + columns + " FROM " + quote(task.table.name);
+        if (task.lower != null) {
+            String key = quote(task.table.integerKey);
+            query += " WHERE " + key + " >= " + task.lower;
+            if (task.upper != null) {
+                query += " AND " + key + " < " + task.upper;
+            }
+        }
+
+        long start = System.nanoTime();
+        long rows = 0;
+        try (DumpWriter writer = new DumpWriter(directory.resolve(fileName), codec, level);
+             Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Stream rows from the server instead of buffering the whole result set
+            statement.setFetchSize(FETCH_STREAMING);
+            writer.write("SET NAMES utf8mb4;\nSET TIME_ZONE='+00:00';\nSET FOREIGN_KEY_CHECKS=0;\nSET UNIQUE_CHECKS=0;\n");
+
+            try (ResultSet rs = statement.executeQuery(query)) {
+                ResultSetMetaData meta = rs.getMetaData();
+                String insert = "INSERT INTO " + quote(task.table.name) + " (" + columns + ") VALUES\n";
+                StringBuilder statementText = new StringBuilder();
+                while (rs.next()) {
+                    statementText.append(statementText.length() == 0 ? insert : ",\n");
+                    appendRow(statementText, rs, meta);
+                    rows++;
+                    if (statementText.length() >= MAX_STATEMENT_BYTES) {
+                        writer.write(statementText.append(";\n"));
+                        statementText.setLength(0);
+                    }
+                }
+                if (statementText.length() > 0) {
+                    writer.write(statementText.append(";\n"));
+                }
+            }
+            DumpFile part = writer.finish();
+            parts.add(part);
+            logger.debug("Dumped {} chunk {} ({} rows) in {} ms", task.table.name, task.chunk, rows,
+                    (System.nanoTime() - start) / 1_000_000);
+            return new DumpManifest.Entry(DumpManifest.Entry.DATA, task.table.name, fileName, rows, part.getSize(),
+                    part.getChecksum());
+        }
+    }
+
+    private static void appendRow(StringBuilder out, ResultSet rs, ResultSetMetaData meta) throws SQLException {
+        out.append('(');
+        for (int column = 1; column <= meta.getColumnCount(); column++) {
+            if (column > 1) {
+                out.append(',');
+            }
+            switch (meta.getColumnType(column)) {
+                case Types.BIT:
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                case Types.BLOB: {
+                    byte[] bytes = rs.getBytes(column);
+                    if (bytes == null) {
+                        out.append("NULL");
+                    } else if (bytes.length == 0) {
+                        out.append("''");
+                    } else {
+                        out.append("0x").append(HexFormat.of().formatHex(bytes));
+                    }
+                    break;
+                }
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE: {
+                    String value = rs.getString(column);
+                    out.append(value != null ? value : "NULL");
+                    break;
+                }
+                default: {
+                    String value = rs.getString(column);
+                    if (value == null) {
+                        out.append("NULL");
+                    } else {
+                        appendQuoted(out, value);
+                    }
+                }
+            }
+        }
+        out.append(')');
+    }
+
+    private static void appendQuoted(StringBuilder out, String value) {
+        out.append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\0': out.append("\\0"); break;
+                case '\'': out.append("\\'"); break;
+                case '"': out.append("\\\""); break;
+                case '\b': out.append("\\b"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                case 26: out.append("\\Z"); break;
+                case '\\': out.append("\\\\"); break;
+                default: out.append(c);
+            }
+        }
+        out.append('\'');
+    }
+
+    private static DumpFile writeManifest(Path directory, String stem, DumpManifest manifest, long createdAt,
+                                          List<DumpFile> parts) throws IOException {
+        Path manifestPath = directory.resolve(stem + DumpManifest.EXTENSION);
+        Path partPath = directory.resolve(stem + DumpManifest.EXTENSION + ".part");
+        ChecksumOutputStream out = new ChecksumOutputStream(Files.newOutputStream(partPath));
+        try (out) {
+            manifest.write(out);
+        }
+        Files.move(partPath, manifestPath, StandardCopyOption.ATOMIC_MOVE);
+
+        long total = Files.size(manifestPath) + parts.stream().mapToLong(DumpFile::getSize).sum();
+        return new DumpFile(manifestPath.toString(), total, out.getChecksums(), createdAt,
+                Collections.emptyMap(), parts);
+    }
+
+    /**
+     * Removes every file of a failed dump, finished or partial.
+     */
+    private static void deleteBackup(Path directory, String stem) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, stem + ".*")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not clean up failed dump {}: {}", stem, e.getMessage());
+        }
+    }
+
+    /**
+     * Makes a table name safe for file names, like MySQL does for its own data files.
+     */
+    static String encodeName(String name) {
+        StringBuilder encoded = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$') {
+                encoded.append(c);
+            } else {
+                encoded.append(String.format("@%04x", (int) c));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("Error while closing dump connection: {}", e.getMessage());
+        }
+    }
+
+    static class TableInfo {
+        final String name;
+        final boolean view;
+        final long estimatedRows;
+        // Columns in table order, without generated columns
+        final List<String> columns = new ArrayList<>();
+        String integerKey;
+
+        TableInfo(String name, boolean view, long estimatedRows) {
+            this.name = name;
+            this.view = view;
+            this.estimatedRows = estimatedRows;
+        }
+    }
+
+    static class DumpTask {
+        final TableInfo table;
+        final int chunk;
+        final Long lower;
+        final Long upper;
+        final long estimatedRows;
+
+        DumpTask(TableInfo table, int chunk, Long lower, Long upper, long estimatedRows) {
+            this.table = table;
+            this.chunk = chunk;
+            this.lower = lower;
+            this.upper = upper;
+            this.estimatedRows = estimatedRows;
+        }
+    }
+
+    /**
+     * Looks up the key range of a table that is split into chunks.
+     */
+    @FunctionalInterface
+    interface KeyRangeQuery {
+        /**
+         * @return The lowest and highest key, or null to dump the table as one task.
+         */
+        long[] find(TableInfo table) throws SQLException;
+    }
+
+    /**
+     * Writes one compressed dump file through a ".part" name, hashing what is written.
+     */
+    private static class DumpWriter implements AutoCloseable {
+        private final Path path;
+        private final Path partPath;
+        private final ChecksumOutputStream file;
+        private final Writer writer;
+        private boolean finished;
+
+        DumpWriter(Path path, CompressionCodec codec, int level) throws IOException {
+            this.path = path;
+            this.partPath = path.resolveSibling(path.getFileName() + ".part");
+            this.file = new ChecksumOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(partPath), BUFFER_SIZE));
+            this.writer = new BufferedWriter(new OutputStreamWriter(
+                    ParallelCompression.compress(codec, Encryption.encrypt(file), level), StandardCharsets.UTF_8),
+                    BUFFER_SIZE);
+        }
+
+        void write(CharSequence text) throws IOException {
+            writer.append(text);
+        }
+
+        DumpFile finish() throws IOException {
+            writer.close();
+            Files.move(partPath, path, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return new DumpFile(path.toString(), Files.size(path), file.getChecksums(),
+                    System.currentTimeMillis(), Collections.emptyMap());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                writer.close();
+                Files.deleteIfExists(partPath);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.damworks.backupsyncutility.backup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a process's stderr to completion, keeping only the first bytes for error reporting.
+ * Draining it concurrently means a chatty process can never block on a full pipe.
+ */
+public class StderrCollector implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(StderrCollector.class);
+    private static final int MAX_STDERR_BYTES = 8 * 1024;
+
+    private final InputStream stream;
+    private final StringBuilder captured = new StringBuilder();
+    private Thread thread;
+
+    StderrCollector(InputStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Starts draining the stderr of a process on a daemon thread.
+     *
+     * @param process    The process.
+     * @param threadName Name of the draining thread.
+     * @return The running collector.
+     */
+    public static StderrCollector start(Process process, String threadName) {
+        StderrCollector collector = new StderrCollector(process.getErrorStream());
+        collector.thread = new Thread(collector, threadName);
+        collector.thread.setDaemon(true);
+        collector.thread.start();
+        return collector;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[4096];
+        int read;
+        try (stream) {
+            while ((read = stream.read(buffer)) != -1) {
+                synchronized (captured) {
+                    if (captured.length() < MAX_STDERR_BYTES) {
+                        captured.append(new String(buffer, 0, Math.min(read, MAX_STDERR_BYTES - captured.length()),
+                                StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Stopped reading process stderr: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Waits until the process has closed its stderr.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    /**
+     * @return The captured output as " (text)", or an empty string if there was none.
+     */
+    public String describe() {
+        synchronized (captured) {
+            String text = captured.toString().trim();
+            return text.isEmpty() ? "" : " (" + text + ")";
+        }
+    }
+}
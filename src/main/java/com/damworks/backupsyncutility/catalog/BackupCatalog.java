@@ -0,0 +1,283 @@
+package com.damworks.backupsyncutility.catalog;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only record of every dump and every remote copy, kept in the state directory.
+ * <p>
+ * Rotation queries the catalog instead of listing remote folders, so it only talks to a
+ * destination to delete what it has to. Each change is one tab-separated line:
+ * <pre>
+ * DUMP       database  file  createdAt  size  sha256  codec
+ * COPY       destination  database  file  remoteName  remoteRef
+ * DELETE     destination  database  file        (destination "local" for the local file)
+ * RECONCILE  destination  database  timestamp
+ * </pre>
+ * The log is replayed and, once mostly obsolete, compacted on load.
+ */
+public class BackupCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(BackupCatalog.class);
+
+    /**
+     * Destination name used in DELETE records for the local dump file.
+     */
+    public static final String LOCAL = "local";
+    private static final String NONE = "-";
+
+    private static BackupCatalog shared;
+
+    private final Path logFile;
+    private final Map<String, CatalogEntry> entries = new LinkedHashMap<>();
+    // Last reconciliation by destination, then database
+    private final Map<String, Map<String, Long>> reconciledAt = new HashMap<>();
+    private BufferedWriter writer;
+
+    /**
+     * Loads the catalog, replaying its log.
+     *
+     * @param logFile The catalog log file.
+     * @throws IOException If the log exists but cannot be read or compacted.
+     */
+    public BackupCatalog(Path logFile) throws IOException {
+        this.logFile = logFile;
+        int lines = 0;
+        if (Files.exists(logFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    try {
+                        apply(line.split("\t"));
+                    } catch (RuntimeException e) {
+                        logger.warn("Ignoring malformed catalog line {}: {}", lines, line);
+                    }
+                }
+            }
+        }
+        if (lines > 2 * (countRecords() + 16)) {
+            compact();
+        }
+        logger.debug("Loaded catalog with {} backup(s) from {}", entries.size(), logFile);
+    }
+
+    /**
+     * @return The catalog in the configured state directory, loaded on first use.
+     */
+    public static synchronized BackupCatalog shared() {
+        if (shared == null) {
+            try {
+                shared = new BackupCatalog(Paths.get(AppConfig.getStatePath(), "catalog.log"));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot load backup catalog", e);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Records a new local dump.
+     */
+    public synchronized void recordDump(String database, String fileName, long createdAt, long size,
+                                        String checksum, String codec) throws IOException {
+        append("DUMP", database, fileName, Long.toString(createdAt), Long.toString(size), orNone(checksum), orNone(codec));
+    }
+
+    /**
+     * Records that a destination holds a copy of a backup.
+     *
+     * @param destination Destination name.
+     * @param database    Database name.
+     * @param fileName    Name of the dump file.
+     * @param remoteName  Name of the remote file (the dump, or its chunk manifest).
+     * @param remoteRef   Remote path or file ID, or null if unknown.
+     */
+    public synchronized void recordCopy(String destination, String database, String fileName, String remoteName,
+                                        String remoteRef) throws IOException {
+        append("COPY", destination, database, fileName, remoteName, orNone(remoteRef));
+    }
+
+    /**
+     * Records that a copy (or, for {@link #LOCAL}, the local file) of a backup is gone.
+     */
+    public synchronized void recordDelete(String destination, String database, String fileName) throws IOException {
+        append("DELETE", destination, database, fileName);
+    }
+
+    /**
+     * Records that the folder of a database on a destination was just compared against its
+     * remote listing.
+     */
+    public synchronized void recordReconciled(String destination, String database) throws IOException {
+        append("RECONCILE", destination, database, Long.toString(System.currentTimeMillis()));
+    }
+
+    /**
+     * @return Time of the last reconciliation of a database on a destination, or 0 if it never happened.
+     */
+    public synchronized long getReconciledAt(String destination, String database) {
+        return reconciledAt.getOrDefault(destination, Map.of()).getOrDefault(database, 0L);
+    }
+
+    /**
+     * @return The backups of a database that have a copy on the given destination.
+     */
+    public synchronized List<CatalogEntry> findCopies(String destination, String database) {
+        List<CatalogEntry> result = new ArrayList<>();
+        for (CatalogEntry entry : entries.values()) {
+            if (entry.getDatabase().equals(database) && entry.copies().containsKey(destination)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The catalog entry of a backup, or null if unknown.
+     */
+    public synchronized CatalogEntry get(String database, String fileName) {
+        return entries.get(key(database, fileName));
+    }
+
+    /**
+     * @return Names of all databases that have backups in the catalog.
+     */
+    public synchronized List<String> getDatabases() {
+        return entries.values().stream().map(CatalogEntry::getDatabase).distinct().toList();
+    }
+
+    /**
+     * Flushes and closes the log writer; later records reopen it.
+     */
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void append(String... fields) throws IOException {
+        apply(fields);
+        if (writer == null) {
+            Files.createDirectories(logFile.getParent());
+            writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        writer.write(String.join("\t", fields));
+        writer.newLine();
+        writer.flush();
+    }
+
+    private void apply(String[] fields) {
+        switch (fields[0]) {
+            case "DUMP":
+                entry(fields[1], fields[2]).setDump(Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                        fromNone(fields[5]), fromNone(fields[6]));
+                break;
+            case "COPY":
+                entry(fields[2], fields[3]).copies()
+                        .put(fields[1], new CatalogEntry.RemoteCopy(fields[4], fromNone(fields[5])));
+                break;
+            case "DELETE": {
+                CatalogEntry entry = entries.get(key(fields[2], fields[3]));
+                if (entry == null) {
+                    break;
+                }
+                if (LOCAL.equals(fields[1])) {
+                    entry.setLocal(false);
+                } else {
+                    entry.copies().remove(fields[1]);
+                }
+                if (entry.isEmpty()) {
+                    entries.remove(key(fields[2], fields[3]));
+                }
+                break;
+            }
+            case "RECONCILE":
+                // Records without a database covered a whole destination; its databases are reconciled again
+                if (fields.length > 3) {
+                    reconciledAt.computeIfAbsent(fields[1], destination -> new HashMap<>())
+                            .put(fields[2], Long.parseLong(fields[3]));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record " + fields[0]);
+        }
+    }
+
+    private CatalogEntry entry(String database, String fileName) {
+        return entries.computeIfAbsent(key(database, fileName), k -> new CatalogEntry(database, fileName));
+    }
+
+    private int countRecords() {
+        int records = reconciledAt.values().stream().mapToInt(Map::size).sum();
+        for (CatalogEntry entry : entries.values()) {
+            records += 1 + entry.copies().size();
+        }
+        return records;
+    }
+
+    /**
+     * Rewrites the log with one record per live fact.
+     */
+    private void compact() throws IOException {
+        Path temp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (CatalogEntry entry : entries.values()) {
+                List<String[]> records = new ArrayList<>();
+                records.add(new String[]{"DUMP", entry.getDatabase(), entry.getFileName(),
+                        Long.toString(entry.getCreatedAt()), Long.toString(entry.getSize()),
+                        orNone(entry.getChecksum()), orNone(entry.getCodec())});
+                for (Map.Entry<String, CatalogEntry.RemoteCopy> copy : entry.copies().entrySet()) {
+                    records.add(new String[]{"COPY", copy.getKey(), entry.getDatabase(), entry.getFileName(),
+                            copy.getValue().getRemoteName(), orNone(copy.getValue().getRemoteRef())});
+                }
+                if (!entry.isLocal()) {
+                    records.add(new String[]{"DELETE", LOCAL, entry.getDatabase(), entry.getFileName()});
+                }
+                for (String[] record : records) {
+                    out.write(String.join("\t", record));
+                    out.newLine();
+                }
+            }
+            for (Map.Entry<String, Map<String, Long>> destination : reconciledAt.entrySet()) {
+                for (Map.Entry<String, Long> reconciled : destination.getValue().entrySet()) {
+                    out.write(String.join("\t", "RECONCILE", destination.getKey(), reconciled.getKey(),
+                            Long.toString(reconciled.getValue())));
+                    out.newLine();
+                }
+            }
+        }
+        Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Compacted backup catalog to {} backup(s)", entries.size());
+    }
+
+    private static String key(String database, String fileName) {
+        return database + "/" + fileName;
+    }
+
+    private static String orNone(String value) {
+        return value != null ? value : NONE;
+    }
+
+    private static String fromNone(String value) {
+        return NONE.equals(value) ? null : value;
+    }
+}
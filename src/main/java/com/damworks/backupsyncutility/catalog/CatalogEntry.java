@@ -0,0 +1,121 @@
+package com.damworks.backupsyncutility.catalog;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What the catalog knows about one backup: the dump itself and its remote copies.
+ */
+public class CatalogEntry {
+    private final String database;
+    private final String fileName;
+    private long createdAt;
+    private long size = -1;
+    private String checksum;
+    private String codec;
+    private boolean local;
+    private final Map<String, RemoteCopy> copies = new LinkedHashMap<>();
+
+    CatalogEntry(String database, String fileName) {
+        this.database = database;
+        this.fileName = fileName;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return Time the dump was started in milliseconds since the epoch, or 0 if unknown.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return Size of the dump file in bytes, or -1 if unknown.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Hex SHA-256 of the dump file, or null if unknown.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return Name of the compression codec, or null if unknown.
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return True while the local dump file has not been rotated away.
+     */
+    public boolean isLocal() {
+        return local;
+    }
+
+    /**
+     * @return Remote copies keyed by destination name.
+     */
+    public Map<String, RemoteCopy> getCopies() {
+        return Collections.unmodifiableMap(copies);
+    }
+
+    void setDump(long createdAt, long size, String checksum, String codec) {
+        this.createdAt = createdAt;
+        this.size = size;
+        this.checksum = checksum;
+        this.codec = codec;
+        this.local = true;
+    }
+
+    void setLocal(boolean local) {
+        this.local = local;
+    }
+
+    Map<String, RemoteCopy> copies() {
+        return copies;
+    }
+
+    boolean isEmpty() {
+        return !local && copies.isEmpty();
+    }
+
+    /**
+     * A copy of a backup on one destination.
+     */
+    public static class RemoteCopy {
+        private final String remoteName;
+        private final String remoteRef;
+
+        RemoteCopy(String remoteName, String remoteRef) {
+            this.remoteName = remoteName;
+            this.remoteRef = remoteRef;
+        }
+
+        /**
+         * @return Name of the remote file (the dump, or its chunk manifest).
+         */
+        public String getRemoteName() {
+            return remoteName;
+        }
+
+        /**
+         * @return Remote path or file ID, or null if unknown.
+         */
+        public String getRemoteRef() {
+            return remoteRef;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.damworks.backupsyncutility.compress;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Output stream that compresses fixed-size blocks on an executor, in the manner of pigz and
+ * zstd -T, and writes them in order as one gzip or zstd stream.
+ * <p>
+ * Blocks are compressed independently, which costs a little ratio (each block starts without
+ * history) in exchange for using every core. At most {@code maxInFlight} blocks are pending,
+ * which bounds memory to about {@code maxInFlight x blockSize} and makes a writer that outpaces
+ * the cores wait.
+ */
+public class BlockCompressorOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final BlockFormat format;
+    private final int level;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+    private int filled;
+    private boolean written;
+    private boolean closed;
+
+    BlockCompressorOutputStream(OutputStream out, BlockFormat format, int level, int blockSize,
+                                ExecutorService executor, int maxInFlight) {
+        this.out = out;
+        this.format = format;
+        this.level = level;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        while (length > 0) {
+            int count = Math.min(length, block.length - filled);
+            System.arraycopy(bytes, offset, block, filled, count);
+            filled += count;
+            offset += count;
+            length -= count;
+            if (filled == block.length) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks that are already compressed. The block being filled stays buffered, so
+     * that flushing does not shrink blocks.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the last block, writes all pending blocks and closes the underlying stream.
+     * Empty input still produces one (empty) block, so the output is a valid stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (filled > 0 || !written) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(false);
+            }
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        while (pending.size() >= maxInFlight) {
+            writeNext();
+        }
+        byte[] content = block;
+        int length = filled;
+        pending.addLast(executor.submit(() -> format.compress(content, length, level)));
+        written = true;
+        block = closed ? null : new byte[block.length];
+        filled = 0;
+    }
+
+    private void writeNext() throws IOException {
+        Future<byte[]> future = pending.pollFirst();
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing.");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
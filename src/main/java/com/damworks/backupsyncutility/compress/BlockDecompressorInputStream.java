@@ -0,0 +1,130 @@
+package com.damworks.backupsyncutility.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Input stream that decompresses the blocks written by {@link BlockCompressorOutputStream} on
+ * an executor, reading up to {@code maxInFlight} blocks ahead, and yields them in order.
+ * <p>
+ * Input that does not start with a block header (a dump from before block compression, or a
+ * file recompressed by hand with a stock tool) is decompressed sequentially from that point on,
+ * so any valid gzip or zstd stream can be read.
+ */
+public class BlockDecompressorInputStream extends InputStream {
+    // Far above any configurable block size; a larger header means a corrupt stream
+    private static final int MAX_BLOCK_SIZE = 256 * 1024 * 1024;
+
+    private final InputStream in;
+    private final CompressionCodec codec;
+    private final BlockFormat format;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private InputStream sequential;
+    private boolean endOfBlocks;
+    private byte[] current = new byte[0];
+    private int position;
+
+    BlockDecompressorInputStream(InputStream in, CompressionCodec codec, BlockFormat format, ExecutorService executor,
+                                 int maxInFlight) {
+        this.in = in;
+        this.codec = codec;
+        this.format = format;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            fill();
+            Future<byte[]> future = pending.pollFirst();
+            if (future == null) {
+                return sequential != null ? sequential.read(buffer, offset, length) : -1;
+            }
+            current = await(future);
+            position = 0;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+        if (sequential != null) {
+            sequential.close();
+        } else {
+            in.close();
+        }
+    }
+
+    private void fill() throws IOException {
+        while (!endOfBlocks && pending.size() < maxInFlight) {
+            byte[] header = in.readNBytes(format.getHeaderSize());
+            if (header.length == 0) {
+                endOfBlocks = true;
+                return;
+            }
+            int[] sizes = header.length == format.getHeaderSize() ? format.parseHeader(header) : null;
+            if (sizes == null) {
+                // Not a block: hand the rest of the input, these bytes included, to a stock decoder
+                sequential = codec.decompress(new SequenceInputStream(new ByteArrayInputStream(header), in));
+                endOfBlocks = true;
+                return;
+            }
+            if (sizes[0] < 0 || sizes[0] > MAX_BLOCK_SIZE || sizes[1] < 0 || sizes[1] > MAX_BLOCK_SIZE) {
+                throw new IOException("Corrupt " + codec.name().toLowerCase() + " block header.");
+            }
+            byte[] rest = in.readNBytes(sizes[0]);
+            if (rest.length < sizes[0]) {
+                throw new EOFException("Compressed stream is truncated.");
+            }
+            int size = sizes[1];
+            pending.addLast(executor.submit(() -> format.decompress(rest, size)));
+        }
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+    }
+}
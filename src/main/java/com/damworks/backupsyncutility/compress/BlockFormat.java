@@ -0,0 +1,196 @@
+package com.damworks.backupsyncutility.compress;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Framing of independently compressed blocks within one standard stream. Each block starts with
+ * a fixed-size header that records the length of the rest of the block and its uncompressed
+ * size, so a reader can split the stream into blocks without decompressing it. Stock decoders
+ * ignore the header: gzip blocks are ordinary members whose header carries an extra field, and
+ * zstd blocks are ordinary frames preceded by a skippable frame.
+ */
+abstract class BlockFormat {
+    /**
+     * Gzip member with FLG.FEXTRA and a single "BS" subfield of 8 bytes:
+     * <pre>
+     * 1f 8b 08 04 | mtime (4) | xfl | os | xlen=12 | 'B' 'S' | len=8 | rest length (4) | size (4)
+     * </pre>
+     * followed by the raw deflate data and the usual CRC-32 and ISIZE trailer.
+     */
+    static final BlockFormat GZIP = new BlockFormat(24) {
+        private static final int OS_UNKNOWN = 255;
+        private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(6, true));
+        private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+        @Override
+        byte[] compress(byte[] data, int length, int level) {
+            Deflater deflater = deflaters.get();
+            deflater.reset();
+            deflater.setLevel(level);
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 3 + 64);
+            out.write(new byte[getHeaderSize()], 0, getHeaderSize());
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue()).putInt(length);
+            out.write(trailer.array(), 0, 8);
+
+            byte[] member = out.toByteArray();
+            ByteBuffer.wrap(member).order(ByteOrder.LITTLE_ENDIAN)
+                    .put((byte) 0x1f).put((byte) 0x8b).put((byte) 8).put((byte) 4)
+                    .putInt(0).put((byte) 0).put((byte) OS_UNKNOWN)
+                    .putShort((short) 12).put((byte) 'B').put((byte) 'S').putShort((short) 8)
+                    .putInt(member.length - getHeaderSize()).putInt(length);
+            return member;
+        }
+
+        @Override
+        int[] parseHeader(byte[] header) {
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if ((buffer.get(0) & 0xff) != 0x1f || (buffer.get(1) & 0xff) != 0x8b || buffer.get(2) != 8
+                    || buffer.get(3) != 4 || buffer.getShort(10) != 12 || buffer.get(12) != 'B'
+                    || buffer.get(13) != 'S' || buffer.getShort(14) != 8) {
+                return null;
+            }
+            return new int[]{buffer.getInt(16), buffer.getInt(20)};
+        }
+
+        @Override
+        byte[] decompress(byte[] rest, int size) throws IOException {
+            if (rest.length < 8) {
+                throw new IOException("Gzip block is truncated.");
+            }
+            Inflater inflater = inflaters.get();
+            inflater.reset();
+            inflater.setInput(rest, 0, rest.length - 8);
+            // One spare byte, so output beyond the recorded size is detected
+            byte[] content = new byte[size + 1];
+            int filled = 0;
+            try {
+                while (!inflater.finished()) {
+                    int count = inflater.inflate(content, filled, content.length - filled);
+                    filled += count;
+                    if (count == 0 && !inflater.finished()
+                            && (inflater.needsInput() || inflater.needsDictionary() || filled == content.length)) {
+                        throw new IOException("Gzip block is corrupt.");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Gzip block is corrupt: " + e.getMessage(), e);
+            }
+
+            ByteBuffer trailer = ByteBuffer.wrap(rest, rest.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, filled);
+            if (filled != size || trailer.getInt() != (int) crc.getValue() || trailer.getInt() != size) {
+                throw new IOException("Gzip block failed its CRC or size check.");
+            }
+            return Arrays.copyOf(content, size);
+        }
+    };
+
+    /**
+     * Skippable frame (magic 0x184D2A5B) with an 8-byte payload, then one zstd frame with a
+     * content checksum, so a corrupt block fails like a gzip block with a bad CRC:
+     * <pre>
+     * 5b 2a 4d 18 | 8 (4) | rest length (4) | size (4) | zstd frame
+     * </pre>
+     */
+    static final BlockFormat ZSTD = new BlockFormat(16) {
+        private static final int SKIPPABLE_MAGIC = 0x184D2A5B;
+        private final ThreadLocal<ZstdCompressCtx> compressors =
+                ThreadLocal.withInitial(() -> new ZstdCompressCtx().setChecksum(true));
+
+        @Override
+        byte[] compress(byte[] data, int length, int level) {
+            ZstdCompressCtx compressor = compressors.get();
+            compressor.setLevel(level);
+            byte[] block = new byte[getHeaderSize() + (int) Zstd.compressBound(length)];
+            int frameLength = compressor.compressByteArray(block, getHeaderSize(), block.length - getHeaderSize(),
+                    data, 0, length);
+            ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(SKIPPABLE_MAGIC).putInt(8).putInt(frameLength).putInt(length);
+            return Arrays.copyOf(block, getHeaderSize() + frameLength);
+        }
+
+        @Override
+        int[] parseHeader(byte[] header) {
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != SKIPPABLE_MAGIC || buffer.getInt(4) != 8) {
+                return null;
+            }
+            return new int[]{buffer.getInt(8), buffer.getInt(12)};
+        }
+
+        @Override
+        byte[] decompress(byte[] rest, int size) throws IOException {
+            try {
+                byte[] content = Zstd.decompress(rest, size);
+                if (content.length != size) {
+                    throw new IOException("Zstd block has " + content.length + " bytes, expected " + size);
+                }
+                return content;
+            } catch (RuntimeException e) {
+                throw new IOException("Zstd block is corrupt: " + e.getMessage(), e);
+            }
+        }
+    };
+
+    private final int headerSize;
+
+    private BlockFormat(int headerSize) {
+        this.headerSize = headerSize;
+    }
+
+    /**
+     * @return Length of the fixed header that starts each block.
+     */
+    int getHeaderSize() {
+        return headerSize;
+    }
+
+    /**
+     * Compresses one block.
+     *
+     * @param data   Buffer holding the content.
+     * @param length Length of the content, from offset 0.
+     * @param level  Compression level.
+     * @return The complete block, header included.
+     */
+    abstract byte[] compress(byte[] data, int length, int level);
+
+    /**
+     * @param header The first {@link #getHeaderSize()} bytes of a block.
+     * @return Length of the rest of the block and its uncompressed size, or null if the bytes
+     *         are not a block header (e.g., output of a stock compressor).
+     */
+    abstract int[] parseHeader(byte[] header);
+
+    /**
+     * Decompresses one block.
+     *
+     * @param rest The block after its header.
+     * @param size Uncompressed size recorded in the header.
+     * @return The content.
+     * @throws IOException If the block is corrupt.
+     */
+    abstract byte[] decompress(byte[] rest, int size) throws IOException;
+}
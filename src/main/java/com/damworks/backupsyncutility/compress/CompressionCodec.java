@@ -0,0 +1,166 @@
+package com.damworks.backupsyncutility.compress;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression codecs that can be applied to dump streams.
+ */
+public enum CompressionCodec {
+    NONE("", 0, null) {
+        @Override
+        public OutputStream compress(OutputStream out, int level) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+    GZIP(".gz", 6, BlockFormat.GZIP) {
+        @Override
+        public OutputStream compress(OutputStream out, int level) throws IOException {
+            return new LeveledGZIPOutputStream(out, level);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+    ZSTD(".zst", 3, BlockFormat.ZSTD) {
+        @Override
+        public OutputStream compress(OutputStream out, int level) throws IOException {
+            return new ZstdOutputStream(out, level).setChecksum(true);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    };
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+    private final int defaultLevel;
+    private final BlockFormat blockFormat;
+
+    CompressionCodec(String extension, int defaultLevel, BlockFormat blockFormat) {
+        this.extension = extension;
+        this.defaultLevel = defaultLevel;
+        this.blockFormat = blockFormat;
+    }
+
+    /**
+     * @return File name suffix appended after ".sql" (e.g., ".gz"), or an empty string.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    public int getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    /**
+     * Wraps the given stream so that everything written to it is compressed.
+     *
+     * @param out   Destination stream for the compressed bytes.
+     * @param level Codec-specific compression level.
+     * @return A stream that compresses into {@code out}; closing it closes {@code out}.
+     * @throws IOException If the compressor cannot be initialized.
+     */
+    public abstract OutputStream compress(OutputStream out, int level) throws IOException;
+
+    /**
+     * Wraps the given stream so that everything read from it is decompressed.
+     *
+     * @param in Source of compressed bytes.
+     * @return A stream yielding the decompressed bytes.
+     * @throws IOException If the stream header cannot be read.
+     */
+    public abstract InputStream decompress(InputStream in) throws IOException;
+
+    /**
+     * Wraps the given stream so that everything written to it is compressed in independent
+     * blocks on an executor. The result is still a single stream any gzip or zstd tool reads.
+     *
+     * @param out         Destination stream for the compressed bytes.
+     * @param level       Codec-specific compression level.
+     * @param blockSize   Uncompressed bytes per block.
+     * @param executor    Executor that compresses blocks; may be shared with other streams.
+     * @param maxInFlight Maximum number of blocks buffered or being compressed.
+     * @return A stream that compresses into {@code out}; closing it closes {@code out}.
+     */
+    public OutputStream compress(OutputStream out, int level, int blockSize, ExecutorService executor,
+                                 int maxInFlight) {
+        return blockFormat == null ? out
+                : new BlockCompressorOutputStream(out, blockFormat, level, blockSize, executor, maxInFlight);
+    }
+
+    /**
+     * Wraps the given stream so that everything read from it is decompressed, with blocks
+     * written by {@link #compress(OutputStream, int, int, ExecutorService, int)} decompressed
+     * on an executor. Streams written by stock tools are decompressed sequentially.
+     *
+     * @param in          Source of compressed bytes.
+     * @param executor    Executor that decompresses blocks; may be shared with other streams.
+     * @param maxInFlight Maximum number of blocks read ahead.
+     * @return A stream yielding the decompressed bytes.
+     */
+    public InputStream decompress(InputStream in, ExecutorService executor, int maxInFlight) {
+        return blockFormat == null ? in
+                : new BlockDecompressorInputStream(in, this, blockFormat, executor, maxInFlight);
+    }
+
+    /**
+     * Resolves a codec from its configuration name (none, gzip, zstd).
+     *
+     * @param name The codec name, case-insensitive; null or empty means none.
+     * @return The matching codec.
+     */
+    public static CompressionCodec fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return NONE;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown compression codec: " + name, e);
+        }
+    }
+
+    /**
+     * Resolves the codec from a dump file name by its extension.
+     *
+     * @param fileName The file name.
+     * @return The codec whose extension ends the name, or NONE.
+     */
+    public static CompressionCodec fromFileName(String fileName) {
+        for (CompressionCodec codec : values()) {
+            if (codec != NONE && fileName.endsWith(codec.extension)) {
+                return codec;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * GZIP output stream with a configurable deflate level.
+     */
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.damworks.backupsyncutility.compress;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Block-parallel compression of dump files, configured by {@code backup.compression.threads}
+ * and {@code backup.compression.block.size}. Blocks of all streams share one pool of that many
+ * threads; with a single thread dumps are compressed as one ordinary stream, as before.
+ */
+public final class ParallelCompression {
+    private static ExecutorService executor;
+
+    private ParallelCompression() {
+    }
+
+    /**
+     * Wraps a stream so that everything written to it is compressed with the given codec.
+     *
+     * @param codec Codec to compress with.
+     * @param out   Destination stream for the compressed bytes.
+     * @param level Codec-specific compression level.
+     * @return A stream that compresses into {@code out}; closing it closes {@code out}.
+     * @throws IOException If the compressor cannot be initialized.
+     */
+    public static OutputStream compress(CompressionCodec codec, OutputStream out, int level) throws IOException {
+        int threads = AppConfig.getCompressionThreads();
+        if (threads <= 1) {
+            return codec.compress(out, level);
+        }
+        return codec.compress(out, level, AppConfig.getCompressionBlockSize(), executor(), 2 * threads);
+    }
+
+    /**
+     * Wraps a stream of a dump file so that reading it yields the decompressed content. Blocks
+     * are always read by the block reader, even with a single thread, since it splits the
+     * stream at block boundaries itself rather than relying on the stock gzip reader to find
+     * the next member.
+     *
+     * @param codec Codec the stream was compressed with.
+     * @param in    Source of compressed bytes.
+     * @return A stream yielding the decompressed bytes.
+     */
+    public static InputStream decompress(CompressionCodec codec, InputStream in) {
+        return codec.decompress(in, executor(), 2 * Math.max(1, AppConfig.getCompressionThreads()));
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, AppConfig.getCompressionThreads()), runnable -> {
+                Thread thread = new Thread(runnable, "compress-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
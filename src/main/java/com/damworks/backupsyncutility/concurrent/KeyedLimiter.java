@@ -0,0 +1,94 @@
+package com.damworks.backupsyncutility.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.ToIntFunction;
+
+/**
+ * Caps the number of concurrent operations per key (e.g., per MySQL host).
+ */
+public class KeyedLimiter {
+    private final ToIntFunction<String> permitsPerKey;
+    private final Map<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    /**
+     * @param permitsPerKey Maximum number of concurrent operations allowed for a single key.
+     */
+    public KeyedLimiter(int permitsPerKey) {
+        if (permitsPerKey < 1) {
+            throw new IllegalArgumentException("permitsPerKey must be at least 1: " + permitsPerKey);
+        }
+        this.permitsPerKey = key -> permitsPerKey;
+    }
+
+    /**
+     * @param permitsPerKey Maximum number of concurrent operations allowed for each key; read
+     *                      once, when the key is first used.
+     */
+    public KeyedLimiter(ToIntFunction<String> permitsPerKey) {
+        this.permitsPerKey = permitsPerKey;
+    }
+
+    /**
+     * Blocks until a permit for the given key is available.
+     *
+     * @param key The key to acquire a permit for.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void acquire(String key) throws InterruptedException {
+        semaphoreFor(key).acquire();
+    }
+
+    /**
+     * Releases a permit previously acquired for the given key.
+     *
+     * @param key The key to release a permit for.
+     */
+    public void release(String key) {
+        semaphoreFor(key).release();
+    }
+
+    /**
+     * Blocks until a permit for each of the given keys is available. Keys are acquired in sorted
+     * order, so callers that each need several keys cannot deadlock one another.
+     *
+     * @param keys The keys to acquire a permit for.
+     * @throws InterruptedException If the thread is interrupted while waiting; no permit is then held.
+     */
+    public void acquireAll(Collection<String> keys) throws InterruptedException {
+        List<String> acquired = new ArrayList<>();
+        try {
+            for (String key : new TreeSet<>(keys)) {
+                acquire(key);
+                acquired.add(key);
+            }
+        } catch (InterruptedException e) {
+            releaseAll(acquired);
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the permits previously acquired with {@link #acquireAll(Collection)}.
+     *
+     * @param keys The keys to release a permit for.
+     */
+    public void releaseAll(Collection<String> keys) {
+        new TreeSet<>(keys).forEach(this::release);
+    }
+
+    private Semaphore semaphoreFor(String key) {
+        return semaphores.computeIfAbsent(key, k -> {
+            int permits = permitsPerKey.applyAsInt(k);
+            if (permits < 1) {
+                throw new IllegalArgumentException("Permits for " + k + " must be at least 1: " + permits);
+            }
+            return new Semaphore(permits, true);
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package com.damworks.backupsyncutility.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs tasks with a global cap and a cap per key (e.g., per MySQL host).
+ * <p>
+ * Unlike a pool whose workers block on a {@link KeyedLimiter}, tasks wait here until both caps
+ * allow them to run, so a key with many queued tasks never occupies workers that tasks of
+ * other keys could use. Keys take turns: each dispatch starts with the key that waited longest.
+ */
+public class KeyedScheduler {
+    private final Executor executor;
+    private final int maxRunning;
+    private final ToIntFunction<String> maxRunningPerKey;
+    // Keys in turn order; a key moves to the end whenever one of its tasks is dispatched
+    private final Map<String, Deque<FutureTask<?>>> queues = new LinkedHashMap<>();
+    private final Map<String, Integer> running = new HashMap<>();
+    private int runningTotal;
+
+    /**
+     * @param executor         Executor that runs the tasks; it must accept {@code maxRunning} tasks at once.
+     * @param maxRunning       Maximum number of tasks running at once.
+     * @param maxRunningPerKey Maximum number of tasks of a key running at once.
+     */
+    public KeyedScheduler(Executor executor, int maxRunning, ToIntFunction<String> maxRunningPerKey) {
+        if (maxRunning < 1) {
+            throw new IllegalArgumentException("maxRunning must be at least 1: " + maxRunning);
+        }
+        this.executor = executor;
+        this.maxRunning = maxRunning;
+        this.maxRunningPerKey = maxRunningPerKey;
+    }
+
+    /**
+     * Queues a task. It runs as soon as the global cap and the cap of its key allow.
+     *
+     * @param key  Key the task counts against.
+     * @param task The task.
+     * @return The result of the task; cancelled if the executor rejects it.
+     */
+    public <T> Future<T> submit(String key, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        synchronized (this) {
+            queues.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(future);
+        }
+        dispatch();
+        return future;
+    }
+
+    /**
+     * @return Number of tasks waiting to run.
+     */
+    public synchronized int getQueued() {
+        return queues.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    private void dispatch() {
+        List<Dispatch> ready = new ArrayList<>();
+        synchronized (this) {
+            while (runningTotal < maxRunning) {
+                String key = null;
+                for (Map.Entry<String, Deque<FutureTask<?>>> entry : queues.entrySet()) {
+                    if (running.getOrDefault(entry.getKey(), 0) < maxRunningPerKey.applyAsInt(entry.getKey())) {
+                        key = entry.getKey();
+                        break;
+                    }
+                }
+                if (key == null) {
+                    break;
+                }
+
+                Deque<FutureTask<?>> queue = queues.remove(key);
+                ready.add(new Dispatch(key, queue.pollFirst()));
+                if (!queue.isEmpty()) {
+                    queues.put(key, queue);
+                }
+                running.merge(key, 1, Integer::sum);
+                runningTotal++;
+            }
+        }
+
+        for (Dispatch dispatch : ready) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        dispatch.task.run();
+                    } finally {
+                        finished(dispatch.key);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The executor is shutting down: nothing queued will ever run
+                dispatch.task.cancel(false);
+                cancelQueued();
+                finished(dispatch.key);
+            }
+        }
+    }
+
+    private void finished(String key) {
+        synchronized (this) {
+            running.merge(key, -1, Integer::sum);
+            runningTotal--;
+        }
+        dispatch();
+    }
+
+    private synchronized void cancelQueued() {
+        queues.values().forEach(queue -> queue.forEach(task -> task.cancel(false)));
+        queues.clear();
+    }
+
+    private static class Dispatch {
+        final String key;
+        final FutureTask<?> task;
+
+        Dispatch(String key, FutureTask<?> task) {
+            this.key = key;
+            this.task = task;
+        }
+    }
+}
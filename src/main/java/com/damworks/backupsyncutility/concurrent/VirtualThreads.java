@@ -0,0 +1,34 @@
+package com.damworks.backupsyncutility.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors that run each task on a virtual thread when the JVM supports them
+ * (Java 21+), and on a new platform thread otherwise. The build targets Java 17, so the
+ * virtual-thread factory is looked up reflectively.
+ */
+public class VirtualThreads {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param name Name given to the platform threads of the fallback executor.
+     * @return An executor starting one thread per task; the caller must shut it down.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Virtual threads not available, using platform threads: {}", e.toString());
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> new Thread(runnable, name + "-" + counter.incrementAndGet()));
+    }
+}
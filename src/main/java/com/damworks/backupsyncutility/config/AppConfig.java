@@ -1,5 +1,11 @@
 package com.damworks.backupsyncutility.config;
 
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Objects;
 
 /**
@@ -27,15 +33,331 @@ public class AppConfig {
         return ConfigLoader.get("mysql.databases").split(",");
     }
 
+    /**
+     * @return Names of the MySQL hosts in {@code fleet.hosts}; empty if only mysql.host is backed up.
+     */
+    public static String[] getFleetHosts() {
+        String hosts = ConfigLoader.getOrDefault("fleet.hosts", "").trim();
+        return hosts.isEmpty() ? new String[0] : hosts.split("\\s*,\\s*");
+    }
+
+    public static String getFleetHostAddress(String host) {
+        return ConfigLoader.get("fleet.host." + host + ".address");
+    }
+
+    public static int getFleetHostPort(String host) {
+        return Integer.parseInt(ConfigLoader.getOrDefault("fleet.host." + host + ".port", "3306"));
+    }
+
+    /**
+     * @return User of a fleet host; mysql.user by default.
+     */
+    public static String getFleetHostUser(String host) {
+        return ConfigLoader.getOrDefault("fleet.host." + host + ".user", getDatabaseUser());
+    }
+
+    /**
+     * @return Password of a fleet host; mysql.password by default.
+     */
+    public static String getFleetHostPassword(String host) {
+        return ConfigLoader.getOrDefault("fleet.host." + host + ".password", getDatabasePassword());
+    }
+
+    /**
+     * @return Databases backed up on a fleet host, or null if none are configured.
+     */
+    public static String[] getFleetHostDatabases(String host) {
+        String databases = ConfigLoader.get("fleet.host." + host + ".databases");
+        return databases != null ? databases.trim().split("\\s*,\\s*") : null;
+    }
+
+    /**
+     * @return Concurrent dumps allowed against a fleet host; backup.dump.threads.per.host by default.
+     */
+    public static int getFleetHostDumpThreads(String host) {
+        String threads = ConfigLoader.get("fleet.host." + host + ".dump.threads");
+        return threads != null ? Integer.parseInt(threads) : getDumpThreadsPerHost();
+    }
+
     public static String getLocalBackupPath() {
         return ConfigLoader.getOrDefault("backup.local.path", "./backup");
     }
 
+    public static int getDumpThreads() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.dump.threads", "4"));
+    }
+
+    public static int getDumpThreadsPerHost() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.dump.threads.per.host", "2"));
+    }
+
+    /**
+     * @return True if databases are dumped with the built-in parallel engine instead of mysqldump.
+     */
+    public static boolean isParallelDumpEngine() {
+        return "parallel".equalsIgnoreCase(ConfigLoader.getOrDefault("backup.dump.engine", "mysqldump"));
+    }
+
+    public static int getParallelDumpConnections() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.dump.parallel.connections", "4"));
+    }
+
+    public static long getParallelDumpChunkRows() {
+        return Long.parseLong(ConfigLoader.getOrDefault("backup.dump.parallel.chunk.rows", "1000000"));
+    }
+
+    /**
+     * @return True if databases that did not change since their previous backup are not dumped again.
+     */
+    public static boolean isSkipUnchangedEnabled() {
+        return Boolean.parseBoolean(ConfigLoader.getOrDefault("backup.unchanged.skip", "false"));
+    }
+
+    /**
+     * @return When unchanged detection verifies tables with CHECKSUM TABLE: never, auto or always.
+     */
+    public static String getUnchangedChecksumMode() {
+        return ConfigLoader.getOrDefault("backup.unchanged.checksum", "auto");
+    }
+
+    /**
+     * @return Age in days after which an unchanged database is dumped anyway; 0 for no limit.
+     */
+    public static int getUnchangedMaxAgeDays() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.unchanged.max.age.days", "7"));
+    }
+
+    public static CompressionCodec getCompressionCodec() {
+        return CompressionCodec.fromName(ConfigLoader.get("backup.compression.codec"));
+    }
+
+    public static int getCompressionLevel() {
+        String level = ConfigLoader.get("backup.compression.level");
+        return level != null ? Integer.parseInt(level) : getCompressionCodec().getDefaultLevel();
+    }
+
+    /**
+     * @return Threads that compress and decompress dump blocks; one per core by default.
+     */
+    public static int getCompressionThreads() {
+        String threads = ConfigLoader.get("backup.compression.threads");
+        return threads != null ? Integer.parseInt(threads) : Runtime.getRuntime().availableProcessors();
+    }
+
+    public static int getCompressionBlockSize() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.compression.block.size", "1048576"));
+    }
+
+    public static boolean isPipelineEnabled() {
+        // Deduplicated backups are chunked from the finished file, so they are never streamed
+        return !isDedupEnabled() && Boolean.parseBoolean(ConfigLoader.getOrDefault("backup.pipeline.enabled", "false"));
+    }
+
+    public static int getPipelineBufferChunks() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.pipeline.buffer.chunks", "16"));
+    }
+
+    public static int getPipelineChunkSize() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.pipeline.chunk.size", "1048576"));
+    }
+
+    /**
+     * @return Files synchronized concurrently after the dumps.
+     */
+    public static int getUploadThreads() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.upload.threads", "1"));
+    }
+
+    /**
+     * @return Concurrent uploads allowed to each destination across all dumps and runs; 0 for no limit.
+     */
+    public static int getUploadThreadsPerDestination() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.upload.threads.per.destination", "0"));
+    }
+
+    public static boolean isRemoteVerifyEnabled() {
+        return Boolean.parseBoolean(ConfigLoader.getOrDefault("backup.verify.remote", "true"));
+    }
+
+    public static boolean isDedupEnabled() {
+        return Boolean.parseBoolean(ConfigLoader.getOrDefault("backup.dedup.enabled", "false"));
+    }
+
+    public static int getDedupChunkSize() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.dedup.chunk.avg", "1048576"));
+    }
+
+    public static boolean isEncryptionEnabled() {
+        return Boolean.parseBoolean(ConfigLoader.getOrDefault("backup.encryption.enabled", "false"));
+    }
+
+    /**
+     * @return The keyfile: a path as given, or else a resource next to config.properties.
+     */
+    public static Path getEncryptionKeyFile() {
+        String fileName = ConfigLoader.get("backup.encryption.keyfile");
+        if (fileName == null || fileName.isEmpty()) {
+            throw new IllegalArgumentException("backup.encryption.keyfile is not configured.");
+        }
+        Path path = Paths.get(fileName);
+        if (Files.exists(path)) {
+            return path;
+        }
+        URL resource = AppConfig.class.getClassLoader().getResource(fileName);
+        return resource != null ? Paths.get(resource.getFile()) : path;
+    }
+
+    public static int getEncryptionSegmentSize() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.encryption.segment.size", "1048576"));
+    }
+
+    /**
+     * @return Threads that encrypt and decrypt segments; one per core by default.
+     */
+    public static int getEncryptionThreads() {
+        String threads = ConfigLoader.get("backup.encryption.threads");
+        return threads != null ? Integer.parseInt(threads) : Runtime.getRuntime().availableProcessors();
+    }
+
+    public static int getCatalogReconcileDays() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.catalog.reconcile.days", "7"));
+    }
+
+    public static int getRestoreThreads() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.restore.threads", "4"));
+    }
+
+    public static int getRestoreDownloadStreams() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.restore.download.streams", "4"));
+    }
+
+    public static long getRestoreSegmentSize() {
+        return Long.parseLong(ConfigLoader.getOrDefault("backup.restore.segment.size", "16777216"));
+    }
+
+    /**
+     * @return Names of the jobs run by the daemon; empty if none are configured.
+     */
+    public static String[] getDaemonJobs() {
+        String jobs = ConfigLoader.getOrDefault("daemon.jobs", "").trim();
+        return jobs.isEmpty() ? new String[0] : jobs.split("\\s*,\\s*");
+    }
+
+    public static String getDaemonJobSchedule(String job) {
+        return ConfigLoader.get("daemon.job." + job + ".schedule");
+    }
+
+    /**
+     * @return Databases backed up by a daemon job, or null for all configured databases.
+     */
+    public static String[] getDaemonJobDatabases(String job) {
+        String databases = ConfigLoader.get("daemon.job." + job + ".databases");
+        return databases != null ? databases.split(",") : null;
+    }
+
+    public static int getDaemonShutdownGraceSeconds() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("daemon.shutdown.grace.seconds", "60"));
+    }
+
+    /**
+     * @return Attempts of a remote operation before it fails, including the first.
+     */
+    public static int getRetryAttempts() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.retry.attempts", "5"));
+    }
+
+    public static long getRetryBaseDelayMillis() {
+        return Long.parseLong(ConfigLoader.getOrDefault("backup.retry.base.delay.ms", "1000"));
+    }
+
+    public static long getRetryMaxDelayMillis() {
+        return Long.parseLong(ConfigLoader.getOrDefault("backup.retry.max.delay.ms", "60000"));
+    }
+
+    /**
+     * @return Global upload bandwidth schedule; empty if unlimited.
+     */
+    public static String getBandwidthLimit() {
+        return ConfigLoader.getOrDefault("backup.bandwidth.limit", "");
+    }
+
+    /**
+     * @return Upload bandwidth schedule of a destination type (e.g., "ftp"); empty if unlimited.
+     */
+    public static String getBandwidthLimit(String destinationType) {
+        return ConfigLoader.getOrDefault("backup.bandwidth.limit." + destinationType, "");
+    }
+
+    /**
+     * @return Prometheus textfile written after every run, or null if not configured.
+     */
+    public static String getMetricsTextfilePath() {
+        return ConfigLoader.get("metrics.textfile.path");
+    }
+
+    /**
+     * @return Port of the daemon's metrics endpoint; 0 disables it.
+     */
+    public static int getMetricsHttpPort() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("metrics.http.port", "0"));
+    }
+
+    public static String getMetricsHttpBindAddress() {
+        return ConfigLoader.getOrDefault("metrics.http.bind", "127.0.0.1");
+    }
+
+    public static boolean isMetricsJmxEnabled() {
+        return Boolean.parseBoolean(ConfigLoader.getOrDefault("metrics.jmx.enabled", "true"));
+    }
+
+    public static String getStatePath() {
+        return ConfigLoader.getOrDefault("backup.state.path", "./state");
+    }
+
     public static int getRemoteFileRetentionCount() {
         String value = ConfigLoader.get("backup.file.retention.count");
         return Integer.parseInt(value);
     }
 
+    public static int getRetentionLast() {
+        String value = ConfigLoader.get("backup.retention.last");
+        return value != null ? Integer.parseInt(value) : getRemoteFileRetentionCount();
+    }
+
+    public static int getRetentionDaily() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.retention.daily", "0"));
+    }
+
+    public static int getRetentionWeekly() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.retention.weekly", "0"));
+    }
+
+    public static int getRetentionMonthly() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.retention.monthly", "0"));
+    }
+
+    public static int getRetentionYearly() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("backup.retention.yearly", "0"));
+    }
+
+    // Destination selection
+    /**
+     * @return Destination types to use (e.g., "ftp", "gdrive", "nas"), or null to use every configured one.
+     */
+    public static String[] getDestinationTypes() {
+        String types = ConfigLoader.get("backup.destinations");
+        return types != null && !types.isBlank() ? types.trim().split("\\s*,\\s*") : null;
+    }
+
+    // NAS configuration
+    public static String getNASPath() {
+        return ConfigLoader.get("nas.path");
+    }
+
+    public static boolean isNASSyncEnabled() {
+        return Boolean.parseBoolean(ConfigLoader.getOrDefault("nas.sync", "true"));
+    }
+
     // FTP configuration
     public static String getFTPServer() {
         return ConfigLoader.get("ftp.server");
@@ -58,6 +380,14 @@ public class AppConfig {
         return ConfigLoader.get("ftp.remotePath");
     }
 
+    public static int getFTPPoolSize() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("ftp.pool.size", "4"));
+    }
+
+    public static int getFTPKeepAliveSeconds() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("ftp.keepalive.seconds", "60"));
+    }
+
     public static String getGoogleDriveCredentialsFile() {
         String fileName = ConfigLoader.get("google.service.account.key");
         if (fileName == null || fileName.isEmpty()) {
@@ -69,4 +399,8 @@ public class AppConfig {
     public static String getGoogleDriveFolderId() {
         return ConfigLoader.get("google.drive.folder.id");
     }
+
+    public static int getGoogleDriveChunkSize() {
+        return Integer.parseInt(ConfigLoader.getOrDefault("google.drive.chunk.size", "8388608"));
+    }
 }
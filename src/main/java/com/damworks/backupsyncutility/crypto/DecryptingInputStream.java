@@ -0,0 +1,135 @@
+package com.damworks.backupsyncutility.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Input stream that reads a {@link SegmentedContainer} sequentially and yields the plaintext.
+ * <p>
+ * Segments are read ahead and decrypted on an executor, up to {@code maxInFlight} at a time,
+ * so decryption of a large file uses several cores while the consumer reads in order. Every
+ * byte returned has been authenticated; a stream that ends early fails instead of ending.
+ */
+public class DecryptingInputStream extends InputStream {
+    private final InputStream in;
+    private final EncryptionKey key;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private SegmentedContainer container;
+    private byte[] held;
+    private long nextIndex;
+    private boolean endOfInput;
+    private byte[] current = new byte[0];
+    private int position;
+
+    /**
+     * @param in          Source of the container, positioned at its header.
+     * @param key         Master key.
+     * @param executor    Executor that decrypts segments; may be shared with other streams.
+     * @param maxInFlight Maximum number of segments read ahead of the consumer.
+     */
+    public DecryptingInputStream(InputStream in, EncryptionKey key, ExecutorService executor, int maxInFlight) {
+        this.in = in;
+        this.key = key;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (!nextSegment()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+        in.close();
+    }
+
+    private boolean nextSegment() throws IOException {
+        if (container == null) {
+            container = SegmentedContainer.open(key, readFully(SegmentedContainer.HEADER_SIZE, true));
+            held = readFully(container.getEncryptedSegmentSize(), false);
+        }
+        fill();
+        Future<byte[]> future = pending.pollFirst();
+        if (future == null) {
+            return false;
+        }
+        try {
+            current = future.get();
+            position = 0;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decrypting.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Submits segments until enough are in flight. A segment is only known to be the last one
+     * once the read after it hits the end of the input, so one segment is always held back.
+     */
+    private void fill() throws IOException {
+        while (!endOfInput && pending.size() < maxInFlight) {
+            byte[] next = held.length == container.getEncryptedSegmentSize()
+                    ? readFully(container.getEncryptedSegmentSize(), false)
+                    : new byte[0];
+            boolean last = next.length == 0;
+            if (held.length < SegmentedContainer.TAG_SIZE) {
+                throw new EOFException("Encrypted file is truncated.");
+            }
+            byte[] sealed = held;
+            long index = nextIndex++;
+            pending.addLast(executor.submit(() -> container.decrypt(index, last, sealed, 0, sealed.length)));
+            held = next;
+            endOfInput = last;
+        }
+    }
+
+    private byte[] readFully(int length, boolean required) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (required && bytes.length < length) {
+            throw new EOFException("Encrypted file is truncated.");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,131 @@
+package com.damworks.backupsyncutility.crypto;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Output stream that encrypts everything written to it into a {@link SegmentedContainer}.
+ * <p>
+ * Full segments are encrypted on an executor while the writer fills the next one, and written
+ * out in order. At most {@code maxInFlight} segments are pending, which bounds memory and makes
+ * a writer that outpaces the cores wait. A full segment is only submitted once more data
+ * arrives, since whether it is the last one is part of its nonce.
+ */
+public class EncryptingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final SegmentedContainer container;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] segment;
+    private int filled;
+    private long nextIndex;
+    private boolean headerWritten;
+    private boolean closed;
+
+    /**
+     * @param out         Destination of the container.
+     * @param container   New container, as returned by {@link SegmentedContainer#create}.
+     * @param executor    Executor that encrypts segments; may be shared with other streams.
+     * @param maxInFlight Maximum number of segments submitted but not yet written.
+     */
+    public EncryptingOutputStream(OutputStream out, SegmentedContainer container, ExecutorService executor,
+                                  int maxInFlight) {
+        this.out = out;
+        this.container = container;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.segment = new byte[container.getSegmentSize()];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        while (length > 0) {
+            if (filled == segment.length) {
+                submit(false);
+            }
+            int count = Math.min(length, segment.length - filled);
+            System.arraycopy(bytes, offset, segment, filled, count);
+            filled += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes the segments that are already encrypted. The segment being filled stays buffered.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Encrypts the final segment, writes all pending segments and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(false);
+            }
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        if (!headerWritten) {
+            out.write(container.getHeader());
+            headerWritten = true;
+        }
+        while (pending.size() >= maxInFlight) {
+            writeNext();
+        }
+        byte[] plain = segment;
+        int length = filled;
+        long index = nextIndex++;
+        pending.addLast(executor.submit(() -> container.encrypt(index, last, plain, 0, length)));
+        segment = last ? null : new byte[segment.length];
+        filled = 0;
+    }
+
+    private void writeNext() throws IOException {
+        Future<byte[]> future = pending.pollFirst();
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encrypting.");
+        } catch (ExecutionException e) {
+            throw new IOException("Encryption failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.damworks.backupsyncutility.crypto;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client-side encryption of backup files with the key from {@code backup.encryption.keyfile}.
+ * <p>
+ * Dumps are encrypted as they are written, after compression, so the local file, the streamed
+ * uploads and later synchronization all carry the same ciphertext and checksums. Encrypted
+ * files get the {@value #EXTENSION} suffix. Segments of all streams are encrypted and decrypted
+ * on one shared pool of {@code backup.encryption.threads} threads.
+ */
+public final class Encryption {
+    public static final String EXTENSION = ".enc";
+
+    private static EncryptionKey key;
+    private static ExecutorService executor;
+
+    private Encryption() {
+    }
+
+    /**
+     * @return True if new backups are encrypted.
+     */
+    public static boolean isEnabled() {
+        return AppConfig.isEncryptionEnabled();
+    }
+
+    /**
+     * @return Suffix that new backup files get: {@value #EXTENSION} if encryption is enabled,
+     *         otherwise an empty string.
+     */
+    public static String extension() {
+        return isEnabled() ? EXTENSION : "";
+    }
+
+    public static boolean isEncrypted(String fileName) {
+        return fileName.endsWith(EXTENSION);
+    }
+
+    /**
+     * @param fileName A backup file name.
+     * @return The name without the encryption suffix (e.g., "db_20240101_020000.sql.gz").
+     */
+    public static String stripExtension(String fileName) {
+        return isEncrypted(fileName) ? fileName.substring(0, fileName.length() - EXTENSION.length()) : fileName;
+    }
+
+    /**
+     * Wraps a stream so that everything written to it is encrypted, if encryption is enabled.
+     *
+     * @param out Destination of the encrypted bytes.
+     * @return An encrypting stream whose close writes the final segment and closes {@code out},
+     *         or {@code out} itself if encryption is disabled.
+     * @throws IOException If the keyfile cannot be read.
+     */
+    public static OutputStream encrypt(OutputStream out) throws IOException {
+        if (!isEnabled()) {
+            return out;
+        }
+        return new EncryptingOutputStream(out, SegmentedContainer.create(key(), AppConfig.getEncryptionSegmentSize()),
+                executor(), maxInFlight());
+    }
+
+    /**
+     * Wraps a stream of an encrypted file so that reading it yields the plaintext.
+     *
+     * @param in Source of the encrypted file.
+     * @return A decrypting stream.
+     * @throws IOException If the keyfile cannot be read.
+     */
+    public static InputStream decrypt(InputStream in) throws IOException {
+        return new DecryptingInputStream(in, key(), executor(), maxInFlight());
+    }
+
+    /**
+     * Encrypts a small object (e.g., a deduplicated chunk) on the calling thread.
+     *
+     * @param data The plaintext.
+     * @return The complete container.
+     * @throws IOException If the keyfile cannot be read.
+     */
+    public static byte[] encrypt(byte[] data) throws IOException {
+        SegmentedContainer container = SegmentedContainer.create(key(), AppConfig.getEncryptionSegmentSize());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length + SegmentedContainer.HEADER_SIZE
+                + SegmentedContainer.TAG_SIZE * (data.length / container.getSegmentSize() + 1));
+        buffer.write(container.getHeader());
+        long index = 0;
+        int offset = 0;
+        do {
+            int length = Math.min(container.getSegmentSize(), data.length - offset);
+            boolean last = offset + length == data.length;
+            buffer.write(container.encrypt(index++, last, data, offset, length));
+            offset += length;
+        } while (offset < data.length);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Decrypts a small object encrypted with {@link #encrypt(byte[])}.
+     *
+     * @param data The complete container.
+     * @return The plaintext.
+     * @throws IOException If the keyfile cannot be read or the object fails authentication.
+     */
+    public static byte[] decrypt(byte[] data) throws IOException {
+        if (data.length < SegmentedContainer.HEADER_SIZE) {
+            throw new IOException("Encrypted object is truncated (" + data.length + " bytes).");
+        }
+        SegmentedContainer container = SegmentedContainer.open(key(),
+                Arrays.copyOf(data, SegmentedContainer.HEADER_SIZE));
+        long count = container.segmentCount(data.length);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length);
+        for (long index = 0; index < count; index++) {
+            int offset = (int) container.segmentOffset(index);
+            int length = Math.min(container.getEncryptedSegmentSize(), data.length - offset);
+            buffer.write(container.decrypt(index, index == count - 1, data, offset, length));
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @return The master key, read from the keyfile on first use.
+     * @throws IOException If the keyfile is not configured or cannot be read.
+     */
+    public static synchronized EncryptionKey key() throws IOException {
+        if (key == null) {
+            key = EncryptionKey.load(AppConfig.getEncryptionKeyFile());
+        }
+        return key;
+    }
+
+    private static int maxInFlight() {
+        return 2 * AppConfig.getEncryptionThreads();
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, AppConfig.getEncryptionThreads()), runnable -> {
+                Thread thread = new Thread(runnable, "encrypt-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
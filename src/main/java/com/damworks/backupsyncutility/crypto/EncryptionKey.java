@@ -0,0 +1,129 @@
+package com.damworks.backupsyncutility.crypto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Set;
+
+/**
+ * Master key read from a local keyfile. The keyfile holds 32 random bytes, Base64-encoded on a
+ * single line (or as raw bytes). Every encrypted file uses its own key derived from the master
+ * key and a random salt, so the master key itself never encrypts data.
+ */
+public final class EncryptionKey {
+    private static final Logger logger = LoggerFactory.getLogger(EncryptionKey.class);
+
+    public static final int SIZE = 32;
+    private static final int ID_SIZE = 8;
+
+    private final byte[] key;
+    private final byte[] id;
+
+    private EncryptionKey(byte[] key) {
+        this.key = key;
+        this.id = Arrays.copyOf(derive("key-id", new byte[0]), ID_SIZE);
+    }
+
+    /**
+     * Reads a keyfile.
+     *
+     * @param file The keyfile.
+     * @return The master key.
+     * @throws IOException If the file cannot be read or does not hold a 256-bit key.
+     */
+    public static EncryptionKey load(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        byte[] key = content;
+        if (content.length != SIZE) {
+            try {
+                key = Base64.getDecoder().decode(new String(content, StandardCharsets.US_ASCII).trim());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Keyfile is neither Base64 nor " + SIZE + " raw bytes: " + file);
+            }
+        }
+        if (key.length != SIZE) {
+            throw new IOException("Keyfile must hold a " + SIZE * 8 + "-bit key, found " + key.length * 8
+                    + " bits: " + file);
+        }
+
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+            permissions.removeAll(Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+                    PosixFilePermission.OWNER_EXECUTE));
+            if (!permissions.isEmpty()) {
+                logger.warn("Keyfile {} is accessible to other users ({}); restrict it to its owner.",
+                        file, PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+            }
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system; nothing to check
+        }
+        return new EncryptionKey(key);
+    }
+
+    /**
+     * Writes a new random key to a keyfile that only its owner can read.
+     *
+     * @param file The keyfile to create; it must not exist yet.
+     * @return The new master key.
+     * @throws IOException If the file exists or cannot be written.
+     */
+    public static EncryptionKey generate(Path file) throws IOException {
+        if (Files.exists(file)) {
+            throw new FileAlreadyExistsException(file.toString(), null, "refusing to overwrite a keyfile");
+        }
+        byte[] key = new byte[SIZE];
+        new SecureRandom().nextBytes(key);
+
+        Files.createFile(file);
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            logger.warn("Cannot restrict the permissions of {}; protect it manually.", file);
+        }
+        Files.write(file, (Base64.getEncoder().encodeToString(key) + "\n").getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new EncryptionKey(key);
+    }
+
+    /**
+     * @return Short identifier of this key, stored in every container so a wrong keyfile is
+     *         reported as such rather than as corrupt data.
+     */
+    public byte[] getId() {
+        return id.clone();
+    }
+
+    /**
+     * Derives a value from the master key: HMAC-SHA256 over the label and the data. Distinct
+     * labels keep values derived for different purposes independent.
+     *
+     * @param label Purpose of the derived value (e.g., "segment-key").
+     * @param data  Input specific to the derived value.
+     * @return 32 bytes that cannot be computed without the master key.
+     */
+    public byte[] derive(String label, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            mac.update(label.getBytes(StandardCharsets.US_ASCII));
+            mac.update((byte) 0);
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
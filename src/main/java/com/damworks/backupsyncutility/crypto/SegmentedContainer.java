@@ -0,0 +1,234 @@
+package com.damworks.backupsyncutility.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Layout and cryptography of an encrypted file: a header followed by independently
+ * authenticated AES-256-GCM segments.
+ * <pre>
+ * header   magic "BSUE", version (1 byte), segment size (4 bytes), key id (8 bytes),
+ *          salt (16 bytes), nonce prefix (7 bytes)                      = 40 bytes
+ * segment  ciphertext of segment-size plaintext bytes, then a 16-byte tag
+ * ...
+ * last     ciphertext of 0 to segment-size bytes, then a 16-byte tag
+ * </pre>
+ * The file key is derived from the master key and the salt. Segment {@code i} uses the nonce
+ * {@code prefix || i || last}, where {@code last} is 1 only for the final segment, and the header
+ * as associated data. Reordered, truncated or extended files therefore fail authentication.
+ * <p>
+ * All segments but the last have the same size, so segment {@code i} starts at
+ * {@link #segmentOffset(long)} and any range of segments can be fetched and decrypted on its own.
+ */
+public final class SegmentedContainer {
+    public static final int HEADER_SIZE = 40;
+    public static final int TAG_SIZE = 16;
+
+    private static final byte[] MAGIC = {'B', 'S', 'U', 'E'};
+    private static final byte VERSION = 1;
+    private static final int KEY_ID_SIZE = 8;
+    private static final int SALT_SIZE = 16;
+    private static final int NONCE_PREFIX_SIZE = 7;
+    private static final int MIN_SEGMENT_SIZE = 4 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
+        }
+    });
+
+    private final byte[] header;
+    private final int segmentSize;
+    private final SecretKeySpec fileKey;
+    private final byte[] noncePrefix;
+
+    private SegmentedContainer(byte[] header, int segmentSize, SecretKeySpec fileKey, byte[] noncePrefix) {
+        this.header = header;
+        this.segmentSize = segmentSize;
+        this.fileKey = fileKey;
+        this.noncePrefix = noncePrefix;
+    }
+
+    /**
+     * Starts a new container with a fresh salt and nonce prefix.
+     *
+     * @param key         Master key.
+     * @param segmentSize Plaintext bytes per segment.
+     * @return The container; write {@link #getHeader()} before the segments.
+     */
+    public static SegmentedContainer create(EncryptionKey key, int segmentSize) {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Encryption segment size must be between " + MIN_SEGMENT_SIZE
+                    + " and " + MAX_SEGMENT_SIZE + " bytes: " + segmentSize);
+        }
+        byte[] salt = new byte[SALT_SIZE];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+        RANDOM.nextBytes(salt);
+        RANDOM.nextBytes(noncePrefix);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).put(VERSION).putInt(segmentSize).put(key.getId()).put(salt).put(noncePrefix);
+        return new SegmentedContainer(header.array(), segmentSize, fileKey(key, salt), noncePrefix);
+    }
+
+    /**
+     * Opens an existing container.
+     *
+     * @param key    Master key.
+     * @param header The first {@link #HEADER_SIZE} bytes of the file.
+     * @return The container.
+     * @throws IOException If the header is malformed or was written with another key.
+     */
+    public static SegmentedContainer open(EncryptionKey key, byte[] header) throws IOException {
+        if (header.length != HEADER_SIZE || !Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            throw new IOException("Not an encrypted backup file.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(header, MAGIC.length, HEADER_SIZE - MAGIC.length);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported encrypted file version: " + version);
+        }
+        int segmentSize = buffer.getInt();
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IOException("Invalid encryption segment size: " + segmentSize);
+        }
+        byte[] keyId = new byte[KEY_ID_SIZE];
+        byte[] salt = new byte[SALT_SIZE];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+        buffer.get(keyId).get(salt).get(noncePrefix);
+        if (!Arrays.equals(keyId, key.getId())) {
+            throw new IOException("File was encrypted with a different key than the configured keyfile.");
+        }
+        return new SegmentedContainer(header.clone(), segmentSize, fileKey(key, salt), noncePrefix);
+    }
+
+    public byte[] getHeader() {
+        return header.clone();
+    }
+
+    /**
+     * @return Plaintext bytes in every segment but the last.
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return Stored size of a full segment, including its tag.
+     */
+    public int getEncryptedSegmentSize() {
+        return segmentSize + TAG_SIZE;
+    }
+
+    /**
+     * @param index Segment index, starting at 0.
+     * @return Offset of the segment in the file.
+     */
+    public long segmentOffset(long index) {
+        return HEADER_SIZE + index * getEncryptedSegmentSize();
+    }
+
+    /**
+     * @param fileSize Size of the whole encrypted file.
+     * @return Number of segments in the file.
+     * @throws IOException If the size cannot be that of a complete file.
+     */
+    public long segmentCount(long fileSize) throws IOException {
+        long body = fileSize - HEADER_SIZE;
+        long count = (body + getEncryptedSegmentSize() - 1) / getEncryptedSegmentSize();
+        if (body < TAG_SIZE || body - (count - 1) * getEncryptedSegmentSize() < TAG_SIZE) {
+            throw new IOException("Encrypted file is truncated (" + fileSize + " bytes).");
+        }
+        return count;
+    }
+
+    /**
+     * Encrypts one segment.
+     *
+     * @param index  Segment index, starting at 0.
+     * @param last   True for the final segment of the file.
+     * @param plain  Buffer holding the plaintext.
+     * @param offset Offset of the plaintext in the buffer.
+     * @param length Plaintext length; exactly the segment size unless {@code last}.
+     * @return Ciphertext followed by the tag.
+     */
+    public byte[] encrypt(long index, boolean last, byte[] plain, int offset, int length) {
+        try {
+            Cipher cipher = init(Cipher.ENCRYPT_MODE, index, last);
+            return cipher.doFinal(plain, offset, length);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt segment " + index, e);
+        }
+    }
+
+    /**
+     * Decrypts and authenticates one segment.
+     *
+     * @param index  Segment index, starting at 0.
+     * @param last   True for the final segment of the file.
+     * @param sealed Buffer holding the ciphertext and tag.
+     * @param offset Offset of the segment in the buffer.
+     * @param length Length of the ciphertext and tag.
+     * @return The plaintext.
+     * @throws IOException If the segment fails authentication: corrupt, reordered or truncated data.
+     */
+    public byte[] decrypt(long index, boolean last, byte[] sealed, int offset, int length) throws IOException {
+        try {
+            Cipher cipher = init(Cipher.DECRYPT_MODE, index, last);
+            return cipher.doFinal(sealed, offset, length);
+        } catch (AEADBadTagException e) {
+            throw new IOException("Encrypted segment " + index + " failed authentication; the file is corrupt "
+                    + "or truncated.", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to decrypt segment " + index + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decrypts consecutive segments fetched as one range of the file, e.g. by a ranged download.
+     *
+     * @param first  Index of the first segment of the range.
+     * @param count  Number of segments in the whole file, as returned by {@link #segmentCount(long)}.
+     * @param sealed The range, starting at {@link #segmentOffset(long)} of {@code first} and ending at a
+     *               segment boundary or at the end of the file.
+     * @return The plaintext of the segments in the range.
+     * @throws IOException If a segment fails authentication.
+     */
+    public byte[] decryptRange(long first, long count, byte[] sealed) throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream(sealed.length);
+        long offset = segmentOffset(first);
+        for (long index = first; index < count && segmentOffset(index) - offset < sealed.length; index++) {
+            int start = (int) (segmentOffset(index) - offset);
+            int length = Math.min(getEncryptedSegmentSize(), sealed.length - start);
+            plain.writeBytes(decrypt(index, index == count - 1, sealed, start, length));
+        }
+        return plain.toByteArray();
+    }
+
+    private Cipher init(int mode, long index, boolean last) throws GeneralSecurityException {
+        if (index < 0 || index > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Too many segments in one file: " + index);
+        }
+        byte[] nonce = ByteBuffer.allocate(NONCE_PREFIX_SIZE + 5)
+                .put(noncePrefix).putInt((int) index).put((byte) (last ? 1 : 0)).array();
+        Cipher cipher = CIPHERS.get();
+        cipher.init(mode, fileKey, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+        cipher.updateAAD(header);
+        return cipher;
+    }
+
+    private static SecretKeySpec fileKey(EncryptionKey key, byte[] salt) {
+        return new SecretKeySpec(key.derive("segment-key", salt), "AES");
+    }
+}
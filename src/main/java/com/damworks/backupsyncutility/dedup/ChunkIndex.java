@@ -0,0 +1,108 @@
+package com.damworks.backupsyncutility.dedup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local record of the chunk objects a destination already stores, keyed by object name (the
+ * chunk hash plus the extensions of its codec and encryption), with their remote references.
+ * <p>
+ * Changes are appended to a log file ("+ name ref" / "- name"), which is compacted on load.
+ */
+public class ChunkIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkIndex.class);
+    private static final String NO_REF = "-";
+
+    private final Path indexFile;
+    private final Map<String, String> chunks = new HashMap<>();
+
+    /**
+     * Loads the index from disk, compacting its change log.
+     *
+     * @param indexFile The index file of one destination.
+     * @throws IOException If the file exists but cannot be read or compacted.
+     */
+    public ChunkIndex(Path indexFile) throws IOException {
+        this.indexFile = indexFile;
+        if (Files.exists(indexFile)) {
+            int lines = 0;
+            try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    String[] parts = line.split(" ");
+                    if (parts.length >= 2 && parts[0].equals("+")) {
+                        chunks.put(parts[1], parts.length > 2 ? parts[2] : NO_REF);
+                    } else if (parts.length >= 2 && parts[0].equals("-")) {
+                        chunks.remove(parts[1]);
+                    }
+                }
+            }
+            if (lines > chunks.size()) {
+                compact();
+            }
+            logger.debug("Loaded {} chunk(s) from {}", chunks.size(), indexFile);
+        }
+    }
+
+    public synchronized boolean contains(String objectName) {
+        return chunks.containsKey(objectName);
+    }
+
+    /**
+     * @return The remote reference of a stored chunk object, or null if unknown.
+     */
+    public synchronized String getRemoteRef(String objectName) {
+        String ref = chunks.get(objectName);
+        return NO_REF.equals(ref) ? null : ref;
+    }
+
+    public synchronized Set<String> objectNames() {
+        return Set.copyOf(chunks.keySet());
+    }
+
+    /**
+     * Records that a chunk object is now stored on the destination.
+     */
+    public synchronized void add(String objectName, String remoteRef) throws IOException {
+        chunks.put(objectName, remoteRef != null ? remoteRef : NO_REF);
+        append("+ " + objectName + " " + chunks.get(objectName));
+    }
+
+    /**
+     * Records that a chunk object was removed from the destination.
+     */
+    public synchronized void remove(String objectName) throws IOException {
+        if (chunks.remove(objectName) != null) {
+            append("- " + objectName);
+        }
+    }
+
+    private void append(String line) throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        Files.writeString(indexFile, line + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void compact() throws IOException {
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : chunks.entrySet()) {
+                writer.write("+ " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,183 @@
+package com.damworks.backupsyncutility.dedup;
+
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+import com.damworks.backupsyncutility.crypto.Encryption;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the chunks that make up one deduplicated backup, in order.
+ * <p>
+ * The manifest is a small text file named {@code <dump file>.chunks}:
+ * <pre>
+ * # backupsyncutility chunks v1
+ * file mydb_20240101_020000.sql.gz
+ * source-codec gzip
+ * chunk-codec gzip
+ * size 123456789
+ * 9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08 1048576
+ * ...
+ * </pre>
+ * Chunk hashes are SHA-256 over the uncompressed chunk content. Manifests of encrypted chunks
+ * add the line {@code chunk-encryption aes-256-gcm}; their hashes are keyed (see
+ * {@link DedupStore}), so they cannot be used to confirm guesses about the content.
+ */
+public class ChunkManifest {
+    public static final String EXTENSION = ".chunks";
+    private static final String HEADER = "# backupsyncutility chunks v1";
+    private static final String ENCRYPTION = "aes-256-gcm";
+
+    private final String fileName;
+    private final CompressionCodec sourceCodec;
+    private final CompressionCodec chunkCodec;
+    private final boolean encrypted;
+    private final List<Entry> entries;
+
+    public ChunkManifest(String fileName, CompressionCodec sourceCodec, CompressionCodec chunkCodec, boolean encrypted,
+                         List<Entry> entries) {
+        this.fileName = fileName;
+        this.sourceCodec = sourceCodec;
+        this.chunkCodec = chunkCodec;
+        this.encrypted = encrypted;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * @return Name of the dump file this manifest describes.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return Codec of the original dump file; restoring recompresses the content with it.
+     */
+    public CompressionCodec getSourceCodec() {
+        return sourceCodec;
+    }
+
+    /**
+     * @return Codec applied to each stored chunk object.
+     */
+    public CompressionCodec getChunkCodec() {
+        return chunkCodec;
+    }
+
+    /**
+     * @return True if each chunk object is encrypted after compression.
+     */
+    public boolean isEncrypted() {
+        return encrypted;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return Total uncompressed size of the content.
+     */
+    public long getSize() {
+        return entries.stream().mapToLong(Entry::getLength).sum();
+    }
+
+    /**
+     * @param hash Chunk hash.
+     * @return Name of the remote object that stores the chunk.
+     */
+    public String chunkObjectName(String hash) {
+        return hash + chunkCodec.getExtension() + (encrypted ? Encryption.EXTENSION : "");
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write(HEADER + "\n");
+        writer.write("file " + fileName + "\n");
+        writer.write("source-codec " + sourceCodec.name().toLowerCase() + "\n");
+        writer.write("chunk-codec " + chunkCodec.name().toLowerCase() + "\n");
+        if (encrypted) {
+            writer.write("chunk-encryption " + ENCRYPTION + "\n");
+        }
+        writer.write("size " + getSize() + "\n");
+        for (Entry entry : entries) {
+            writer.write(entry.getHash() + " " + entry.getLength() + "\n");
+        }
+        writer.flush();
+    }
+
+    public static ChunkManifest read(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        if (!HEADER.equals(reader.readLine())) {
+            throw new IOException("Not a chunk manifest.");
+        }
+
+        String fileName = null;
+        CompressionCodec sourceCodec = CompressionCodec.NONE;
+        CompressionCodec chunkCodec = CompressionCodec.NONE;
+        boolean encrypted = false;
+        List<Entry> entries = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] parts = line.split(" ", 2);
+            if (parts.length != 2) {
+                throw new IOException("Malformed manifest line: " + line);
+            }
+            switch (parts[0]) {
+                case "file":
+                    fileName = parts[1];
+                    break;
+                case "source-codec":
+                    sourceCodec = CompressionCodec.fromName(parts[1]);
+                    break;
+                case "chunk-codec":
+                    chunkCodec = CompressionCodec.fromName(parts[1]);
+                    break;
+                case "chunk-encryption":
+                    if (!ENCRYPTION.equals(parts[1])) {
+                        throw new IOException("Unsupported chunk encryption: " + parts[1]);
+                    }
+                    encrypted = true;
+                    break;
+                case "size":
+                    break;
+                default:
+                    entries.add(new Entry(parts[0], Integer.parseInt(parts[1])));
+            }
+        }
+        return new ChunkManifest(fileName, sourceCodec, chunkCodec, encrypted, entries);
+    }
+
+    /**
+     * A chunk reference: content hash and uncompressed length.
+     */
+    public static class Entry {
+        private final String hash;
+        private final int length;
+
+        public Entry(String hash, int length) {
+            this.hash = hash;
+            this.length = length;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+}
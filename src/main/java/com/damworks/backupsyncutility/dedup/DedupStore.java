@@ -0,0 +1,315 @@
+package com.damworks.backupsyncutility.dedup;
+
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+import com.damworks.backupsyncutility.compress.ParallelCompression;
+import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.crypto.Encryption;
+import com.damworks.backupsyncutility.sync.Destination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Stores dumps on destinations as content-addressed chunks plus one manifest per backup.
+ * <p>
+ * Chunks are cut from the uncompressed SQL (compressed streams cannot be deduplicated),
+ * then compressed one by one with the configured codec and uploaded to the
+ * {@value #CHUNKS_FOLDER} folder as {@code <sha256><ext>}. Each destination has a local
+ * {@link ChunkIndex} of the objects it stores, so a chunk is only uploaded to destinations that
+ * do not have it yet under the current codec. With encryption enabled, chunks are encrypted
+ * after compression and stored as {@code <hmac><ext>.enc}, named by an HMAC under the
+ * encryption key instead of a plain hash.
+ * The manifests of the backups still retained are kept locally and decide which chunk objects
+ * {@link #collectGarbage(Collection)} may delete.
+ */
+public class DedupStore {
+    private static final Logger logger = LoggerFactory.getLogger(DedupStore.class);
+
+    /**
+     * Remote folder (next to the database folders) that holds the chunk objects.
+     */
+    public static final String CHUNKS_FOLDER = "_chunks";
+
+    private final Path stateDirectory;
+    private final int avgChunkSize;
+    private final CompressionCodec chunkCodec;
+    private final int chunkLevel;
+    private final boolean encrypted;
+    private final Map<String, ChunkIndex> indexes = new HashMap<>();
+
+    /**
+     * @param stateDirectory Directory for chunk indexes and manifests.
+     * @param avgChunkSize   Target average chunk size in bytes.
+     * @param chunkCodec     Codec applied to each chunk object.
+     * @param chunkLevel     Compression level of the chunk codec.
+     * @param encrypted      True to encrypt chunk objects with the configured key.
+     */
+    public DedupStore(Path stateDirectory, int avgChunkSize, CompressionCodec chunkCodec, int chunkLevel,
+                      boolean encrypted) {
+        this.stateDirectory = stateDirectory;
+        this.avgChunkSize = avgChunkSize;
+        this.chunkCodec = chunkCodec;
+        this.chunkLevel = chunkLevel;
+        this.encrypted = encrypted;
+    }
+
+    /**
+     * @return A store configured from the application settings.
+     */
+    public static DedupStore fromConfig() {
+        return new DedupStore(Paths.get(AppConfig.getStatePath(), "dedup"), AppConfig.getDedupChunkSize(),
+                AppConfig.getCompressionCodec(), AppConfig.getCompressionLevel(), AppConfig.isEncryptionEnabled());
+    }
+
+    /**
+     * Chunks a local dump file, uploads the chunks each destination is missing, then uploads
+     * the manifest to the database folder. A destination that fails only loses this file.
+     *
+     * @param dumpFile     Local dump file; its parent directory names the database.
+     * @param destinations Destinations to store the backup on.
+     * @return Remote references of the uploaded manifests, keyed by the name of the destination
+     *         that stored the complete backup.
+     * @throws IOException If the dump file cannot be read.
+     */
+    public Map<String, String> store(Path dumpFile, Collection<Destination> destinations) throws IOException {
+        String database = dumpFile.getParent().getFileName().toString();
+        String fileName = dumpFile.getFileName().toString();
+        CompressionCodec sourceCodec = CompressionCodec.fromFileName(Encryption.stripExtension(fileName));
+
+        Set<Destination> active = new LinkedHashSet<>(destinations);
+        List<ChunkManifest.Entry> entries = new ArrayList<>();
+        long uploadedBytes = 0;
+        long totalBytes = 0;
+
+        InputStream fileStream = new BufferedInputStream(Files.newInputStream(dumpFile));
+        if (Encryption.isEncrypted(fileName)) {
+            fileStream = Encryption.decrypt(fileStream);
+        }
+        try (InputStream inputStream = ParallelCompression.decompress(sourceCodec, fileStream)) {
+            FastCdcChunker chunker = new FastCdcChunker(inputStream, avgChunkSize);
+            byte[] chunk;
+            while ((chunk = chunker.next()) != null) {
+                String hash = encrypted ? hex(Encryption.key().derive("chunk-id", chunk)) : sha256(chunk);
+                entries.add(new ChunkManifest.Entry(hash, chunk.length));
+                totalBytes += chunk.length;
+
+                String objectName = objectName(hash);
+                byte[] object = null;
+                for (Destination destination : new ArrayList<>(active)) {
+                    ChunkIndex index = indexFor(destination);
+                    if (index.contains(objectName)) {
+                        continue;
+                    }
+                    if (object == null) {
+                        object = encrypted ? Encryption.encrypt(compress(chunk)) : compress(chunk);
+                    }
+                    try {
+                        String ref = destination.upload(new ByteArrayInputStream(object), CHUNKS_FOLDER, objectName);
+                        index.add(objectName, ref);
+                        uploadedBytes += object.length;
+                    } catch (IOException e) {
+                        logger.error("Failed to upload chunk {} of {} to {}: {}",
+                                hash, fileName, destination.getName(), e.getMessage());
+                        active.remove(destination);
+                    }
+                }
+            }
+        }
+
+        ChunkManifest manifest = new ChunkManifest(fileName, sourceCodec, chunkCodec, encrypted, entries);
+        Path manifestFile = writeManifest(database, manifest);
+
+        Map<String, String> stored = new LinkedHashMap<>();
+        for (Destination destination : active) {
+            try (InputStream inputStream = Files.newInputStream(manifestFile)) {
+                stored.put(destination.getName(),
+                        destination.upload(inputStream, database, fileName + ChunkManifest.EXTENSION));
+            } catch (IOException e) {
+                logger.error("Failed to upload manifest of {} to {}: {}", fileName, destination.getName(), e.getMessage());
+            }
+        }
+
+        logger.info("Deduplicated {}: {} chunk(s), {} bytes of content, {} bytes uploaded",
+                fileName, entries.size(), totalBytes, uploadedBytes);
+        return stored;
+    }
+
+    /**
+     * Deletes the local manifests of backups of a database that are no longer retained.
+     *
+     * @param database Database name.
+     * @param isKept   Tells whether the dump file with the given name is kept.
+     * @throws IOException If the manifest directory cannot be read.
+     */
+    public void retainManifests(String database, Predicate<String> isKept) throws IOException {
+        Path directory = manifestDirectory(database);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> manifests = Files.newDirectoryStream(directory, "*" + ChunkManifest.EXTENSION)) {
+            for (Path manifest : manifests) {
+                String name = manifest.getFileName().toString();
+                if (!isKept.test(name.substring(0, name.length() - ChunkManifest.EXTENSION.length()))) {
+                    Files.delete(manifest);
+                    logger.info("Released manifest of rotated backup: {}/{}", database, name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes every chunk object that no retained manifest references any more. References
+     * are rebuilt from the local manifests, each naming its objects with the codec it was
+     * stored with, so an interrupted run is simply repeated.
+     *
+     * @param destinations Destinations to collect garbage on.
+     * @throws IOException If the local manifests cannot be read.
+     */
+    public void collectGarbage(Collection<Destination> destinations) throws IOException {
+        Set<String> referenced = referencedObjects();
+
+        for (Destination destination : destinations) {
+            ChunkIndex index = indexFor(destination);
+            int deleted = 0;
+            for (String objectName : index.objectNames()) {
+                if (referenced.contains(objectName)) {
+                    continue;
+                }
+                try {
+                    destination.delete(CHUNKS_FOLDER, objectName, index.getRemoteRef(objectName));
+                    index.remove(objectName);
+                    deleted++;
+                } catch (IOException e) {
+                    logger.warn("Failed to delete chunk {} from {}: {}",
+                            objectName, destination.getName(), e.getMessage());
+                }
+            }
+            logger.info("Chunk garbage collection on {}: {} chunk(s) deleted, {} still referenced",
+                    destination.getName(), deleted, index.objectNames().size());
+        }
+    }
+
+    private Set<String> referencedObjects() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        Path manifestsRoot = stateDirectory.resolve("manifests");
+        if (!Files.isDirectory(manifestsRoot)) {
+            return referenced;
+        }
+        try (DirectoryStream<Path> databases = Files.newDirectoryStream(manifestsRoot, Files::isDirectory)) {
+            for (Path database : databases) {
+                try (DirectoryStream<Path> manifests = Files.newDirectoryStream(database, "*" + ChunkManifest.EXTENSION)) {
+                    for (Path manifestFile : manifests) {
+                        try (InputStream inputStream = Files.newInputStream(manifestFile)) {
+                            ChunkManifest manifest = ChunkManifest.read(inputStream);
+                            for (ChunkManifest.Entry entry : manifest.getEntries()) {
+                                referenced.add(manifest.chunkObjectName(entry.getHash()));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return referenced;
+    }
+
+    private Path writeManifest(String database, ChunkManifest manifest) throws IOException {
+        Path directory = manifestDirectory(database);
+        Files.createDirectories(directory);
+        Path manifestFile = directory.resolve(manifest.getFileName() + ChunkManifest.EXTENSION);
+        Path temp = directory.resolve(manifestFile.getFileName() + ".part");
+        try (OutputStream outputStream = Files.newOutputStream(temp)) {
+            manifest.write(outputStream);
+        }
+        Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return manifestFile;
+    }
+
+    private Path manifestDirectory(String database) {
+        return stateDirectory.resolve("manifests").resolve(database);
+    }
+
+    private synchronized ChunkIndex indexFor(Destination destination) throws IOException {
+        ChunkIndex index = indexes.get(destination.getName());
+        if (index == null) {
+            String prefix = destination.getName().toLowerCase();
+            index = new ChunkIndex(stateDirectory.resolve(prefix + ".objects.index"));
+            migrateHashIndex(index, stateDirectory.resolve(prefix + ".index"), false);
+            migrateHashIndex(index, stateDirectory.resolve(prefix + ".encrypted.index"), true);
+            indexes.put(destination.getName(), index);
+        }
+        return index;
+    }
+
+    /**
+     * Moves the entries of an index that was keyed by chunk hash alone into the object index.
+     * Their objects were named with the codec configured at the time, assumed to be the
+     * current one as the hash index itself did.
+     */
+    private void migrateHashIndex(ChunkIndex index, Path hashIndexFile, boolean encryptedChunks) throws IOException {
+        if (!Files.exists(hashIndexFile)) {
+            return;
+        }
+        ChunkIndex hashIndex = new ChunkIndex(hashIndexFile);
+        for (String hash : hashIndex.objectNames()) {
+            index.add(objectName(hash, encryptedChunks), hashIndex.getRemoteRef(hash));
+        }
+        Files.delete(hashIndexFile);
+        logger.info("Migrated {} chunk(s) from {} to the object index", hashIndex.objectNames().size(),
+                hashIndexFile.getFileName());
+    }
+
+    private String objectName(String hash) {
+        return objectName(hash, encrypted);
+    }
+
+    private String objectName(String hash, boolean encryptedChunk) {
+        return hash + chunkCodec.getExtension() + (encryptedChunk ? Encryption.EXTENSION : "");
+    }
+
+    private byte[] compress(byte[] chunk) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(chunk.length / 2);
+        try (OutputStream outputStream = chunkCodec.compress(buffer, chunkLevel)) {
+            outputStream.write(chunk);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.damworks.backupsyncutility.dedup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Splits a stream into content-defined chunks with the FastCDC rolling gear hash.
+ * <p>
+ * Cut points depend only on the bytes around them, so an insertion early in a dump only
+ * changes the chunks next to it; everything else produces identical chunks from run to run.
+ * Normalized chunking (a stricter mask before the average size, a looser one after it) keeps
+ * chunk sizes close to the average.
+ */
+public class FastCdcChunker {
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: the table must be identical in every run, or no chunk would ever repeat
+        SplittableRandom random = new SplittableRandom(0x5EEDC0DEL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream inputStream;
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskSmall;
+    private final long maskLarge;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+
+    /**
+     * @param inputStream Stream to split.
+     * @param avgSize     Target average chunk size in bytes; minimum and maximum are a quarter and eight times that.
+     */
+    public FastCdcChunker(InputStream inputStream, int avgSize) {
+        this.inputStream = inputStream;
+        this.avgSize = avgSize;
+        this.minSize = Math.max(64, avgSize / 4);
+        this.maxSize = avgSize * 8;
+
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.maskSmall = topBits(bits + 2);
+        this.maskLarge = topBits(Math.max(1, bits - 2));
+        this.buffer = new byte[maxSize];
+    }
+
+    /**
+     * Returns the next chunk of the stream.
+     *
+     * @return The chunk's bytes, or null at the end of the stream.
+     * @throws IOException If the stream cannot be read.
+     */
+    public byte[] next() throws IOException {
+        fill();
+        int available = limit - position;
+        if (available == 0) {
+            return null;
+        }
+        int length = cutPoint(position, available);
+        byte[] chunk = Arrays.copyOfRange(buffer, position, position + length);
+        position += length;
+        return chunk;
+    }
+
+    private int cutPoint(int start, int available) {
+        if (available <= minSize) {
+            return available;
+        }
+        int normal = Math.min(avgSize, available);
+        int max = Math.min(maxSize, available);
+        long fingerprint = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[start + i] & 0xFF];
+            if ((fingerprint & maskSmall) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < max; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[start + i] & 0xFF];
+            if ((fingerprint & maskLarge) == 0) {
+                return i + 1;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Compacts the buffer and reads until it holds a full maximum-size window or the stream ends.
+     */
+    private void fill() throws IOException {
+        if (endOfStream || limit - position >= maxSize) {
+            return;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < buffer.length) {
+            int read = inputStream.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfStream = true;
+                break;
+            }
+            limit += read;
+        }
+    }
+
+    private static long topBits(int count) {
+        return count >= 64 ? -1L : ((1L << count) - 1) << (64 - count);
+    }
+}
@@ -0,0 +1,156 @@
+package com.damworks.backupsyncutility.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named metric with one series per combination of label values, in the Prometheus data model.
+ * Series are created on first use and kept for the life of the process.
+ */
+public class Metric {
+    public enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    private final String name;
+    private final String help;
+    private final Type type;
+    private final List<String> labelNames;
+    private final double[] buckets;
+    private final Map<List<String>, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * @param name       Metric name (e.g., "backup_dump_bytes_total").
+     * @param help       One-line description.
+     * @param type       Kind of metric.
+     * @param labelNames Names of the labels every series carries.
+     * @param buckets    Ascending upper bounds of the histogram buckets; ignored for other types.
+     */
+    Metric(String name, String help, Type type, List<String> labelNames, double[] buckets) {
+        this.name = name;
+        this.help = help;
+        this.type = type;
+        this.labelNames = List.copyOf(labelNames);
+        this.buckets = type == Type.HISTOGRAM ? buckets.clone() : new double[0];
+    }
+
+    /**
+     * Returns the series for the given label values, creating it if needed.
+     *
+     * @param labelValues One value per label name, in order; null values are recorded as empty.
+     * @return The series.
+     * @throws IllegalArgumentException If the number of values does not match the label names.
+     */
+    public Series labels(String... labelValues) {
+        if (labelValues.length != labelNames.size()) {
+            throw new IllegalArgumentException(name + " expects labels " + labelNames + ", got "
+                    + Arrays.toString(labelValues));
+        }
+        List<String> key = Arrays.stream(labelValues).map(value -> value != null ? value : "").toList();
+        return series.computeIfAbsent(key, k -> new Series());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public List<String> getLabelNames() {
+        return labelNames;
+    }
+
+    double[] getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * @return Current series keyed by their label values.
+     */
+    public Map<List<String>, Series> getSeries() {
+        return series;
+    }
+
+    /**
+     * A single time series. Counters use {@link #inc}, gauges {@link #set} and histograms
+     * {@link #observe}; all are safe to call from any thread.
+     */
+    public class Series {
+        private final DoubleAdder total = new DoubleAdder();
+        private volatile double gauge;
+        private final LongAdder[] bucketCounts;
+        private final LongAdder count = new LongAdder();
+
+        private Series() {
+            bucketCounts = new LongAdder[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketCounts[i] = new LongAdder();
+            }
+        }
+
+        public void inc() {
+            inc(1);
+        }
+
+        public void inc(double amount) {
+            total.add(amount);
+        }
+
+        public void set(double value) {
+            gauge = value;
+        }
+
+        /**
+         * Records one observation of a histogram.
+         *
+         * @param value Observed value (e.g., a duration in seconds).
+         */
+        public void observe(double value) {
+            for (int i = 0; i < buckets.length; i++) {
+                if (value <= buckets[i]) {
+                    bucketCounts[i].increment();
+                    break;
+                }
+            }
+            total.add(value);
+            count.increment();
+        }
+
+        /**
+         * @return The counter or gauge value, or the sum of a histogram's observations.
+         */
+        public double getValue() {
+            return type == Type.GAUGE ? gauge : total.sum();
+        }
+
+        /**
+         * @return Number of observations of a histogram.
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return Cumulative observation counts, one per bucket bound.
+         */
+        long[] getCumulativeBucketCounts() {
+            long[] cumulative = new long[bucketCounts.length];
+            long running = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                running += bucketCounts[i].sum();
+                cumulative[i] = running;
+            }
+            return cumulative;
+        }
+    }
+}
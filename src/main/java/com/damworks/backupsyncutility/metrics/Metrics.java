@@ -0,0 +1,105 @@
+package com.damworks.backupsyncutility.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide metrics of every backup stage. Values accumulate for the life of the process and
+ * are exported by {@link MetricsExporter}.
+ */
+public final class Metrics {
+    private static final List<Metric> REGISTRY = new CopyOnWriteArrayList<>();
+
+    // Dumps take seconds to hours; uploads of small chunks take milliseconds
+    private static final double[] DUMP_BUCKETS = {1, 5, 15, 30, 60, 120, 300, 600, 1800, 3600, 7200, 14400};
+    private static final double[] TRANSFER_BUCKETS = {0.05, 0.25, 1, 5, 15, 30, 60, 120, 300, 600, 1800, 3600};
+
+    public static final Metric DUMP_DURATION = histogram("backup_dump_duration_seconds",
+            "Time taken by each dump, including compression and streamed uploads.", DUMP_BUCKETS, "database");
+    public static final Metric DUMP_BYTES = counter("backup_dump_bytes_total",
+            "Compressed bytes written by successful dumps.", "database");
+    public static final Metric DUMP_FAILURES = counter("backup_dump_failures_total",
+            "Dumps that failed.", "database");
+    public static final Metric DUMP_THROUGHPUT = gauge("backup_dump_throughput_bytes_per_second",
+            "Compressed bytes per second of the last successful dump.", "database");
+    public static final Metric DUMP_SKIPPED = counter("backup_dump_skipped_total",
+            "Dumps skipped because the database did not change since its previous backup.", "database");
+    public static final Metric DUMP_LAST_SUCCESS = gauge("backup_dump_last_success_timestamp_seconds",
+            "Unix time at which the last successful dump finished, or was skipped as unchanged.", "database");
+
+    public static final Metric UPLOAD_DURATION = histogram("backup_upload_duration_seconds",
+            "Time taken by each upload.", TRANSFER_BUCKETS, "destination", "database");
+    public static final Metric UPLOAD_BYTES = counter("backup_upload_bytes_total",
+            "Bytes of successful uploads.", "destination", "database");
+    public static final Metric UPLOAD_FAILURES = counter("backup_upload_failures_total",
+            "Uploads that failed.", "destination", "database");
+    public static final Metric UPLOAD_THROUGHPUT = gauge("backup_upload_throughput_bytes_per_second",
+            "Bytes per second of the last successful upload.", "destination", "database");
+
+    public static final Metric DELETES = counter("backup_deletes_total",
+            "Files deleted by rotation or verification; destination \"local\" is the backup directory.",
+            "destination", "database");
+    public static final Metric DELETE_FAILURES = counter("backup_delete_failures_total",
+            "Deletions that failed.", "destination", "database");
+
+    public static final Metric RETRIES = counter("backup_retries_total",
+            "Requests to a destination that were retried after a transient failure.", "destination", "operation");
+
+    public static final Metric BANDWIDTH_LIMIT = gauge("backup_bandwidth_limit_bytes_per_second",
+            "Upload bandwidth limit in effect; 0 means unlimited.", "limiter");
+    public static final Metric BANDWIDTH_ACHIEVED = gauge("backup_bandwidth_achieved_bytes_per_second",
+            "Upload rate through a bandwidth limiter over its last reporting interval.", "limiter");
+    public static final Metric BANDWIDTH_BYTES = counter("backup_bandwidth_bytes_total",
+            "Bytes uploaded through a bandwidth limiter.", "limiter");
+    public static final Metric BANDWIDTH_THROTTLED = counter("backup_bandwidth_throttled_seconds_total",
+            "Time uploads spent waiting for a bandwidth limiter.", "limiter");
+
+    public static final Metric STAGE_DURATION = histogram("backup_stage_duration_seconds",
+            "Time taken by each stage of a run (dump, sync, rotate).", DUMP_BUCKETS, "stage");
+    public static final Metric RUNS = counter("backup_runs_total",
+            "Completed runs by result (success, or failure if any dump failed).", "result");
+    public static final Metric RUN_LAST_SUCCESS = gauge("backup_run_last_success_timestamp_seconds",
+            "Unix time at which the last run without failed dumps finished.");
+
+    private Metrics() {
+    }
+
+    /**
+     * @return Every registered metric, in registration order.
+     */
+    public static List<Metric> all() {
+        return REGISTRY;
+    }
+
+    /**
+     * @param startNanos Value of {@link System#nanoTime()} at the start of the measured operation.
+     * @return Seconds elapsed since then.
+     */
+    public static double secondsSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    /**
+     * @return The current time as Unix seconds, for timestamp gauges.
+     */
+    public static double now() {
+        return System.currentTimeMillis() / 1000.0;
+    }
+
+    public static Metric counter(String name, String help, String... labelNames) {
+        return register(new Metric(name, help, Metric.Type.COUNTER, List.of(labelNames), null));
+    }
+
+    public static Metric gauge(String name, String help, String... labelNames) {
+        return register(new Metric(name, help, Metric.Type.GAUGE, List.of(labelNames), null));
+    }
+
+    public static Metric histogram(String name, String help, double[] buckets, String... labelNames) {
+        return register(new Metric(name, help, Metric.Type.HISTOGRAM, List.of(labelNames), buckets));
+    }
+
+    private static Metric register(Metric metric) {
+        REGISTRY.add(metric);
+        return metric;
+    }
+}
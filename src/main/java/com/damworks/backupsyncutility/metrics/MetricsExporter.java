@@ -0,0 +1,125 @@
+package com.damworks.backupsyncutility.metrics;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Exposes {@link Metrics} as a Prometheus textfile for the node_exporter textfile collector,
+ * over HTTP while the daemon runs, and as a JMX MBean.
+ */
+public final class MetricsExporter {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+    private static final String OBJECT_NAME = "com.damworks.backupsyncutility:type=Metrics";
+
+    private static HttpServer httpServer;
+
+    private MetricsExporter() {
+    }
+
+    /**
+     * Starts the configured exporters. Failures are logged; metrics are never required for a run.
+     *
+     * @param longRunning True in daemon mode, where the HTTP endpoint is started if configured.
+     */
+    public static synchronized void start(boolean longRunning) {
+        if (AppConfig.isMetricsJmxEnabled()) {
+            registerMBean();
+        }
+        int port = AppConfig.getMetricsHttpPort();
+        if (longRunning && port > 0 && httpServer == null) {
+            try {
+                httpServer = startHttpServer(port);
+                logger.info("Serving metrics on http://{}:{}/metrics", AppConfig.getMetricsHttpBindAddress(), port);
+            } catch (IOException e) {
+                logger.error("Failed to start the metrics endpoint on port {}: {}", port, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the HTTP endpoint if it was started.
+     */
+    public static synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+
+    /**
+     * Writes the current metrics to {@code metrics.textfile.path}, if set. The file is written
+     * next to its final name and moved into place, so the collector never reads a partial file.
+     */
+    public static void writeTextfile() {
+        String path = AppConfig.getMetricsTextfilePath();
+        if (path == null || path.isEmpty()) {
+            return;
+        }
+        Path target = Paths.get(path).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.writeString(temp, PrometheusFormat.format(Metrics.all()), StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write metrics to {}: {}", target, e.getMessage());
+        }
+    }
+
+    private static HttpServer startHttpServer(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(AppConfig.getMetricsHttpBindAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            try {
+                if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = PrometheusFormat.format(Metrics.all()).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", PrometheusFormat.CONTENT_TYPE);
+                if (exchange.getRequestMethod().equals("HEAD")) {
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(Metrics.all()), name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register the metrics MBean: {}", e.getMessage());
+        }
+    }
+}
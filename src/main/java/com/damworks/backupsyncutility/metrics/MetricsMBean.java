@@ -0,0 +1,112 @@
+package com.damworks.backupsyncutility.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only MBean with one attribute per series, named as in the Prometheus output
+ * (e.g., {@code backup_dump_bytes_total{database="shop"}}). Histograms appear as their
+ * {@code _count} and {@code _sum}. The attribute list grows as new series are recorded.
+ */
+class MetricsMBean implements DynamicMBean {
+    private final List<Metric> metrics;
+
+    MetricsMBean(List<Metric> metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Double value = snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Double> snapshot = snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Double value = snapshot.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        Map<String, String> help = new LinkedHashMap<>();
+        for (Metric metric : metrics) {
+            for (List<String> labelValues : metric.getSeries().keySet()) {
+                if (metric.getType() == Metric.Type.HISTOGRAM) {
+                    help.put(seriesName(metric, "_count", labelValues), metric.getHelp() + " (count)");
+                    help.put(seriesName(metric, "_sum", labelValues), metric.getHelp() + " (sum)");
+                } else {
+                    help.put(seriesName(metric, "", labelValues), metric.getHelp());
+                }
+            }
+        }
+        help.forEach((name, description) -> attributes.add(
+                new MBeanAttributeInfo(name, "double", description, true, false, false)));
+        return new MBeanInfo(getClass().getName(), "Backup metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    private Map<String, Double> snapshot() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Metric metric : metrics) {
+            for (Map.Entry<List<String>, Metric.Series> entry : metric.getSeries().entrySet()) {
+                Metric.Series series = entry.getValue();
+                if (metric.getType() == Metric.Type.HISTOGRAM) {
+                    values.put(seriesName(metric, "_count", entry.getKey()), (double) series.getCount());
+                    values.put(seriesName(metric, "_sum", entry.getKey()), series.getValue());
+                } else {
+                    values.put(seriesName(metric, "", entry.getKey()), series.getValue());
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String seriesName(Metric metric, String suffix, List<String> labelValues) {
+        if (labelValues.isEmpty()) {
+            return metric.getName() + suffix;
+        }
+        StringBuilder name = new StringBuilder(metric.getName()).append(suffix).append('{');
+        for (int i = 0; i < labelValues.size(); i++) {
+            name.append(i > 0 ? "," : "").append(metric.getLabelNames().get(i))
+                    .append("=\"").append(labelValues.get(i)).append('"');
+        }
+        return name.append('}').toString();
+    }
+}
@@ -0,0 +1,102 @@
+package com.damworks.backupsyncutility.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4), as read by the
+ * node_exporter textfile collector and by Prometheus scrapes.
+ */
+public final class PrometheusFormat {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private PrometheusFormat() {
+    }
+
+    /**
+     * @param metrics Metrics to write.
+     * @return The metrics in text format.
+     */
+    public static String format(List<Metric> metrics) {
+        StringWriter writer = new StringWriter();
+        try {
+            write(metrics, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes metrics in text format. Metrics without series are skipped.
+     *
+     * @param metrics Metrics to write.
+     * @param out     Receives the text.
+     * @throws IOException If writing fails.
+     */
+    public static void write(List<Metric> metrics, Appendable out) throws IOException {
+        for (Metric metric : metrics) {
+            if (metric.getSeries().isEmpty()) {
+                continue;
+            }
+            out.append("# HELP ").append(metric.getName()).append(' ')
+                    .append(metric.getHelp().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(metric.getName()).append(' ')
+                    .append(metric.getType().name().toLowerCase()).append('\n');
+
+            for (Map.Entry<List<String>, Metric.Series> entry : metric.getSeries().entrySet()) {
+                List<String> labelValues = entry.getKey();
+                Metric.Series series = entry.getValue();
+                if (metric.getType() != Metric.Type.HISTOGRAM) {
+                    sample(out, metric.getName(), metric.getLabelNames(), labelValues, null, series.getValue());
+                    continue;
+                }
+                double[] bounds = metric.getBuckets();
+                long[] cumulative = series.getCumulativeBucketCounts();
+                for (int i = 0; i < bounds.length; i++) {
+                    sample(out, metric.getName() + "_bucket", metric.getLabelNames(), labelValues,
+                            number(bounds[i]), cumulative[i]);
+                }
+                sample(out, metric.getName() + "_bucket", metric.getLabelNames(), labelValues, "+Inf", series.getCount());
+                sample(out, metric.getName() + "_sum", metric.getLabelNames(), labelValues, null, series.getValue());
+                sample(out, metric.getName() + "_count", metric.getLabelNames(), labelValues, null, series.getCount());
+            }
+        }
+    }
+
+    private static void sample(Appendable out, String name, List<String> labelNames, List<String> labelValues,
+                               String le, double value) throws IOException {
+        out.append(name);
+        if (!labelNames.isEmpty() || le != null) {
+            out.append('{');
+            for (int i = 0; i < labelNames.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(labelNames.get(i)).append("=\"").append(escape(labelValues.get(i))).append('"');
+            }
+            if (le != null) {
+                out.append(labelNames.isEmpty() ? "" : ",").append("le=\"").append(le).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(number(value)).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+}
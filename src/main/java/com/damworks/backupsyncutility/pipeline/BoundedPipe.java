@@ -0,0 +1,140 @@
+package com.damworks.backupsyncutility.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single-producer, single-consumer byte pipe backed by a bounded queue of chunks.
+ * <p>
+ * The producer blocks once {@code capacity} chunks are queued, so a slow consumer applies
+ * backpressure instead of growing memory. A consumer that gives up is detached: subsequent
+ * writes are dropped so the producer is never blocked by a failed destination.
+ */
+public class BoundedPipe {
+    private static final byte[] EOF = new byte[0];
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<byte[]> queue;
+    private volatile boolean detached;
+    private volatile IOException producerError;
+
+    /**
+     * @param capacity Maximum number of chunks buffered between producer and consumer.
+     */
+    public BoundedPipe(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Queues a copy of the given bytes, blocking while the pipe is full.
+     *
+     * @throws InterruptedIOException If the producer is interrupted while waiting.
+     */
+    public void write(byte[] bytes, int offset, int length) throws InterruptedIOException {
+        if (length == 0 || detached) {
+            return;
+        }
+        enqueue(Arrays.copyOfRange(bytes, offset, offset + length));
+    }
+
+    /**
+     * Signals a clean end of stream to the consumer.
+     *
+     * @throws InterruptedIOException If the producer is interrupted while waiting.
+     */
+    public void close() throws InterruptedIOException {
+        enqueue(EOF);
+    }
+
+    /**
+     * Aborts the stream; the consumer's next read fails with the given cause.
+     *
+     * @param cause Why the producer gave up.
+     */
+    public void abort(IOException cause) {
+        producerError = cause;
+        queue.clear();
+        queue.offer(EOF);
+    }
+
+    /**
+     * Detaches the consumer so that further writes are discarded.
+     */
+    public void detach() {
+        detached = true;
+        queue.clear();
+    }
+
+    public boolean isDetached() {
+        return detached;
+    }
+
+    /**
+     * @return The consumer side of the pipe. It must be read by a single thread.
+     */
+    public InputStream inputStream() {
+        return new PipeInputStream();
+    }
+
+    private void enqueue(byte[] chunk) throws InterruptedIOException {
+        try {
+            while (!detached && !queue.offer(chunk, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // Re-check the detached flag periodically so a dead consumer cannot block us forever
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing to pipe.");
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        private byte[] current;
+        private int position;
+        private boolean finished;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (!finished && (current == null || position >= current.length)) {
+                try {
+                    current = queue.take();
+                    position = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading from pipe.");
+                }
+                if (current == EOF) {
+                    finished = true;
+                }
+            }
+            if (finished && producerError != null) {
+                throw new IOException("Upstream stream aborted: " + producerError.getMessage(), producerError);
+            }
+            return !finished;
+        }
+    }
+}
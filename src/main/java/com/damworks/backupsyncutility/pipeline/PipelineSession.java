@@ -0,0 +1,158 @@
+package com.damworks.backupsyncutility.pipeline;
+
+import com.damworks.backupsyncutility.sync.Destination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Streams one dump file to the local disk and to every destination at the same time.
+ * <p>
+ * Each destination consumes its own {@link BoundedPipe}, so memory is bounded by
+ * {@code destinations x capacity x chunkSize}. The uploads only see end-of-stream once
+ * {@link #complete()} is called, which lets the producer abort them if the dump fails late.
+ */
+public class PipelineSession {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineSession.class);
+
+    private final String fileName;
+    private final int chunkSize;
+    private final Map<String, BoundedPipe> pipes = new LinkedHashMap<>();
+    private final Map<String, Future<String>> uploads = new LinkedHashMap<>();
+    private Runnable onEnd;
+
+    PipelineSession(Iterable<Destination> destinations, Map<String, TransferStats> stats, String database,
+                    String fileName, Path localFile, int capacity, int chunkSize, ExecutorService executor,
+                    Runnable onEnd) {
+        this.fileName = fileName;
+        this.chunkSize = chunkSize;
+        this.onEnd = onEnd;
+
+        for (Destination destination : destinations) {
+            BoundedPipe pipe = new BoundedPipe(capacity);
+            TransferStats destinationStats = stats.get(destination.getName());
+            pipes.put(destination.getName(), pipe);
+            uploads.put(destination.getName(), executor.submit(() -> {
+                CountingInputStream input = new CountingInputStream(pipe.inputStream());
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    String remoteRef = destination.upload(input, database, fileName, localFile);
+                    success = true;
+                    return remoteRef;
+                } finally {
+                    // Never leave the producer waiting on a consumer that has stopped reading
+                    pipe.detach();
+                    destinationStats.record(input.getCount(), System.nanoTime() - start, success);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Wraps the local file stream so every byte written also feeds the destination pipes.
+     * Closing the returned stream closes the local stream but does not end the uploads.
+     *
+     * @param local Stream writing the local copy of the dump.
+     * @return A stream that tees into the local file and all destinations.
+     */
+    public OutputStream tee(OutputStream local) {
+        return new BufferedOutputStream(new TeeOutputStream(local), chunkSize);
+    }
+
+    /**
+     * Ends the stream for all destinations and waits for their uploads to finish.
+     *
+     * @return Remote references of the complete copies, keyed by the name of the destination holding them.
+     * @throws InterruptedException If interrupted while waiting for the uploads.
+     */
+    public Map<String, String> complete() throws InterruptedException {
+        for (Map.Entry<String, BoundedPipe> entry : pipes.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                logger.warn("Could not signal end of stream to {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+
+        Map<String, String> succeeded = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Future<String>> entry : uploads.entrySet()) {
+                try {
+                    succeeded.put(entry.getKey(), entry.getValue().get());
+                    logger.info("Streamed '{}' to {}", fileName, entry.getKey());
+                } catch (ExecutionException e) {
+                    logger.error("Streaming '{}' to {} failed: {}", fileName, entry.getKey(), e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            abort(new InterruptedIOException("Upload of " + fileName + " interrupted."));
+            throw e;
+        }
+        end();
+        return succeeded;
+    }
+
+    /**
+     * Aborts all in-flight uploads and waits for them to unwind.
+     *
+     * @param cause Why the dump failed.
+     */
+    public void abort(IOException cause) {
+        pipes.values().forEach(pipe -> pipe.abort(cause));
+        for (Map.Entry<String, Future<String>> entry : uploads.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException e) {
+                logger.debug("Upload of '{}' to {} aborted: {}", fileName, entry.getKey(), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                entry.getValue().cancel(true);
+            }
+        }
+        end();
+    }
+
+    /**
+     * Runs the end callback once, after the uploads finished or were abandoned.
+     */
+    private synchronized void end() {
+        if (onEnd != null) {
+            onEnd.run();
+            onEnd = null;
+        }
+    }
+
+    /**
+     * Writes to the local stream and copies every chunk into each attached pipe.
+     */
+    private class TeeOutputStream extends FilterOutputStream {
+        TeeOutputStream(OutputStream local) {
+            super(local);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            for (BoundedPipe pipe : pipes.values()) {
+                pipe.write(bytes, offset, length);
+            }
+        }
+    }
+}
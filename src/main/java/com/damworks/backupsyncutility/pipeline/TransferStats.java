@@ -0,0 +1,67 @@
+package com.damworks.backupsyncutility.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe transfer counters for a single destination.
+ */
+public class TransferStats {
+    private final String destination;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public TransferStats(String destination) {
+        this.destination = destination;
+    }
+
+    /**
+     * Records a finished transfer.
+     *
+     * @param byteCount     Number of bytes transferred.
+     * @param durationNanos Time spent on the transfer.
+     * @param success       Whether the transfer completed.
+     */
+    public void record(long byteCount, long durationNanos, boolean success) {
+        bytes.addAndGet(byteCount);
+        nanos.addAndGet(durationNanos);
+        (success ? succeeded : failed).incrementAndGet();
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getDurationMillis() {
+        return nanos.get() / 1_000_000;
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return Average throughput in bytes per second over all recorded transfers.
+     */
+    public double getBytesPerSecond() {
+        long elapsed = nanos.get();
+        return elapsed > 0 ? bytes.get() * 1_000_000_000.0 / elapsed : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d file(s) ok, %d failed, %d bytes in %d ms (%.2f MB/s)",
+                destination, getSucceeded(), getFailed(), getBytes(), getDurationMillis(),
+                getBytesPerSecond() / (1024 * 1024));
+    }
+}
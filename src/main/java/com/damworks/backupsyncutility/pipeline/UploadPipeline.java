@@ -0,0 +1,96 @@
+package com.damworks.backupsyncutility.pipeline;
+
+import com.damworks.backupsyncutility.sync.Destination;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Uploads dumps to their destinations while they are still being written.
+ */
+public class UploadPipeline implements AutoCloseable {
+    private final List<Destination> destinations;
+    private final int capacity;
+    private final int chunkSize;
+    private final Map<String, TransferStats> stats = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "upload-pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param destinations Destinations every dump is streamed to.
+     * @param capacity     Number of chunks buffered per destination before the dump is throttled.
+     * @param chunkSize    Size in bytes of each buffered chunk.
+     */
+    public UploadPipeline(List<Destination> destinations, int capacity, int chunkSize) {
+        this.destinations = List.copyOf(destinations);
+        this.capacity = capacity;
+        this.chunkSize = chunkSize;
+        for (Destination destination : destinations) {
+            stats.put(destination.getName(), new TransferStats(destination.getName()));
+        }
+    }
+
+    /**
+     * Starts streaming a new dump file to every destination, once each has a free upload slot
+     * (see {@link UploadSlots}).
+     *
+     * @param database Name of the database the file belongs to.
+     * @param fileName Name of the dump file.
+     * @return The session the dump writes into.
+     * @throws InterruptedException If interrupted while waiting for upload slots.
+     */
+    public PipelineSession open(String database, String fileName) throws InterruptedException {
+        return open(destinations, database, fileName, null);
+    }
+
+    /**
+     * Starts streaming a complete local file to a subset of this pipeline's destinations, once
+     * each has a free upload slot (see {@link UploadSlots}).
+     *
+     * @param localFile        The file being streamed; its parent directory names the database.
+     * @param fileDestinations Destinations that should receive this file.
+     * @return The session the file content is written into.
+     * @throws InterruptedException If interrupted while waiting for upload slots.
+     */
+    public PipelineSession open(Path localFile, Collection<Destination> fileDestinations) throws InterruptedException {
+        return open(fileDestinations, localFile.getParent().getFileName().toString(),
+                localFile.getFileName().toString(), localFile);
+    }
+
+    private PipelineSession open(Collection<Destination> sessionDestinations, String database, String fileName,
+                                 Path localFile) throws InterruptedException {
+        List<String> names = sessionDestinations.stream().map(Destination::getName).toList();
+        UploadSlots.acquire(names);
+        try {
+            return new PipelineSession(sessionDestinations, stats, database, fileName, localFile, capacity, chunkSize,
+                    executor, () -> UploadSlots.release(names));
+        } catch (RuntimeException e) {
+            UploadSlots.release(names);
+            throw e;
+        }
+    }
+
+    public List<Destination> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * @return Accumulated transfer statistics per destination name.
+     */
+    public Collection<TransferStats> getStats() {
+        return stats.values();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,52 @@
+package com.damworks.backupsyncutility.pipeline;
+
+import com.damworks.backupsyncutility.concurrent.KeyedLimiter;
+import com.damworks.backupsyncutility.config.AppConfig;
+
+import java.util.Collection;
+
+/**
+ * Process-wide cap on concurrent uploads to each destination, from
+ * {@code backup.upload.threads.per.destination}. Every {@link PipelineSession} holds a slot of
+ * each of its destinations from the moment it opens until its uploads end, whether it streams
+ * a dump as it is written or a finished file, and whichever run or job opened it.
+ */
+public final class UploadSlots {
+    private static KeyedLimiter limiter;
+
+    private UploadSlots() {
+    }
+
+    /**
+     * Blocks until every given destination has a free slot, and takes them.
+     *
+     * @param destinations Names of the destinations.
+     * @throws InterruptedException If interrupted while waiting; no slot is then held.
+     */
+    static void acquire(Collection<String> destinations) throws InterruptedException {
+        KeyedLimiter slots = limiter();
+        if (slots != null) {
+            slots.acquireAll(destinations);
+        }
+    }
+
+    /**
+     * Returns slots taken with {@link #acquire(Collection)}.
+     *
+     * @param destinations Names of the destinations.
+     */
+    static void release(Collection<String> destinations) {
+        KeyedLimiter slots = limiter();
+        if (slots != null) {
+            slots.releaseAll(destinations);
+        }
+    }
+
+    private static synchronized KeyedLimiter limiter() {
+        int perDestination = AppConfig.getUploadThreadsPerDestination();
+        if (limiter == null && perDestination > 0) {
+            limiter = new KeyedLimiter(perDestination);
+        }
+        return limiter;
+    }
+}
@@ -0,0 +1,89 @@
+package com.damworks.backupsyncutility.restore;
+
+import com.damworks.backupsyncutility.backup.StderrCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds SQL streams into the mysql command-line client.
+ */
+public class MysqlLoader {
+    private static final Logger logger = LoggerFactory.getLogger(MysqlLoader.class);
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String password;
+
+    public MysqlLoader(String host, int port, String user, String password) {
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * Creates the database if it does not exist yet.
+     *
+     * @param database Name of the database.
+     * @throws IOException          If mysql fails.
+     * @throws InterruptedException If interrupted while waiting for mysql.
+     */
+    public void createDatabase(String database) throws IOException, InterruptedException {
+        run(null, InputStream.nullInputStream(), "create " + database,
+                "-e", "CREATE DATABASE IF NOT EXISTS `" + database.replace("`", "``") + "`");
+    }
+
+    /**
+     * Executes a SQL stream against a database.
+     *
+     * @param database    Target database.
+     * @param inputStream Uncompressed SQL; read until end of stream.
+     * @param label       Name used in logs and errors.
+     * @return Number of SQL bytes loaded.
+     * @throws IOException          If the stream cannot be read or mysql fails.
+     * @throws InterruptedException If interrupted while waiting for mysql.
+     */
+    public long load(String database, InputStream inputStream, String label) throws IOException, InterruptedException {
+        return run(database, inputStream, label);
+    }
+
+    private long run(String database, InputStream inputStream, String label, String... extraArguments)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of("mysql", "-h" + host, "-P" + port, "-u" + user));
+        command.addAll(List.of(extraArguments));
+        if (database != null) {
+            command.add(database);
+        }
+        // The password goes through the environment, which unlike argv other users cannot read
+        ProcessBuilder builder = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        if (password != null) {
+            builder.environment().put("MYSQL_PWD", password);
+        }
+        Process process = builder.start();
+        StderrCollector stderr = StderrCollector.start(process, "mysql-stderr-" + label);
+
+        long loaded;
+        try (OutputStream stdin = process.getOutputStream()) {
+            loaded = inputStream.transferTo(stdin);
+        } catch (IOException e) {
+            process.destroyForcibly();
+            stderr.join();
+            throw new IOException("Loading " + label + " failed: " + e.getMessage() + stderr.describe(), e);
+        }
+
+        int exitCode = process.waitFor();
+        stderr.join();
+        if (exitCode != 0) {
+            throw new IOException("mysql failed on " + label + " with exit code: " + exitCode + stderr.describe());
+        }
+        logger.debug("Loaded {} ({} bytes of SQL)", label, loaded);
+        return loaded;
+    }
+}
@@ -0,0 +1,94 @@
+package com.damworks.backupsyncutility.restore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a sequence of independently fetched pieces (byte ranges, chunks) as one stream.
+ * <p>
+ * Up to {@code window} pieces are fetched concurrently ahead of the reader, so the stream
+ * runs at the combined speed of several transfers while memory stays bounded by
+ * {@code window x piece size}. Pieces are always returned in order.
+ */
+public class OrderedFetchStream extends InputStream {
+    private final Iterator<Callable<byte[]>> pending;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+    private final int window;
+    private byte[] current = new byte[0];
+    private int position;
+
+    /**
+     * @param pieces   Fetches for each piece, in stream order.
+     * @param executor Executor running the fetches.
+     * @param window   Maximum number of pieces fetched ahead.
+     */
+    public OrderedFetchStream(List<Callable<byte[]>> pieces, ExecutorService executor, int window) {
+        this.pending = pieces.iterator();
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        fillWindow();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position >= current.length) {
+            if (!nextPiece()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    private boolean nextPiece() throws IOException {
+        Future<byte[]> next = inFlight.poll();
+        if (next == null) {
+            return false;
+        }
+        try {
+            current = next.get();
+            position = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+        fillWindow();
+        return true;
+    }
+
+    private void fillWindow() {
+        while (inFlight.size() < window && pending.hasNext()) {
+            inFlight.add(executor.submit(pending.next()));
+        }
+    }
+
+    @Override
+    public void close() {
+        inFlight.forEach(future -> future.cancel(true));
+        inFlight.clear();
+    }
+}
@@ -0,0 +1,421 @@
+package com.damworks.backupsyncutility.restore;
+
+import com.damworks.backupsyncutility.backup.DatabaseHost;
+import com.damworks.backupsyncutility.backup.DumpManifest;
+import com.damworks.backupsyncutility.backup.DumpTarget;
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+import com.damworks.backupsyncutility.compress.ParallelCompression;
+import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.crypto.Encryption;
+import com.damworks.backupsyncutility.crypto.SegmentedContainer;
+import com.damworks.backupsyncutility.dedup.ChunkManifest;
+import com.damworks.backupsyncutility.dedup.DedupStore;
+import com.damworks.backupsyncutility.pipeline.BoundedPipe;
+import com.damworks.backupsyncutility.pipeline.CountingInputStream;
+import com.damworks.backupsyncutility.rotate.RetentionEngine;
+import com.damworks.backupsyncutility.sync.Destination;
+import com.damworks.backupsyncutility.sync.RetryPolicy;
+import com.damworks.backupsyncutility.sync.SyncManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Restores a backup from a destination into MySQL.
+ * <p>
+ * Remote files are downloaded as several concurrent byte ranges and decompressed while they
+ * stream into the mysql client, so nothing is staged on disk. Multi-file dumps load their
+ * schema first and then their table files over several mysql sessions at once; deduplicated
+ * backups are reassembled from their chunks in order. Encrypted files are fetched in whole
+ * segments, which the download threads decrypt in parallel. Each stage is timed for RTO reporting.
+ */
+public class RestoreManager {
+    private static final Logger logger = LoggerFactory.getLogger(RestoreManager.class);
+    private static final RetryPolicy RETRY_POLICY = RetryPolicy.fromConfig();
+    private static final int PIPE_CHUNKS = 16;
+    private static final int PIPE_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Restores a backup of a database into the host it was dumped from.
+     *
+     * @param database        Database whose backups are searched; {@code <database>@<host>} for a fleet host.
+     * @param backup          Backup stem or file name to restore, or null for the newest backup.
+     * @param destinationName Destination to restore from (e.g., "FTP"), or null for the first configured one.
+     * @param targetDatabase  Database to load into, or null to restore over the dumped database.
+     * @throws IOException          If the backup cannot be found, downloaded or loaded.
+     * @throws InterruptedException If the restore is interrupted.
+     */
+    public static void restore(String database, String backup, String destinationName, String targetDatabase)
+            throws IOException, InterruptedException {
+        List<Destination> destinations = SyncManager.createDestinations();
+        ExecutorService downloads = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "restore-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Destination destination = selectDestination(destinations, destinationName);
+            DumpTarget source = DumpTarget.find(database);
+            String target = targetDatabase != null ? targetDatabase : source.getDatabase();
+
+            long start = System.nanoTime();
+            Map<String, String> remoteFiles = destination.list(database);
+            RemoteBackup remoteBackup = locate(remoteFiles, database, backup);
+            RestoreReport report = new RestoreReport(String.format("Restore of %s from %s into %s",
+                    remoteBackup.stem, destination.getName(), target));
+            report.stage("locate", start);
+            logger.info("Restoring {} ({}) from {} into database {}",
+                    remoteBackup.stem, remoteBackup.kind, destination.getName(), target);
+
+            DatabaseHost host = source.getHost();
+            MysqlLoader loader = new MysqlLoader(host.getAddress(), host.getPort(), host.getUser(), host.getPassword());
+            loader.createDatabase(target);
+
+            Restore restore = new Restore(destination, database, target, remoteFiles, loader, report, downloads);
+            switch (remoteBackup.kind) {
+                case PARALLEL:
+                    restore.restoreParallel(remoteBackup.fileName);
+                    break;
+                case DEDUPLICATED:
+                    restore.restoreDeduplicated(remoteBackup.fileName);
+                    break;
+                default:
+                    long loadStart = System.nanoTime();
+                    restore.restoreFile(remoteBackup.fileName);
+                    report.stage("load", loadStart);
+            }
+
+            logger.info("Restore completed - {}", report);
+        } finally {
+            downloads.shutdownNow();
+            SyncManager.closeDestinations(destinations);
+        }
+    }
+
+    private static Destination selectDestination(List<Destination> destinations, String name) throws IOException {
+        for (Destination destination : destinations) {
+            if (name == null || destination.getName().equalsIgnoreCase(name)
+                    || destination.getName().replace(" ", "").equalsIgnoreCase(name)) {
+                return destination;
+            }
+        }
+        throw new IOException(name == null ? "No destination configured." : "Destination not configured: " + name);
+    }
+
+    /**
+     * Finds the requested backup, or the newest complete one, in a remote listing.
+     */
+    private static RemoteBackup locate(Map<String, String> remoteFiles, String database, String requested)
+            throws FileNotFoundException {
+        TreeSet<String> stems = new TreeSet<>();
+        for (String name : remoteFiles.keySet()) {
+            if (!name.endsWith(".part")) {
+                stems.add(RetentionEngine.stemOf(name));
+            }
+        }
+
+        String wanted = requested != null ? RetentionEngine.stemOf(requested) : null;
+        // Stems are <database>_<yyyyMMdd_HHmmss>, so the newest sorts last
+        for (String stem : stems.descendingSet()) {
+            if (wanted != null && !wanted.equals(stem)) {
+                continue;
+            }
+            if (remoteFiles.containsKey(stem + DumpManifest.EXTENSION)) {
+                return new RemoteBackup(stem, Kind.PARALLEL, stem + DumpManifest.EXTENSION);
+            }
+            for (String name : remoteFiles.keySet()) {
+                if (!name.startsWith(stem + ".sql") || name.endsWith(".part")) {
+                    continue;
+                }
+                if (name.endsWith(ChunkManifest.EXTENSION)) {
+                    return new RemoteBackup(stem, Kind.DEDUPLICATED, name);
+                }
+                String plainName = Encryption.stripExtension(name);
+                if (plainName.equals(stem + ".sql" + CompressionCodec.fromFileName(plainName).getExtension())) {
+                    return new RemoteBackup(stem, Kind.SINGLE, name);
+                }
+            }
+        }
+        throw new FileNotFoundException(wanted != null
+                ? "Backup not found for " + database + ": " + requested
+                : "No complete backup found for " + database);
+    }
+
+    private enum Kind { SINGLE, PARALLEL, DEDUPLICATED }
+
+    private static class RemoteBackup {
+        final String stem;
+        final Kind kind;
+        final String fileName;
+
+        RemoteBackup(String stem, Kind kind, String fileName) {
+            this.stem = stem;
+            this.kind = kind;
+            this.fileName = fileName;
+        }
+    }
+
+    /**
+     * State of one running restore.
+     */
+    private static class Restore {
+        private final Destination destination;
+        private final String database;
+        private final String target;
+        private final Map<String, String> remoteFiles;
+        private final MysqlLoader loader;
+        private final RestoreReport report;
+        private final ExecutorService downloads;
+        private final int streams = AppConfig.getRestoreDownloadStreams();
+        private final long segmentSize = AppConfig.getRestoreSegmentSize();
+
+        Restore(Destination destination, String database, String target, Map<String, String> remoteFiles,
+                MysqlLoader loader, RestoreReport report, ExecutorService downloads) {
+            this.destination = destination;
+            this.database = database;
+            this.target = target;
+            this.remoteFiles = remoteFiles;
+            this.loader = loader;
+            this.report = report;
+            this.downloads = downloads;
+        }
+
+        /**
+         * Loads the schema file, then all table files with several concurrent mysql sessions,
+         * then the triggers.
+         */
+        void restoreParallel(String manifestName) throws IOException, InterruptedException {
+            DumpManifest manifest;
+            try (InputStream inputStream = openRemote(manifestName)) {
+                manifest = DumpManifest.read(inputStream);
+            }
+
+            long schemaStart = System.nanoTime();
+            List<DumpManifest.Entry> data = new ArrayList<>();
+            List<DumpManifest.Entry> triggers = new ArrayList<>();
+            for (DumpManifest.Entry entry : manifest.getEntries()) {
+                if (DumpManifest.Entry.SCHEMA.equals(entry.getKind())) {
+                    restoreFile(entry.getFileName());
+                } else if (DumpManifest.Entry.TRIGGERS.equals(entry.getKind())) {
+                    triggers.add(entry);
+                } else {
+                    data.add(entry);
+                }
+            }
+            report.stage("schema", schemaStart);
+
+            // Largest files first, so the longest load starts immediately
+            data.sort((a, b) -> Long.compare(b.getBytes(), a.getBytes()));
+            long dataStart = System.nanoTime();
+            int threads = Math.max(1, AppConfig.getRestoreThreads());
+            ExecutorService loaders = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> futures = new ArrayList<>();
+                for (DumpManifest.Entry entry : data) {
+                    futures.add(loaders.submit(() -> {
+                        restoreFile(entry.getFileName());
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+                    }
+                }
+            } finally {
+                loaders.shutdownNow();
+            }
+            report.stage("data (" + data.size() + " files, " + threads + " loaders)", dataStart);
+
+            if (!triggers.isEmpty()) {
+                long triggerStart = System.nanoTime();
+                for (DumpManifest.Entry entry : triggers) {
+                    restoreFile(entry.getFileName());
+                }
+                report.stage("triggers", triggerStart);
+            }
+        }
+
+        /**
+         * Reassembles the SQL from its chunks, fetching several chunks ahead of mysql.
+         */
+        void restoreDeduplicated(String manifestName) throws IOException, InterruptedException {
+            ChunkManifest manifest;
+            try (InputStream inputStream = openRemote(manifestName)) {
+                manifest = ChunkManifest.read(inputStream);
+            }
+
+            long listStart = System.nanoTime();
+            Map<String, String> chunkRefs = destination.list(DedupStore.CHUNKS_FOLDER);
+            report.stage("list chunks", listStart);
+
+            AtomicLong downloaded = new AtomicLong();
+            List<Callable<byte[]>> pieces = new ArrayList<>();
+            for (ChunkManifest.Entry entry : manifest.getEntries()) {
+                String objectName = manifest.chunkObjectName(entry.getHash());
+                pieces.add(() -> {
+                    byte[] compressed = fetch(DedupStore.CHUNKS_FOLDER, objectName, chunkRefs.get(objectName), 0, -1);
+                    downloaded.addAndGet(compressed.length);
+                    if (manifest.isEncrypted()) {
+                        compressed = Encryption.decrypt(compressed);
+                    }
+                    try (InputStream chunk = manifest.getChunkCodec().decompress(new ByteArrayInputStream(compressed))) {
+                        byte[] content = chunk.readAllBytes();
+                        if (content.length != entry.getLength()) {
+                            throw new IOException("Chunk " + entry.getHash() + " has " + content.length
+                                    + " bytes, expected " + entry.getLength());
+                        }
+                        return content;
+                    }
+                });
+            }
+
+            long loadStart = System.nanoTime();
+            try (InputStream sql = new OrderedFetchStream(pieces, downloads, streams)) {
+                long loaded = loader.load(target, sql, manifest.getFileName());
+                report.addFile(downloaded.get(), loaded);
+            }
+            report.stage("load (" + pieces.size() + " chunks)", loadStart);
+        }
+
+        /**
+         * Streams one remote dump file through its codec (and decryption) into mysql.
+         */
+        void restoreFile(String fileName) throws IOException, InterruptedException {
+            InputStream remote = Encryption.isEncrypted(fileName) ? openDecrypted(fileName) : openRemote(fileName);
+            try (CountingInputStream compressed = new CountingInputStream(remote);
+                 InputStream sql = ParallelCompression.decompress(
+                         CompressionCodec.fromFileName(Encryption.stripExtension(fileName)), compressed)) {
+                long loaded = loader.load(target, sql, fileName);
+                report.addFile(compressed.getCount(), loaded);
+                logger.info("Restored {}", fileName);
+            }
+        }
+
+        /**
+         * Opens a remote file as a stream of concurrently downloaded byte ranges. Without a
+         * known size the file is downloaded as one stream on a background thread.
+         */
+        private InputStream openRemote(String fileName) throws IOException {
+            String remoteRef = remoteFiles.get(fileName);
+            long size = destination.size(database, fileName, remoteRef);
+            if (size < 0) {
+                return streamWhole(fileName, remoteRef);
+            }
+
+            List<Callable<byte[]>> segments = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += segmentSize) {
+                long segmentOffset = offset;
+                long length = Math.min(segmentSize, size - offset);
+                segments.add(() -> fetch(database, fileName, remoteRef, segmentOffset, length));
+            }
+            return new OrderedFetchStream(segments, downloads, streams);
+        }
+
+        /**
+         * Opens an encrypted remote file as its plaintext. Download ranges are aligned to whole
+         * segments, so each download thread decrypts the range it fetched.
+         */
+        private InputStream openDecrypted(String fileName) throws IOException {
+            String remoteRef = remoteFiles.get(fileName);
+            long size = destination.size(database, fileName, remoteRef);
+            if (size < 0) {
+                return Encryption.decrypt(streamWhole(fileName, remoteRef));
+            }
+
+            SegmentedContainer container = SegmentedContainer.open(Encryption.key(),
+                    fetch(database, fileName, remoteRef, 0, SegmentedContainer.HEADER_SIZE));
+            long count = container.segmentCount(size);
+            long perRange = Math.max(1, segmentSize / container.getEncryptedSegmentSize());
+            List<Callable<byte[]>> ranges = new ArrayList<>();
+            for (long first = 0; first < count; first += perRange) {
+                long firstSegment = first;
+                long end = Math.min(count, first + perRange);
+                ranges.add(() -> {
+                    long offset = container.segmentOffset(firstSegment);
+                    byte[] sealed = fetch(database, fileName, remoteRef, offset,
+                            Math.min(size, container.segmentOffset(end)) - offset);
+                    return container.decryptRange(firstSegment, count, sealed);
+                });
+            }
+            return new OrderedFetchStream(ranges, downloads, streams);
+        }
+
+        private InputStream streamWhole(String fileName, String remoteRef) {
+            BoundedPipe pipe = new BoundedPipe(PIPE_CHUNKS);
+            downloads.submit(() -> {
+                // Closing signals a clean end of stream, so it only happens after a complete download
+                OutputStream out = new BufferedOutputStream(new PipeOutputStream(pipe), PIPE_CHUNK_SIZE);
+                try {
+                    destination.download(database, fileName, remoteRef, 0, -1, out);
+                    out.close();
+                } catch (IOException e) {
+                    pipe.abort(e);
+                }
+            });
+            return pipe.inputStream();
+        }
+
+        /**
+         * Downloads a byte range into memory, retrying transient failures.
+         */
+        private byte[] fetch(String folder, String fileName, String remoteRef, long offset, long length)
+                throws IOException {
+            return RETRY_POLICY.call(destination.getName(), "download", e -> true, attempt -> {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(length > 0 ? (int) length : 64 * 1024);
+                destination.download(folder, fileName, remoteRef, offset, length, buffer);
+                if (length >= 0 && buffer.size() != length) {
+                    throw new IOException("Short read of " + fileName + " at " + offset + ": "
+                            + buffer.size() + " of " + length + " bytes");
+                }
+                return buffer.toByteArray();
+            });
+        }
+    }
+
+    /**
+     * Writes into a {@link BoundedPipe}; closing it ends the consumer's stream.
+     */
+    private static class PipeOutputStream extends OutputStream {
+        private final BoundedPipe pipe;
+
+        PipeOutputStream(BoundedPipe pipe) {
+            this.pipe = pipe;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            pipe.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            pipe.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.damworks.backupsyncutility.restore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage timings and volumes of one restore, for measuring recovery time.
+ * <p>
+ * Download, decompression and loading overlap, so throughput is reported against the
+ * wall-clock time of the stage that contains them.
+ */
+public class RestoreReport {
+    private final String description;
+    private final long started = System.nanoTime();
+    private final Map<String, Long> stageMillis = new LinkedHashMap<>();
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicLong loadedBytes = new AtomicLong();
+    private final AtomicInteger files = new AtomicInteger();
+
+    public RestoreReport(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Records the duration of a finished stage.
+     *
+     * @param stage      Stage name.
+     * @param startNanos {@link System#nanoTime()} at the start of the stage.
+     */
+    public synchronized void stage(String stage, long startNanos) {
+        stageMillis.put(stage, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    /**
+     * Records one restored file.
+     *
+     * @param downloaded Compressed bytes downloaded.
+     * @param loaded     Uncompressed SQL bytes loaded.
+     */
+    public void addFile(long downloaded, long loaded) {
+        downloadedBytes.addAndGet(downloaded);
+        loadedBytes.addAndGet(loaded);
+        files.incrementAndGet();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long totalMillis = (System.nanoTime() - started) / 1_000_000;
+        StringBuilder text = new StringBuilder(description).append(": ");
+        for (Map.Entry<String, Long> stage : stageMillis.entrySet()) {
+            text.append(stage.getKey()).append(' ').append(stage.getValue()).append(" ms, ");
+        }
+        text.append(String.format("total %d ms; %d file(s), %d bytes downloaded (%.1f MB/s), %d bytes of SQL loaded (%.1f MB/s)",
+                totalMillis, files.get(), downloadedBytes.get(), rate(downloadedBytes.get(), totalMillis),
+                loadedBytes.get(), rate(loadedBytes.get(), totalMillis)));
+        return text.toString();
+    }
+
+    private static double rate(long bytes, long millis) {
+        return millis > 0 ? bytes / 1_048_576.0 / (millis / 1000.0) : 0;
+    }
+}
@@ -0,0 +1,174 @@
+package com.damworks.backupsyncutility.rotate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which backups a {@link RetentionPolicy} keeps.
+ * <p>
+ * A backup is identified by its stem, {@code <database>_<yyyyMMdd_HHmmss>}: the dump and any
+ * companion files (chunk manifests, partial uploads) share it and are kept or removed together.
+ * The backup time is taken from the stem, falling back to the file's modification time.
+ */
+public class RetentionEngine {
+    private static final Logger logger = LoggerFactory.getLogger(RetentionEngine.class);
+    private static final Pattern STEM = Pattern.compile("^(.*_(\\d{8}_\\d{6}))(\\..*)?$");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    /**
+     * Returns the backup stem of a file name, or the name itself if it has no timestamp.
+     *
+     * @param fileName Name of a dump file or of one of its companion files.
+     * @return The stem shared by all files of the backup.
+     */
+    public static String stemOf(String fileName) {
+        Matcher matcher = STEM.matcher(fileName);
+        return matcher.matches() ? matcher.group(1) : fileName;
+    }
+
+    /**
+     * Lists a directory once, reading each file's attributes a single time, and groups the
+     * files by backup.
+     *
+     * @param directory Directory of one database.
+     * @return The backups found, newest first.
+     * @throws IOException If the directory cannot be read.
+     */
+    public static List<Backup> scan(Path directory) throws IOException {
+        Map<String, Backup> backups = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    logger.warn("Could not read attributes of {}: {}", file, e.getMessage());
+                    continue;
+                }
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                String stem = stemOf(file.getFileName().toString());
+                long named = timestampOf(stem, 0);
+                backups.computeIfAbsent(stem, s -> new Backup(s, named))
+                        .add(file, named > 0 ? named : attributes.lastModifiedTime().toMillis());
+            }
+        }
+        // Times are cached in each backup, so sorting never touches the file system
+        List<Backup> sorted = new ArrayList<>(backups.values());
+        sorted.sort(Comparator.comparingLong(Backup::getTime).reversed());
+        return sorted;
+    }
+
+    /**
+     * Selects the backups to keep.
+     *
+     * @param backups Backups sorted newest first.
+     * @param policy  Retention policy.
+     * @return Stems of the backups to keep.
+     */
+    public static Set<String> select(List<Backup> backups, RetentionPolicy policy) {
+        Set<String> keep = new LinkedHashSet<>();
+        for (int i = 0; i < Math.min(policy.getLast(), backups.size()); i++) {
+            keep.add(backups.get(i).getStem());
+        }
+        keepNewestPerPeriod(backups, policy.getDaily(), keep, LocalDateTime::toLocalDate);
+        keepNewestPerPeriod(backups, policy.getWeekly(), keep,
+                time -> time.get(IsoFields.WEEK_BASED_YEAR) * 100 + time.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+        keepNewestPerPeriod(backups, policy.getMonthly(), keep, time -> time.getYear() * 100 + time.getMonthValue());
+        keepNewestPerPeriod(backups, policy.getYearly(), keep, LocalDateTime::getYear);
+        return keep;
+    }
+
+    private static void keepNewestPerPeriod(List<Backup> backups, int periods, Set<String> keep,
+                                            Function<LocalDateTime, Object> periodOf) {
+        Set<Object> seen = new HashSet<>();
+        for (Backup backup : backups) {
+            if (seen.size() >= periods) {
+                return;
+            }
+            if (backup.getTime() > 0 && seen.add(periodOf.apply(backup.getLocalTime()))) {
+                keep.add(backup.getStem());
+            }
+        }
+    }
+
+    private static long timestampOf(String stem, long fallback) {
+        Matcher matcher = STEM.matcher(stem);
+        if (matcher.matches()) {
+            try {
+                return LocalDateTime.parse(matcher.group(2), TIMESTAMP)
+                        .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // Not a real timestamp; use the fallback
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * All files of one backup.
+     */
+    public static class Backup {
+        private final String stem;
+        private long time;
+        private final List<Path> files = new ArrayList<>();
+
+        Backup(String stem, long time) {
+            this.stem = stem;
+            this.time = time;
+        }
+
+        public String getStem() {
+            return stem;
+        }
+
+        /**
+         * @return Backup time in milliseconds since the epoch, or 0 if unknown.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        LocalDateTime getLocalTime() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        }
+
+        /**
+         * @return The files of the backup.
+         */
+        public List<Path> getFiles() {
+            return Collections.unmodifiableList(files);
+        }
+
+        void add(Path file, long fileTime) {
+            files.add(file);
+            // Without a timestamp in the name, the newest file dates the backup
+            time = Math.max(time, fileTime);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.damworks.backupsyncutility.rotate;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+
+/**
+ * Grandfather-father-son retention: the latest N backups plus the newest backup of each of
+ * the last N days, weeks, months and years. A tier with a count of 0 is disabled.
+ */
+public class RetentionPolicy {
+    private final int last;
+    private final int daily;
+    private final int weekly;
+    private final int monthly;
+    private final int yearly;
+
+    public RetentionPolicy(int last, int daily, int weekly, int monthly, int yearly) {
+        this.last = last;
+        this.daily = daily;
+        this.weekly = weekly;
+        this.monthly = monthly;
+        this.yearly = yearly;
+    }
+
+    /**
+     * @return The policy configured by the {@code backup.retention.*} settings; without them,
+     *         the latest {@code backup.file.retention.count} backups are kept.
+     */
+    public static RetentionPolicy fromConfig() {
+        return new RetentionPolicy(AppConfig.getRetentionLast(), AppConfig.getRetentionDaily(),
+                AppConfig.getRetentionWeekly(), AppConfig.getRetentionMonthly(), AppConfig.getRetentionYearly());
+    }
+
+    public int getLast() {
+        return last;
+    }
+
+    public int getDaily() {
+        return daily;
+    }
+
+    public int getWeekly() {
+        return weekly;
+    }
+
+    public int getMonthly() {
+        return monthly;
+    }
+
+    public int getYearly() {
+        return yearly;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("last=%d, daily=%d, weekly=%d, monthly=%d, yearly=%d", last, daily, weekly, monthly, yearly);
+    }
+}
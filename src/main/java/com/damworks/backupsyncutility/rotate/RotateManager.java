@@ -1,18 +1,28 @@
 package com.damworks.backupsyncutility.rotate;
 
-import com.damworks.backupsyncutility.auth.GoogleDriveAuth;
+import com.damworks.backupsyncutility.backup.ChangeDetector;
+import com.damworks.backupsyncutility.catalog.BackupCatalog;
+import com.damworks.backupsyncutility.catalog.CatalogEntry;
 import com.damworks.backupsyncutility.config.AppConfig;
-import com.damworks.backupsyncutility.sync.FTPHandler;
-import com.damworks.backupsyncutility.sync.GoogleDriveHandler;
+import com.damworks.backupsyncutility.dedup.ChunkManifest;
+import com.damworks.backupsyncutility.dedup.DedupStore;
+import com.damworks.backupsyncutility.sync.Destination;
+import com.damworks.backupsyncutility.sync.SyncManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
  * Handles file rotation locally and for remote protocols (e.g., FTP, Google Drive).
@@ -24,61 +34,76 @@ public class RotateManager {
      * Rotates all backups: local and for each protocol configured.
      */
     public static void rotateFiles() {
-        // Step 1: Rotate locally and gather files to keep
-        Map<String, String[]> filesToKeep = rotateLocal();
+        rotateFiles(database -> true);
+    }
 
-        // Step 2: Propagate rotation to FTP
-        rotateFTP(filesToKeep);
+    /**
+     * Rotates the backups of some databases: local and for each protocol configured.
+     *
+     * @param databases Selects the databases to rotate by name.
+     */
+    public static void rotateFiles(Predicate<String> databases) {
+        // Step 1: Rotate locally and gather backups to keep
+        Map<String, Set<String>> backupsToKeep = rotateLocal(databases);
 
-        // Step 3: Propagate rotation to Google Drive
-        rotateGoogleDrive(filesToKeep);
+        // Step 2: Propagate rotation to FTP and Google Drive using the backup catalog
+        rotateRemote(backupsToKeep);
+
+        // Step 3: Delete chunks no retained backup references any more
+        if (AppConfig.isDedupEnabled()) {
+            collectChunkGarbage(backupsToKeep);
+        }
     }
 
     /**
-     * Rotates local backup files and returns a map of files to keep for each database.
+     * Rotates local backup files and returns the backups to keep for each database.
      *
-     * @return A map where the key is the database name, and the value is an array of file names to keep.
+     * @param databases Selects the databases to rotate by name.
+     * @return A map where the key is the database name, and the value is the set of backup stems to keep.
      */
-    private static Map<String, String[]> rotateLocal() {
-        Map<String, String[]> filesToKeepMap = new HashMap<>();
+    private static Map<String, Set<String>> rotateLocal(Predicate<String> databases) {
+        Map<String, Set<String>> backupsToKeepMap = new HashMap<>();
         String baseBackupPath = AppConfig.getLocalBackupPath();
 
         File baseDirectory = new File(baseBackupPath);
         if (!baseDirectory.exists() || !baseDirectory.isDirectory()) {
             logger.error("Base backup directory is invalid: {}", baseBackupPath);
-            return filesToKeepMap;
+            return backupsToKeepMap;
         }
 
         File[] databaseDirectories = baseDirectory.listFiles(File::isDirectory);
         if (databaseDirectories == null || databaseDirectories.length == 0) {
             logger.info("No database directories found for rotation.");
-            return filesToKeepMap;
+            return backupsToKeepMap;
         }
 
+        RetentionPolicy policy = RetentionPolicy.fromConfig();
+        logger.info("Rotating local backups with retention policy: {}", policy);
+        ChangeDetector detector = AppConfig.isSkipUnchangedEnabled() ? ChangeDetector.fromConfig() : null;
+
         for (File databaseDirectory : databaseDirectories) {
             String databaseName = databaseDirectory.getName();
+            if (!databases.test(databaseName)) {
+                continue;
+            }
 
             try {
-                File[] localFiles = databaseDirectory.listFiles(File::isFile);
-                if (localFiles == null || localFiles.length == 0) {
+                // Keep the backup an unchanged database is still carried forward on
+                String recorded = detector != null ? detector.getRecordedBackup(databaseName) : null;
+                Set<String> pinned = recorded != null
+                        ? Set.of(RetentionEngine.stemOf(Paths.get(recorded).getFileName().toString()))
+                        : Set.of();
+
+                // Rotate local files in a single pass and record the ones that are gone
+                Set<String> backupsToKeep = RotationHandler.rotateFiles(databaseDirectory.getAbsolutePath(), policy,
+                        pinned, file -> recordLocalDelete(databaseName, file.getFileName().toString()));
+                if (backupsToKeep.isEmpty()) {
                     logger.warn("No local files found for database: {}", databaseName);
                     continue;
                 }
 
-                // Sort files by last modified date (most recent first)
-                Arrays.sort(localFiles, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
-
-                // Identify files to keep
-                String[] filesToKeep = Arrays.stream(localFiles)
-                        .limit(AppConfig.getRemoteFileRetentionCount())
-                        .map(File::getName)
-                        .toArray(String[]::new);
-
-                // Rotate local files
-                RotationHandler.rotateFiles(databaseDirectory.getAbsolutePath(), AppConfig.getRemoteFileRetentionCount());
-
-                // Store the files to keep for this database
-                filesToKeepMap.put(databaseName, filesToKeep);
+                // Store the backups to keep for this database
+                backupsToKeepMap.put(databaseName, backupsToKeep);
 
             } catch (IOException e) {
                 logger.error("Error during rotation for database {}: {}", databaseName, e.getMessage());
@@ -86,82 +111,172 @@ public class RotateManager {
         }
 
         logger.info("Local file rotation completed.");
-        return filesToKeepMap;
+        return backupsToKeepMap;
     }
 
     /**
-     * Rotates backup files on the FTP server, keeping only the files specified.
+     * Propagates the rotation to every destination. Deletions are taken from the backup catalog,
+     * so the folder of a database is only listed when it is due for reconciliation. Each database
+     * is due on its own schedule, since a daemon job only rotates its own databases.
      *
-     * @param filesToKeepMap A map where the key is the database name, and the value is an array of file names to keep.
+     * @param backupsToKeepMap A map where the key is the database name, and the value is the set of backup stems to keep.
      */
-    private static void rotateFTP(Map<String, String[]> filesToKeepMap) {
+    private static void rotateRemote(Map<String, Set<String>> backupsToKeepMap) {
+        List<Destination> destinations = SyncManager.createDestinations();
         try {
-            FTPHandler ftpHandler = new FTPHandler(
-                    AppConfig.getFTPServer(),
-                    AppConfig.getFTPPort(),
-                    AppConfig.getFTPUser(),
-                    AppConfig.getFTPPassword()
-            );
-
-            for (Map.Entry<String, String[]> entry : filesToKeepMap.entrySet()) {
-                String databaseName = entry.getKey();
-                String[] filesToKeep = entry.getValue();
-                String remotePath = AppConfig.getFTPRemotePath() + "/" + databaseName;
-
-                String[] remoteFiles = ftpHandler.listFiles(remotePath);
-
-                if (remoteFiles == null || remoteFiles.length == 0) {
-                    logger.warn("No files found on FTP for database: {}", databaseName);
-                    continue;
-                }
+            BackupCatalog catalog = BackupCatalog.shared();
+            long reconcileInterval = TimeUnit.DAYS.toMillis(AppConfig.getCatalogReconcileDays());
 
-                // Delete files that are not in the list of files to keep
-                for (String remoteFile : remoteFiles) {
-                    if (!Arrays.asList(filesToKeep).contains(remoteFile)) {
-                        ftpHandler.deleteFile(remotePath + "/" + remoteFile);
-                        logger.info("Deleted old file from FTP: {}/{}", databaseName, remoteFile);
+            for (Destination destination : destinations) {
+                int reconciled = 0;
+                try {
+                    for (Map.Entry<String, Set<String>> entry : backupsToKeepMap.entrySet()) {
+                        String databaseName = entry.getKey();
+                        Set<String> keep = entry.getValue();
+                        boolean reconcile = System.currentTimeMillis()
+                                - catalog.getReconciledAt(destination.getName(), databaseName) >= reconcileInterval;
+                        Map<String, String> toDelete = reconcile
+                                ? reconcile(catalog, destination, databaseName, keep)
+                                : findExpiredCopies(catalog, destination, databaseName, keep);
+                        deleteCopies(catalog, destination, databaseName, toDelete);
+                        if (reconcile) {
+                            catalog.recordReconciled(destination.getName(), databaseName);
+                            reconciled++;
+                        }
                     }
+                    logger.info("{} rotation completed{}.", destination.getName(),
+                            reconciled > 0 ? " (" + reconciled + " database(s) reconciled)" : "");
+                } catch (IOException e) {
+                    logger.error("Error during {} rotation: {}", destination.getName(), e.getMessage());
                 }
             }
+        } catch (UncheckedIOException e) {
+            logger.error("Error during remote rotation: {}", e.getMessage());
+        } finally {
+            SyncManager.closeDestinations(destinations);
+        }
+    }
 
-            ftpHandler.close();
-            logger.info("FTP rotation completed.");
-        } catch (IOException e) {
-            logger.error("Error during FTP rotation: {}", e.getMessage());
+    /**
+     * Looks up the copies of rotated backups in the catalog.
+     *
+     * @return Remote references (or null) keyed by the remote file name.
+     */
+    private static Map<String, String> findExpiredCopies(BackupCatalog catalog, Destination destination,
+                                                         String databaseName, Set<String> keep) {
+        Map<String, String> toDelete = new LinkedHashMap<>();
+        for (CatalogEntry entry : catalog.findCopies(destination.getName(), databaseName)) {
+            if (!keep.contains(RetentionEngine.stemOf(entry.getFileName()))) {
+                CatalogEntry.RemoteCopy copy = entry.getCopies().get(destination.getName());
+                toDelete.put(copy.getRemoteName(), copy.getRemoteRef());
+            }
         }
+        return toDelete;
     }
 
     /**
-     * Rotates backup files on Google Drive, keeping only the files specified.
+     * Compares the catalog with the remote listing of a database folder: copies that vanished
+     * are dropped, unknown copies of kept backups are adopted, and everything else is expired.
      *
-     * @param filesToKeepMap A map where the key is the database name, and the value is an array of file names to keep.
+     * @return Remote references keyed by the remote file name of the files to delete.
+     * @throws IOException If the listing fails.
      */
-    private static void rotateGoogleDrive(Map<String, String[]> filesToKeepMap) {
-        try {
-            GoogleDriveHandler driveHandler = new GoogleDriveHandler(GoogleDriveAuth.getDriveService(AppConfig.getGoogleDriveCredentialsFile()));
-            String baseFolderId = AppConfig.getGoogleDriveFolderId();
+    private static Map<String, String> reconcile(BackupCatalog catalog, Destination destination,
+                                                 String databaseName, Set<String> keep) throws IOException {
+        Map<String, String> remoteFiles = destination.list(databaseName);
 
-            for (Map.Entry<String, String[]> entry : filesToKeepMap.entrySet()) {
-                String databaseName = entry.getKey();
-                String[] filesToKeep = entry.getValue();
+        for (CatalogEntry entry : catalog.findCopies(destination.getName(), databaseName)) {
+            CatalogEntry.RemoteCopy copy = entry.getCopies().get(destination.getName());
+            if (!remoteFiles.containsKey(copy.getRemoteName())) {
+                logger.warn("Catalogued copy missing on {}: {}/{}", destination.getName(), databaseName, copy.getRemoteName());
+                catalog.recordDelete(destination.getName(), databaseName, entry.getFileName());
+            } else if (entry.getFileName().endsWith(".part")) {
+                // Adopted by an earlier reconciliation; a partial upload is not a backup
+                catalog.recordDelete(destination.getName(), databaseName, entry.getFileName());
+            }
+        }
 
-                // Find or create the folder for this database
-                String folderId = driveHandler.getOrCreateFolder(databaseName, baseFolderId);
+        Map<String, String> toDelete = new LinkedHashMap<>();
+        for (Map.Entry<String, String> remoteFile : remoteFiles.entrySet()) {
+            String backupName = backupName(remoteFile.getKey());
+            if (!keep.contains(RetentionEngine.stemOf(backupName))) {
+                toDelete.put(remoteFile.getKey(), remoteFile.getValue());
+                continue;
+            }
+            // Partial uploads of kept backups stay for resuming, but are not copies
+            if (remoteFile.getKey().endsWith(".part")) {
+                continue;
+            }
+            CatalogEntry entry = catalog.get(databaseName, backupName);
+            if (entry == null || !entry.getCopies().containsKey(destination.getName())) {
+                catalog.recordCopy(destination.getName(), databaseName, backupName, remoteFile.getKey(), remoteFile.getValue());
+            }
+        }
+        return toDelete;
+    }
 
-                // List files in the Google Drive folder
-                List<com.google.api.services.drive.model.File> remoteFiles = driveHandler.listFiles(folderId);
+    /**
+     * Deletes remote files and records the deletions in the catalog.
+     *
+     * @param toDelete Remote references (or null) keyed by the remote file name.
+     * @throws IOException If the destination cannot be reached.
+     */
+    private static void deleteCopies(BackupCatalog catalog, Destination destination, String databaseName,
+                                     Map<String, String> toDelete) throws IOException {
+        if (toDelete.isEmpty()) {
+            return;
+        }
+        Set<String> failed = new HashSet<>(destination.delete(databaseName, toDelete));
+        for (String remoteName : toDelete.keySet()) {
+            if (failed.contains(remoteName)) {
+                logger.error("Failed to delete old file from {}: {}/{}", destination.getName(), databaseName, remoteName);
+            } else {
+                logger.info("Deleted old file from {}: {}/{}", destination.getName(), databaseName, remoteName);
+                catalog.recordDelete(destination.getName(), databaseName, backupName(remoteName));
+            }
+        }
+    }
 
-                for (com.google.api.services.drive.model.File remoteFile : remoteFiles) {
-                    if (!Arrays.asList(filesToKeep).contains(remoteFile.getName())) {
-                        driveHandler.deleteFile(remoteFile.getId());
-                        logger.info("Deleted old file from Google Drive: {}/{}", databaseName, remoteFile.getName());
-                    }
-                }
+    /**
+     * Releases the manifests of rotated backups and deletes the chunks that only they referenced.
+     *
+     * @param backupsToKeepMap A map where the key is the database name, and the value is the set of backup stems to keep.
+     */
+    private static void collectChunkGarbage(Map<String, Set<String>> backupsToKeepMap) {
+        DedupStore store = DedupStore.fromConfig();
+        List<Destination> destinations = SyncManager.createDestinations();
+        try {
+            for (Map.Entry<String, Set<String>> entry : backupsToKeepMap.entrySet()) {
+                store.retainManifests(entry.getKey(),
+                        fileName -> entry.getValue().contains(RetentionEngine.stemOf(fileName)));
             }
+            store.collectGarbage(destinations);
+            logger.info("Chunk garbage collection completed.");
+        } catch (IOException e) {
+            logger.error("Error during chunk garbage collection: {}", e.getMessage());
+        } finally {
+            SyncManager.closeDestinations(destinations);
+        }
+    }
 
-            logger.info("Google Drive rotation completed.");
-        } catch (Exception e) {
-            logger.error("Error during Google Drive rotation: {}", e.getMessage());
+    /**
+     * Records a deleted local file in the backup catalog.
+     */
+    private static void recordLocalDelete(String databaseName, String fileName) {
+        try {
+            BackupCatalog.shared().recordDelete(BackupCatalog.LOCAL, databaseName, fileName);
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Failed to record deletion of {} in the catalog: {}", fileName, e.getMessage());
         }
     }
+
+    /**
+     * @param remoteName Name of a remote file: a dump or its chunk manifest.
+     * @return Name of the dump file it belongs to.
+     */
+    private static String backupName(String remoteName) {
+        return remoteName.endsWith(ChunkManifest.EXTENSION)
+                ? remoteName.substring(0, remoteName.length() - ChunkManifest.EXTENSION.length())
+                : remoteName;
+    }
 }
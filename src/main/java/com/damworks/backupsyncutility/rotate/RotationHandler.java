@@ -1,61 +1,87 @@
 package com.damworks.backupsyncutility.rotate;
 
-import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
- * Handles file rotation to maintain only the latest N files.
+ * Handles file rotation of a local backup directory according to a retention policy.
  */
 public class RotationHandler {
     private static final Logger logger = LoggerFactory.getLogger(RotationHandler.class);
 
     /**
-     * Rotates files in the given directory to maintain only the latest N files.
+     * Rotates the backups in the given directory, deleting every backup the policy does not keep.
+     * The directory is scanned once; all files of a backup are kept or deleted together.
      *
      * @param directoryPath The path to the directory to clean up.
-     * @param retentionCount The number of most recent files to retain.
-     * @throws IOException If an error occurs during rotation.
+     * @param policy        The retention policy.
+     * @param onDeleted     Receives each file that was deleted.
+     * @return Stems of the backups that are kept (see {@link RetentionEngine#stemOf(String)}).
+     * @throws IOException If the directory cannot be read.
      */
-    public static void rotateFiles(String directoryPath, int retentionCount) throws IOException {
-        File directory = new File(directoryPath);
-        if (!directory.exists() || !directory.isDirectory()) {
+    public static Set<String> rotateFiles(String directoryPath, RetentionPolicy policy, Consumer<Path> onDeleted)
+            throws IOException {
+        return rotateFiles(directoryPath, policy, Set.of(), onDeleted);
+    }
+
+    /**
+     * Rotates the backups in the given directory like {@link #rotateFiles(String, RetentionPolicy, Consumer)},
+     * but always keeps the pinned backups, whatever their age.
+     *
+     * @param directoryPath The path to the directory to clean up.
+     * @param policy        The retention policy.
+     * @param pinned        Stems of backups to keep in addition to those the policy selects.
+     * @param onDeleted     Receives each file that was deleted.
+     * @return Stems of the backups that are kept (see {@link RetentionEngine#stemOf(String)}).
+     * @throws IOException If the directory cannot be read.
+     */
+    public static Set<String> rotateFiles(String directoryPath, RetentionPolicy policy, Set<String> pinned,
+                                          Consumer<Path> onDeleted) throws IOException {
+        Path directory = Paths.get(directoryPath);
+        if (!Files.isDirectory(directory)) {
             throw new IOException("Invalid backup directory: " + directoryPath);
         }
 
-        File[] files = directory.listFiles(File::isFile);
-        if (files == null || files.length <= retentionCount) {
-            logger.info("No rotation needed. Files in directory: {}", files != null ? files.length : 0);
-            return;
+        List<RetentionEngine.Backup> backups = RetentionEngine.scan(directory);
+        Set<String> keep = new HashSet<>(RetentionEngine.select(backups, policy));
+        for (RetentionEngine.Backup backup : backups) {
+            if (pinned.contains(backup.getStem()) && keep.add(backup.getStem())) {
+                logger.info("Keeping pinned backup: {}", backup.getStem());
+            }
+        }
+        if (keep.size() == backups.size()) {
+            logger.info("No rotation needed. Backups in directory: {}", backups.size());
+            return keep;
         }
 
-        // Sort files by creation time (most recent first)
-        Arrays.sort(files, Comparator.comparingLong((File file) -> {
-            try {
-                return Files.readAttributes(file.toPath(), BasicFileAttributes.class).creationTime().toMillis();
-            } catch (IOException e) {
-                logger.warn("Could not get creation time for file: {}", file.getAbsolutePath());
-                return Long.MAX_VALUE; // Push files with issues to the end
+        // Delete the files of every backup the policy does not keep
+        String database = directory.getFileName().toString();
+        for (RetentionEngine.Backup backup : backups) {
+            if (keep.contains(backup.getStem())) {
+                continue;
             }
-        }).reversed());
-
-        // Delete files beyond retention count
-        for (int i = retentionCount; i < files.length; i++) {
-            File fileToDelete = files[i];
-            if (fileToDelete.delete()) {
-                logger.info("Deleted old backup file: {}", fileToDelete.getName());
-            } else {
-                logger.error("Failed to delete old backup file: {}. Please check permissions or locks.", fileToDelete.getAbsolutePath());
+            for (Path file : backup.getFiles()) {
+                try {
+                    Files.delete(file);
+                    logger.info("Deleted old backup file: {}", file.getFileName());
+                    Metrics.DELETES.labels("local", database).inc();
+                    onDeleted.accept(file);
+                } catch (IOException e) {
+                    logger.error("Failed to delete old backup file: {}. Please check permissions or locks.", file);
+                    Metrics.DELETE_FAILURES.labels("local", database).inc();
+                }
             }
         }
+        return keep;
     }
 }
@@ -0,0 +1,172 @@
+package com.damworks.backupsyncutility.schedule;
+
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A five-field cron expression: minute, hour, day of month, month and day of week.
+ * <p>
+ * Fields accept {@code *}, single values, ranges ({@code 1-5}), steps ({@code *}{@code /15},
+ * {@code 8-18/2}) and comma-separated lists; months and days of week also accept three-letter
+ * names, and Sunday is 0 or 7. As in cron, a time matches when either day field matches if both
+ * are restricted. The macros {@code @hourly}, {@code @daily}, {@code @weekly}, {@code @monthly}
+ * and {@code @yearly} are supported.
+ * <p>
+ * Times are matched against the wall clock. A time skipped when clocks go forward runs once the
+ * clock has moved on (02:30 becomes 03:30), and a time repeated when clocks go back runs once.
+ */
+public class CronSchedule {
+    private static final Map<String, String> MACROS = Map.of(
+            "@hourly", "0 * * * *",
+            "@daily", "0 0 * * *",
+            "@midnight", "0 0 * * *",
+            "@weekly", "0 0 * * 0",
+            "@monthly", "0 0 1 * *",
+            "@yearly", "0 0 1 1 *",
+            "@annually", "0 0 1 1 *");
+    private static final String[] MONTHS = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+    private static final String[] DAYS = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+    // Far enough to cross any leap-day-only schedule
+    private static final int MAX_YEARS = 8;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean daysOfMonthRestricted;
+    private final boolean daysOfWeekRestricted;
+
+    private CronSchedule(String expression, String[] fields) {
+        this.expression = expression;
+        this.minutes = parseField(fields[0], 0, 59, null);
+        this.hours = parseField(fields[1], 0, 23, null);
+        this.daysOfMonth = parseField(fields[2], 1, 31, null);
+        this.months = parseField(fields[3], 1, 12, MONTHS);
+        BitSet days = parseField(fields[4], 0, 7, DAYS);
+        if (days.get(7)) {
+            days.set(0);
+        }
+        this.daysOfWeek = days;
+        this.daysOfMonthRestricted = !fields[2].startsWith("*");
+        this.daysOfWeekRestricted = !fields[4].startsWith("*");
+    }
+
+    /**
+     * Parses a cron expression.
+     *
+     * @param expression Five fields separated by whitespace, or a macro such as {@code @daily}.
+     * @return The schedule.
+     * @throws IllegalArgumentException If the expression is invalid.
+     */
+    public static CronSchedule parse(String expression) {
+        String trimmed = expression.trim();
+        String[] fields = MACROS.getOrDefault(trimmed.toLowerCase(Locale.ROOT), trimmed).split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression needs 5 fields: " + expression);
+        }
+        return new CronSchedule(trimmed, fields);
+    }
+
+    private static BitSet parseField(String field, int min, int max, String[] names) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, Integer.MAX_VALUE, null, field);
+                part = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                from = parseNumber(dash >= 0 ? part.substring(0, dash) : part, min, max, names, field);
+                // "5/15" means from 5 to the end in steps of 15
+                to = dash >= 0 ? parseNumber(part.substring(dash + 1), min, max, names, field) : slash >= 0 ? max : from;
+            }
+            if (from > to) {
+                throw new IllegalArgumentException("Invalid range in cron field: " + field);
+            }
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+
+    private static int parseNumber(String text, int min, int max, String[] names, String field) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(text)) {
+                    // Month names start at 1, day names at 0
+                    return i + min;
+                }
+            }
+        }
+        try {
+            int value = Integer.parseInt(text);
+            if (value < min || value > max) {
+                throw new IllegalArgumentException("Value " + value + " out of range in cron field: " + field);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cron field: " + field, e);
+        }
+    }
+
+    /**
+     * Returns the first time after the given one that matches this schedule.
+     *
+     * @param after Time to search from (exclusive).
+     * @return The next matching minute, in the zone of {@code after}.
+     * @throws IllegalStateException If nothing matches within several years (e.g., "0 0 31 2 *").
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        LocalDateTime time = after.toLocalDateTime().truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        LocalDateTime limit = time.plusYears(MAX_YEARS);
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                // A wall-clock time in a gap resolves to the same time after the gap; in an
+                // overlap the offset of "after" is kept, so the repeated hour is not run twice
+                ZonedDateTime candidate = ZonedDateTime.ofLocal(time, after.getZone(), after.getOffset());
+                if (candidate.isAfter(after)) {
+                    return candidate;
+                }
+                time = time.plusMinutes(1);
+            }
+        }
+        throw new IllegalStateException("Cron expression never matches: " + expression);
+    }
+
+    private boolean matchesDay(LocalDateTime time) {
+        boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (daysOfMonthRestricted && daysOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
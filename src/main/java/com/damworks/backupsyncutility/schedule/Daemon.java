@@ -0,0 +1,161 @@
+package com.damworks.backupsyncutility.schedule;
+
+import com.damworks.backupsyncutility.concurrent.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs backup jobs on their cron schedules inside one long-lived process, so connections,
+ * API clients and caches stay warm between runs.
+ * <p>
+ * Each run starts on its own (virtual, where available) thread. A job that is still running
+ * when it is due again is skipped, and a database that another job is currently backing up
+ * is left out of the run.
+ */
+public class Daemon {
+    private static final Logger logger = LoggerFactory.getLogger(Daemon.class);
+    // Sleep in short steps so changes of the wall clock (NTP, DST, suspend) are noticed
+    private static final long MAX_SLEEP_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final List<ScheduledJob> jobs;
+    private final JobRunner runner;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "daemon-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService workers = VirtualThreads.newThreadPerTaskExecutor("backup-job");
+    private final Set<String> activeDatabases = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Runs one job over a set of databases.
+     */
+    @FunctionalInterface
+    public interface JobRunner {
+        void run(ScheduledJob job, String[] databases) throws Exception;
+    }
+
+    /**
+     * @param jobs   Jobs to schedule.
+     * @param runner Performs a run of a job.
+     */
+    public Daemon(List<ScheduledJob> jobs, JobRunner runner) {
+        this.jobs = List.copyOf(jobs);
+        this.runner = runner;
+    }
+
+    /**
+     * Schedules every job at its next due time.
+     */
+    public void start() {
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        for (ScheduledJob job : jobs) {
+            ZonedDateTime next = job.getSchedule().next(now);
+            logger.info("Scheduled job {}; next run at {}", job, next);
+            schedule(job, next);
+        }
+    }
+
+    private void schedule(ScheduledJob job, ZonedDateTime next) {
+        long delay = Duration.between(ZonedDateTime.now(zone), next).toMillis();
+        try {
+            if (delay > 0) {
+                timer.schedule(() -> schedule(job, next), Math.min(delay, MAX_SLEEP_MILLIS), TimeUnit.MILLISECONDS);
+                return;
+            }
+        } catch (RejectedExecutionException e) {
+            // Stopping
+            return;
+        }
+
+        trigger(job);
+        // Runs missed while the machine was suspended are made up only once
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        schedule(job, job.getSchedule().next(now.isAfter(next) ? now : next));
+    }
+
+    private void trigger(ScheduledJob job) {
+        if (!job.tryStart()) {
+            logger.warn("Skipping job {}: the previous run is still in progress.", job.getName());
+            return;
+        }
+        try {
+            workers.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            job.finish();
+        }
+    }
+
+    private void run(ScheduledJob job) {
+        List<String> claimed = new ArrayList<>();
+        try {
+            for (String database : job.getDatabases()) {
+                if (activeDatabases.add(database)) {
+                    claimed.add(database);
+                } else {
+                    logger.warn("Skipping {} in job {}: another job is backing it up.", database, job.getName());
+                }
+            }
+            if (claimed.isEmpty()) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            logger.info("Job {} started for {}", job.getName(), claimed);
+            runner.run(job, claimed.toArray(String[]::new));
+            logger.info("Job {} finished in {} s", job.getName(), (System.nanoTime() - start) / 1_000_000_000);
+        } catch (Exception e) {
+            logger.error("Job {} failed: {}", job.getName(), e.getMessage(), e);
+        } finally {
+            activeDatabases.removeAll(claimed);
+            job.finish();
+        }
+    }
+
+    /**
+     * Stops scheduling and waits for running jobs to finish.
+     *
+     * @param grace Longest time to wait for running jobs before interrupting them.
+     */
+    public void stop(Duration grace) {
+        logger.info("Stopping daemon; waiting up to {} s for running jobs.", grace.toSeconds());
+        timer.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(grace.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("Interrupting jobs that are still running.");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Blocks until {@link #stop} has completed.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+}
@@ -0,0 +1,77 @@
+package com.damworks.backupsyncutility.schedule;
+
+import com.damworks.backupsyncutility.backup.DumpTarget;
+import com.damworks.backupsyncutility.config.AppConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A group of databases backed up on a cron schedule by the {@link Daemon}.
+ */
+public class ScheduledJob {
+    private final String name;
+    private final CronSchedule schedule;
+    private final List<String> databases;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public ScheduledJob(String name, CronSchedule schedule, List<String> databases) {
+        this.name = name;
+        this.schedule = schedule;
+        this.databases = List.copyOf(databases);
+    }
+
+    /**
+     * Reads the jobs listed in {@code daemon.jobs}. Their databases are resolved to target names
+     * (see {@link DumpTarget#select(String[])}), so jobs selecting the same database of a fleet
+     * host in different ways still never back it up at the same time.
+     *
+     * @return The configured jobs; empty if none are configured.
+     * @throws IllegalArgumentException If a job has no schedule or an invalid one, or selects an unknown database.
+     */
+    public static List<ScheduledJob> fromConfig() {
+        List<ScheduledJob> jobs = new ArrayList<>();
+        for (String name : AppConfig.getDaemonJobs()) {
+            String schedule = AppConfig.getDaemonJobSchedule(name);
+            if (schedule == null) {
+                throw new IllegalArgumentException("No schedule configured for job: " + name);
+            }
+            List<String> databases = DumpTarget.select(AppConfig.getDaemonJobDatabases(name)).stream()
+                    .map(DumpTarget::getName)
+                    .toList();
+            jobs.add(new ScheduledJob(name, CronSchedule.parse(schedule), databases));
+        }
+        return jobs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CronSchedule getSchedule() {
+        return schedule;
+    }
+
+    public List<String> getDatabases() {
+        return databases;
+    }
+
+    /**
+     * Marks the job as running.
+     *
+     * @return False if the job was already running.
+     */
+    boolean tryStart() {
+        return running.compareAndSet(false, true);
+    }
+
+    void finish() {
+        running.set(false);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%s] %s", name, schedule, databases);
+    }
+}
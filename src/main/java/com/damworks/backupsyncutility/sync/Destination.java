@@ -0,0 +1,177 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.verify.ChecksumMismatchException;
+import com.damworks.backupsyncutility.verify.Checksums;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A remote location that backup files are uploaded to.
+ */
+public interface Destination extends Closeable {
+
+    /**
+     * @return Short name used in logs and reports (e.g., "FTP").
+     */
+    String getName();
+
+    /**
+     * Uploads a stream into the folder of the given database.
+     *
+     * @param inputStream Content to upload; read until end of stream.
+     * @param database    Name of the database the file belongs to.
+     * @param fileName    Name of the remote file.
+     * @return Reference to the remote copy (remote path or file ID).
+     * @throws IOException If the upload fails.
+     */
+    String upload(InputStream inputStream, String database, String fileName) throws IOException;
+
+    /**
+     * Uploads a stream holding the content of a local file. Destinations that can resume
+     * interrupted uploads use the local file to do so; others simply upload the stream.
+     *
+     * @param inputStream Content to upload; read until end of stream.
+     * @param database    Name of the database the file belongs to.
+     * @param fileName    Name of the remote file.
+     * @param localFile   The complete local file the stream was read from, or null if it is still being written.
+     * @return Reference to the remote copy (remote path or file ID).
+     * @throws IOException If the upload fails.
+     */
+    default String upload(InputStream inputStream, String database, String fileName, Path localFile) throws IOException {
+        return upload(inputStream, database, fileName);
+    }
+
+    /**
+     * Deletes a file from the folder of the given database.
+     *
+     * @param database  Name of the database the file belongs to.
+     * @param fileName  Name of the remote file.
+     * @param remoteRef Reference returned by the upload, or null if unknown.
+     * @throws IOException If the file exists but cannot be deleted.
+     */
+    void delete(String database, String fileName, String remoteRef) throws IOException;
+
+    /**
+     * Deletes several files from the folder of the given database.
+     *
+     * @param database Name of the database the files belong to.
+     * @param files    Remote references (or null) keyed by file name.
+     * @return Names of the files that could not be deleted.
+     * @throws IOException If the destination cannot be reached at all.
+     */
+    default List<String> delete(String database, Map<String, String> files) throws IOException {
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            try {
+                delete(database, file.getKey(), file.getValue());
+            } catch (IOException e) {
+                failed.add(file.getKey());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Checks whether the folder of the given database already holds a complete copy of a file,
+     * so the upload can be skipped. Destinations that cannot tell cheaply return false.
+     *
+     * @param database Name of the database the file belongs to.
+     * @param fileName Name of the remote file.
+     * @param size     Size of the local file in bytes.
+     * @return True if a file with that name and size exists.
+     * @throws IOException If the destination cannot be queried.
+     */
+    default boolean hasCopy(String database, String fileName, long size) throws IOException {
+        return false;
+    }
+
+    /**
+     * Lists the files in the folder of the given database.
+     *
+     * @param database Name of the database.
+     * @return Remote references keyed by file name; empty if the folder does not exist.
+     * @throws IOException If the listing fails.
+     */
+    Map<String, String> list(String database) throws IOException;
+
+    /**
+     * Returns the size of a file in the folder of the given database.
+     *
+     * @param database  Name of the database the file belongs to.
+     * @param fileName  Name of the remote file.
+     * @param remoteRef Reference returned by the upload or listing, or null if unknown.
+     * @return Size in bytes, or -1 if unknown.
+     * @throws IOException If the destination cannot be queried.
+     */
+    long size(String database, String fileName, String remoteRef) throws IOException;
+
+    /**
+     * Downloads a file, or a byte range of it, from the folder of the given database.
+     *
+     * @param database     Name of the database the file belongs to.
+     * @param fileName     Name of the remote file.
+     * @param remoteRef    Reference returned by the upload or listing, or null if unknown.
+     * @param offset       First byte to download.
+     * @param length       Number of bytes to download, or -1 for the rest of the file.
+     * @param outputStream Receives the bytes.
+     * @throws IOException If the download fails.
+     */
+    void download(String database, String fileName, String remoteRef, long offset, long length,
+                  OutputStream outputStream) throws IOException;
+
+    /**
+     * Checks a remote copy against the checksums of the local file, using only what the
+     * destination can report without downloading the file. By default only the size is compared.
+     *
+     * @param database  Name of the database the file belongs to.
+     * @param fileName  Name of the remote file.
+     * @param remoteRef Reference returned by the upload, or null if unknown.
+     * @param expected  Checksums of the local file.
+     * @return What was compared (e.g., "MD5" or "SIZE"), or null if the destination reports nothing usable.
+     * @throws ChecksumMismatchException If the remote copy differs.
+     * @throws IOException               If the destination cannot be queried.
+     */
+    default String verify(String database, String fileName, String remoteRef, Checksums expected) throws IOException {
+        long size = size(database, fileName, remoteRef);
+        return size >= 0 ? expected.verifySize(size, getName() + ":" + database + "/" + fileName) : null;
+    }
+
+    /**
+     * Completes uploads that an earlier run left unfinished, if this destination supports it.
+     */
+    default void resumePending() {
+    }
+
+    /**
+     * Uploads a local dump file. The database name is taken from the file's parent directory.
+     *
+     * @param localFilePath Path to the local file.
+     * @return Reference to the remote copy (remote path or file ID).
+     * @throws IOException If the file cannot be read or the upload fails.
+     */
+    default String upload(String localFilePath) throws IOException {
+        File file = new File(localFilePath);
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            return upload(inputStream, file.getParentFile().getName(), file.getName());
+        }
+    }
+
+    /**
+     * Releases any connection held by this destination.
+     *
+     * @throws IOException If the connection cannot be closed cleanly.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,31 @@
+package com.damworks.backupsyncutility.sync;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Creates a {@link Destination} from the configuration. Providers are discovered with
+ * {@link java.util.ServiceLoader}, so a backend on the classpath only needs an entry in
+ * {@code META-INF/services/com.damworks.backupsyncutility.sync.DestinationProvider}.
+ */
+public interface DestinationProvider {
+
+    /**
+     * @return Type name used in {@code backup.destinations} (e.g., "ftp").
+     */
+    String getType();
+
+    /**
+     * @return True if the settings this backend needs are present in the configuration.
+     */
+    boolean isConfigured();
+
+    /**
+     * Creates the destination from the configuration.
+     *
+     * @return A new destination; the caller must close it.
+     * @throws IOException              If the backend cannot be reached or initialized.
+     * @throws GeneralSecurityException If the backend's credentials cannot be loaded.
+     */
+    Destination create() throws IOException, GeneralSecurityException;
+}
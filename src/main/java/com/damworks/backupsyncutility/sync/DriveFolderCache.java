@@ -0,0 +1,131 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches Google Drive folder IDs by (parent folder ID, folder name), in memory and on disk,
+ * so folders are only looked up once instead of on every upload and rotation.
+ * <p>
+ * Lookups for the same folder are serialized, so parallel workers never create duplicates.
+ */
+public class DriveFolderCache {
+    private static final Logger logger = LoggerFactory.getLogger(DriveFolderCache.class);
+    private static DriveFolderCache shared;
+
+    private final Path cacheFile;
+    private final Map<String, String> folderIds = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheFile File in which the cache is persisted between runs.
+     */
+    public DriveFolderCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    /**
+     * @return The process-wide cache stored in the configured state directory.
+     */
+    public static synchronized DriveFolderCache shared() {
+        if (shared == null) {
+            shared = new DriveFolderCache(Paths.get(AppConfig.getStatePath(), "drive-folders.properties"));
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the cached ID of a folder, resolving and caching it on a miss. Only one thread
+     * resolves a given folder at a time; the others wait and then use its result.
+     *
+     * @param parentFolderId ID of the parent folder.
+     * @param folderName     Name of the folder.
+     * @param resolver       Finds or creates the folder on Google Drive.
+     * @return ID of the folder.
+     * @throws IOException If the folder cannot be resolved.
+     */
+    public String get(String parentFolderId, String folderName, FolderResolver resolver) throws IOException {
+        String key = key(parentFolderId, folderName);
+        String folderId = folderIds.get(key);
+        if (folderId != null) {
+            return folderId;
+        }
+
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            folderId = folderIds.get(key);
+            if (folderId == null) {
+                folderId = resolver.resolve();
+                folderIds.put(key, folderId);
+                save();
+            }
+            return folderId;
+        }
+    }
+
+    /**
+     * Drops a folder from the cache, e.g. after Google Drive reported it as not found.
+     *
+     * @param parentFolderId ID of the parent folder.
+     * @param folderName     Name of the folder.
+     */
+    public void invalidate(String parentFolderId, String folderName) {
+        if (folderIds.remove(key(parentFolderId, folderName)) != null) {
+            logger.info("Invalidated cached Google Drive folder '{}'", folderName);
+            save();
+        }
+    }
+
+    private static String key(String parentFolderId, String folderName) {
+        return parentFolderId + "/" + folderName;
+    }
+
+    private void load() {
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(cacheFile)) {
+            properties.load(inputStream);
+            properties.stringPropertyNames().forEach(key -> folderIds.put(key, properties.getProperty(key)));
+        } catch (IOException | IllegalArgumentException e) {
+            // Properties report a malformed escape with an IllegalArgumentException
+            logger.warn("Ignoring unreadable folder cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    private synchronized void save() {
+        Properties properties = new Properties();
+        properties.putAll(folderIds);
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                properties.store(outputStream, "Google Drive folder IDs by parent/name");
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not persist folder cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Finds or creates a folder on Google Drive.
+     */
+    @FunctionalInterface
+    public interface FolderResolver {
+        String resolve() throws IOException;
+    }
+}
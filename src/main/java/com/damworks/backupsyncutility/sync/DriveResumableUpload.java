@@ -0,0 +1,463 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.metrics.Metrics;
+import com.damworks.backupsyncutility.throttle.RateLimiter;
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.EmptyContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.json.JsonHttpContent;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * Uploads a local file with the Google Drive resumable upload protocol.
+ * <p>
+ * The file is sent in fixed-size chunks. After every acknowledged chunk the session URI and
+ * offset are written to a state file, so an interrupted upload (even by a process restart)
+ * continues from the last byte Google Drive confirmed instead of starting over.
+ */
+public class DriveResumableUpload {
+    private static final Logger logger = LoggerFactory.getLogger(DriveResumableUpload.class);
+
+    /** Chunk sizes must be a multiple of 256 KiB, except for the last chunk. */
+    public static final int CHUNK_GRANULARITY = 256 * 1024;
+    private static final int STATUS_RESUME_INCOMPLETE = 308;
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final Drive driveService;
+    private final Path stateDirectory;
+    private final int chunkSize;
+    private final RateLimiter limiter;
+    private final RetryPolicy retryPolicy = RetryPolicy.fromConfig();
+
+    /**
+     * @param driveService   Authorized Drive client.
+     * @param stateDirectory Directory in which upload progress is persisted.
+     * @param chunkSize      Requested chunk size in bytes; rounded up to a multiple of 256 KiB.
+     * @param limiter        Paces the chunks sent, including resent ones.
+     */
+    public DriveResumableUpload(Drive driveService, Path stateDirectory, int chunkSize, RateLimiter limiter) {
+        this.driveService = driveService;
+        this.stateDirectory = stateDirectory;
+        this.chunkSize = roundChunkSize(chunkSize);
+        this.limiter = limiter;
+    }
+
+    /**
+     * Rounds a chunk size up to the next multiple of 256 KiB.
+     *
+     * @param chunkSize Requested chunk size in bytes.
+     * @return A valid chunk size.
+     */
+    public static int roundChunkSize(int chunkSize) {
+        int chunks = Math.max(1, (chunkSize + CHUNK_GRANULARITY - 1) / CHUNK_GRANULARITY);
+        return chunks * CHUNK_GRANULARITY;
+    }
+
+    /**
+     * Uploads a local file into a Drive folder, resuming a previous attempt if one was recorded.
+     *
+     * @param localFile Path of the file to upload.
+     * @param metadata  Drive metadata (name and a single parent) of the new file.
+     * @return The ID of the uploaded Drive file.
+     * @throws IOException If the upload fails after all retries.
+     */
+    public String upload(Path localFile, File metadata) throws IOException {
+        try (FileChannel channel = FileChannel.open(localFile, StandardOpenOption.READ)) {
+            return upload(localFile, metadata, new FileChunkSource(channel));
+        }
+    }
+
+    /**
+     * Uploads a stream holding the content of a local file, so the file does not have to be read
+     * again. Progress is still recorded against the local file, which a later run resumes from.
+     *
+     * @param inputStream Content of {@code localFile}, read once from the start.
+     * @param localFile   Path of the file whose content is streamed.
+     * @param metadata    Drive metadata (name and a single parent) of the new file.
+     * @return The ID of the uploaded Drive file.
+     * @throws IOException If the upload fails after all retries.
+     */
+    public String upload(InputStream inputStream, Path localFile, File metadata) throws IOException {
+        return upload(localFile, metadata, new StreamChunkSource(inputStream));
+    }
+
+    /**
+     * Finishes uploads that a previous process left incomplete. Uploads whose local file is gone
+     * or has changed are discarded.
+     */
+    public void resumePending() {
+        if (!Files.isDirectory(stateDirectory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stateFiles = Files.newDirectoryStream(stateDirectory, "*.properties")) {
+            for (Path stateFile : stateFiles) {
+                UploadState state = UploadState.load(stateFile);
+                Path localFile = state != null ? Paths.get(state.localPath) : null;
+                if (localFile == null || !Files.isRegularFile(localFile)
+                        || !state.matches(Files.size(localFile), Files.getLastModifiedTime(localFile).toMillis())) {
+                    logger.info("Discarding stale upload state {}", stateFile.getFileName());
+                    Files.deleteIfExists(stateFile);
+                    continue;
+                }
+
+                File metadata = new File()
+                        .setName(state.name)
+                        .setParents(Collections.singletonList(state.parentId));
+                try {
+                    String fileId = upload(localFile, metadata);
+                    logger.info("Completed interrupted upload of '{}' (ID: {})", state.name, fileId);
+                } catch (IOException e) {
+                    logger.error("Could not complete interrupted upload of '{}': {}", state.name, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not scan pending uploads in {}: {}", stateDirectory, e.getMessage());
+        }
+    }
+
+    private String upload(Path localFile, File metadata, ChunkSource source) throws IOException {
+        long size = Files.size(localFile);
+        long lastModified = Files.getLastModifiedTime(localFile).toMillis();
+        Path stateFile = stateFileFor(localFile);
+
+        UploadState state = UploadState.load(stateFile);
+        boolean needStatus = state != null && state.matches(size, lastModified);
+        if (needStatus) {
+            logger.info("Resuming upload of {} from a previous session.", localFile.getFileName());
+        } else {
+            state = new UploadState(startSession(metadata, size), localFile, metadata, size, lastModified);
+            state.save(stateFile);
+        }
+
+        long start = System.nanoTime();
+        long startOffset = state.offset;
+        int attempt = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+        while (true) {
+            try {
+                // After a failure or restart, ask the server how much it actually received
+                ChunkResponse response = needStatus ? queryStatus(state) : sendChunk(state, source, buffer);
+                needStatus = false;
+                attempt = 0;
+
+                if (response.fileId != null) {
+                    Files.deleteIfExists(stateFile);
+                    logThroughput(localFile, size - startOffset, start);
+                    return response.fileId;
+                }
+                if (response.expired) {
+                    logger.warn("Upload session for {} expired; starting a new one.", localFile.getFileName());
+                    state = new UploadState(startSession(metadata, size), localFile, metadata, size, lastModified);
+                    startOffset = 0;
+                } else {
+                    state.offset = response.offset;
+                }
+                state.save(stateFile);
+            } catch (IOException e) {
+                if (++attempt >= retryPolicy.getMaxAttempts() || !RetryPolicy.isTransient(e)) {
+                    throw new IOException("Resumable upload of " + localFile.getFileName() + " failed after "
+                            + attempt + " attempts at byte " + state.offset + ": " + e.getMessage(), e);
+                }
+                logger.warn("Chunk upload failed at byte {} (attempt {}/{}): {}", state.offset, attempt,
+                        retryPolicy.getMaxAttempts(), e.getMessage());
+                Metrics.RETRIES.labels("Google Drive", "upload_chunk").inc();
+                retryPolicy.backOff(attempt);
+                needStatus = true;
+            }
+        }
+    }
+
+    /**
+     * Opens a new resumable upload session.
+     *
+     * @return The session URI that chunks are sent to.
+     */
+    private String startSession(File metadata, long size) throws IOException {
+        GenericUrl url = new GenericUrl(driveService.getRootUrl() + "upload/drive/v3/files");
+        url.set("uploadType", "resumable");
+        url.set("fields", "id");
+
+        HttpRequest request = driveService.getRequestFactory()
+                .buildPostRequest(url, new JsonHttpContent(driveService.getJsonFactory(), metadata));
+        request.getHeaders().set("X-Upload-Content-Type", CONTENT_TYPE);
+        request.getHeaders().set("X-Upload-Content-Length", size);
+
+        HttpResponse response = request.execute();
+        try {
+            String location = response.getHeaders().getLocation();
+            if (location == null) {
+                throw new IOException("Google Drive did not return a resumable session URI.");
+            }
+            return location;
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    private ChunkResponse sendChunk(UploadState state, ChunkSource source, ByteBuffer buffer) throws IOException {
+        int length = source.fill(buffer, state.offset, state.size);
+        if (length == 0 && state.offset < state.size) {
+            throw new IOException("Source ended at byte " + state.offset + " of " + state.size + ".");
+        }
+        limiter.acquire(length);
+
+        String range = length == 0
+                ? "bytes */" + state.size
+                : "bytes " + state.offset + "-" + (state.offset + length - 1) + "/" + state.size;
+        return put(state, new ByteArrayContent(CONTENT_TYPE, buffer.array(), 0, length), range);
+    }
+
+    private ChunkResponse queryStatus(UploadState state) throws IOException {
+        return put(state, new EmptyContent(), "bytes */" + state.size);
+    }
+
+    private ChunkResponse put(UploadState state, HttpContent content, String contentRange) throws IOException {
+        HttpRequest request = driveService.getRequestFactory().buildPutRequest(new GenericUrl(state.sessionUri), content);
+        request.getHeaders().setContentRange(contentRange);
+        request.setThrowExceptionOnExecuteError(false);
+        request.setFollowRedirects(false);
+        // Requests built outside the Drive API classes have no parser for the completed File
+        request.setParser(driveService.getObjectParser());
+
+        HttpResponse response = request.execute();
+        try {
+            int status = response.getStatusCode();
+            if (status == 200 || status == 201) {
+                return ChunkResponse.completed(response.parseAs(File.class).getId());
+            }
+            if (status == STATUS_RESUME_INCOMPLETE) {
+                return ChunkResponse.incomplete(parseNextOffset(response.getHeaders().getRange()));
+            }
+            if (status == 404 || status == 410) {
+                return ChunkResponse.expiredSession();
+            }
+            throw new IOException("Unexpected response " + status + ": " + response.getStatusMessage());
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    /**
+     * Parses a "bytes=0-N" Range header into the next offset to send (N + 1).
+     */
+    private static long parseNextOffset(String range) {
+        if (range == null || range.isEmpty()) {
+            return 0;
+        }
+        return Long.parseLong(range.substring(range.lastIndexOf('-') + 1).trim()) + 1;
+    }
+
+    private static void logThroughput(Path localFile, long bytesSent, long startNanos) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        logger.info("Uploaded {} bytes of {} in {} s ({} MB/s)", bytesSent, localFile.getFileName(),
+                String.format("%.1f", seconds), String.format("%.2f", bytesSent / seconds / (1024 * 1024)));
+    }
+
+    private Path stateFileFor(Path localFile) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(localFile.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            return stateDirectory.resolve(HexFormat.of().formatHex(digest) + ".properties");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not available.", e);
+        }
+    }
+
+    /**
+     * Supplies the bytes of a chunk starting at a given offset.
+     */
+    private interface ChunkSource {
+        /**
+         * Fills the buffer from its start with the bytes at {@code offset}, up to its capacity or the end.
+         *
+         * @return Number of bytes placed in the buffer.
+         */
+        int fill(ByteBuffer buffer, long offset, long size) throws IOException;
+    }
+
+    private static class FileChunkSource implements ChunkSource {
+        private final FileChannel channel;
+
+        FileChunkSource(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int fill(ByteBuffer buffer, long offset, long size) throws IOException {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - offset));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return buffer.position();
+        }
+    }
+
+    /**
+     * Reads a stream once, keeping the last chunk so that bytes the server did not acknowledge
+     * can be sent again.
+     */
+    private static class StreamChunkSource implements ChunkSource {
+        private final InputStream inputStream;
+        private long streamPosition;
+        private byte[] previous = new byte[0];
+        private long previousOffset;
+
+        StreamChunkSource(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int fill(ByteBuffer buffer, long offset, long size) throws IOException {
+            buffer.clear();
+            if (offset < previousOffset) {
+                throw new IOException("Cannot rewind stream to byte " + offset + ".");
+            }
+
+            // Re-use the unacknowledged tail of the previous chunk
+            long previousEnd = previousOffset + previous.length;
+            if (offset < previousEnd) {
+                buffer.put(previous, (int) (offset - previousOffset), (int) (previousEnd - offset));
+            } else {
+                inputStream.skipNBytes(offset - streamPosition);
+                streamPosition = offset;
+            }
+
+            while (buffer.hasRemaining()) {
+                int read = inputStream.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (read < 0) {
+                    break;
+                }
+                buffer.position(buffer.position() + read);
+                streamPosition += read;
+            }
+
+            previous = Arrays.copyOf(buffer.array(), buffer.position());
+            previousOffset = offset;
+            return buffer.position();
+        }
+    }
+
+    private static class ChunkResponse {
+        private final long offset;
+        private final String fileId;
+        private final boolean expired;
+
+        private ChunkResponse(long offset, String fileId, boolean expired) {
+            this.offset = offset;
+            this.fileId = fileId;
+            this.expired = expired;
+        }
+
+        static ChunkResponse incomplete(long offset) {
+            return new ChunkResponse(offset, null, false);
+        }
+
+        static ChunkResponse completed(String fileId) {
+            return new ChunkResponse(-1, fileId, false);
+        }
+
+        static ChunkResponse expiredSession() {
+            return new ChunkResponse(0, null, true);
+        }
+    }
+
+    /**
+     * Progress of an upload as persisted between attempts and process restarts.
+     */
+    private static class UploadState {
+        private final String sessionUri;
+        private final String localPath;
+        private final String name;
+        private final String parentId;
+        private final long size;
+        private final long lastModified;
+        private long offset;
+
+        UploadState(String sessionUri, Path localFile, File metadata, long size, long lastModified) {
+            this(sessionUri, localFile.toAbsolutePath().toString(), metadata.getName(),
+                    metadata.getParents().get(0), size, lastModified);
+        }
+
+        private UploadState(String sessionUri, String localPath, String name, String parentId,
+                            long size, long lastModified) {
+            this.sessionUri = sessionUri;
+            this.localPath = localPath;
+            this.name = name;
+            this.parentId = parentId;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        static UploadState load(Path stateFile) {
+            if (!Files.exists(stateFile)) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream inputStream = Files.newInputStream(stateFile)) {
+                properties.load(inputStream);
+                UploadState state = new UploadState(
+                        properties.getProperty("session"),
+                        properties.getProperty("localPath"),
+                        properties.getProperty("name"),
+                        properties.getProperty("parentId"),
+                        Long.parseLong(properties.getProperty("size")),
+                        Long.parseLong(properties.getProperty("lastModified")));
+                state.offset = Long.parseLong(properties.getProperty("offset", "0"));
+                return state.sessionUri != null && state.localPath != null ? state : null;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Ignoring unreadable upload state {}: {}", stateFile, e.getMessage());
+                return null;
+            }
+        }
+
+        void save(Path stateFile) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("session", sessionUri);
+            properties.setProperty("localPath", localPath);
+            properties.setProperty("name", name);
+            properties.setProperty("parentId", parentId);
+            properties.setProperty("size", Long.toString(size));
+            properties.setProperty("lastModified", Long.toString(lastModified));
+            properties.setProperty("offset", Long.toString(offset));
+
+            Files.createDirectories(stateFile.getParent());
+            Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                properties.store(outputStream, "Google Drive resumable upload");
+            }
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.metrics.Metrics;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of logged-in FTP sessions (binary mode, passive) that are reused across uploads,
+ * listings and deletes instead of paying a TCP connect and login for every operation.
+ * <p>
+ * Idle sessions are kept alive with NOOP and validated before they are handed out again.
+ */
+public class FTPConnectionPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(FTPConnectionPool.class);
+    private static FTPConnectionPool shared;
+
+    private final String server;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long validateAfterMillis;
+    private final LinkedBlockingDeque<PooledSession> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService keepAlive;
+    private final Map<String, FTPDirectorySnapshot> snapshots = new ConcurrentHashMap<>();
+    private int created;
+    private boolean closed;
+
+    /**
+     * @param server           FTP server host name.
+     * @param port             FTP server port.
+     * @param user             FTP user.
+     * @param password         FTP password.
+     * @param maxSize          Maximum number of concurrent sessions.
+     * @param keepAliveSeconds Interval at which idle sessions are sent a NOOP; also the idle time
+     *                         after which a session is validated before reuse.
+     */
+    public FTPConnectionPool(String server, int port, String user, String password, int maxSize, int keepAliveSeconds) {
+        this.server = server;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.validateAfterMillis = TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+
+        this.keepAlive = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ftp-keepalive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        keepAlive.scheduleWithFixedDelay(this::keepIdleSessionsAlive, keepAliveSeconds, keepAliveSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the process-wide pool for the FTP server in the configuration, creating it on first use.
+     *
+     * @return The shared pool.
+     */
+    public static synchronized FTPConnectionPool shared() {
+        if (shared == null) {
+            shared = new FTPConnectionPool(
+                    AppConfig.getFTPServer(),
+                    AppConfig.getFTPPort(),
+                    AppConfig.getFTPUser(),
+                    AppConfig.getFTPPassword(),
+                    AppConfig.getFTPPoolSize(),
+                    AppConfig.getFTPKeepAliveSeconds()
+            );
+        }
+        return shared;
+    }
+
+    /**
+     * Closes the shared pool, if one was created.
+     */
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /**
+     * Drops the cached directory listings of the shared pool, if one was created, so the next
+     * run lists the server again while keeping its sessions.
+     */
+    public static synchronized void invalidateSharedSnapshots() {
+        if (shared != null) {
+            shared.snapshots.clear();
+        }
+    }
+
+    /**
+     * @return Directory listings taken on this server, keyed by path; they live as long as the pool.
+     */
+    Map<String, FTPDirectorySnapshot> snapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Borrows a healthy session, opening a new one if the pool is not yet full and
+     * waiting for a session to be returned otherwise.
+     *
+     * @return A logged-in FTP client; hand it back with {@link #release} or {@link #invalidate}.
+     * @throws IOException If a new session cannot be established.
+     */
+    public FTPClient borrow() throws IOException {
+        while (true) {
+            PooledSession session = idle.pollFirst();
+            if (session == null) {
+                synchronized (this) {
+                    if (closed) {
+                        throw new IOException("FTP connection pool is closed.");
+                    }
+                    if (created < maxSize) {
+                        created++;
+                        return openOrRelease();
+                    }
+                }
+                // Wait briefly, then re-check capacity in case a session was invalidated meanwhile
+                session = pollIdle();
+                if (session == null) {
+                    continue;
+                }
+            }
+
+            if (System.currentTimeMillis() - session.lastUsed < validateAfterMillis || isHealthy(session.client)) {
+                return session.client;
+            }
+            logger.info("Discarding stale FTP session.");
+            Metrics.RETRIES.labels("FTP", "reconnect").inc();
+            invalidate(session.client);
+        }
+    }
+
+    /**
+     * Returns a session to the pool for reuse.
+     *
+     * @param client A client obtained from {@link #borrow()}.
+     */
+    public void release(FTPClient client) {
+        synchronized (this) {
+            if (!closed) {
+                idle.offerFirst(new PooledSession(client));
+                return;
+            }
+        }
+        invalidate(client);
+    }
+
+    /**
+     * Disconnects a session whose state is unknown (e.g., after a failed transfer) and frees its slot.
+     *
+     * @param client A client obtained from {@link #borrow()}.
+     */
+    public void invalidate(FTPClient client) {
+        synchronized (this) {
+            created--;
+        }
+        disconnect(client);
+    }
+
+    @Override
+    public void close() {
+        List<PooledSession> sessions = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            idle.drainTo(sessions);
+            created -= sessions.size();
+        }
+        keepAlive.shutdownNow();
+        sessions.forEach(session -> disconnect(session.client));
+    }
+
+    private FTPClient openOrRelease() throws IOException {
+        try {
+            return open();
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                created--;
+            }
+            throw e;
+        }
+    }
+
+    private FTPClient open() throws IOException {
+        FTPClient client = new FTPClient();
+        logger.info("Connecting to FTP server: {}:{}", server, port);
+        client.connect(server, port);
+        try {
+            if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                throw new IOException("FTP server refused connection: " + client.getReplyString());
+            }
+            if (!client.login(user, password)) {
+                throw new IOException("FTP login failed for user " + user + ": " + client.getReplyString());
+            }
+            client.setFileType(FTP.BINARY_FILE_TYPE);
+            client.enterLocalPassiveMode();
+            // Keep the control connection alive during long transfers as well
+            client.setControlKeepAliveTimeout(Duration.ofMillis(validateAfterMillis));
+            return client;
+        } catch (IOException e) {
+            disconnect(client);
+            throw e;
+        }
+    }
+
+    private PooledSession pollIdle() throws IOException {
+        try {
+            return idle.pollFirst(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an FTP session.", e);
+        }
+    }
+
+    private void keepIdleSessionsAlive() {
+        List<PooledSession> sessions = new ArrayList<>();
+        idle.drainTo(sessions);
+        for (PooledSession session : sessions) {
+            if (isHealthy(session.client)) {
+                release(session.client);
+            } else {
+                logger.info("Dropping FTP session that failed its keepalive.");
+                invalidate(session.client);
+            }
+        }
+    }
+
+    private static boolean isHealthy(FTPClient client) {
+        try {
+            return client.isConnected() && client.sendNoOp();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void disconnect(FTPClient client) {
+        if (client.isConnected()) {
+            try {
+                client.logout();
+            } catch (IOException e) {
+                logger.debug("FTP logout failed: {}", e.getMessage());
+            }
+            try {
+                client.disconnect();
+            } catch (IOException e) {
+                logger.debug("FTP disconnect failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static class PooledSession {
+        private final FTPClient client;
+        private final long lastUsed = System.currentTimeMillis();
+
+        PooledSession(FTPClient client) {
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.verify.Checksums;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Uploads backup files to {@code <remotePath>/<database>/} on an FTP server.
+ */
+public class FTPDestination implements Destination {
+    private final FTPHandler ftpHandler;
+    private final String remotePath;
+
+    public FTPDestination(FTPHandler ftpHandler, String remotePath) {
+        this.ftpHandler = ftpHandler;
+        this.remotePath = remotePath;
+    }
+
+    @Override
+    public String getName() {
+        return "FTP";
+    }
+
+    @Override
+    public String upload(InputStream inputStream, String database, String fileName) throws IOException {
+        String remoteFilePath = remoteFilePath(database, fileName);
+        ftpHandler.upload(inputStream, remoteFilePath);
+        return remoteFilePath;
+    }
+
+    /**
+     * Uploads the stream, falling back to the local file to resume if the transfer breaks. If an
+     * earlier run left a partial copy, the rest is read from the local file and the stream is
+     * left unread.
+     */
+    @Override
+    public String upload(InputStream inputStream, String database, String fileName, Path localFile) throws IOException {
+        String remoteFilePath = remoteFilePath(database, fileName);
+        ftpHandler.upload(inputStream, localFile, remoteFilePath);
+        return remoteFilePath;
+    }
+
+    @Override
+    public String upload(String localFilePath) throws IOException {
+        Path localFile = Paths.get(localFilePath);
+        String remoteFilePath = remoteFilePath(localFile.getParent().getFileName().toString(),
+                localFile.getFileName().toString());
+        ftpHandler.upload(localFilePath, remoteFilePath);
+        return remoteFilePath;
+    }
+
+    @Override
+    public void delete(String database, String fileName, String remoteRef) throws IOException {
+        ftpHandler.deleteFile(remoteRef != null ? remoteRef : remoteFilePath(database, fileName));
+    }
+
+    @Override
+    public boolean hasCopy(String database, String fileName, long size) throws IOException {
+        FTPDirectorySnapshot.Entry entry = ftpHandler.snapshot(remotePath + "/" + database).get(fileName);
+        return entry != null && !entry.isDirectory() && entry.getSize() == size;
+    }
+
+    @Override
+    public long size(String database, String fileName, String remoteRef) throws IOException {
+        FTPDirectorySnapshot.Entry entry = ftpHandler.snapshot(remotePath + "/" + database).get(fileName);
+        return entry != null ? entry.getSize() : -1;
+    }
+
+    @Override
+    public void download(String database, String fileName, String remoteRef, long offset, long length,
+                         OutputStream outputStream) throws IOException {
+        ftpHandler.download(remoteRef != null ? remoteRef : remoteFilePath(database, fileName), offset, length, outputStream);
+    }
+
+    @Override
+    public String verify(String database, String fileName, String remoteRef, Checksums expected) throws IOException {
+        return ftpHandler.verify(remoteRef != null ? remoteRef : remoteFilePath(database, fileName), expected);
+    }
+
+    @Override
+    public Map<String, String> list(String database) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        for (String fileName : ftpHandler.listFiles(remotePath + "/" + database)) {
+            files.put(fileName, remoteFilePath(database, fileName));
+        }
+        return files;
+    }
+
+    private String remoteFilePath(String database, String fileName) {
+        return remotePath + "/" + database + "/" + fileName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ftpHandler.close();
+    }
+}
@@ -0,0 +1,24 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+
+/**
+ * Provides the FTP destination configured with {@code ftp.*}, on the shared connection pool.
+ */
+public class FTPDestinationProvider implements DestinationProvider {
+
+    @Override
+    public String getType() {
+        return "ftp";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return AppConfig.getFTPServer() != null;
+    }
+
+    @Override
+    public Destination create() {
+        return new FTPDestination(new FTPHandler(FTPConnectionPool.shared()), AppConfig.getFTPRemotePath());
+    }
+}
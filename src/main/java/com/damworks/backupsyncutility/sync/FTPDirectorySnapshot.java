@@ -0,0 +1,92 @@
+package com.damworks.backupsyncutility.sync;
+
+import org.apache.commons.net.ftp.FTPFile;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Listing of one FTP directory taken with a single MLSD (or LIST, if the server lacks MLSD).
+ * <p>
+ * The snapshot is kept for the rest of the run, so listings and lookups cost no further
+ * round-trips. Deletions made through {@link FTPHandler} are applied to it.
+ */
+public class FTPDirectorySnapshot {
+    private final String path;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    FTPDirectorySnapshot(String path, FTPFile[] files) {
+        this.path = path;
+        for (FTPFile file : files) {
+            if (file == null || file.getName() == null || file.getName().equals(".") || file.getName().equals("..")) {
+                continue;
+            }
+            Calendar timestamp = file.getTimestamp();
+            entries.put(file.getName(), new Entry(file.getName(), file.getSize(),
+                    timestamp != null ? timestamp.getTimeInMillis() : 0, file.isDirectory()));
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @param name File or directory name.
+     * @return The entry, or null if the directory did not contain it.
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return Names of the regular files in the directory.
+     */
+    public String[] getFiles() {
+        return entries.values().stream().filter(entry -> !entry.isDirectory()).map(Entry::getName).toArray(String[]::new);
+    }
+
+    void remove(String name) {
+        entries.remove(name);
+    }
+
+    /**
+     * A file or directory in a snapshot.
+     */
+    public static class Entry {
+        private final String name;
+        private final long size;
+        private final long modifiedAt;
+        private final boolean directory;
+
+        Entry(String name, long size, long modifiedAt, boolean directory) {
+            this.name = name;
+            this.size = size;
+            this.modifiedAt = modifiedAt;
+            this.directory = directory;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Size in bytes, or -1 if the server did not report it.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return Modification time in milliseconds since the epoch, or 0 if unknown.
+         */
+        public long getModifiedAt() {
+            return modifiedAt;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+}
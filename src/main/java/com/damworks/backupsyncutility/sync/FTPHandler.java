@@ -1,125 +1,483 @@
 package com.damworks.backupsyncutility.sync;
 
-import org.apache.commons.net.ftp.FTP;
+import com.damworks.backupsyncutility.pipeline.CountingInputStream;
+import com.damworks.backupsyncutility.throttle.BandwidthLimits;
+import com.damworks.backupsyncutility.throttle.RateLimiter;
+import com.damworks.backupsyncutility.throttle.ThrottledInputStream;
+import com.damworks.backupsyncutility.verify.ChecksumMismatchException;
+import com.damworks.backupsyncutility.verify.Checksums;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Handles FTP operations for uploading, listing, and deleting files.
+ * <p>
+ * Every operation borrows a session from an {@link FTPConnectionPool}, so repeated uploads
+ * reuse logged-in connections instead of reconnecting.
  */
 public class FTPHandler {
     private static final Logger logger = LoggerFactory.getLogger(FTPHandler.class);
+    private static final int RESUME_BUFFER_SIZE = 64 * 1024;
 
-    private final String server;
-    private final int port;
-    private final String user;
-    private final String password;
-    private final FTPClient ftpClient;
+    private final FTPConnectionPool pool;
+    private final Set<String> knownDirectories = ConcurrentHashMap.newKeySet();
+    private final RateLimiter uploadLimiter = BandwidthLimits.forDestination("ftp");
+    private final RetryPolicy retryPolicy = RetryPolicy.fromConfig();
+    private volatile boolean mlsdSupported = true;
+    private volatile boolean xcrcSupported = true;
+    private volatile Boolean restStreamSupported;
 
-    public FTPHandler(String server, int port, String user, String password) throws IOException {
-        this.server = server;
-        this.port = port;
-        this.user = user;
-        this.password = password;
-
-        ftpClient = new FTPClient();
-        ftpClient.connect(server, port);
-        ftpClient.login(user, password);
-        ftpClient.enterLocalPassiveMode();
+    /**
+     * Creates a handler on a shared connection pool; {@link #close()} leaves the pool open.
+     *
+     * @param pool The pool to borrow sessions from.
+     */
+    public FTPHandler(FTPConnectionPool pool) {
+        this.pool = pool;
     }
 
     /**
-     * Uploads a file to the FTP server.
+     * Uploads a file to the FTP server, resuming a partial copy left by an earlier attempt.
      *
      * @param localFilePath  Path to the local file.
      * @param remoteFilePath Path on the FTP server.
      * @throws IOException If an I/O error occurs.
      */
     public void upload(String localFilePath, String remoteFilePath) throws IOException {
-        FTPClient ftpClient = new FTPClient();
-        String remoteDirectory = remoteFilePath.substring(0, remoteFilePath.lastIndexOf('/'));
+        logger.info("Starting upload of file: {} to {}", localFilePath, remoteFilePath);
+        upload(null, Paths.get(localFilePath), remoteFilePath);
+    }
+
+    /**
+     * Uploads a stream to the FTP server. A failure is only retried if it occurred before any
+     * of the stream was sent.
+     *
+     * @param inputStream    Content to upload; read until end of stream.
+     * @param remoteFilePath Path on the FTP server.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void upload(InputStream inputStream, String remoteFilePath) throws IOException {
+        upload(inputStream, null, remoteFilePath);
+    }
+
+    /**
+     * Uploads content to the FTP server. The content is stored under a temporary ".part" name
+     * and renamed once complete, so a broken transfer never looks like a finished backup.
+     * <p>
+     * Failures are retried with backoff. When the content is a local file, a retry (or a later
+     * run) asks the server for the {@code SIZE} of the partial copy and sends only the rest of
+     * the file, with {@code REST} + {@code STOR} if the server supports REST STREAM and
+     * {@code APPE} otherwise. Since its start was sent by an earlier attempt, a resumed copy is
+     * compared with the checksums recorded for the local file before it is renamed, and sent
+     * again in full if it differs. The partial copy is kept if the last attempt fails.
+     *
+     * @param inputStream    Content to upload, or null to read it from {@code localFile}.
+     * @param localFile      Local file holding the content, or null if the stream is the only source.
+     * @param remoteFilePath Path on the FTP server.
+     * @throws IOException If the upload fails after all retries.
+     */
+    public void upload(InputStream inputStream, Path localFile, String remoteFilePath) throws IOException {
+        String remoteDirectory = parentOf(remoteFilePath);
+        String partFilePath = remoteFilePath + ".part";
+        CountingInputStream stream = inputStream != null ? new CountingInputStream(inputStream) : null;
+
+        try {
+            // Without a local file, the stream can only be sent again if none of it was consumed
+            retryPolicy.call("FTP", "upload", e -> isTransientReply(e) && (localFile != null || stream.getCount() == 0),
+                    attempt -> withClient(ftpClient -> {
+                        ensureDirectoryExists(ftpClient, remoteDirectory);
+
+                        long offset = localFile != null ? resumeOffset(ftpClient, partFilePath, localFile) : 0;
+                        boolean stored;
+                        if (offset == 0 && stream != null && stream.getCount() == 0) {
+                            stored = store(ftpClient, partFilePath, stream, 0);
+                        } else {
+                            stored = storeFrom(ftpClient, partFilePath, localFile, offset);
+                            if (stored && offset > 0 && !resumedCopyMatches(ftpClient, partFilePath, localFile)) {
+                                stored = storeFrom(ftpClient, partFilePath, localFile, 0);
+                            }
+                        }
+
+                        if (stored && ftpClient.rename(partFilePath, remoteFilePath)) {
+                            // The cached listing no longer matches the directory
+                            pool.snapshots().remove(remoteDirectory);
+                            logger.info("File uploaded successfully to {}", remoteFilePath);
+                            return null;
+                        }
+                        String reply = ftpClient.getReplyString();
+                        int replyCode = ftpClient.getReplyCode();
+                        logger.error("Failed to upload file to {}: {}", remoteFilePath, reply);
+                        if (localFile == null || !FTPReply.isNegativeTransient(replyCode)) {
+                            ftpClient.deleteFile(partFilePath);
+                        }
+                        throw new FTPReplyException("Failed to upload file to FTP server: " + reply, replyCode);
+                    }));
+        } catch (FTPReplyException e) {
+            throw e;
+        } catch (IOException e) {
+            // The session was discarded; clean up on a fresh one unless a later run can resume
+            if (localFile == null) {
+                deleteQuietly(partFilePath);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Determines where an upload of a local file can continue.
+     *
+     * @return Size of the partial remote copy, or 0 if there is none or it cannot be trusted.
+     */
+    private long resumeOffset(FTPClient ftpClient, String partFilePath, Path localFile) throws IOException {
+        String reply = ftpClient.getSize(partFilePath);
+        if (reply == null) {
+            return 0;
+        }
+        long remoteSize;
+        try {
+            remoteSize = Long.parseLong(reply.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        long localSize = Files.size(localFile);
+        if (remoteSize <= 0 || remoteSize > localSize) {
+            return 0;
+        }
+        logger.info("Resuming upload to {} at byte {} of {}", partFilePath, remoteSize, localSize);
+        return remoteSize;
+    }
+
+    /**
+     * Stores a local file from an offset on; nothing is sent if the remote copy is already complete.
+     */
+    private boolean storeFrom(FTPClient ftpClient, String partFilePath, Path localFile, long offset)
+            throws IOException {
+        if (offset > 0 && offset == Files.size(localFile)) {
+            // Complete before the rename failed
+            return true;
+        }
+        try (InputStream fileStream = openAt(localFile, offset)) {
+            return store(ftpClient, partFilePath, fileStream, offset);
+        }
+    }
+
+    /**
+     * Compares a resumed copy with the checksum sidecar of the local file.
+     *
+     * @return False if the copy differs; true if it matches or cannot be checked.
+     */
+    private boolean resumedCopyMatches(FTPClient ftpClient, String partFilePath, Path localFile) throws IOException {
+        Checksums expected;
+        try {
+            expected = Checksums.read(localFile);
+        } catch (IOException e) {
+            logger.warn("Cannot check resumed upload {}: {}", partFilePath, e.getMessage());
+            return true;
+        }
+        if (expected == null) {
+            return true;
+        }
+        try {
+            compare(reportChecksum(ftpClient, partFilePath), expected, partFilePath);
+            return true;
+        } catch (ChecksumMismatchException e) {
+            logger.warn("Resumed upload does not match {}; sending it again in full: {}",
+                    localFile.getFileName(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stores content at an offset of a remote file: from scratch at offset 0, otherwise with
+     * REST + STOR, or APPE on servers that do not support REST STREAM.
+     */
+    private boolean store(FTPClient ftpClient, String remoteFilePath, InputStream inputStream, long offset)
+            throws IOException {
+        InputStream throttled = new ThrottledInputStream(inputStream, uploadLimiter);
+        if (offset == 0) {
+            return ftpClient.storeFile(remoteFilePath, throttled);
+        }
+        if (supportsRestStream(ftpClient)) {
+            ftpClient.setRestartOffset(offset);
+            return ftpClient.storeFile(remoteFilePath, throttled);
+        }
+        return ftpClient.appendFile(remoteFilePath, throttled);
+    }
+
+    /**
+     * @return False for permanent (5xx) negative replies, which a retry would only repeat.
+     */
+    private static boolean isTransientReply(IOException e) {
+        return !(e instanceof FTPReplyException) || FTPReply.isNegativeTransient(((FTPReplyException) e).replyCode);
+    }
 
-        ensureDirectoryExists(remoteDirectory);
+    private boolean supportsRestStream(FTPClient ftpClient) throws IOException {
+        Boolean supported = restStreamSupported;
+        if (supported == null) {
+            String[] values = ftpClient.featureValues("REST");
+            supported = values != null && Arrays.stream(values).anyMatch(value -> value.trim().equalsIgnoreCase("STREAM"));
+            restStreamSupported = supported;
+        }
+        return supported;
+    }
 
+    private static InputStream openAt(Path localFile, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(localFile, StandardOpenOption.READ);
         try {
-            logger.info("Connecting to FTP server: {}:{}", server, port);
-            ftpClient.connect(server, port);
-            ftpClient.login(user, password);
-
-            // Set file type and transfer mode
-            ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
-            ftpClient.enterLocalPassiveMode();
-
-            logger.info("Starting upload of file: {}", localFilePath);
-            try (InputStream inputStream = new FileInputStream(localFilePath)) {
-                logger.info("Starting upload of file: {} to {}", localFilePath, remoteFilePath);
-                boolean success = ftpClient.storeFile(remoteFilePath, inputStream);
-
-                if (success) {
-                    logger.info("File uploaded successfully to {}", remoteFilePath);
-                } else {
-                    logger.error("Failed to upload file to {}", remoteFilePath);
-                    throw new IOException("Failed to upload file to FTP server.");
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BufferedInputStream(Channels.newInputStream(channel), RESUME_BUFFER_SIZE);
+    }
+
+    /**
+     * Removes a partial upload on a fresh session, since the one that failed may be unusable.
+     * Must not be called while holding a session, or a pool of size one would deadlock.
+     */
+    private void deleteQuietly(String remoteFilePath) {
+        try {
+            withClient(ftpClient -> ftpClient.deleteFile(remoteFilePath));
+        } catch (IOException e) {
+            logger.warn("Could not remove partial upload {}: {}", remoteFilePath, e.getMessage());
+        }
+    }
+
+    /**
+     * Downloads a file, or a byte range of it, from the FTP server. Ranges start with REST;
+     * a range that stops before the end of the file aborts the transfer, so its session is
+     * discarded instead of being returned to the pool.
+     *
+     * @param remoteFilePath Path on the FTP server.
+     * @param offset         First byte to download.
+     * @param length         Number of bytes to download, or -1 for the rest of the file.
+     * @param outputStream   Receives the bytes.
+     * @throws IOException If the download fails or the file is shorter than the range.
+     */
+    public void download(String remoteFilePath, long offset, long length, OutputStream outputStream) throws IOException {
+        FTPClient ftpClient = pool.borrow();
+        boolean reusable = false;
+        try {
+            ftpClient.setRestartOffset(offset);
+            InputStream inputStream = ftpClient.retrieveFileStream(remoteFilePath);
+            if (inputStream == null) {
+                reusable = true;
+                throw new IOException("Failed to download " + remoteFilePath + ": " + ftpClient.getReplyString());
+            }
+            try (inputStream) {
+                long copied = length < 0 ? inputStream.transferTo(outputStream) : copyRange(inputStream, outputStream, length);
+                if (length >= 0 && copied < length) {
+                    throw new EOFException("Unexpected end of " + remoteFilePath + " after " + copied + " bytes");
                 }
             }
+            reusable = length < 0 && ftpClient.completePendingCommand();
         } finally {
-            // Logout and disconnect
-            if (ftpClient.isConnected()) {
-                try {
-                    ftpClient.logout();
-                    ftpClient.disconnect();
-                    logger.info("Disconnected from FTP server.");
-                } catch (IOException ex) {
-                    logger.error("Error while disconnecting from FTP server: {}", ex.getMessage());
-                }
+            if (reusable) {
+                pool.release(ftpClient);
+            } else {
+                pool.invalidate(ftpClient);
+            }
+        }
+    }
+
+    private static long copyRange(InputStream inputStream, OutputStream outputStream, long length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long copied = 0;
+        while (copied < length) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, length - copied));
+            if (read < 0) {
+                break;
+            }
+            outputStream.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    /**
+     * Checks a remote file against local checksums without downloading it. The server is asked
+     * for the strongest hash it offers through HASH, then for a CRC through XCRC, and finally for
+     * the size through SIZE.
+     *
+     * @param remoteFilePath Path on the FTP server.
+     * @param expected       Checksums of the local file.
+     * @return What was compared (e.g., "SHA-256", "XCRC" or "SIZE"), or null if the server reports nothing usable.
+     * @throws ChecksumMismatchException If the remote file differs.
+     * @throws IOException If the server cannot be queried.
+     */
+    public String verify(String remoteFilePath, Checksums expected) throws IOException {
+        // Query on the session and compare afterwards, so a mismatch does not discard the session
+        String[] reported = withClient(ftpClient -> reportChecksum(ftpClient, remoteFilePath));
+        return compare(reported, expected, remoteFilePath);
+    }
+
+    /**
+     * @return Algorithm and value of the strongest checksum the server reports for a file, or
+     *         null if it reports nothing usable.
+     */
+    private String[] reportChecksum(FTPClient ftpClient, String remoteFilePath) throws IOException {
+        String[] hash = hash(ftpClient, remoteFilePath);
+        if (hash == null) {
+            hash = crc(ftpClient, remoteFilePath);
+        }
+        if (hash == null) {
+            String size = ftpClient.getSize(remoteFilePath);
+            hash = size != null ? new String[]{"SIZE", size.trim()} : null;
+        }
+        return hash;
+    }
+
+    private static String compare(String[] reported, Checksums expected, String remoteFilePath)
+            throws ChecksumMismatchException {
+        if (reported == null) {
+            return null;
+        }
+        String location = "FTP:" + remoteFilePath;
+        if (reported[0].equals("SIZE")) {
+            try {
+                return expected.verifySize(Long.parseLong(reported[1]), location);
+            } catch (NumberFormatException e) {
+                logger.debug("Unexpected SIZE reply for {}: {}", remoteFilePath, reported[1]);
+                return null;
             }
         }
+        return expected.verify(reported[0], reported[1], location);
+    }
+
+    /**
+     * Runs HASH with the first of SHA-256, MD5 and CRC32 the server advertises in FEAT.
+     *
+     * @return Algorithm and hex value, or null if HASH is unavailable.
+     */
+    private String[] hash(FTPClient ftpClient, String remoteFilePath) throws IOException {
+        // e.g. "HASH SHA-256;SHA-1*;MD5;CRC32"; the starred algorithm is the current one
+        String[] values = ftpClient.featureValues("HASH");
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        List<String> offered = List.of(values[0].toUpperCase().split(";"));
+        for (String algorithm : List.of("SHA-256", "MD5", "CRC32")) {
+            boolean current = offered.contains(algorithm + "*");
+            if (!current && !offered.contains(algorithm)) {
+                continue;
+            }
+            if (!current && !FTPReply.isPositiveCompletion(ftpClient.sendCommand("OPTS", "HASH " + algorithm))) {
+                continue;
+            }
+            if (!FTPReply.isPositiveCompletion(ftpClient.sendCommand("HASH", remoteFilePath))) {
+                logger.debug("HASH failed for {}: {}", remoteFilePath, ftpClient.getReplyString());
+                return null;
+            }
+            // "213 SHA-256 0-1048575 <hex> <file name>"
+            String[] reply = ftpClient.getReplyString().trim().split(" ", 5);
+            return reply.length >= 4 ? new String[]{reply[1], reply[3]} : null;
+        }
+        return null;
+    }
+
+    /**
+     * Runs the XCRC extension, which many servers support without advertising it.
+     *
+     * @return "XCRC" and the hex CRC-32, or null if XCRC is unavailable.
+     */
+    private String[] crc(FTPClient ftpClient, String remoteFilePath) throws IOException {
+        if (!xcrcSupported) {
+            return null;
+        }
+        int reply = ftpClient.sendCommand("XCRC", remoteFilePath);
+        if (reply >= 500 && reply <= 502) {
+            xcrcSupported = false;
+            return null;
+        }
+        String[] parts = ftpClient.getReplyString().trim().split(" ");
+        return FTPReply.isPositiveCompletion(reply) && parts.length >= 2 ? new String[]{"XCRC", parts[1]} : null;
     }
 
     /**
      * Ensures the given directory exists on the FTP server.
      *
+     * @param ftpClient  The session to use.
      * @param remotePath The directory path to check or create.
      * @throws IOException If an error occurs.
      */
-    private void ensureDirectoryExists(String remotePath) throws IOException {
+    private void ensureDirectoryExists(FTPClient ftpClient, String remotePath) throws IOException {
+        if (knownDirectories.contains(remotePath)) {
+            return;
+        }
+
         String[] pathElements = remotePath.split("/");
         String currentPath = "";
 
         for (String folder : pathElements) {
             if (folder.isEmpty()) continue; // Skip empty elements
             currentPath += "/" + folder;
-            if (!ftpClient.changeWorkingDirectory(currentPath)) {
+            if (!knownDirectories.contains(currentPath) && !ftpClient.changeWorkingDirectory(currentPath)) {
                 if (ftpClient.makeDirectory(currentPath)) {
                     logger.info("Created remote directory: {}", currentPath);
-                } else {
+                } else if (!ftpClient.changeWorkingDirectory(currentPath)) {
+                    // Another session may have created it in the meantime
                     throw new IOException("Failed to create directory: " + currentPath);
                 }
             }
+            knownDirectories.add(currentPath);
         }
+        knownDirectories.add(remotePath);
     }
 
     /**
-     * Lists directories in a remote path.
+     * Returns the listing of a remote directory, taken with one MLSD on first use and cached
+     * for the rest of the run. Servers without MLSD are listed with LIST instead.
      *
-     * @param remotePath The remote path to search for directories.
-     * @return Array of directory names.
-     * @throws IOException If an error occurs.
+     * @param remotePath The path to the remote directory.
+     * @return The snapshot; empty if the directory does not exist.
+     * @throws IOException If the listing fails.
      */
-    public String[] listDirectories(String remotePath) throws IOException {
+    public FTPDirectorySnapshot snapshot(String remotePath) throws IOException {
+        FTPDirectorySnapshot snapshot = pool.snapshots().get(remotePath);
+        if (snapshot == null) {
+            snapshot = new FTPDirectorySnapshot(remotePath, withClient(ftpClient -> listDirectory(ftpClient, remotePath)));
+            pool.snapshots().put(remotePath, snapshot);
+            logger.debug("Listed {}: {} file(s)", remotePath, snapshot.getFiles().length);
+        }
+        return snapshot;
+    }
+
+    private FTPFile[] listDirectory(FTPClient ftpClient, String remotePath) throws IOException {
+        if (mlsdSupported) {
+            FTPFile[] files = ftpClient.mlistDir(remotePath);
+            int reply = ftpClient.getReplyCode();
+            if (FTPReply.isPositiveCompletion(reply)) {
+                return files;
+            }
+            if (reply < 500 || reply > 502) {
+                // e.g. 550: the directory does not exist (yet)
+                return new FTPFile[0];
+            }
+            logger.info("FTP server does not support MLSD; falling back to LIST.");
+            mlsdSupported = false;
+        }
         FTPFile[] files = ftpClient.listFiles(remotePath);
-        return Arrays.stream(files)
-                .filter(FTPFile::isDirectory)
-                .map(FTPFile::getName)
-                .toArray(String[]::new);
+        return files != null ? files : new FTPFile[0];
     }
 
     /**
@@ -130,11 +488,7 @@ public class FTPHandler {
      * @throws IOException If an error occurs.
      */
     public String[] listFiles(String remotePath) throws IOException {
-        FTPFile[] files = ftpClient.listFiles(remotePath);
-        return Arrays.stream(files)
-                .filter(FTPFile::isFile)
-                .map(FTPFile::getName)
-                .toArray(String[]::new);
+        return snapshot(remotePath).getFiles();
     }
 
     /**
@@ -144,44 +498,66 @@ public class FTPHandler {
      * @throws IOException If an error occurs.
      */
     public void deleteFile(String remoteFilePath) throws IOException {
-        boolean success = ftpClient.deleteFile(remoteFilePath);
+        boolean success = withClient(ftpClient -> ftpClient.deleteFile(remoteFilePath));
         if (!success) {
             throw new IOException("Failed to delete file: " + remoteFilePath);
         }
+        FTPDirectorySnapshot snapshot = pool.snapshots().get(parentOf(remoteFilePath));
+        if (snapshot != null) {
+            snapshot.remove(remoteFilePath.substring(remoteFilePath.lastIndexOf('/') + 1));
+        }
+    }
+
+    private static String parentOf(String remoteFilePath) {
+        return remoteFilePath.substring(0, Math.max(0, remoteFilePath.lastIndexOf('/')));
     }
 
     /**
-     * Provides a comparator for sorting files by modification time.
-     *
-     * @param remotePath The remote path containing the files.
-     * @return A comparator for FTP files.
+     * Releases this handler. The shared connection pool stays open for other handlers; it is
+     * closed on shutdown.
      */
-    public Comparator<String> getModificationTimeComparator(String remotePath) {
-        return (file1, file2) -> {
-            try {
-                FTPFile[] files = ftpClient.listFiles(remotePath);
-                FTPFile ftpFile1 = Arrays.stream(files).filter(f -> f.getName().equals(file1)).findFirst().orElse(null);
-                FTPFile ftpFile2 = Arrays.stream(files).filter(f -> f.getName().equals(file2)).findFirst().orElse(null);
-                if (ftpFile1 != null && ftpFile2 != null) {
-                    return ftpFile1.getTimestamp().compareTo(ftpFile2.getTimestamp());
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return 0;
-        };
+    public void close() {
     }
 
     /**
-     * Closes the FTP connection.
-     *
-     * @throws IOException If an error occurs.
+     * Runs an operation on a pooled session. The session is returned to the pool afterwards,
+     * or discarded if the operation failed with an I/O error other than a negative reply.
+     */
+    private <T> T withClient(FTPOperation<T> operation) throws IOException {
+        FTPClient ftpClient = pool.borrow();
+        try {
+            T result = operation.execute(ftpClient);
+            pool.release(ftpClient);
+            return result;
+        } catch (FTPReplyException e) {
+            pool.release(ftpClient);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            pool.invalidate(ftpClient);
+            throw e;
+        }
+    }
+
+    /**
+     * Negative server reply on a session that is still usable.
      */
-    public void close() throws IOException {
-        if (ftpClient.isConnected()) {
-            ftpClient.logout();
-            ftpClient.disconnect();
+    private static class FTPReplyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int replyCode;
+
+        FTPReplyException(String message) {
+            this(message, 0);
+        }
+
+        FTPReplyException(String message, int replyCode) {
+            super(message);
+            this.replyCode = replyCode;
         }
     }
 
+    @FunctionalInterface
+    private interface FTPOperation<T> {
+        T execute(FTPClient ftpClient) throws IOException;
+    }
 }
@@ -0,0 +1,138 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.verify.Checksums;
+import com.google.api.services.drive.model.File;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uploads backup files into per-database folders below a Google Drive folder.
+ */
+public class GoogleDriveDestination implements Destination {
+    private final GoogleDriveHandler driveHandler;
+    private final String parentFolderId;
+
+    public GoogleDriveDestination(GoogleDriveHandler driveHandler, String parentFolderId) {
+        this.driveHandler = driveHandler;
+        this.parentFolderId = parentFolderId;
+    }
+
+    @Override
+    public String getName() {
+        return "Google Drive";
+    }
+
+    @Override
+    public String upload(InputStream inputStream, String database, String fileName) throws IOException {
+        return driveHandler.uploadStream(inputStream, fileName, database, parentFolderId);
+    }
+
+    @Override
+    public String upload(InputStream inputStream, String database, String fileName, Path localFile) throws IOException {
+        if (localFile == null) {
+            return upload(inputStream, database, fileName);
+        }
+        return driveHandler.uploadFile(inputStream, localFile, parentFolderId);
+    }
+
+    @Override
+    public void delete(String database, String fileName, String remoteRef) throws IOException {
+        if (remoteRef != null) {
+            if (!driveHandler.deleteFiles(List.of(remoteRef)).isEmpty()) {
+                throw new IOException("Failed to delete " + database + "/" + fileName + " from Google Drive.");
+            }
+            return;
+        }
+        List<String> fileIds = new ArrayList<>();
+        driveHandler.forEachDatabaseFile(database, parentFolderId, file -> {
+            if (file.getName().equals(fileName)) {
+                fileIds.add(file.getId());
+            }
+        });
+        List<String> failed = driveHandler.deleteFiles(fileIds);
+        if (!failed.isEmpty()) {
+            throw new IOException("Failed to delete " + database + "/" + fileName + " from Google Drive.");
+        }
+    }
+
+    @Override
+    public List<String> delete(String database, Map<String, String> files) throws IOException {
+        Map<String, String> namesById = new LinkedHashMap<>();
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            if (file.getValue() != null) {
+                namesById.put(file.getValue(), file.getKey());
+            } else {
+                try {
+                    delete(database, file.getKey(), null);
+                } catch (IOException e) {
+                    failed.add(file.getKey());
+                }
+            }
+        }
+
+        // Known IDs are deleted in batches of up to 100 files per request
+        for (String fileId : driveHandler.deleteFiles(new ArrayList<>(namesById.keySet()))) {
+            failed.add(namesById.get(fileId));
+        }
+        return failed;
+    }
+
+    @Override
+    public long size(String database, String fileName, String remoteRef) throws IOException {
+        return driveHandler.getFileSize(remoteRef != null ? remoteRef : findFileId(database, fileName));
+    }
+
+    @Override
+    public String verify(String database, String fileName, String remoteRef, Checksums expected) throws IOException {
+        File file = driveHandler.getFileMetadata(remoteRef != null ? remoteRef : findFileId(database, fileName));
+        String location = "Google Drive:" + database + "/" + fileName;
+        // Drive computes MD5 for every binary upload; the size alone is the fallback
+        if (file.getMd5Checksum() != null) {
+            return expected.verify("MD5", file.getMd5Checksum(), location);
+        }
+        return file.getSize() != null ? expected.verifySize(file.getSize(), location) : null;
+    }
+
+    @Override
+    public void download(String database, String fileName, String remoteRef, long offset, long length,
+                         OutputStream outputStream) throws IOException {
+        String fileId = remoteRef != null ? remoteRef : findFileId(database, fileName);
+        try (InputStream inputStream = driveHandler.download(fileId, offset, length)) {
+            inputStream.transferTo(outputStream);
+        }
+    }
+
+    private String findFileId(String database, String fileName) throws IOException {
+        String fileId = list(database).get(fileName);
+        if (fileId == null) {
+            throw new FileNotFoundException("Not found on Google Drive: " + database + "/" + fileName);
+        }
+        return fileId;
+    }
+
+    @Override
+    public Map<String, String> list(String database) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        driveHandler.forEachDatabaseFile(database, parentFolderId, file -> files.put(file.getName(), file.getId()));
+        return files;
+    }
+
+    @Override
+    public void resumePending() {
+        driveHandler.resumePendingUploads();
+    }
+
+    @Override
+    public String upload(String localFilePath) throws IOException {
+        return driveHandler.uploadFile(localFilePath, parentFolderId);
+    }
+}
@@ -0,0 +1,30 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.auth.GoogleDriveAuth;
+import com.damworks.backupsyncutility.config.AppConfig;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Provides the Google Drive destination configured with {@code google.*}.
+ */
+public class GoogleDriveDestinationProvider implements DestinationProvider {
+
+    @Override
+    public String getType() {
+        return "gdrive";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return AppConfig.getGoogleDriveFolderId() != null;
+    }
+
+    @Override
+    public Destination create() throws IOException, GeneralSecurityException {
+        String credentialsPath = AppConfig.getGoogleDriveCredentialsFile();
+        GoogleDriveHandler driveHandler = new GoogleDriveHandler(GoogleDriveAuth.getDriveService(credentialsPath));
+        return new GoogleDriveDestination(driveHandler, AppConfig.getGoogleDriveFolderId());
+    }
+}
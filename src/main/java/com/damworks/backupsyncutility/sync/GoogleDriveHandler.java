@@ -1,6 +1,16 @@
 package com.damworks.backupsyncutility.sync;
 
-import com.google.api.client.http.FileContent;
+import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.throttle.BandwidthLimits;
+import com.damworks.backupsyncutility.throttle.RateLimiter;
+import com.damworks.backupsyncutility.throttle.ThrottledInputStream;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.InputStreamContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
@@ -8,50 +18,141 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Handles Google Drive operations like uploading files and creating folders.
  */
 public class GoogleDriveHandler {
     private static final Logger logger = LoggerFactory.getLogger(GoogleDriveHandler.class);
+    private static final int LIST_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 100;
     private final Drive driveService;
+    private final DriveResumableUpload resumableUpload;
+    private final DriveFolderCache folderCache = DriveFolderCache.shared();
+    private final RateLimiter uploadLimiter = BandwidthLimits.forDestination("gdrive");
 
     public GoogleDriveHandler(Drive driveService) {
         this.driveService = driveService;
+        this.resumableUpload = new DriveResumableUpload(driveService,
+                Paths.get(AppConfig.getStatePath(), "drive-uploads"), AppConfig.getGoogleDriveChunkSize(), uploadLimiter);
     }
 
     /**
-     * Uploads a file to a Google Drive folder corresponding to the database.
+     * Uploads a file to a Google Drive folder corresponding to the database. The upload is
+     * resumable: an interrupted transfer continues from the last acknowledged chunk.
      *
      * @param localFilePath   Path to the local file to upload.
      * @param parentFolderId  ID of the root folder for backups on Google Drive.
+     * @return ID of the uploaded file.
      * @throws IOException If an error occurs during upload.
      */
-    public void uploadFile(String localFilePath, String parentFolderId) throws IOException {
+    public String uploadFile(String localFilePath, String parentFolderId) throws IOException {
         java.io.File localFile = new java.io.File(localFilePath);
         String databaseName = localFile.getParentFile().getName();
 
-        // Ensure the folder for the database exists
-        String databaseFolderId = getOrCreateFolder(databaseName, parentFolderId);
+        // Upload the file to the database folder, creating the folder if necessary
+        String fileId = inDatabaseFolder(databaseName, parentFolderId, databaseFolderId -> {
+            File fileMetadata = new File();
+            fileMetadata.setName(localFile.getName());
+            fileMetadata.setParents(Collections.singletonList(databaseFolderId));
+            return resumableUpload.upload(localFile.toPath(), fileMetadata);
+        });
 
-        // Upload the file to the database folder
-        File fileMetadata = new File();
-        fileMetadata.setName(localFile.getName());
-        fileMetadata.setParents(Collections.singletonList(databaseFolderId));
+        logger.info("Uploaded file '{}' to Google Drive folder '{}' (ID: {})", localFile.getName(), databaseName, fileId);
+        return fileId;
+    }
 
-        FileContent mediaContent = new FileContent("application/octet-stream", localFile);
+    /**
+     * Uploads the content of a local file that is already being read (e.g., by the sync fan-out).
+     * Progress is tracked against the local file, so an interrupted upload can be resumed later.
+     *
+     * @param inputStream    Content of the local file, read from the start.
+     * @param localFile      The local file; its parent directory names the database folder.
+     * @param parentFolderId ID of the root folder for backups on Google Drive.
+     * @return ID of the uploaded file.
+     * @throws IOException If an error occurs during upload.
+     */
+    public String uploadFile(InputStream inputStream, Path localFile, String parentFolderId) throws IOException {
+        String databaseName = localFile.getParent().getFileName().toString();
+        String fileId = inDatabaseFolder(databaseName, parentFolderId, databaseFolderId -> {
+            File fileMetadata = new File();
+            fileMetadata.setName(localFile.getFileName().toString());
+            fileMetadata.setParents(Collections.singletonList(databaseFolderId));
+            return resumableUpload.upload(inputStream, localFile, fileMetadata);
+        });
 
-        File uploadedFile = driveService.files().create(fileMetadata, mediaContent)
-                .setFields("id")
-                .execute();
+        logger.info("Uploaded file '{}' to Google Drive folder '{}' (ID: {})", localFile.getFileName(), databaseName, fileId);
+        return fileId;
+    }
 
-        logger.info("Uploaded file '{}' to Google Drive folder '{}'", localFile.getName(), databaseName);
+    /**
+     * Completes resumable uploads left unfinished by a previous run.
+     */
+    public void resumePendingUploads() {
+        resumableUpload.resumePending();
     }
 
     /**
-     * Ensures a folder exists in Google Drive, creating it if necessary.
+     * Uploads a stream of unknown length to the Google Drive folder of a database, using
+     * chunked resumable requests so the content never has to be buffered in full.
+     *
+     * @param inputStream    Content to upload; read until end of stream.
+     * @param fileName       Name of the file on Google Drive.
+     * @param databaseName   Name of the database folder.
+     * @param parentFolderId ID of the root folder for backups on Google Drive.
+     * @return ID of the uploaded file.
+     * @throws IOException If an error occurs during upload.
+     */
+    public String uploadStream(InputStream inputStream, String fileName, String databaseName, String parentFolderId)
+            throws IOException {
+        String fileId = inDatabaseFolder(databaseName, parentFolderId, databaseFolderId -> {
+            File fileMetadata = new File();
+            fileMetadata.setName(fileName);
+            fileMetadata.setParents(Collections.singletonList(databaseFolderId));
+
+            InputStreamContent mediaContent = new InputStreamContent("application/octet-stream",
+                    new ThrottledInputStream(inputStream, uploadLimiter));
+
+            Drive.Files.Create create = driveService.files().create(fileMetadata, mediaContent).setFields("id");
+            create.getMediaHttpUploader()
+                    .setDirectUploadEnabled(false)
+                    .setChunkSize(DriveResumableUpload.roundChunkSize(AppConfig.getGoogleDriveChunkSize()));
+            return create.execute().getId();
+        });
+
+        logger.info("Uploaded stream '{}' to Google Drive folder '{}' (ID: {})", fileName, databaseName, fileId);
+        return fileId;
+    }
+
+    /**
+     * Runs an operation against the folder of a database. If Google Drive reports the cached
+     * folder as missing (404), the cache entry is dropped and the operation retried once.
+     * The operation must not have consumed any upload data when the 404 is raised.
+     */
+    private <T> T inDatabaseFolder(String databaseName, String parentFolderId, FolderOperation<T> operation)
+            throws IOException {
+        String databaseFolderId = getOrCreateFolder(databaseName, parentFolderId);
+        try {
+            return operation.apply(databaseFolderId);
+        } catch (HttpResponseException e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+            folderCache.invalidate(parentFolderId, databaseName);
+            return operation.apply(getOrCreateFolder(databaseName, parentFolderId));
+        }
+    }
+
+    /**
+     * Ensures a folder exists in Google Drive, creating it if necessary. Folder IDs are served
+     * from the {@link DriveFolderCache} after the first lookup.
      *
      * @param folderName     Name of the folder.
      * @param parentFolderId ID of the parent folder.
@@ -59,6 +160,20 @@ public class GoogleDriveHandler {
      * @throws IOException If an error occurs.
      */
     public String getOrCreateFolder(String folderName, String parentFolderId) throws IOException {
+        return folderCache.get(parentFolderId, folderName, () -> findOrCreateFolder(folderName, parentFolderId));
+    }
+
+    /**
+     * Invalidates the cached ID of a folder, e.g. after an operation on it failed with 404.
+     *
+     * @param folderName     Name of the folder.
+     * @param parentFolderId ID of the parent folder.
+     */
+    public void invalidateFolder(String folderName, String parentFolderId) {
+        folderCache.invalidate(parentFolderId, folderName);
+    }
+
+    private String findOrCreateFolder(String folderName, String parentFolderId) throws IOException {
         String folderId = findFolder(folderName, parentFolderId);
         if (folderId != null) {
             return folderId;
@@ -87,7 +202,7 @@ public class GoogleDriveHandler {
      */
     private String findFolder(String folderName, String parentFolderId) throws IOException {
         String query = String.format("mimeType='application/vnd.google-apps.folder' and name='%s' and '%s' in parents and trashed=false",
-                folderName, parentFolderId);
+                folderName.replace("\\", "\\\\").replace("'", "\\'"), parentFolderId);
 
         FileList result = driveService.files().list()
                 .setQ(query)
@@ -99,19 +214,107 @@ public class GoogleDriveHandler {
     }
 
     /**
-     * Lists files in a Google Drive folder.
+     * Lists files in a Google Drive folder, following all result pages.
      *
      * @param parentFolderId Google Drive folder ID.
      * @return List of files in the folder.
      * @throws IOException If an error occurs.
      */
     public List<File> listFiles(String parentFolderId) throws IOException {
+        List<File> files = new ArrayList<>();
+        forEachFile(parentFolderId, files::add);
+        return files;
+    }
+
+    /**
+     * Streams the files of a Google Drive folder page by page, requesting only the fields
+     * needed for rotation, so large folders are neither truncated nor held in memory at once.
+     *
+     * @param parentFolderId Google Drive folder ID.
+     * @param consumer       Receives each file (id, name, createdTime).
+     * @throws IOException If an error occurs.
+     */
+    public void forEachFile(String parentFolderId, Consumer<File> consumer) throws IOException {
         String query = "'" + parentFolderId + "' in parents and trashed = false";
-        FileList result = driveService.files().list()
-                .setQ(query)
-                .setFields("files(id, name, createdTime)")
-                .execute();
-        return result.getFiles();
+        String pageToken = null;
+        do {
+            FileList result = driveService.files().list()
+                    .setQ(query)
+                    .setPageSize(LIST_PAGE_SIZE)
+                    .setPageToken(pageToken)
+                    .setFields("nextPageToken, files(id, name, createdTime)")
+                    .execute();
+            result.getFiles().forEach(consumer);
+            pageToken = result.getNextPageToken();
+        } while (pageToken != null);
+    }
+
+    /**
+     * Lists the files in the folder of a database, creating the folder if necessary.
+     *
+     * @param databaseName   Name of the database folder.
+     * @param parentFolderId ID of the root folder for backups on Google Drive.
+     * @return List of files in the database folder.
+     * @throws IOException If an error occurs.
+     */
+    public List<File> listDatabaseFiles(String databaseName, String parentFolderId) throws IOException {
+        return inDatabaseFolder(databaseName, parentFolderId, this::listFiles);
+    }
+
+    /**
+     * Streams the files in the folder of a database, creating the folder if necessary.
+     *
+     * @param databaseName   Name of the database folder.
+     * @param parentFolderId ID of the root folder for backups on Google Drive.
+     * @param consumer       Receives each file (id, name, createdTime).
+     * @throws IOException If an error occurs.
+     */
+    public void forEachDatabaseFile(String databaseName, String parentFolderId, Consumer<File> consumer)
+            throws IOException {
+        inDatabaseFolder(databaseName, parentFolderId, folderId -> {
+            forEachFile(folderId, consumer);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the size of a file on Google Drive.
+     *
+     * @param fileId The ID of the file.
+     * @return Size in bytes, or -1 if Drive does not report one.
+     * @throws IOException If an error occurs.
+     */
+    public long getFileSize(String fileId) throws IOException {
+        Long size = driveService.files().get(fileId).setFields("size").execute().getSize();
+        return size != null ? size : -1;
+    }
+
+    /**
+     * Returns the size and MD5 checksum Google Drive computed for a file.
+     *
+     * @param fileId The ID of the file.
+     * @return The file with its id, size and md5Checksum fields set.
+     * @throws IOException If an error occurs.
+     */
+    public File getFileMetadata(String fileId) throws IOException {
+        return driveService.files().get(fileId).setFields("id, size, md5Checksum").execute();
+    }
+
+    /**
+     * Downloads a file, or a byte range of it, from Google Drive.
+     *
+     * @param fileId The ID of the file.
+     * @param offset First byte to download.
+     * @param length Number of bytes to download, or -1 for the rest of the file.
+     * @return The content; the caller must close it.
+     * @throws IOException If an error occurs.
+     */
+    public InputStream download(String fileId, long offset, long length) throws IOException {
+        Drive.Files.Get request = driveService.files().get(fileId);
+        if (offset > 0 || length >= 0) {
+            request.getRequestHeaders().setRange("bytes=" + offset + "-" + (length >= 0 ? offset + length - 1 : ""));
+        }
+        return request.executeMediaAsInputStream();
     }
 
     /**
@@ -124,4 +327,45 @@ public class GoogleDriveHandler {
         driveService.files().delete(fileId).execute();
         logger.info("File deleted from Google Drive: {}", fileId);
     }
+
+    /**
+     * Deletes files from Google Drive using batch requests of up to 100 deletes each.
+     * Files that no longer exist count as deleted.
+     *
+     * @param fileIds The IDs of the files to delete.
+     * @return The IDs that could not be deleted.
+     * @throws IOException If a batch request as a whole fails.
+     */
+    public List<String> deleteFiles(List<String> fileIds) throws IOException {
+        List<String> failed = new ArrayList<>();
+        for (int start = 0; start < fileIds.size(); start += MAX_BATCH_SIZE) {
+            List<String> slice = fileIds.subList(start, Math.min(fileIds.size(), start + MAX_BATCH_SIZE));
+            BatchRequest batch = driveService.batch();
+            for (String fileId : slice) {
+                driveService.files().delete(fileId).queue(batch, new JsonBatchCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void result, HttpHeaders responseHeaders) {
+                        logger.info("File deleted from Google Drive: {}", fileId);
+                    }
+
+                    @Override
+                    public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                        if (error.getCode() == 404) {
+                            logger.info("File already gone from Google Drive: {}", fileId);
+                        } else {
+                            logger.error("Failed to delete {} from Google Drive: {}", fileId, error.getMessage());
+                            failed.add(fileId);
+                        }
+                    }
+                });
+            }
+            batch.execute();
+        }
+        return failed;
+    }
+
+    @FunctionalInterface
+    private interface FolderOperation<T> {
+        T apply(String folderId) throws IOException;
+    }
 }
@@ -0,0 +1,140 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.metrics.Metrics;
+import com.damworks.backupsyncutility.pipeline.CountingInputStream;
+import com.damworks.backupsyncutility.verify.Checksums;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records upload and delete metrics of another destination, labelled with its name and the
+ * database. Every destination created by {@link SyncManager#createDestinations()} is wrapped,
+ * so streamed, deduplicated and file uploads are all counted.
+ */
+public class InstrumentedDestination implements Destination {
+    private final Destination destination;
+
+    public InstrumentedDestination(Destination destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public String getName() {
+        return destination.getName();
+    }
+
+    @Override
+    public String upload(InputStream inputStream, String database, String fileName) throws IOException {
+        return upload(inputStream, database, fileName, null);
+    }
+
+    @Override
+    public String upload(InputStream inputStream, String database, String fileName, Path localFile) throws IOException {
+        CountingInputStream counting = new CountingInputStream(inputStream);
+        long start = System.nanoTime();
+        try {
+            String remoteRef = destination.upload(counting, database, fileName, localFile);
+            // Destinations that copy the local file directly leave the stream unread
+            long bytes = counting.getCount() == 0 && localFile != null ? Files.size(localFile) : counting.getCount();
+            recordUpload(database, bytes, start);
+            return remoteRef;
+        } catch (IOException | RuntimeException e) {
+            Metrics.UPLOAD_FAILURES.labels(getName(), database).inc();
+            throw e;
+        }
+    }
+
+    @Override
+    public String upload(String localFilePath) throws IOException {
+        File file = new File(localFilePath);
+        String database = file.getParentFile().getName();
+        long start = System.nanoTime();
+        try {
+            String remoteRef = destination.upload(localFilePath);
+            recordUpload(database, file.length(), start);
+            return remoteRef;
+        } catch (IOException | RuntimeException e) {
+            Metrics.UPLOAD_FAILURES.labels(getName(), database).inc();
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String database, String fileName, String remoteRef) throws IOException {
+        try {
+            destination.delete(database, fileName, remoteRef);
+            Metrics.DELETES.labels(getName(), database).inc();
+        } catch (IOException e) {
+            Metrics.DELETE_FAILURES.labels(getName(), database).inc();
+            throw e;
+        }
+    }
+
+    @Override
+    public List<String> delete(String database, Map<String, String> files) throws IOException {
+        List<String> failed;
+        try {
+            failed = destination.delete(database, files);
+        } catch (IOException e) {
+            Metrics.DELETE_FAILURES.labels(getName(), database).inc(files.size());
+            throw e;
+        }
+        Metrics.DELETES.labels(getName(), database).inc(files.size() - failed.size());
+        if (!failed.isEmpty()) {
+            Metrics.DELETE_FAILURES.labels(getName(), database).inc(failed.size());
+        }
+        return failed;
+    }
+
+    @Override
+    public boolean hasCopy(String database, String fileName, long size) throws IOException {
+        return destination.hasCopy(database, fileName, size);
+    }
+
+    @Override
+    public Map<String, String> list(String database) throws IOException {
+        return destination.list(database);
+    }
+
+    @Override
+    public long size(String database, String fileName, String remoteRef) throws IOException {
+        return destination.size(database, fileName, remoteRef);
+    }
+
+    @Override
+    public void download(String database, String fileName, String remoteRef, long offset, long length,
+                         OutputStream outputStream) throws IOException {
+        destination.download(database, fileName, remoteRef, offset, length, outputStream);
+    }
+
+    @Override
+    public String verify(String database, String fileName, String remoteRef, Checksums expected) throws IOException {
+        return destination.verify(database, fileName, remoteRef, expected);
+    }
+
+    @Override
+    public void resumePending() {
+        destination.resumePending();
+    }
+
+    @Override
+    public void close() throws IOException {
+        destination.close();
+    }
+
+    private void recordUpload(String database, long bytes, long startNanos) {
+        double seconds = Metrics.secondsSince(startNanos);
+        Metrics.UPLOAD_DURATION.labels(getName(), database).observe(seconds);
+        Metrics.UPLOAD_BYTES.labels(getName(), database).inc(bytes);
+        if (seconds > 0) {
+            Metrics.UPLOAD_THROUGHPUT.labels(getName(), database).set(bytes / seconds);
+        }
+    }
+}
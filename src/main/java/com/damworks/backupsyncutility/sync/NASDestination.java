@@ -0,0 +1,199 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.throttle.BandwidthLimits;
+import com.damworks.backupsyncutility.throttle.RateLimiter;
+import com.damworks.backupsyncutility.throttle.ThrottledInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copies backup files to {@code <root>/<database>/} on a mounted filesystem (e.g., an NFS or
+ * SMB share).
+ * <p>
+ * Complete local files are copied with {@link FileChannel#transferTo}, which the JDK maps to
+ * sendfile/copy_file_range, so the data never passes through a userland buffer. Files are
+ * written under a ".part" name and renamed once complete, like the FTP destination.
+ */
+public class NASDestination implements Destination {
+    private static final Logger logger = LoggerFactory.getLogger(NASDestination.class);
+    // Copy size between bandwidth reservations while a limit is in effect
+    private static final long THROTTLED_SLICE = 1024 * 1024;
+
+    private final Path root;
+    private final boolean sync;
+    private final RateLimiter uploadLimiter = BandwidthLimits.forDestination("nas");
+
+    /**
+     * @param root Mounted directory holding one folder per database.
+     * @param sync Whether to force each file to stable storage before it is renamed into place.
+     * @throws IOException If the directory does not exist (e.g., the share is not mounted).
+     */
+    public NASDestination(Path root, boolean sync) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("NAS path is not a directory (not mounted?): " + root);
+        }
+        this.root = root;
+        this.sync = sync;
+    }
+
+    @Override
+    public String getName() {
+        return "NAS";
+    }
+
+    @Override
+    public String upload(InputStream inputStream, String database, String fileName) throws IOException {
+        Path target = targetFile(database, fileName);
+        Path partFile = partFileOf(target);
+        try (FileChannel out = openForWrite(partFile)) {
+            new ThrottledInputStream(inputStream, uploadLimiter).transferTo(Channels.newOutputStream(out));
+            if (sync) {
+                out.force(true);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+        return commit(partFile, target);
+    }
+
+    /**
+     * Copies the local file directly when it is complete; the stream is then left unread, which
+     * the upload pipeline tolerates.
+     */
+    @Override
+    public String upload(InputStream inputStream, String database, String fileName, Path localFile) throws IOException {
+        if (localFile == null) {
+            return upload(inputStream, database, fileName);
+        }
+        return copy(localFile, database, fileName);
+    }
+
+    @Override
+    public String upload(String localFilePath) throws IOException {
+        Path localFile = Paths.get(localFilePath);
+        return copy(localFile, localFile.getParent().getFileName().toString(), localFile.getFileName().toString());
+    }
+
+    private String copy(Path localFile, String database, String fileName) throws IOException {
+        Path target = targetFile(database, fileName);
+        Path partFile = partFileOf(target);
+        try (FileChannel in = FileChannel.open(localFile, StandardOpenOption.READ);
+             FileChannel out = openForWrite(partFile)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long count = uploadLimiter.isUnlimited() ? size - position : Math.min(size - position, THROTTLED_SLICE);
+                uploadLimiter.acquire(count);
+                long transferred = in.transferTo(position, count, out);
+                // Nothing is transferred at or past the end, e.g. if the source shrank meanwhile
+                if (transferred == 0 && position >= in.size()) {
+                    throw new EOFException(localFile + " shrank to " + in.size() + " bytes while being copied ("
+                            + size + " expected).");
+                }
+                position += transferred;
+            }
+            if (sync) {
+                out.force(true);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+        return commit(partFile, target);
+    }
+
+    private static FileChannel openForWrite(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    private static String commit(Path partFile, Path target) throws IOException {
+        Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("File copied successfully to {}", target);
+        return target.toString();
+    }
+
+    private Path targetFile(String database, String fileName) throws IOException {
+        Path directory = root.resolve(database);
+        Files.createDirectories(directory);
+        return directory.resolve(fileName);
+    }
+
+    private static Path partFileOf(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part");
+    }
+
+    @Override
+    public void delete(String database, String fileName, String remoteRef) throws IOException {
+        Files.deleteIfExists(remoteRef != null ? Paths.get(remoteRef) : root.resolve(database).resolve(fileName));
+    }
+
+    @Override
+    public boolean hasCopy(String database, String fileName, long size) throws IOException {
+        return size(database, fileName, null) == size;
+    }
+
+    @Override
+    public Map<String, String> list(String database) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        Path directory = root.resolve(database);
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path file : stream) {
+                files.put(file.getFileName().toString(), file.toString());
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public long size(String database, String fileName, String remoteRef) throws IOException {
+        try {
+            return Files.size(remoteRef != null ? Paths.get(remoteRef) : root.resolve(database).resolve(fileName));
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void download(String database, String fileName, String remoteRef, long offset, long length,
+                         OutputStream outputStream) throws IOException {
+        Path file = remoteRef != null ? Paths.get(remoteRef) : root.resolve(database).resolve(fileName);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = length < 0 ? in.size() : offset + length;
+            if (end > in.size()) {
+                throw new EOFException("Range ends after the end of " + file);
+            }
+            WritableByteChannel out = Channels.newChannel(outputStream);
+            long position = offset;
+            while (position < end) {
+                long transferred = in.transferTo(position, end - position, out);
+                if (transferred == 0 && position >= in.size()) {
+                    throw new EOFException(file + " shrank to " + in.size() + " bytes while being read ("
+                            + end + " expected).");
+                }
+                position += transferred;
+            }
+        }
+    }
+}
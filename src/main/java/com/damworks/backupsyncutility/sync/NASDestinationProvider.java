@@ -0,0 +1,27 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Provides the mounted-filesystem destination configured with {@code nas.*}.
+ */
+public class NASDestinationProvider implements DestinationProvider {
+
+    @Override
+    public String getType() {
+        return "nas";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return AppConfig.getNASPath() != null;
+    }
+
+    @Override
+    public Destination create() throws IOException {
+        return new NASDestination(Paths.get(AppConfig.getNASPath()), AppConfig.isNASSyncEnabled());
+    }
+}
@@ -0,0 +1,128 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.metrics.Metrics;
+import com.damworks.backupsyncutility.verify.ChecksumMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Retries transient failures of remote operations with exponential backoff and jitter.
+ * <p>
+ * Retry n waits between half and all of {@code min(maxDelay, baseDelay * 2^(n-1))}, chosen at
+ * random, so uploads that failed together (e.g., when a WAN link dropped) do not all reconnect
+ * at the same moment.
+ */
+public class RetryPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts     Total number of attempts, including the first.
+     * @param baseDelayMillis Backoff before the first retry.
+     * @param maxDelayMillis  Upper bound of any single backoff.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = Math.max(0, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * @return The policy configured with {@code backup.retry.*}.
+     */
+    public static RetryPolicy fromConfig() {
+        return new RetryPolicy(AppConfig.getRetryAttempts(), AppConfig.getRetryBaseDelayMillis(),
+                AppConfig.getRetryMaxDelayMillis());
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Runs an operation, retrying transient failures.
+     *
+     * @param destination Destination name, for logs and metrics.
+     * @param operation   Operation name, for logs and metrics (e.g., "upload").
+     * @param retryable   Decides whether a failure may be retried, in addition to {@link #isTransient}.
+     * @param action      The operation; receives the attempt number, starting at 1.
+     * @return The result of the first successful attempt.
+     * @throws IOException The failure of the last attempt, or the first failure that is not retried.
+     */
+    public <T> T call(String destination, String operation, Predicate<IOException> retryable, Attempt<T> action)
+            throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.run(attempt);
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isTransient(e) || !retryable.test(e)) {
+                    throw e;
+                }
+                long delay = delayMillis(attempt);
+                logger.warn("{} {} failed (attempt {}/{}); retrying in {} ms: {}", destination, operation,
+                        attempt, maxAttempts, delay, e.getMessage());
+                Metrics.RETRIES.labels(destination, operation).inc();
+                sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * @param attempt Number of the attempt that just failed, starting at 1.
+     * @return Backoff before the next attempt, in milliseconds.
+     */
+    public long delayMillis(int attempt) {
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap - cap / 2 + 1);
+    }
+
+    /**
+     * Waits for the backoff after a failed attempt.
+     *
+     * @param attempt Number of the attempt that just failed, starting at 1.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public void backOff(int attempt) throws InterruptedIOException {
+        sleep(delayMillis(attempt));
+    }
+
+    /**
+     * @param e A failed attempt.
+     * @return False for failures that retrying cannot fix: missing files, corrupt copies and
+     *         interruption (timeouts are retried).
+     */
+    public static boolean isTransient(IOException e) {
+        if (e instanceof InterruptedIOException) {
+            return e instanceof SocketTimeoutException;
+        }
+        return !(e instanceof FileNotFoundException) && !(e instanceof ChecksumMismatchException);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry.");
+        }
+    }
+
+    /**
+     * One attempt of a retried operation.
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T run(int attempt) throws IOException;
+    }
+}
@@ -1,12 +1,41 @@
 package com.damworks.backupsyncutility.sync;
 
-import com.damworks.backupsyncutility.auth.GoogleDriveAuth;
+import com.damworks.backupsyncutility.backup.DumpResult;
+import com.damworks.backupsyncutility.catalog.BackupCatalog;
 import com.damworks.backupsyncutility.config.AppConfig;
+import com.damworks.backupsyncutility.dedup.ChunkManifest;
+import com.damworks.backupsyncutility.dedup.DedupStore;
+import com.damworks.backupsyncutility.pipeline.PipelineSession;
+import com.damworks.backupsyncutility.pipeline.TransferStats;
+import com.damworks.backupsyncutility.pipeline.UploadPipeline;
+import com.damworks.backupsyncutility.verify.ChecksumMismatchException;
+import com.damworks.backupsyncutility.verify.ChecksumOutputStream;
+import com.damworks.backupsyncutility.verify.Checksums;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Handles the synchronization of backup files across protocols (e.g., FTP, Google Drive).
@@ -15,65 +44,357 @@ public class SyncManager {
     private static final Logger logger = LoggerFactory.getLogger(SyncManager.class);
 
     /**
-     * Synchronizes the given files to configured protocols.
+     * Synchronizes the given files to configured protocols. All destinations are served in
+     * parallel from a single read of each file, or receive only the missing chunks when
+     * deduplication is enabled.
      *
      * @param dumpFiles Array of file paths to synchronize.
      */
     public static void syncFiles(String[] dumpFiles) {
+        List<Destination> destinations = createDestinations();
         try {
-            syncFTP(dumpFiles);
-            syncGoogleDrive(dumpFiles);
-        } catch (IOException e) {
-            logger.error("Failed to synchronize files: {}", e.getMessage());
+            if (AppConfig.isDedupEnabled()) {
+                storeDeduplicated(Arrays.asList(dumpFiles), destinations);
+                return;
+            }
+            fanOut(Arrays.asList(dumpFiles), destinations, file -> destinations);
+        } finally {
+            closeDestinations(destinations);
+        }
+    }
+
+    /**
+     * Uploads the dumps that were not already streamed to every destination by the upload pipeline.
+     *
+     * @param dumpResults Results of the dump run.
+     */
+    public static void syncPending(List<DumpResult> dumpResults) {
+        List<Destination> destinations = createDestinations();
+        try {
+            Map<String, Set<String>> streamed = new LinkedHashMap<>();
+            for (DumpResult result : dumpResults) {
+                if (result.isSuccess()) {
+                    // Only single-file dumps are streamed; the parts of a multi-file dump are all pending
+                    for (String file : result.getDumpFiles()) {
+                        streamed.put(file, file.equals(result.getDumpFile())
+                                ? verifiedStreamedCopies(result, destinations) : Collections.emptySet());
+                    }
+                }
+            }
+
+            // Copies that failed verification were deleted and are uploaded again
+            fanOut(new ArrayList<>(streamed.keySet()), destinations, file -> destinations.stream()
+                    .filter(destination -> !streamed.get(file).contains(destination.getName()))
+                    .collect(Collectors.toList()));
+        } finally {
+            closeDestinations(destinations);
+        }
+    }
+
+    /**
+     * Verifies the copies the upload pipeline made of a dump.
+     *
+     * @param result       A successful dump.
+     * @param destinations All available destinations.
+     * @return Names of the destinations holding a copy that passed verification (or could not be checked).
+     */
+    private static Set<String> verifiedStreamedCopies(DumpResult result, List<Destination> destinations) {
+        Path file = Paths.get(result.getDumpFile());
+        Checksums expected = readChecksums(file);
+        Set<String> verified = new HashSet<>();
+        for (Destination destination : destinations) {
+            String remoteRef = result.getStreamedCopies().get(destination.getName());
+            if (result.getStreamedDestinations().contains(destination.getName())
+                    && (expected == null || verifyCopy(destination, file, remoteRef, expected))) {
+                verified.add(destination.getName());
+            }
         }
+        return verified;
     }
 
     /**
-     * Synchronizes files via FTP.
+     * Stores each file as deduplicated chunks plus a manifest on every destination.
      *
-     * @param dumpFiles Array of file paths.
-     * @throws IOException If an error occurs during upload.
+     * @param dumpFiles    Files to store.
+     * @param destinations Destinations to store them on.
      */
-    private static void syncFTP(String[] dumpFiles) throws IOException {
-        FTPHandler ftpHandler = new FTPHandler(
-                AppConfig.getFTPServer(),
-                AppConfig.getFTPPort(),
-                AppConfig.getFTPUser(),
-                AppConfig.getFTPPassword()
-        );
+    private static void storeDeduplicated(List<String> dumpFiles, List<Destination> destinations) {
+        if (destinations.isEmpty()) {
+            logger.warn("No destinations available; nothing synchronized.");
+            return;
+        }
+        destinations.forEach(Destination::resumePending);
 
+        DedupStore store = DedupStore.fromConfig();
         for (String dumpFile : dumpFiles) {
-            File file = new File(dumpFile);
+            Path file = Paths.get(dumpFile);
+            try {
+                for (Map.Entry<String, String> copy : store.store(file, destinations).entrySet()) {
+                    logger.info("File synchronized to {} (deduplicated): {}", copy.getKey(), dumpFile);
+                    recordCopy(copy.getKey(), file, file.getFileName() + ChunkManifest.EXTENSION, copy.getValue());
+                }
+            } catch (IOException e) {
+                logger.error("Failed to read {}: {}", dumpFile, e.getMessage());
+            }
+        }
+    }
 
-            String database = file.getParentFile().getName();
-            String remotePath = AppConfig.getFTPRemotePath() + "/" + database;
-            String remoteFilePath = remotePath + "/" + file.getName();
+    /**
+     * Reads each file once and feeds it to all of its destinations concurrently. Up to
+     * {@code backup.upload.threads} files are synchronized at once, each holding an upload slot
+     * of its destinations while it is sent. A failing destination only loses that file; the
+     * other destinations and files carry on.
+     *
+     * @param dumpFiles       Files to upload.
+     * @param destinations    All available destinations.
+     * @param destinationsFor Selects the destinations each file still has to be uploaded to.
+     */
+    private static void fanOut(List<String> dumpFiles, List<Destination> destinations,
+                               Function<String, List<Destination>> destinationsFor) {
+        if (destinations.isEmpty()) {
+            logger.warn("No destinations available; nothing synchronized.");
+            return;
+        }
+        destinations.forEach(Destination::resumePending);
+
+        int threads = Math.max(1, Math.min(AppConfig.getUploadThreads(), dumpFiles.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (UploadPipeline pipeline = new UploadPipeline(destinations,
+                AppConfig.getPipelineBufferChunks(), AppConfig.getPipelineChunkSize())) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String dumpFile : dumpFiles) {
+                futures.add(executor.submit(() -> {
+                    syncFile(pipeline, dumpFile, destinationsFor.apply(dumpFile));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    logger.error("Synchronization failed: {}", e.getCause().getMessage(), e.getCause());
+                }
+            }
 
-            ftpHandler.upload(dumpFile, remoteFilePath);
-            logger.info("File synchronized to FTP: {}", remoteFilePath);
+            for (TransferStats stats : pipeline.getStats()) {
+                logger.info("Sync statistics - {}", stats);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Synchronization interrupted.");
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        ftpHandler.close();
+    /**
+     * Uploads one file to the destinations that do not have it yet and records the verified copies.
+     *
+     * @param pipeline     Pipeline the file is streamed through.
+     * @param dumpFile     File to upload.
+     * @param destinations Destinations the file still has to be uploaded to.
+     * @throws InterruptedException If interrupted while waiting for upload slots or uploads.
+     */
+    private static void syncFile(UploadPipeline pipeline, String dumpFile, List<Destination> destinations)
+            throws InterruptedException {
+        Path file = Paths.get(dumpFile);
+        List<Destination> targets = withoutExistingCopies(file, destinations);
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        PipelineSession session = pipeline.open(file, targets);
+        ChecksumOutputStream checksumStream = new ChecksumOutputStream(OutputStream.nullOutputStream());
+        try (InputStream inputStream = Files.newInputStream(file);
+             OutputStream outputStream = session.tee(checksumStream)) {
+            inputStream.transferTo(outputStream);
+        } catch (IOException e) {
+            logger.error("Failed to read {}: {}", dumpFile, e.getMessage());
+            session.abort(e);
+            return;
+        }
+        try {
+            checkUnchanged(file, checksumStream.getChecksums());
+        } catch (IOException e) {
+            logger.error("Not synchronizing {}: {}", dumpFile, e.getMessage());
+            session.abort(e);
+            return;
+        }
+
+        Map<String, Destination> byName = targets.stream()
+                .collect(Collectors.toMap(Destination::getName, Function.identity()));
+        for (Map.Entry<String, String> copy : session.complete().entrySet()) {
+            logger.info("File synchronized to {}: {}", copy.getKey(), dumpFile);
+            if (verifyCopy(byName.get(copy.getKey()), file, copy.getValue(), checksumStream.getChecksums())) {
+                recordCopy(copy.getKey(), file, file.getFileName().toString(), copy.getValue());
+            }
+        }
     }
 
     /**
-     * Synchronizes files via Google Drive.
+     * Compares the checksums of a file as it was just read with those recorded when it was
+     * written, so a file damaged on local disk is never uploaded as a good backup.
      *
-     * @param dumpFiles Array of file paths.
+     * @param file   Local dump file.
+     * @param actual Checksums of the content just read.
+     * @throws IOException If the file changed since it was written.
      */
-    private static void syncGoogleDrive(String[] dumpFiles) {
+    private static void checkUnchanged(Path file, Checksums actual) throws IOException {
+        Checksums expected = readChecksums(file);
+        if (expected != null && !expected.matches(actual)) {
+            throw new ChecksumMismatchException("Local file no longer matches its checksums (expected "
+                    + expected.getSha256() + ", read " + actual.getSha256() + ")");
+        }
+    }
+
+    /**
+     * Checks a new remote copy with the checksums the destination can report cheaply. A copy that
+     * does not match is deleted; a copy that cannot be checked is kept with a warning.
+     *
+     * @param destination Destination holding the copy.
+     * @param file        Local dump file; its parent directory names the database.
+     * @param remoteRef   Reference returned by the upload.
+     * @param expected    Checksums of the local file.
+     * @return False if the copy did not match and was deleted.
+     */
+    private static boolean verifyCopy(Destination destination, Path file, String remoteRef, Checksums expected) {
+        if (!AppConfig.isRemoteVerifyEnabled()) {
+            return true;
+        }
+        String database = file.getParent().getFileName().toString();
+        String fileName = file.getFileName().toString();
         try {
-            String credentialsPath = AppConfig.getGoogleDriveCredentialsFile();
-            String parentFolderId = AppConfig.getGoogleDriveFolderId();
+            String method = destination.verify(database, fileName, remoteRef, expected);
+            if (method != null) {
+                logger.info("Copy on {} verified by {}: {}", destination.getName(), method, fileName);
+            } else {
+                logger.warn("Copy on {} could not be verified: {}", destination.getName(), fileName);
+            }
+            return true;
+        } catch (ChecksumMismatchException e) {
+            logger.error("Copy on {} is corrupt, deleting it: {}", destination.getName(), e.getMessage());
+            try {
+                destination.delete(database, fileName, remoteRef);
+                BackupCatalog.shared().recordDelete(destination.getName(), database, fileName);
+            } catch (IOException | UncheckedIOException deleteError) {
+                logger.warn("Failed to delete corrupt copy on {}: {}", destination.getName(), deleteError.getMessage());
+            }
+            return false;
+        } catch (IOException e) {
+            logger.warn("Could not verify copy on {} of {}: {}", destination.getName(), fileName, e.getMessage());
+            return true;
+        }
+    }
 
-            GoogleDriveHandler driveHandler = new GoogleDriveHandler(GoogleDriveAuth.getDriveService(credentialsPath));
+    /**
+     * @param file Local dump file.
+     * @return The checksums recorded when the file was written, or null if there are none.
+     */
+    private static Checksums readChecksums(Path file) {
+        try {
+            return Checksums.read(file);
+        } catch (IOException e) {
+            logger.warn("Ignoring checksums of {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
 
-            for (String dumpFile : dumpFiles) {
-                driveHandler.uploadFile(dumpFile, parentFolderId);
-                logger.info("File synchronized to Google Drive: {}", dumpFile);
+    /**
+     * Drops the destinations that already hold a file of the same name and size, e.g. after a
+     * run that uploaded it but failed later. The check uses cached listings where available.
+     *
+     * @param file         Local dump file.
+     * @param destinations Candidate destinations.
+     * @return The destinations that still need the file.
+     */
+    private static List<Destination> withoutExistingCopies(Path file, List<Destination> destinations) {
+        String database = file.getParent().getFileName().toString();
+        String fileName = file.getFileName().toString();
+        List<Destination> remaining = new ArrayList<>();
+        for (Destination destination : destinations) {
+            try {
+                if (destination.hasCopy(database, fileName, Files.size(file))) {
+                    logger.info("File already present on {}, skipping: {}", destination.getName(), file);
+                    recordCopy(destination.getName(), file, fileName, null);
+                    continue;
+                }
+            } catch (IOException e) {
+                logger.debug("Could not check {} for {}: {}", destination.getName(), fileName, e.getMessage());
+            }
+            remaining.add(destination);
+        }
+        return remaining;
+    }
+
+    /**
+     * Records a remote copy of a local dump file in the backup catalog.
+     *
+     * @param destination Destination name.
+     * @param dumpFile    Local dump file; its parent directory names the database.
+     * @param remoteName  Name of the remote file.
+     * @param remoteRef   Reference returned by the upload.
+     */
+    private static void recordCopy(String destination, Path dumpFile, String remoteName, String remoteRef) {
+        try {
+            BackupCatalog.shared().recordCopy(destination, dumpFile.getParent().getFileName().toString(),
+                    dumpFile.getFileName().toString(), remoteName, remoteRef);
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Failed to record copy of {} in the catalog: {}", dumpFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a destination for each enabled backend. Backends are found through
+     * {@link DestinationProvider}; {@code backup.destinations} selects them by type, and without
+     * it every backend whose settings are present is used. Destinations that cannot be
+     * initialized are logged and skipped. Each destination records upload and delete metrics.
+     *
+     * @return The available destinations; the caller must close them.
+     */
+    public static List<Destination> createDestinations() {
+        String[] types = AppConfig.getDestinationTypes();
+        Map<String, DestinationProvider> providers = new LinkedHashMap<>();
+        for (DestinationProvider provider : ServiceLoader.load(DestinationProvider.class)) {
+            providers.putIfAbsent(provider.getType(), provider);
+        }
+
+        List<DestinationProvider> enabled = new ArrayList<>();
+        if (types == null) {
+            providers.values().stream().filter(DestinationProvider::isConfigured).forEach(enabled::add);
+        } else {
+            for (String type : types) {
+                DestinationProvider provider = providers.get(type.toLowerCase());
+                if (provider == null) {
+                    logger.error("Unknown destination type: {} (available: {})", type, providers.keySet());
+                } else {
+                    enabled.add(provider);
+                }
+            }
+        }
+
+        List<Destination> destinations = new ArrayList<>();
+        for (DestinationProvider provider : enabled) {
+            try {
+                destinations.add(new InstrumentedDestination(provider.create()));
+            } catch (Exception e) {
+                logger.error("Failed to initialize destination {}: {}", provider.getType(), e.getMessage());
+            }
+        }
+        return destinations;
+    }
+
+    /**
+     * Closes the given destinations, logging any errors.
+     *
+     * @param destinations Destinations returned by {@link #createDestinations()}.
+     */
+    public static void closeDestinations(List<Destination> destinations) {
+        for (Destination destination : destinations) {
+            try {
+                destination.close();
+            } catch (IOException e) {
+                logger.warn("Error while closing {}: {}", destination.getName(), e.getMessage());
             }
-        } catch (Exception e) {
-            logger.error("Failed to synchronize files to Google Drive: {}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,55 @@
+package com.damworks.backupsyncutility.throttle;
+
+import com.damworks.backupsyncutility.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide upload limiters: one global limiter from {@code backup.bandwidth.limit} and one
+ * per destination type from {@code backup.bandwidth.limit.<type>}, each a child of the global
+ * one. Limiters are registered as MBeans so their schedules can be changed at runtime.
+ */
+public final class BandwidthLimits {
+    private static final Logger logger = LoggerFactory.getLogger(BandwidthLimits.class);
+    private static final Map<String, RateLimiter> limiters = new HashMap<>();
+    private static RateLimiter global;
+
+    private BandwidthLimits() {
+    }
+
+    /**
+     * @param type Destination type (e.g., "ftp", "gdrive" or "nas").
+     * @return The shared limiter for uploads to destinations of that type.
+     * @throws IllegalArgumentException If a configured schedule cannot be parsed.
+     */
+    public static synchronized RateLimiter forDestination(String type) {
+        if (global == null) {
+            global = register(new RateLimiter("global", BandwidthSchedule.parse(AppConfig.getBandwidthLimit()), null));
+        }
+        return limiters.computeIfAbsent(type, t -> register(
+                new RateLimiter(t, BandwidthSchedule.parse(AppConfig.getBandwidthLimit(t)), global)));
+    }
+
+    private static RateLimiter register(RateLimiter limiter) {
+        if (!AppConfig.isMetricsJmxEnabled()) {
+            return limiter;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.damworks.backupsyncutility:type=Bandwidth,name=" + limiter.getName());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(limiter, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register the bandwidth MBean for {}: {}", limiter.getName(), e.getMessage());
+        }
+        return limiter;
+    }
+}
@@ -0,0 +1,154 @@
+package com.damworks.backupsyncutility.throttle;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Bandwidth limits by time of day, written as comma-separated entries
+ * {@code <rate>[@HH:mm-HH:mm]}, e.g. {@code 20M@08:00-20:00,50M@20:00-23:00}.
+ * <p>
+ * Rates are bytes per second with an optional K, M or G suffix (powers of 1024); "unlimited"
+ * or 0 means no limit. The first entry whose window contains the current time applies; an
+ * entry without a window applies all day, and a window may cross midnight. If no entry
+ * applies, uploads are not limited.
+ */
+public final class BandwidthSchedule {
+    public static final BandwidthSchedule UNLIMITED = new BandwidthSchedule(List.of());
+
+    private final List<Entry> entries;
+
+    private BandwidthSchedule(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @param spec Schedule as described above; null or blank means unlimited.
+     * @return The parsed schedule.
+     * @throws IllegalArgumentException If an entry cannot be parsed.
+     */
+    public static BandwidthSchedule parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return UNLIMITED;
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String entry = part.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int at = entry.indexOf('@');
+            long rate = parseRate(at < 0 ? entry : entry.substring(0, at).trim());
+            if (at < 0) {
+                entries.add(new Entry(rate, null, null));
+                continue;
+            }
+            String[] window = entry.substring(at + 1).trim().split("-");
+            if (window.length != 2) {
+                throw new IllegalArgumentException("Invalid time window in bandwidth schedule: " + entry);
+            }
+            try {
+                entries.add(new Entry(rate, LocalTime.parse(window[0].trim()), LocalTime.parse(window[1].trim())));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid time window in bandwidth schedule: " + entry, e);
+            }
+        }
+        return new BandwidthSchedule(List.copyOf(entries));
+    }
+
+    /**
+     * @param time Time of day.
+     * @return Limit in bytes per second at that time, or 0 if unlimited.
+     */
+    public long rateAt(LocalTime time) {
+        for (Entry entry : entries) {
+            if (entry.contains(time)) {
+                return entry.rate;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param bytesPerSecond A rate, or 0 for unlimited.
+     * @return The rate in the units of the schedule syntax (e.g., "20M").
+     */
+    public static String formatRate(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            return "unlimited";
+        }
+        String[] units = {"", "K", "M", "G"};
+        int unit = 0;
+        double value = bytesPerSecond;
+        while (unit < units.length - 1 && value >= 1024 && value % 1024 == 0) {
+            value /= 1024;
+            unit++;
+        }
+        return (long) value + units[unit];
+    }
+
+    private static long parseRate(String rate) {
+        String value = rate.toUpperCase(Locale.ROOT).replace("/S", "");
+        if (value.equals("UNLIMITED")) {
+            return 0;
+        }
+        if (value.endsWith("B")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        long multiplier = 1;
+        if (!value.isEmpty()) {
+            switch (value.charAt(value.length() - 1)) {
+                case 'K' -> multiplier = 1024L;
+                case 'M' -> multiplier = 1024L * 1024;
+                case 'G' -> multiplier = 1024L * 1024 * 1024;
+                default -> multiplier = 1;
+            }
+            if (multiplier > 1) {
+                value = value.substring(0, value.length() - 1);
+            }
+        }
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            if (parsed < 0) {
+                throw new IllegalArgumentException("Negative rate in bandwidth schedule: " + rate);
+            }
+            return (long) (parsed * multiplier);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid rate in bandwidth schedule: " + rate, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return entries.stream().map(Entry::toString).collect(Collectors.joining(","));
+    }
+
+    private static final class Entry {
+        private final long rate;
+        private final LocalTime start;
+        private final LocalTime end;
+
+        private Entry(long rate, LocalTime start, LocalTime end) {
+            this.rate = rate;
+            this.start = start;
+            this.end = end;
+        }
+
+        private boolean contains(LocalTime time) {
+            if (start == null || start.equals(end)) {
+                return true;
+            }
+            return start.isBefore(end)
+                    ? !time.isBefore(start) && time.isBefore(end)
+                    : !time.isBefore(start) || time.isBefore(end);
+        }
+
+        @Override
+        public String toString() {
+            return formatRate(rate) + (start != null ? "@" + start + "-" + end : "");
+        }
+    }
+}
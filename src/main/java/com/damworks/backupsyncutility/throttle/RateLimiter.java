@@ -0,0 +1,189 @@
+package com.damworks.backupsyncutility.throttle;
+
+import com.damworks.backupsyncutility.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket shared by every upload that passes through it. The limit follows a
+ * {@link BandwidthSchedule}, re-read at most once per second, so a window boundary or a
+ * schedule change through JMX takes effect during a running upload.
+ * <p>
+ * Callers reserve bytes before sending them and sleep until the bucket has refilled; up to
+ * {@link #BURST_NANOS} of unused capacity may be spent at once. A limiter with a parent (the
+ * global limit) also waits on the parent.
+ */
+public class RateLimiter implements RateLimiterMBean {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long RECHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final String name;
+    private final RateLimiter parent;
+    private volatile BandwidthSchedule schedule;
+
+    private long rate = -1;
+    private long rateCheckedNanos;
+    private long nextFreeNanos;
+    private long transferred;
+    private long windowStartNanos = System.nanoTime();
+    private long windowBytes;
+    private volatile double achieved;
+
+    /**
+     * @param name     Name used in logs, metrics and JMX (e.g., "global" or "ftp").
+     * @param schedule Limits by time of day.
+     * @param parent   Limiter that every transfer must also pass, or null.
+     */
+    public RateLimiter(String name, BandwidthSchedule schedule, RateLimiter parent) {
+        this.name = name;
+        this.schedule = schedule;
+        this.parent = parent;
+    }
+
+    /**
+     * Waits until the given number of bytes may be sent.
+     *
+     * @param bytes Number of bytes about to be sent.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        if (bytes <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            record(bytes, now);
+            long limit = currentRate(now);
+            if (limit <= 0) {
+                waitNanos = 0;
+            } else {
+                nextFreeNanos = Math.max(nextFreeNanos, now - BURST_NANOS);
+                waitNanos = nextFreeNanos - now;
+                nextFreeNanos += (long) (bytes * 1e9 / limit);
+            }
+        }
+        if (waitNanos > 0) {
+            sleep(waitNanos);
+        }
+        if (parent != null) {
+            parent.acquire(bytes);
+        }
+    }
+
+    /**
+     * @return True if neither this limiter nor its parent limits transfers right now.
+     */
+    public boolean isUnlimited() {
+        synchronized (this) {
+            if (currentRate(System.nanoTime()) > 0) {
+                return false;
+            }
+        }
+        return parent == null || parent.isUnlimited();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getSchedule() {
+        return schedule.toString();
+    }
+
+    @Override
+    public void setSchedule(String schedule) {
+        BandwidthSchedule parsed = BandwidthSchedule.parse(schedule);
+        synchronized (this) {
+            this.schedule = parsed;
+            rateCheckedNanos = System.nanoTime() - RECHECK_NANOS;
+        }
+        logger.info("Bandwidth schedule for {} set to '{}'.", name, parsed);
+    }
+
+    @Override
+    public synchronized long getLimitBytesPerSecond() {
+        return Math.max(0, currentRate(System.nanoTime()));
+    }
+
+    @Override
+    public double getAchievedBytesPerSecond() {
+        return achieved;
+    }
+
+    @Override
+    public synchronized long getTransferredBytes() {
+        return transferred;
+    }
+
+    /**
+     * Re-reads the schedule if it was last read over a second ago. Must hold the lock.
+     */
+    private long currentRate(long now) {
+        if (rate >= 0 && now - rateCheckedNanos < RECHECK_NANOS) {
+            return rate;
+        }
+        rateCheckedNanos = now;
+        long limit = schedule.rateAt(LocalTime.now());
+        if (limit != rate) {
+            if (rate >= 0 || limit > 0) {
+                logger.info("Bandwidth limit for {} is now {} (achieved {} MB/s).", name,
+                        limit > 0 ? BandwidthSchedule.formatRate(limit) + "/s" : "unlimited",
+                        String.format("%.2f", achieved / (1024 * 1024)));
+            }
+            rate = limit;
+            // Reservations made at the old rate do not carry over
+            nextFreeNanos = now;
+            Metrics.BANDWIDTH_LIMIT.labels(name).set(limit);
+        }
+        return rate;
+    }
+
+    /**
+     * Counts transferred bytes and refreshes the achieved rate. Must hold the lock.
+     */
+    private void record(long bytes, long now) {
+        transferred += bytes;
+        windowBytes += bytes;
+        Metrics.BANDWIDTH_BYTES.labels(name).inc(bytes);
+        long elapsed = now - windowStartNanos;
+        if (elapsed >= REPORT_NANOS) {
+            achieved = windowBytes * 1_000_000_000.0 / elapsed;
+            Metrics.BANDWIDTH_ACHIEVED.labels(name).set(achieved);
+            windowStartNanos = now;
+            windowBytes = 0;
+        }
+    }
+
+    /**
+     * Sleeps in slices of at most a second, stopping early if the limit is lifted meanwhile.
+     */
+    private void sleep(long waitNanos) throws InterruptedIOException {
+        long start = System.nanoTime();
+        long deadline = start + waitNanos;
+        try {
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, RECHECK_NANOS));
+                synchronized (this) {
+                    if (currentRate(System.nanoTime()) <= 0) {
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for upload bandwidth.");
+        } finally {
+            Metrics.BANDWIDTH_THROTTLED.labels(name).inc(Metrics.secondsSince(start));
+        }
+    }
+}
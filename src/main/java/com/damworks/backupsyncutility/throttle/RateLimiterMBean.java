@@ -0,0 +1,37 @@
+package com.damworks.backupsyncutility.throttle;
+
+/**
+ * JMX view of a {@link RateLimiter}; the schedule can be changed while uploads run.
+ */
+public interface RateLimiterMBean {
+
+    String getName();
+
+    /**
+     * @return The schedule in {@link BandwidthSchedule} syntax; empty if unlimited.
+     */
+    String getSchedule();
+
+    /**
+     * Replaces the schedule. Uploads in progress pick up the new limit within a second.
+     *
+     * @param schedule Schedule in {@link BandwidthSchedule} syntax; empty for unlimited.
+     * @throws IllegalArgumentException If the schedule cannot be parsed.
+     */
+    void setSchedule(String schedule);
+
+    /**
+     * @return Limit in effect, in bytes per second, or 0 if unlimited.
+     */
+    long getLimitBytesPerSecond();
+
+    /**
+     * @return Rate measured over the last reporting interval, in bytes per second.
+     */
+    double getAchievedBytesPerSecond();
+
+    /**
+     * @return Bytes that passed through this limiter since the process started.
+     */
+    long getTransferredBytes();
+}
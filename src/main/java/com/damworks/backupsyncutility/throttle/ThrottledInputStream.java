@@ -0,0 +1,36 @@
+package com.damworks.backupsyncutility.throttle;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream whose reads are paced by a {@link RateLimiter}. Wrap the stream an upload
+ * sends from, so the limit applies to the bytes leaving the host.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+    private final RateLimiter limiter;
+
+    public ThrottledInputStream(InputStream in, RateLimiter limiter) {
+        super(in);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            limiter.acquire(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = in.read(buffer, offset, length);
+        if (read > 0) {
+            limiter.acquire(read);
+        }
+        return read;
+    }
+}
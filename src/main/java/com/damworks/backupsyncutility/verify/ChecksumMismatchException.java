@@ -0,0 +1,14 @@
+package com.damworks.backupsyncutility.verify;
+
+import java.io.IOException;
+
+/**
+ * A remote copy whose size or checksum differs from the local file.
+ */
+public class ChecksumMismatchException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ChecksumMismatchException(String message) {
+        super(message);
+    }
+}
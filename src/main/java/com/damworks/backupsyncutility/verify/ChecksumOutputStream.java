@@ -0,0 +1,66 @@
+package com.damworks.backupsyncutility.verify;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+
+/**
+ * Computes {@link Checksums} of everything written through it, so a file is hashed while it is
+ * produced instead of being read back afterwards.
+ */
+public class ChecksumOutputStream extends FilterOutputStream {
+    private final MessageDigest sha256 = newDigest("SHA-256");
+    private final MessageDigest md5 = newDigest("MD5");
+    private final XXHash64 xxh64 = new XXHash64();
+    private final CRC32 crc32 = new CRC32();
+    private long size;
+    private Checksums checksums;
+
+    /**
+     * @param out Stream receiving the bytes.
+     */
+    public ChecksumOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        sha256.update(b, off, len);
+        md5.update(b, off, len);
+        xxh64.update(b, off, len);
+        crc32.update(b, off, len);
+        size += len;
+    }
+
+    /**
+     * Finishes the checksums; call after the last write. Later writes are not included.
+     *
+     * @return Checksums of everything written.
+     */
+    public Checksums getChecksums() {
+        if (checksums == null) {
+            HexFormat hex = HexFormat.of();
+            checksums = new Checksums(size, hex.formatHex(sha256.digest()), String.format("%016x", xxh64.getValue()),
+                    hex.formatHex(md5.digest()), String.format("%08x", crc32.getValue()));
+        }
+        return checksums;
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.damworks.backupsyncutility.verify;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Size and checksums of a backup file, computed by {@link ChecksumOutputStream} while the file
+ * was written. SHA-256 identifies the file; XXH64 allows fast local re-checks; MD5 and CRC32
+ * are what Google Drive and FTP servers can report for a remote copy without downloading it.
+ * <p>
+ * The values are kept next to the file in a {@code <file>.checksums} sidecar, one BSD-style
+ * {@code ALGORITHM (name) = value} line per checksum.
+ */
+public class Checksums {
+    public static final String EXTENSION = ".checksums";
+    private static final Pattern LINE = Pattern.compile("(\\S+) \\((.*)\\) = (\\S+)");
+
+    private final long size;
+    private final String sha256;
+    private final String xxh64;
+    private final String md5;
+    private final String crc32;
+
+    public Checksums(long size, String sha256, String xxh64, String md5, String crc32) {
+        this.size = size;
+        this.sha256 = sha256;
+        this.xxh64 = xxh64;
+        this.md5 = md5;
+        this.crc32 = crc32;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Hex SHA-256.
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return Hex XXH64 (seed 0).
+     */
+    public String getXxh64() {
+        return xxh64;
+    }
+
+    /**
+     * @return Hex MD5.
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    /**
+     * @return Hex CRC-32, eight digits.
+     */
+    public String getCrc32() {
+        return crc32;
+    }
+
+    /**
+     * Returns the value of an algorithm by any of its usual names (e.g., "SHA-256", "sha256", "XCRC").
+     *
+     * @param algorithm Algorithm name.
+     * @return Hex value, or null if the algorithm is not computed.
+     */
+    public String get(String algorithm) {
+        switch (algorithm.toUpperCase(Locale.ROOT).replace("-", "")) {
+            case "SHA256":
+                return sha256;
+            case "XXH64":
+                return xxh64;
+            case "MD5":
+                return md5;
+            case "CRC32":
+            case "XCRC":
+                return crc32;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Compares a checksum reported for a remote copy.
+     *
+     * @param algorithm Algorithm the value was computed with.
+     * @param value     Hex value reported by the destination.
+     * @param location  Description of the remote copy, for the error message.
+     * @return The algorithm if it matched, or null if it is not one computed here.
+     * @throws ChecksumMismatchException If the value differs.
+     */
+    public String verify(String algorithm, String value, String location) throws ChecksumMismatchException {
+        String expected = get(algorithm);
+        if (expected == null) {
+            return null;
+        }
+        // Servers may omit leading zeros of CRCs
+        String actual = value.toLowerCase(Locale.ROOT);
+        while (actual.length() < expected.length()) {
+            actual = "0" + actual;
+        }
+        if (!expected.equals(actual)) {
+            throw new ChecksumMismatchException(String.format("%s mismatch for %s: expected %s, found %s",
+                    algorithm, location, expected, actual));
+        }
+        return algorithm;
+    }
+
+    /**
+     * Compares the size reported for a remote copy.
+     *
+     * @param actualSize Size reported by the destination.
+     * @param location   Description of the remote copy, for the error message.
+     * @return "SIZE".
+     * @throws ChecksumMismatchException If the size differs.
+     */
+    public String verifySize(long actualSize, String location) throws ChecksumMismatchException {
+        if (actualSize != size) {
+            throw new ChecksumMismatchException(String.format("Size mismatch for %s: expected %d bytes, found %d",
+                    location, size, actualSize));
+        }
+        return "SIZE";
+    }
+
+    /**
+     * @param other Checksums of the same file computed at another time.
+     * @return True if both describe the same content.
+     */
+    public boolean matches(Checksums other) {
+        return size == other.size && sha256.equals(other.sha256);
+    }
+
+    /**
+     * @param file A backup file.
+     * @return Path of its checksum sidecar.
+     */
+    public static Path sidecarOf(Path file) {
+        return file.resolveSibling(file.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Writes the checksum sidecar of a file, replacing any existing one atomically.
+     *
+     * @param file The file these checksums were computed for.
+     * @throws IOException If the sidecar cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        Path sidecar = sidecarOf(file);
+        Path partFile = sidecar.resolveSibling(sidecar.getFileName() + ".part");
+        try (BufferedWriter writer = Files.newBufferedWriter(partFile, StandardCharsets.UTF_8)) {
+            writer.write(line("SIZE", name, Long.toString(size)));
+            writer.write(line("SHA256", name, sha256));
+            writer.write(line("XXH64", name, xxh64));
+            writer.write(line("MD5", name, md5));
+            writer.write(line("CRC32", name, crc32));
+        }
+        Files.move(partFile, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String line(String algorithm, String name, String value) {
+        return algorithm + " (" + name + ") = " + value + "\n";
+    }
+
+    /**
+     * Reads the checksum sidecar of a file.
+     *
+     * @param file A backup file.
+     * @return Its checksums, or null if it has no sidecar.
+     * @throws IOException If the sidecar cannot be read or is incomplete.
+     */
+    public static Checksums read(Path file) throws IOException {
+        Path sidecar = sidecarOf(file);
+        if (!Files.exists(sidecar)) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (String line : Files.readAllLines(sidecar, StandardCharsets.UTF_8)) {
+            Matcher matcher = LINE.matcher(line);
+            if (matcher.matches()) {
+                values.put(matcher.group(1), matcher.group(3));
+            }
+        }
+        if (!values.containsKey("SIZE") || !values.containsKey("SHA256")) {
+            throw new IOException("Incomplete checksum file: " + sidecar);
+        }
+        try {
+            return new Checksums(Long.parseLong(values.get("SIZE")), values.get("SHA256"), values.get("XXH64"),
+                    values.get("MD5"), values.get("CRC32"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid size in checksum file: " + sidecar, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sha256=%s xxh64=%s", sha256, xxh64);
+    }
+}
@@ -0,0 +1,132 @@
+package com.damworks.backupsyncutility.verify;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * Streaming XXH64 with seed 0. Several times faster than SHA-256, so it is cheap enough to
+ * re-check local files; it is not a cryptographic hash.
+ */
+public class XXHash64 implements Checksum {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] buffer = new byte[32];
+    private int buffered;
+    private long total;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    public XXHash64() {
+        reset();
+    }
+
+    @Override
+    public void update(int b) {
+        update(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        total += len;
+
+        // Complete a stripe left over from the previous call first
+        if (buffered > 0) {
+            int take = Math.min(len, 32 - buffered);
+            System.arraycopy(b, off, buffer, buffered, take);
+            buffered += take;
+            off += take;
+            len -= take;
+            if (buffered < 32) {
+                return;
+            }
+            consumeStripe(buffer, 0);
+            buffered = 0;
+        }
+
+        int end = off + len;
+        while (off + 32 <= end) {
+            consumeStripe(b, off);
+            off += 32;
+        }
+
+        buffered = end - off;
+        System.arraycopy(b, off, buffer, 0, buffered);
+    }
+
+    private void consumeStripe(byte[] b, int off) {
+        v1 = round(v1, (long) LONG.get(b, off));
+        v2 = round(v2, (long) LONG.get(b, off + 8));
+        v3 = round(v3, (long) LONG.get(b, off + 16));
+        v4 = round(v4, (long) LONG.get(b, off + 24));
+    }
+
+    @Override
+    public long getValue() {
+        long hash;
+        if (total >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+        hash += total;
+
+        int off = 0;
+        while (off + 8 <= buffered) {
+            hash ^= round(0, (long) LONG.get(buffer, off));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            off += 8;
+        }
+        if (off + 4 <= buffered) {
+            hash ^= ((int) INT.get(buffer, off) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            off += 4;
+        }
+        while (off < buffered) {
+            hash ^= (buffer[off] & 0xFFL) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            off++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    @Override
+    public void reset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        total = 0;
+        buffered = 0;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+}
@@ -0,0 +1,149 @@
+package com.damworks.backupsyncutility.backup;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChangeDetectorTest {
+    private static final Map<String, String> FINGERPRINT = Map.of(
+            "table:orders", "a1", "table:customers", "b2", "view:open_orders", "c3");
+
+    @TempDir
+    Path directory;
+
+    private ChangeDetector detector;
+
+    @BeforeEach
+    void setUp() {
+        detector = detector(0);
+    }
+
+    @Test
+    void skipsUnchangedDatabase() throws IOException {
+        DumpFile backup = backup("db-1.sql.gz", System.currentTimeMillis());
+        detector.record("db", FINGERPRINT, backup);
+
+        DumpFile previous = detector.findUnchanged("db", new HashMap<>(FINGERPRINT));
+
+        assertNotNull(previous);
+        assertEquals(backup.getPath(), previous.getPath());
+        assertEquals(backup.getSize(), previous.getSize());
+        assertEquals(backup.getCreatedAt(), previous.getCreatedAt());
+    }
+
+    @Test
+    void carriesPartsForward() throws IOException {
+        DumpFile part = backup("db-1.part1.sql.gz", System.currentTimeMillis());
+        DumpFile main = new DumpFile(file("db-1.sql.gz").toString(), 3, null, part.getCreatedAt(), Map.of(),
+                List.of(part));
+        detector.record("db", FINGERPRINT, main);
+
+        DumpFile previous = detector.findUnchanged("db", FINGERPRINT);
+
+        assertEquals(main.getPath(), previous.getPath());
+        assertEquals(1, previous.getParts().size());
+        assertEquals(part.getPath(), previous.getParts().get(0).getPath());
+    }
+
+    @Test
+    void dumpsChangedDatabase() throws IOException {
+        detector.record("db", FINGERPRINT, backup("db-1.sql.gz", System.currentTimeMillis()));
+
+        assertNull(detector.findUnchanged("db", with("table:orders", "a2")));
+        assertNull(detector.findUnchanged("db", with("table:invoices", "d4")));
+        assertNull(detector.findUnchanged("db", with("view:open_orders", null)));
+    }
+
+    @Test
+    void dumpsTablesOfUnknownState() throws IOException {
+        // A table without a trustworthy update time is never taken as unchanged
+        Map<String, String> fingerprint = with("table:orders", "?");
+        detector.record("db", fingerprint, backup("db-1.sql.gz", System.currentTimeMillis()));
+
+        assertNull(detector.findUnchanged("db", fingerprint));
+    }
+
+    @Test
+    void dumpsWithoutPreviousBackup() throws IOException {
+        assertNull(detector.findUnchanged("db", FINGERPRINT));
+
+        DumpFile backup = backup("db-1.sql.gz", System.currentTimeMillis());
+        detector.record("db", FINGERPRINT, backup);
+        Files.delete(Path.of(backup.getPath()));
+
+        assertNull(detector.findUnchanged("db", FINGERPRINT));
+    }
+
+    @Test
+    void dumpsWhenPreviousBackupIsTooOld() throws IOException {
+        ChangeDetector weekly = detector(7);
+        weekly.record("db", FINGERPRINT, backup("db-1.sql.gz",
+                System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8)));
+
+        assertNull(weekly.findUnchanged("db", FINGERPRINT));
+        assertNotNull(detector.findUnchanged("db", FINGERPRINT));
+    }
+
+    @Test
+    void reportsUnreadableFingerprintFile() throws IOException {
+        DumpFile backup = backup("db-1.sql.gz", System.currentTimeMillis());
+        detector.record("db", FINGERPRINT, backup);
+        Path state = directory.resolve("fingerprints/db.fingerprint");
+        String content = Files.readString(state);
+        assertEquals(backup.getPath(), detector.getRecordedBackup("db"));
+
+        Files.writeString(state, "");
+        assertThrows(IOException.class, () -> detector.findUnchanged("db", FINGERPRINT));
+        assertNull(detector.getRecordedBackup("db"));
+
+        Files.writeString(state, content.replaceFirst("created \\d+", "created 17x"));
+        assertThrows(IOException.class, () -> detector.findUnchanged("db", FINGERPRINT));
+        assertNull(detector.getRecordedBackup("db"));
+
+        // The next successful dump replaces the file
+        detector.record("db", FINGERPRINT, backup);
+        assertNotNull(detector.findUnchanged("db", FINGERPRINT));
+    }
+
+    private ChangeDetector detector(int maxAgeDays) {
+        return new ChangeDetector(directory.resolve("fingerprints"), ChangeDetector.ChecksumMode.AUTO, maxAgeDays);
+    }
+
+    private DumpFile backup(String fileName, long createdAt) throws IOException {
+        Path file = file(fileName);
+        Files.writeString(file, "dump");
+        return new DumpFile(file.toString(), 4, null, createdAt, Map.of());
+    }
+
+    private Path file(String fileName) throws IOException {
+        Path file = directory.resolve("dumps/db/" + fileName);
+        Files.createDirectories(file.getParent());
+        if (!Files.exists(file)) {
+            Files.writeString(file, "sql");
+        }
+        return file;
+    }
+
+    private static Map<String, String> with(String key, String digest) {
+        Map<String, String> fingerprint = new HashMap<>(FINGERPRINT);
+        if (digest != null) {
+            fingerprint.put(key, digest);
+        } else {
+            fingerprint.remove(key);
+        }
+        return fingerprint;
+    }
+}
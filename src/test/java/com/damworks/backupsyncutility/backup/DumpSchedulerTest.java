@@ -0,0 +1,64 @@
+package com.damworks.backupsyncutility.backup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DumpSchedulerTest {
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @Test
+    void capsHostAcrossRuns() throws Exception {
+        // Two runs naming the same server with different limits, as overlapping jobs would
+        DatabaseHost first = host("db1", 2);
+        DatabaseHost second = host("db1", 1);
+        List<Future<?>> dumps = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            dumps.add(DumpScheduler.submit(first, this::dump));
+            dumps.add(DumpScheduler.submit(second, this::dump));
+        }
+
+        awaitAll(dumps);
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void capsDumpsOfAllHostsByConfiguredThreads() throws Exception {
+        List<Future<?>> dumps = new ArrayList<>();
+        for (int run = 0; run < 3; run++) {
+            for (int i = 0; i < 4; i++) {
+                dumps.add(DumpScheduler.submit(host("total" + i, 4), this::dump));
+            }
+        }
+
+        awaitAll(dumps);
+
+        assertEquals(DumpScheduler.getThreads(), maxRunning.get());
+        assertEquals(0, DumpScheduler.getQueued());
+    }
+
+    private Void dump() throws InterruptedException {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        Thread.sleep(20);
+        running.decrementAndGet();
+        return null;
+    }
+
+    private static void awaitAll(List<Future<?>> dumps) throws Exception {
+        for (Future<?> dump : dumps) {
+            dump.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static DatabaseHost host(String address, int dumpThreads) {
+        return new DatabaseHost(null, address, 3306, "user", "password", List.of("db"), dumpThreads);
+    }
+}
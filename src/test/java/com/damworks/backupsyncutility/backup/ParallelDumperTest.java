@@ -0,0 +1,126 @@
+package com.damworks.backupsyncutility.backup;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class ParallelDumperTest {
+    private final List<String> queried = new ArrayList<>();
+
+    @Test
+    void dumpsSmallTablesAsOneTaskAndSkipsViews() throws SQLException {
+        List<ParallelDumper.DumpTask> tasks = ParallelDumper.planTasks(
+                List.of(table("a", 10, "id"), view("v"), table("b", 1000, null)), 100, this::range);
+
+        assertEquals(2, tasks.size());
+        for (ParallelDumper.DumpTask task : tasks) {
+            assertNull(task.lower);
+            assertNull(task.upper);
+        }
+        // Only tables that are split need their key range
+        assertTrue(queried.isEmpty());
+    }
+
+    @Test
+    void dumpsEveryTableWholeWithoutChunkSize() throws SQLException {
+        List<ParallelDumper.DumpTask> tasks = ParallelDumper.planTasks(
+                List.of(table("a", 1_000_000, "id")), 0, this::range);
+
+        assertEquals(1, tasks.size());
+        assertNull(tasks.get(0).lower);
+    }
+
+    @Test
+    void splitsLargeTableIntoContiguousKeyRanges() throws SQLException {
+        List<ParallelDumper.DumpTask> tasks = ParallelDumper.planTasks(
+                List.of(table("a", 1000, "id")), 250, table -> new long[]{1, 1000});
+
+        assertEquals(4, tasks.size());
+        assertContiguous(tasks, 1, 1000);
+        assertEquals(250, tasks.get(0).estimatedRows);
+    }
+
+    @Test
+    void coversSparseKeysWithFewerRanges() throws SQLException {
+        // Estimated rows and the key span do not agree; the whole span is still covered
+        List<ParallelDumper.DumpTask> tasks = ParallelDumper.planTasks(
+                List.of(table("a", 1000, "id")), 100, table -> new long[]{5, 7});
+
+        assertContiguous(tasks, 5, 7);
+        assertEquals(3, tasks.size());
+    }
+
+    @Test
+    void splitsFullRangeOfSignedKeysWithoutOverflow() throws SQLException {
+        List<ParallelDumper.DumpTask> tasks = ParallelDumper.planTasks(
+                List.of(table("a", 400, "id")), 100, table -> new long[]{Long.MIN_VALUE, Long.MAX_VALUE});
+
+        assertEquals(4, tasks.size());
+        assertContiguous(tasks, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    void dumpsTableWithoutKeyRangeAsOneTask() throws SQLException {
+        List<ParallelDumper.DumpTask> tasks = ParallelDumper.planTasks(
+                List.of(table("empty", 1000, "id")), 100, table -> null);
+
+        assertEquals(1, tasks.size());
+        assertNull(tasks.get(0).lower);
+        assertEquals(1000, tasks.get(0).estimatedRows);
+    }
+
+    @Test
+    void ordersLargestTasksFirst() throws SQLException {
+        List<ParallelDumper.DumpTask> tasks = ParallelDumper.planTasks(
+                List.of(table("small", 10, null), table("large", 5000, null), table("split", 3000, "id")),
+                1000, table -> new long[]{0, 2999});
+
+        for (int i = 1; i < tasks.size(); i++) {
+            assertTrue(tasks.get(i - 1).estimatedRows >= tasks.get(i).estimatedRows);
+        }
+        assertEquals("large", tasks.get(0).table.name);
+        assertEquals("small", tasks.get(tasks.size() - 1).table.name);
+    }
+
+    private long[] range(ParallelDumper.TableInfo table) {
+        queried.add(table.name);
+        return new long[]{1, table.estimatedRows};
+    }
+
+    /**
+     * Checks that the chunks of one table cover [min, max] without gaps or overlaps.
+     */
+    private static void assertContiguous(List<ParallelDumper.DumpTask> tasks, long min, long max) {
+        List<ParallelDumper.DumpTask> chunks = new ArrayList<>(tasks);
+        chunks.sort(Comparator.comparingInt(task -> task.chunk));
+        assertEquals(min, chunks.get(0).lower);
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            ParallelDumper.DumpTask chunk = chunks.get(i);
+            if (chunk.upper == null || chunk.upper <= chunk.lower) {
+                fail("chunk " + i + " has no valid upper bound: " + chunk.lower + ".." + chunk.upper);
+            }
+            assertEquals(chunk.upper, chunks.get(i + 1).lower);
+        }
+        ParallelDumper.DumpTask last = chunks.get(chunks.size() - 1);
+        assertNull(last.upper);
+        assertTrue(last.lower <= max);
+    }
+
+    private static ParallelDumper.TableInfo table(String name, long rows, String integerKey) {
+        ParallelDumper.TableInfo table = new ParallelDumper.TableInfo(name, false, rows);
+        table.integerKey = integerKey;
+        return table;
+    }
+
+    private static ParallelDumper.TableInfo view(String name) {
+        return new ParallelDumper.TableInfo(name, true, 0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.damworks.backupsyncutility.catalog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupCatalogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsReconciliationPerDatabase() throws IOException {
+        BackupCatalog catalog = new BackupCatalog(logFile());
+        long before = System.currentTimeMillis();
+
+        catalog.recordReconciled("FTP", "db1");
+
+        assertTrue(catalog.getReconciledAt("FTP", "db1") >= before);
+        // Another job's database on the same destination is still due
+        assertEquals(0, catalog.getReconciledAt("FTP", "db2"));
+        assertEquals(0, catalog.getReconciledAt("NAS", "db1"));
+    }
+
+    @Test
+    void keepsReconciliationsAcrossReloadAndCompaction() throws IOException {
+        BackupCatalog catalog = new BackupCatalog(logFile());
+        for (int i = 0; i < 50; i++) {
+            catalog.recordReconciled("FTP", "db1");
+        }
+        catalog.recordReconciled("FTP", "db2");
+        long db1 = catalog.getReconciledAt("FTP", "db1");
+        long db2 = catalog.getReconciledAt("FTP", "db2");
+        catalog.close();
+
+        BackupCatalog reloaded = new BackupCatalog(logFile());
+
+        assertEquals(db1, reloaded.getReconciledAt("FTP", "db1"));
+        assertEquals(db2, reloaded.getReconciledAt("FTP", "db2"));
+        // The repeated records were compacted away
+        assertEquals(2, Files.readAllLines(logFile()).size());
+    }
+
+    @Test
+    void reconcilesAgainAfterDestinationWideRecord() throws IOException {
+        Files.write(logFile(), List.of("RECONCILE\tFTP\t" + System.currentTimeMillis()));
+
+        BackupCatalog catalog = new BackupCatalog(logFile());
+
+        assertEquals(0, catalog.getReconciledAt("FTP", "db1"));
+    }
+
+    private Path logFile() {
+        return directory.resolve("catalog.log");
+    }
+}
@@ -0,0 +1,195 @@
+package com.damworks.backupsyncutility.compress;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BlockCompressionTest {
+    private static final int BLOCK = 64 * 1024;
+    private static final CompressionCodec[] CODECS = {CompressionCodec.GZIP, CompressionCodec.ZSTD};
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void emptyInputIsOneEmptyBlock() throws IOException {
+        for (CompressionCodec codec : CODECS) {
+            byte[] compressed = compressBlocks(codec, new byte[0]);
+            assertEquals(1, countBlocks(codec, compressed), codec.name());
+            assertArrayEquals(new byte[0], decompressBlocks(codec, compressed), codec.name());
+            assertArrayEquals(new byte[0], decompressStock(codec, compressed), codec.name());
+        }
+    }
+
+    @Test
+    void inputOfExactlyOneBlock() throws IOException {
+        for (CompressionCodec codec : CODECS) {
+            byte[] data = sql(BLOCK);
+            byte[] compressed = compressBlocks(codec, data);
+            assertEquals(1, countBlocks(codec, compressed), codec.name());
+            assertArrayEquals(data, decompressBlocks(codec, compressed), codec.name());
+            assertArrayEquals(data, decompressStock(codec, compressed), codec.name());
+        }
+    }
+
+    @Test
+    void inputOfManyBlocks() throws IOException {
+        for (CompressionCodec codec : CODECS) {
+            for (int length : new int[]{BLOCK - 1, BLOCK + 1, 2 * BLOCK, 9 * BLOCK + 12345}) {
+                byte[] data = sql(length);
+                byte[] compressed = compressBlocks(codec, data);
+                assertEquals((length + BLOCK - 1) / BLOCK, countBlocks(codec, compressed), codec.name() + " " + length);
+                assertArrayEquals(data, decompressBlocks(codec, compressed), codec.name() + " " + length);
+                // Stock decoders read the blocks as ordinary gzip members and zstd frames
+                assertArrayEquals(data, decompressStock(codec, compressed), codec.name() + " " + length);
+            }
+        }
+    }
+
+    @Test
+    void plainStreamFallsBackToSequentialDecoding() throws IOException {
+        for (CompressionCodec codec : CODECS) {
+            for (int length : new int[]{0, 100, 3 * BLOCK + 7}) {
+                byte[] data = sql(length);
+                byte[] compressed = compressStock(codec, data);
+                assertEquals(0, countBlocks(codec, compressed), codec.name() + " " + length);
+                assertArrayEquals(data, decompressBlocks(codec, compressed), codec.name() + " " + length);
+            }
+        }
+    }
+
+    @Test
+    void plainStreamAfterBlocksIsDecodedSequentially() throws IOException {
+        for (CompressionCodec codec : CODECS) {
+            byte[] blocks = sql(2 * BLOCK + 5);
+            byte[] plain = "INSERT INTO `t` VALUES (1);\n".getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream both = new ByteArrayOutputStream();
+            both.writeBytes(compressBlocks(codec, blocks));
+            both.writeBytes(compressStock(codec, plain));
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            expected.writeBytes(blocks);
+            expected.writeBytes(plain);
+            assertArrayEquals(expected.toByteArray(), decompressBlocks(codec, both.toByteArray()), codec.name());
+        }
+    }
+
+    @Test
+    void smallWritesAndReadsGiveTheSameResult() throws IOException {
+        for (CompressionCodec codec : CODECS) {
+            byte[] data = sql(3 * BLOCK + 99);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = codec.compress(compressed, codec.getDefaultLevel(), BLOCK, executor, 2)) {
+                for (byte b : Arrays.copyOf(data, 1000)) {
+                    out.write(b);
+                }
+                out.write(data, 1000, data.length - 1000);
+            }
+
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed.toByteArray()), executor, 2)) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    decompressed.write(b);
+                }
+            }
+            assertArrayEquals(data, decompressed.toByteArray(), codec.name());
+        }
+    }
+
+    @Test
+    void corruptBlockIsRejected() throws IOException {
+        for (CompressionCodec codec : CODECS) {
+            byte[] compressed = compressBlocks(codec, sql(3 * BLOCK));
+            byte[] corrupt = compressed.clone();
+            corrupt[compressed.length / 2] ^= 0x55;
+            assertThrows(IOException.class, () -> decompressBlocks(codec, corrupt), codec.name());
+
+            byte[] truncated = Arrays.copyOf(compressed, compressed.length - 10);
+            assertThrows(IOException.class, () -> decompressBlocks(codec, truncated), codec.name());
+        }
+    }
+
+    private byte[] compressBlocks(CompressionCodec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = codec.compress(compressed, codec.getDefaultLevel(), BLOCK, executor, 3)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private byte[] decompressBlocks(CompressionCodec codec, byte[] compressed) throws IOException {
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed), executor, 3)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] compressStock(CompressionCodec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = codec.compress(compressed, codec.getDefaultLevel())) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompressStock(CompressionCodec codec, byte[] compressed) throws IOException {
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * @return Number of consecutive block headers from the start of the stream.
+     */
+    private static int countBlocks(CompressionCodec codec, byte[] compressed) {
+        BlockFormat format = codec == CompressionCodec.GZIP ? BlockFormat.GZIP : BlockFormat.ZSTD;
+        int blocks = 0;
+        int position = 0;
+        while (position + format.getHeaderSize() <= compressed.length) {
+            int[] sizes = format.parseHeader(Arrays.copyOfRange(compressed, position, position + format.getHeaderSize()));
+            if (sizes == null) {
+                break;
+            }
+            blocks++;
+            position += format.getHeaderSize() + sizes[0];
+        }
+        return blocks;
+    }
+
+    /**
+     * Compressible but not trivially repetitive SQL-like text.
+     */
+    private static byte[] sql(int length) {
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder(length + 64);
+        while (text.length() < length) {
+            text.append("INSERT INTO `orders` VALUES (").append(random.nextInt(1_000_000)).append(",'customer-")
+                    .append(Long.toHexString(random.nextLong())).append("',").append(random.nextInt(10_000)).append(");\n");
+        }
+        return Arrays.copyOf(text.toString().getBytes(StandardCharsets.UTF_8), length);
+    }
+}
@@ -0,0 +1,144 @@
+package com.damworks.backupsyncutility.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyedSchedulerTest {
+    private static final Map<String, Integer> CAPS = Map.of("db1:3306", 1, "db2:3306", 2, "db3:3306", 3);
+
+    private ExecutorService executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void capsAreNeverExceeded() throws Exception {
+        int maxRunning = 4;
+        executor = Executors.newFixedThreadPool(maxRunning);
+        KeyedScheduler scheduler = new KeyedScheduler(executor, maxRunning, CAPS::get);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        Map<String, AtomicInteger> runningPerKey = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> maxSeenPerKey = new ConcurrentHashMap<>();
+        List<String> keys = new ArrayList<>(CAPS.keySet());
+
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            String key = keys.get(i % keys.size());
+            futures.add(scheduler.submit(key, () -> {
+                AtomicInteger perKey = runningPerKey.computeIfAbsent(key, k -> new AtomicInteger());
+                maxSeen.accumulateAndGet(running.incrementAndGet(), Math::max);
+                maxSeenPerKey.computeIfAbsent(key, k -> new AtomicInteger())
+                        .accumulateAndGet(perKey.incrementAndGet(), Math::max);
+                Thread.sleep(ThreadLocalRandom.current().nextInt(1, 4));
+                perKey.decrementAndGet();
+                running.decrementAndGet();
+                return key;
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(keys.get(i % keys.size()), futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+
+        assertTrue(maxSeen.get() <= maxRunning, "global " + maxSeen);
+        for (String key : keys) {
+            assertTrue(maxSeenPerKey.get(key).get() <= CAPS.get(key), key + " " + maxSeenPerKey.get(key));
+        }
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    void fullKeyDoesNotBlockOtherKeys() throws Exception {
+        executor = Executors.newFixedThreadPool(3);
+        KeyedScheduler scheduler = new KeyedScheduler(executor, 3, key -> 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(3);
+
+        List<Future<?>> futures = new ArrayList<>();
+        futures.add(scheduler.submit("a", () -> block(started, release)));
+        futures.add(scheduler.submit("a", () -> block(started, release)));
+        // Per-key cap reached: waits although a worker is free
+        futures.add(scheduler.submit("a", () -> block(started, release)));
+        // Another key uses the free worker
+        futures.add(scheduler.submit("b", () -> block(started, release)));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // Global cap reached
+        futures.add(scheduler.submit("b", () -> block(started, release)));
+        assertEquals(2, scheduler.getQueued());
+
+        release.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    void keysTakeTurns() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        KeyedScheduler scheduler = new KeyedScheduler(executor, 1, key -> 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        Future<?> first = scheduler.submit("a", () -> {
+            release.await();
+            order.add("a1");
+            return null;
+        });
+        List<Future<Boolean>> rest = new ArrayList<>();
+        for (String name : new String[]{"a2", "a3", "a4", "b1", "c1"}) {
+            rest.add(scheduler.submit(name.substring(0, 1), () -> order.add(name)));
+        }
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        for (Future<Boolean> future : rest) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        // After a key runs a task it goes behind the keys that are waiting
+        assertEquals(List.of("a1", "a2", "b1", "c1", "a3", "a4"), order);
+    }
+
+    @Test
+    void tasksAreCancelledWhenTheExecutorRejectsThem() {
+        executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        KeyedScheduler scheduler = new KeyedScheduler(executor, 2, key -> 1);
+        Future<String> first = scheduler.submit("a", () -> "never");
+        Future<String> second = scheduler.submit("a", () -> "never");
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    void invalidGlobalCapIsRejected() {
+        executor = Executors.newSingleThreadExecutor();
+        assertThrows(IllegalArgumentException.class, () -> new KeyedScheduler(executor, 0, key -> 1));
+    }
+
+    private static Void block(CountDownLatch started, CountDownLatch release) throws InterruptedException {
+        started.countDown();
+        release.await();
+        return null;
+    }
+}
@@ -0,0 +1,187 @@
+package com.damworks.backupsyncutility.crypto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentedContainerTest {
+    private static final int SEGMENT = 4096;
+    private static final int SEALED = SEGMENT + SegmentedContainer.TAG_SIZE;
+    private static final int HEADER = SegmentedContainer.HEADER_SIZE;
+
+    @TempDir
+    Path directory;
+
+    private EncryptionKey key;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        key = EncryptionKey.generate(directory.resolve("backup.key"));
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void roundTripAtSegmentBoundaries() throws IOException {
+        for (int length : new int[]{0, 1, SEGMENT - 1, SEGMENT, SEGMENT + 1, 3 * SEGMENT, 3 * SEGMENT + 1}) {
+            byte[] plain = data(length);
+            byte[] sealed = encrypt(plain);
+            // One tag per segment; an exact multiple has no empty trailing segment
+            long segments = Math.max(1, (length + SEGMENT - 1) / SEGMENT);
+            assertEquals(HEADER + length + segments * SegmentedContainer.TAG_SIZE, sealed.length, "length " + length);
+            assertArrayEquals(plain, decrypt(sealed), "length " + length);
+        }
+    }
+
+    @Test
+    void randomAccessMatchesStreamingDecryption() throws IOException {
+        for (int length : new int[]{0, SEGMENT, 3 * SEGMENT, 3 * SEGMENT + 1, 7 * SEGMENT + 123}) {
+            byte[] plain = data(length);
+            byte[] sealed = encrypt(plain);
+            SegmentedContainer container = SegmentedContainer.open(key, Arrays.copyOf(sealed, HEADER));
+            long count = container.segmentCount(sealed.length);
+            assertEquals(Math.max(1, (length + SEGMENT - 1) / SEGMENT), count, "length " + length);
+
+            // Ranges of several segments, as RestoreManager fetches them
+            for (int perRange = 1; perRange <= 4; perRange++) {
+                ByteArrayOutputStream joined = new ByteArrayOutputStream();
+                for (long first = 0; first < count; first += perRange) {
+                    long end = Math.min(count, first + perRange);
+                    int offset = (int) container.segmentOffset(first);
+                    int to = (int) Math.min(sealed.length, container.segmentOffset(end));
+                    joined.writeBytes(container.decryptRange(first, count, Arrays.copyOfRange(sealed, offset, to)));
+                }
+                assertArrayEquals(decrypt(sealed), joined.toByteArray(), "length " + length + ", " + perRange + " per range");
+            }
+        }
+    }
+
+    @Test
+    void droppingTheFinalSegmentIsDetected() throws IOException {
+        for (int length : new int[]{2 * SEGMENT, 2 * SEGMENT + 1}) {
+            byte[] sealed = encrypt(data(length));
+            byte[] truncated = Arrays.copyOf(sealed, HEADER + SEALED);
+            assertThrows(IOException.class, () -> decrypt(truncated), "length " + length);
+
+            SegmentedContainer container = SegmentedContainer.open(key, Arrays.copyOf(truncated, HEADER));
+            long count = container.segmentCount(truncated.length);
+            assertThrows(IOException.class, () -> container.decryptRange(0, count,
+                    Arrays.copyOfRange(truncated, HEADER, truncated.length)), "length " + length);
+        }
+
+        // Only the header left, or a cut inside a tag
+        byte[] sealed = encrypt(data(SEGMENT + 1));
+        assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(sealed, HEADER)));
+        assertThrows(IOException.class, () -> decrypt(Arrays.copyOf(sealed, sealed.length - 1)));
+        SegmentedContainer container = SegmentedContainer.open(key, Arrays.copyOf(sealed, HEADER));
+        assertThrows(IOException.class, () -> container.segmentCount(HEADER + SEALED + SegmentedContainer.TAG_SIZE - 1));
+    }
+
+    @Test
+    void appendedSegmentIsDetected() throws IOException {
+        byte[] sealed = encrypt(data(2 * SEGMENT));
+        byte[] extended = Arrays.copyOf(sealed, sealed.length + SEALED);
+        System.arraycopy(sealed, HEADER, extended, sealed.length, SEALED);
+        assertThrows(IOException.class, () -> decrypt(extended));
+    }
+
+    @Test
+    void reorderedSegmentsAreRejected() throws IOException {
+        byte[] sealed = encrypt(data(3 * SEGMENT + 1));
+        byte[] swapped = sealed.clone();
+        System.arraycopy(sealed, HEADER, swapped, HEADER + SEALED, SEALED);
+        System.arraycopy(sealed, HEADER + SEALED, swapped, HEADER, SEALED);
+        assertThrows(IOException.class, () -> decrypt(swapped));
+
+        SegmentedContainer container = SegmentedContainer.open(key, Arrays.copyOf(sealed, HEADER));
+        assertThrows(IOException.class, () -> container.decrypt(1, false, sealed, HEADER, SEALED));
+    }
+
+    @Test
+    void segmentFromAnotherFileIsRejected() throws IOException {
+        byte[] plain = data(2 * SEGMENT + 1);
+        byte[] first = encrypt(plain);
+        byte[] second = encrypt(plain);
+        byte[] mixed = first.clone();
+        System.arraycopy(second, HEADER, mixed, HEADER, SEALED);
+        assertThrows(IOException.class, () -> decrypt(mixed));
+    }
+
+    @Test
+    void tamperedHeaderIsRejected() throws IOException {
+        byte[] sealed = encrypt(data(SEGMENT + 1));
+        // Every byte is either checked on open or authenticated as associated data
+        for (int i = 0; i < HEADER; i++) {
+            byte[] tampered = sealed.clone();
+            tampered[i] ^= 0x01;
+            assertThrows(IOException.class, () -> decrypt(tampered), "header byte " + i);
+        }
+    }
+
+    @Test
+    void tamperedCiphertextIsRejected() throws IOException {
+        byte[] sealed = encrypt(data(2 * SEGMENT));
+        byte[] tampered = sealed.clone();
+        tampered[HEADER + SEALED + 100] ^= 0x01;
+        assertThrows(IOException.class, () -> decrypt(tampered));
+    }
+
+    @Test
+    void otherKeyIsRejected() throws IOException {
+        byte[] sealed = encrypt(data(100));
+        key = EncryptionKey.generate(directory.resolve("other.key"));
+        assertThrows(IOException.class, () -> decrypt(sealed));
+    }
+
+    @Test
+    void loadedKeyDecryptsWhatGeneratedKeyEncrypted() throws IOException {
+        byte[] plain = data(SEGMENT + 1);
+        byte[] sealed = encrypt(plain);
+        key = EncryptionKey.load(directory.resolve("backup.key"));
+        assertArrayEquals(plain, decrypt(sealed));
+    }
+
+    private byte[] encrypt(byte[] plain) throws IOException {
+        ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+        try (EncryptingOutputStream out = new EncryptingOutputStream(sealed, SegmentedContainer.create(key, SEGMENT),
+                executor, 3)) {
+            // Odd write sizes, so writes straddle segment boundaries
+            for (int offset = 0; offset < plain.length; offset += 1000) {
+                out.write(plain, offset, Math.min(1000, plain.length - offset));
+            }
+        }
+        return sealed.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] sealed) throws IOException {
+        try (InputStream in = new DecryptingInputStream(new ByteArrayInputStream(sealed), key, executor, 3)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,197 @@
+package com.damworks.backupsyncutility.dedup;
+
+import com.damworks.backupsyncutility.compress.CompressionCodec;
+import com.damworks.backupsyncutility.sync.Destination;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DedupStoreTest {
+    private static final int AVG_CHUNK = 4096;
+
+    @TempDir
+    Path directory;
+
+    private final MemoryDestination destination = new MemoryDestination();
+
+    @Test
+    void uploadsEachChunkOnce() throws IOException {
+        byte[] sql = sql(200_000);
+        store(CompressionCodec.GZIP).store(dump("db-1.sql", sql), List.of(destination));
+        int uploads = destination.uploads;
+
+        store(CompressionCodec.GZIP).store(dump("db-2.sql", sql), List.of(destination));
+
+        // Only the second manifest is new
+        assertEquals(uploads + 1, destination.uploads);
+        assertArrayEquals(sql, reassemble("db-2.sql"));
+    }
+
+    @Test
+    void uploadsChunksAgainAfterCodecChange() throws IOException {
+        byte[] sql = sql(200_000);
+        store(CompressionCodec.GZIP).store(dump("db-1.sql", sql), List.of(destination));
+
+        store(CompressionCodec.ZSTD).store(dump("db-2.sql", sql), List.of(destination));
+
+        assertEquals(CompressionCodec.ZSTD, manifest("db-2.sql").getChunkCodec());
+        assertArrayEquals(sql, reassemble("db-2.sql"));
+        assertArrayEquals(sql, reassemble("db-1.sql"));
+    }
+
+    @Test
+    void collectsObjectsOfEachCodecByStoredName() throws IOException {
+        byte[] sql = sql(200_000);
+        store(CompressionCodec.GZIP).store(dump("db-1.sql", sql), List.of(destination));
+        DedupStore store = store(CompressionCodec.ZSTD);
+        store.store(dump("db-2.sql", sql), List.of(destination));
+
+        store.retainManifests("db", "db-2.sql"::equals);
+        store.collectGarbage(List.of(destination));
+
+        assertTrue(chunkNames().stream().allMatch(name -> name.endsWith(".zst")));
+        assertArrayEquals(sql, reassemble("db-2.sql"));
+
+        store.retainManifests("db", name -> false);
+        store.collectGarbage(List.of(destination));
+
+        assertTrue(chunkNames().isEmpty());
+    }
+
+    @Test
+    void migratesIndexKeyedByHash() throws IOException {
+        byte[] sql = sql(200_000);
+        store(CompressionCodec.GZIP).store(dump("db-1.sql", sql), List.of(destination));
+        // Rewrite the object index in the former format: "+ <hash> <ref>" in memory.index
+        Path objectIndex = directory.resolve("state/memory.objects.index");
+        StringBuilder hashIndex = new StringBuilder();
+        for (String line : Files.readAllLines(objectIndex)) {
+            hashIndex.append(line.replace(".gz ", " ")).append('\n');
+        }
+        Files.writeString(directory.resolve("state/memory.index"), hashIndex);
+        Files.delete(objectIndex);
+        int uploads = destination.uploads;
+
+        store(CompressionCodec.GZIP).store(dump("db-2.sql", sql), List.of(destination));
+
+        assertEquals(uploads + 1, destination.uploads);
+        assertFalse(Files.exists(directory.resolve("state/memory.index")));
+        assertArrayEquals(sql, reassemble("db-2.sql"));
+    }
+
+    private DedupStore store(CompressionCodec codec) {
+        return new DedupStore(directory.resolve("state"), AVG_CHUNK, codec, codec.getDefaultLevel(), false);
+    }
+
+    private Path dump(String fileName, byte[] sql) throws IOException {
+        Path file = directory.resolve("dumps/db/" + fileName);
+        Files.createDirectories(file.getParent());
+        Files.write(file, sql);
+        return file;
+    }
+
+    private ChunkManifest manifest(String fileName) throws IOException {
+        byte[] manifest = destination.objects.get("db/" + fileName + ChunkManifest.EXTENSION);
+        return ChunkManifest.read(new ByteArrayInputStream(manifest));
+    }
+
+    /**
+     * Restores a backup from the destination alone, like the restore of a deduplicated backup.
+     */
+    private byte[] reassemble(String fileName) throws IOException {
+        ChunkManifest manifest = manifest(fileName);
+        ByteArrayOutputStream sql = new ByteArrayOutputStream();
+        for (ChunkManifest.Entry entry : manifest.getEntries()) {
+            byte[] object = destination.objects.get(DedupStore.CHUNKS_FOLDER + "/"
+                    + manifest.chunkObjectName(entry.getHash()));
+            assertTrue(object != null, "missing chunk object " + manifest.chunkObjectName(entry.getHash()));
+            try (InputStream chunk = manifest.getChunkCodec().decompress(new ByteArrayInputStream(object))) {
+                chunk.transferTo(sql);
+            }
+        }
+        return sql.toByteArray();
+    }
+
+    private List<String> chunkNames() {
+        return destination.objects.keySet().stream()
+                .filter(key -> key.startsWith(DedupStore.CHUNKS_FOLDER + "/"))
+                .toList();
+    }
+
+    private static byte[] sql(int length) {
+        Random random = new Random(length);
+        StringBuilder sql = new StringBuilder();
+        while (sql.length() < length) {
+            sql.append("INSERT INTO t VALUES (").append(random.nextInt(1000)).append(",'")
+                    .append(Long.toHexString(random.nextLong())).append("');\n");
+        }
+        return sql.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Keeps objects in memory under "folder/name".
+     */
+    private static class MemoryDestination implements Destination {
+        private final Map<String, byte[]> objects = new LinkedHashMap<>();
+        private int uploads;
+
+        @Override
+        public String getName() {
+            return "Memory";
+        }
+
+        @Override
+        public String upload(InputStream inputStream, String database, String fileName) throws IOException {
+            uploads++;
+            objects.put(database + "/" + fileName, inputStream.readAllBytes());
+            return "ref:" + database + "/" + fileName;
+        }
+
+        @Override
+        public void delete(String database, String fileName, String remoteRef) throws IOException {
+            assertEquals("ref:" + database + "/" + fileName, remoteRef);
+            if (objects.remove(database + "/" + fileName) == null) {
+                throw new IOException("No such object: " + fileName);
+            }
+        }
+
+        @Override
+        public Map<String, String> list(String database) {
+            Map<String, String> files = new LinkedHashMap<>();
+            objects.keySet().stream()
+                    .filter(key -> key.startsWith(database + "/"))
+                    .forEach(key -> files.put(key.substring(database.length() + 1), "ref:" + key));
+            return files;
+        }
+
+        @Override
+        public long size(String database, String fileName, String remoteRef) {
+            byte[] object = objects.get(database + "/" + fileName);
+            return object != null ? object.length : -1;
+        }
+
+        @Override
+        public void download(String database, String fileName, String remoteRef, long offset, long length,
+                             OutputStream outputStream) throws IOException {
+            byte[] object = objects.get(database + "/" + fileName);
+            outputStream.write(object, (int) offset, length < 0 ? object.length - (int) offset : (int) length);
+        }
+    }
+}
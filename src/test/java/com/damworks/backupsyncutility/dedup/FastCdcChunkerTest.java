@@ -0,0 +1,90 @@
+package com.damworks.backupsyncutility.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FastCdcChunkerTest {
+    private static final int AVG_SIZE = 4096;
+
+    @Test
+    void chunksReassembleToTheInputWithinTheSizeBounds() throws IOException {
+        byte[] data = random(1 << 20, 1);
+        List<byte[]> chunks = chunk(data);
+
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            joined.write(chunk);
+            assertTrue(chunk.length <= AVG_SIZE * 8, "chunk larger than the maximum");
+            if (i < chunks.size() - 1) {
+                assertTrue(chunk.length > AVG_SIZE / 4, "chunk smaller than the minimum");
+            }
+        }
+        assertArrayEquals(data, joined.toByteArray());
+        assertTrue(chunks.size() > (1 << 20) / (AVG_SIZE * 4), "too few chunks: " + chunks.size());
+    }
+
+    @Test
+    void cutPointsAfterAnInsertionAreShiftedButUnchanged() throws IOException {
+        byte[] original = random(1 << 20, 2);
+        int insertAt = 100_000;
+        byte[] inserted = random(777, 3);
+        byte[] edited = new byte[original.length + inserted.length];
+        System.arraycopy(original, 0, edited, 0, insertAt);
+        System.arraycopy(inserted, 0, edited, insertAt, inserted.length);
+        System.arraycopy(original, insertAt, edited, insertAt + inserted.length, original.length - insertAt);
+
+        TreeSet<Long> before = cutPoints(chunk(original));
+        TreeSet<Long> after = new TreeSet<>();
+        for (long cut : cutPoints(chunk(edited))) {
+            after.add(cut >= insertAt ? cut - inserted.length : cut);
+        }
+
+        // Cut points before the insertion are identical; after it they resynchronize within a few chunks
+        assertEquals(before.headSet((long) insertAt), after.headSet((long) insertAt));
+        long resynchronized = insertAt + 4L * AVG_SIZE * 8;
+        assertEquals(before.tailSet(resynchronized), after.tailSet(resynchronized));
+    }
+
+    @Test
+    void emptyInputHasNoChunks() throws IOException {
+        assertTrue(chunk(new byte[0]).isEmpty());
+    }
+
+    private static List<byte[]> chunk(byte[] data) throws IOException {
+        FastCdcChunker chunker = new FastCdcChunker(new ByteArrayInputStream(data), AVG_SIZE);
+        List<byte[]> chunks = new ArrayList<>();
+        byte[] chunk;
+        while ((chunk = chunker.next()) != null) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static TreeSet<Long> cutPoints(List<byte[]> chunks) {
+        TreeSet<Long> cuts = new TreeSet<>();
+        long offset = 0;
+        for (byte[] chunk : chunks) {
+            offset += chunk.length;
+            cuts.add(offset);
+        }
+        return cuts;
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,126 @@
+package com.damworks.backupsyncutility.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPipeTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void consumerSeesEndOfStreamOnlyAfterClose() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(4);
+        Future<byte[]> consumer = executor.submit(() -> readAll(pipe.inputStream()));
+
+        pipe.write(new byte[]{1, 2, 3}, 0, 3);
+        pipe.write(new byte[]{9, 4, 5, 9}, 1, 2);
+        pipe.write(new byte[0], 0, 0);
+        assertThrows(TimeoutException.class, () -> consumer.get(200, TimeUnit.MILLISECONDS));
+
+        pipe.close();
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, consumer.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void writesAreCopied() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(4);
+        byte[] buffer = {1, 2};
+        pipe.write(buffer, 0, 2);
+        buffer[0] = 7;
+        pipe.close();
+        assertArrayEquals(new byte[]{1, 2}, readAll(pipe.inputStream()));
+    }
+
+    @Test
+    void abortReachesTheConsumer() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(4);
+        Future<byte[]> consumer = executor.submit(() -> readAll(pipe.inputStream()));
+        pipe.write(new byte[]{1}, 0, 1);
+
+        IOException cause = new IOException("dump failed");
+        pipe.abort(cause);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> consumer.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, failure.getCause());
+        assertSame(cause, failure.getCause().getCause());
+    }
+
+    @Test
+    void abortWhileFullStillReachesTheConsumer() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(1);
+        pipe.write(new byte[]{1}, 0, 1);
+        pipe.abort(new IOException("dump failed"));
+        assertThrows(IOException.class, () -> readAll(pipe.inputStream()));
+    }
+
+    @Test
+    void fullPipeBlocksTheProducerUntilTheConsumerReads() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(2);
+        pipe.write(new byte[]{1}, 0, 1);
+        pipe.write(new byte[]{2}, 0, 1);
+        Future<?> producer = executor.submit(() -> {
+            pipe.write(new byte[]{3}, 0, 1);
+            pipe.close();
+            return null;
+        });
+        assertThrows(TimeoutException.class, () -> producer.get(300, TimeUnit.MILLISECONDS));
+
+        // End of stream takes a slot too
+        InputStream in = pipe.inputStream();
+        assertEquals(1, in.read());
+        assertEquals(2, in.read());
+        producer.get(5, TimeUnit.SECONDS);
+        assertEquals(3, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void detachedConsumerNeverBlocksTheProducer() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(1);
+        pipe.write(new byte[]{1}, 0, 1);
+        Future<?> producer = executor.submit(() -> {
+            for (int i = 0; i < 100; i++) {
+                pipe.write(new byte[]{2}, 0, 1);
+            }
+            pipe.close();
+            return null;
+        });
+        assertThrows(TimeoutException.class, () -> producer.get(200, TimeUnit.MILLISECONDS));
+
+        pipe.detach();
+        producer.get(5, TimeUnit.SECONDS);
+        assertTrue(pipe.isDetached());
+        assertFalse(producer.isCancelled());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[2];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
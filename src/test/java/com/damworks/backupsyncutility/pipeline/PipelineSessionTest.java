@@ -0,0 +1,204 @@
+package com.damworks.backupsyncutility.pipeline;
+
+import com.damworks.backupsyncutility.sync.Destination;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineSessionTest {
+    private static final int CHUNK = 16;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger ended = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void uploadsEndOnlyOnComplete() throws Exception {
+        StreamingDestination a = new StreamingDestination("A");
+        StreamingDestination b = new StreamingDestination("B");
+        PipelineSession session = open(4, a, b);
+
+        ByteArrayOutputStream local = new ByteArrayOutputStream();
+        byte[] data = data(10 * CHUNK + 3);
+        try (OutputStream out = session.tee(local)) {
+            out.write(data);
+        }
+        // Closing the tee ends the local file, not the uploads
+        assertFalse(a.finished.await(200, TimeUnit.MILLISECONDS));
+
+        assertEquals(Map.of("A", "A:db/db.sql.gz", "B", "B:db/db.sql.gz"), session.complete());
+        assertArrayEquals(data, local.toByteArray());
+        assertArrayEquals(data, a.received.get("db.sql.gz"));
+        assertArrayEquals(data, b.received.get("db.sql.gz"));
+        assertEquals(1, ended.get());
+    }
+
+    @Test
+    void abortReachesEveryUpload() throws Exception {
+        StreamingDestination a = new StreamingDestination("A");
+        StreamingDestination b = new StreamingDestination("B");
+        PipelineSession session = open(4, a, b);
+        try (OutputStream out = session.tee(OutputStream.nullOutputStream())) {
+            out.write(data(3 * CHUNK));
+        }
+
+        IOException cause = new IOException("mysqldump exited with 2");
+        session.abort(cause);
+        for (StreamingDestination destination : List.of(a, b)) {
+            assertTrue(destination.finished.await(5, TimeUnit.SECONDS));
+            assertSame(cause, destination.failure.getCause(), destination.getName());
+            assertFalse(destination.received.containsKey("db.sql.gz"), destination.getName());
+        }
+        assertEquals(1, ended.get());
+    }
+
+    @Test
+    void slowUploadThrottlesTheDump() throws Exception {
+        StreamingDestination slow = new StreamingDestination("A");
+        slow.gate = new CountDownLatch(1);
+        PipelineSession session = open(2, slow);
+
+        byte[] data = data(20 * CHUNK);
+        Future<?> producer = executor.submit(() -> {
+            try (OutputStream out = session.tee(OutputStream.nullOutputStream())) {
+                for (int offset = 0; offset < data.length; offset += CHUNK) {
+                    out.write(data, offset, CHUNK);
+                }
+            }
+            return null;
+        });
+        assertThrows(TimeoutException.class, () -> producer.get(300, TimeUnit.MILLISECONDS));
+
+        slow.gate.countDown();
+        producer.get(5, TimeUnit.SECONDS);
+        assertEquals(Map.of("A", "A:db/db.sql.gz"), session.complete());
+        assertArrayEquals(data, slow.received.get("db.sql.gz"));
+    }
+
+    @Test
+    void failedUploadDoesNotBlockTheDumpOrOtherUploads() throws Exception {
+        StreamingDestination good = new StreamingDestination("A");
+        StreamingDestination failing = new StreamingDestination("B");
+        failing.failAfter = CHUNK;
+        PipelineSession session = open(1, good, failing);
+
+        byte[] data = data(50 * CHUNK);
+        try (OutputStream out = session.tee(OutputStream.nullOutputStream())) {
+            out.write(data);
+        }
+        assertEquals(Map.of("A", "A:db/db.sql.gz"), session.complete());
+        assertArrayEquals(data, good.received.get("db.sql.gz"));
+        assertEquals(1, ended.get());
+    }
+
+    private PipelineSession open(int capacity, Destination... destinations) {
+        Map<String, TransferStats> stats = new HashMap<>();
+        for (Destination destination : destinations) {
+            stats.put(destination.getName(), new TransferStats(destination.getName()));
+        }
+        return new PipelineSession(List.of(destinations), stats, "db", "db.sql.gz", null, capacity, CHUNK, executor,
+                ended::incrementAndGet);
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    /**
+     * Reads uploads in small steps, optionally waiting for a gate first or failing part-way.
+     */
+    private static class StreamingDestination implements Destination {
+        final String name;
+        final Map<String, byte[]> received = new ConcurrentHashMap<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile CountDownLatch gate;
+        volatile int failAfter = -1;
+        volatile IOException failure;
+
+        StreamingDestination(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String upload(InputStream inputStream, String database, String fileName) throws IOException {
+            try {
+                if (gate != null) {
+                    gate.await();
+                }
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[CHUNK / 2];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                    if (failAfter >= 0 && content.size() >= failAfter) {
+                        throw new IOException("Connection reset");
+                    }
+                }
+                received.put(fileName, content.toByteArray());
+                return name + ":" + database + "/" + fileName;
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            } catch (InterruptedException e) {
+                throw new UncheckedIOException(new IOException(e));
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        @Override
+        public void delete(String database, String fileName, String remoteRef) {
+        }
+
+        @Override
+        public Map<String, String> list(String database) {
+            return Map.of();
+        }
+
+        @Override
+        public long size(String database, String fileName, String remoteRef) {
+            return -1;
+        }
+
+        @Override
+        public void download(String database, String fileName, String remoteRef, long offset, long length,
+                             OutputStream outputStream) {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.damworks.backupsyncutility.rotate;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RetentionEngineTest {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    @Test
+    void lastKeepsTheNewestBackups() {
+        assertEquals(Set.of("20240311_120000", "20240311_000000"),
+                select(new RetentionPolicy(2, 0, 0, 0, 0), "20240310_235959", "20240311_000000", "20240311_120000"));
+    }
+
+    @Test
+    void dailyKeepsTheNewestBackupOfEachDayAcrossMidnight() {
+        assertEquals(Set.of("20240311_120000", "20240310_235959"),
+                select(new RetentionPolicy(0, 2, 0, 0, 0),
+                        "20240309_235959", "20240310_000000", "20240310_235959", "20240311_000000", "20240311_120000"));
+    }
+
+    @Test
+    void weeklyBucketsStartOnMonday() {
+        // Sunday 2024-03-10 ends ISO week 10; Monday 2024-03-11 starts week 11, which runs to Sunday 2024-03-17
+        assertEquals(Set.of("20240317_230000", "20240310_230000"),
+                select(new RetentionPolicy(0, 0, 2, 0, 0),
+                        "20240304_010000", "20240310_230000", "20240311_010000", "20240317_230000"));
+    }
+
+    @Test
+    void weeklyBucketsFollowTheWeekBasedYear() {
+        // Monday 2024-12-30 and 2025-01-01 are both in ISO week 1 of 2025; Sunday 2024-12-29 is in week 52 of 2024
+        assertEquals(Set.of("20250101_000000", "20241229_120000"),
+                select(new RetentionPolicy(0, 0, 2, 0, 0), "20241229_120000", "20241230_120000", "20250101_000000"));
+    }
+
+    @Test
+    void monthlyKeepsTheNewestBackupOfEachMonth() {
+        assertEquals(Set.of("20240301_000000", "20240229_235959", "20240131_235959"),
+                select(new RetentionPolicy(0, 0, 0, 3, 0),
+                        "20240115_000000", "20240131_235959", "20240201_000000", "20240229_235959", "20240301_000000"));
+    }
+
+    @Test
+    void tiersCombineAndOnlyCountTheirOwnPeriods() {
+        assertEquals(Set.of("20240311_120000", "20240310_235959", "20240229_235959", "20231231_235959"),
+                select(new RetentionPolicy(1, 2, 0, 2, 2),
+                        "20231231_235959", "20240229_235959", "20240310_000000", "20240310_235959", "20240311_120000"));
+    }
+
+    @Test
+    void emptyPolicyKeepsNothing() {
+        assertEquals(Set.of(), select(new RetentionPolicy(0, 0, 0, 0, 0), "20240310_000000"));
+    }
+
+    /**
+     * Runs the selection on backups of database "db" at the given times and returns the kept times.
+     */
+    private static Set<String> select(RetentionPolicy policy, String... timestamps) {
+        List<RetentionEngine.Backup> backups = new ArrayList<>();
+        for (String timestamp : timestamps) {
+            long time = LocalDateTime.parse(timestamp, TIMESTAMP).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            backups.add(new RetentionEngine.Backup("db_" + timestamp, time));
+        }
+        backups.sort(Comparator.comparingLong(RetentionEngine.Backup::getTime).reversed());
+
+        Set<String> kept = new TreeSet<>();
+        for (String stem : RetentionEngine.select(backups, policy)) {
+            kept.add(stem.substring("db_".length()));
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,115 @@
+package com.damworks.backupsyncutility.schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CronScheduleTest {
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    @Test
+    void restrictedDayOfMonthAndDayOfWeekMatchEither() {
+        // The 1st of the month or any Monday; 2024-09-26 is a Thursday
+        CronSchedule schedule = CronSchedule.parse("0 0 1 * 1");
+        assertEquals(utc("2024-09-30T00:00"), schedule.next(utc("2024-09-26T12:00")));
+        assertEquals(utc("2024-10-01T00:00"), schedule.next(utc("2024-09-30T00:00")));
+        assertEquals(utc("2024-10-07T00:00"), schedule.next(utc("2024-10-01T00:00")));
+    }
+
+    @Test
+    void unrestrictedDayOfWeekDoesNotWidenDayOfMonth() {
+        assertEquals(utc("2024-10-01T00:00"), CronSchedule.parse("0 0 1 * *").next(utc("2024-09-26T12:00")));
+        assertEquals(utc("2024-10-01T00:00"), CronSchedule.parse("0 0 * * 2").next(utc("2024-09-26T12:00")));
+    }
+
+    @Test
+    void steps() {
+        CronSchedule quarterHours = CronSchedule.parse("*/15 * * * *");
+        assertEquals(utc("2024-09-26T10:15"), quarterHours.next(utc("2024-09-26T10:07")));
+        assertEquals(utc("2024-09-26T11:00"), quarterHours.next(utc("2024-09-26T10:45")));
+
+        CronSchedule rangeStep = CronSchedule.parse("0 8-18/4 * * *");
+        assertEquals(utc("2024-09-26T12:00"), rangeStep.next(utc("2024-09-26T09:00")));
+        assertEquals(utc("2024-09-27T08:00"), rangeStep.next(utc("2024-09-26T16:00")));
+
+        assertEquals(utc("2024-09-26T10:50"), CronSchedule.parse("5/15 * * * *").next(utc("2024-09-26T10:35")));
+    }
+
+    @Test
+    void monthAndDayNames() {
+        CronSchedule schedule = CronSchedule.parse("0 6 * JAN,jul Mon-FRI");
+        assertEquals(utc("2024-07-01T06:00"), schedule.next(utc("2024-06-15T00:00")));
+        assertEquals(utc("2024-07-08T06:00"), schedule.next(utc("2024-07-05T07:00")));
+        assertEquals(utc("2025-01-01T06:00"), schedule.next(utc("2024-07-31T06:00")));
+    }
+
+    @Test
+    void sevenIsSunday() {
+        ZonedDateTime thursday = utc("2024-09-26T12:00");
+        ZonedDateTime sunday = utc("2024-09-29T00:00");
+        assertEquals(sunday, CronSchedule.parse("0 0 * * 7").next(thursday));
+        assertEquals(sunday, CronSchedule.parse("0 0 * * 0").next(thursday));
+        assertEquals(sunday, CronSchedule.parse("0 0 * * sun").next(thursday));
+        assertEquals(sunday, CronSchedule.parse("@weekly").next(thursday));
+        // Saturday to Sunday
+        assertEquals(utc("2024-09-28T00:00"), CronSchedule.parse("0 0 * * 6-7").next(thursday));
+        assertEquals(utc("2024-10-05T00:00"), CronSchedule.parse("0 0 * * 6-7").next(sunday));
+    }
+
+    @Test
+    void timeSkippedByDaylightSavingRunsAfterTheGap() {
+        // Berlin skips 02:00-03:00 on 2024-03-31
+        CronSchedule schedule = CronSchedule.parse("30 2 * * *");
+        ZonedDateTime shifted = schedule.next(berlin("2024-03-31T01:00"));
+        assertEquals(ZonedDateTime.parse("2024-03-31T03:30+02:00[Europe/Berlin]"), shifted);
+        assertEquals(ZonedDateTime.parse("2024-04-01T02:30+02:00[Europe/Berlin]"), schedule.next(shifted));
+
+        CronSchedule hourly = CronSchedule.parse("@hourly");
+        assertEquals(ZonedDateTime.parse("2024-03-31T03:00+02:00[Europe/Berlin]"), hourly.next(berlin("2024-03-31T01:00")));
+        assertEquals(ZonedDateTime.parse("2024-03-31T04:00+02:00[Europe/Berlin]"),
+                hourly.next(ZonedDateTime.parse("2024-03-31T03:00+02:00[Europe/Berlin]")));
+    }
+
+    @Test
+    void timeRepeatedByDaylightSavingRunsOnce() {
+        // Berlin repeats 02:00-03:00 on 2024-10-27
+        CronSchedule schedule = CronSchedule.parse("30 2 * * *");
+        ZonedDateTime first = schedule.next(berlin("2024-10-27T00:00"));
+        assertEquals(ZonedDateTime.parse("2024-10-27T02:30+02:00[Europe/Berlin]"), first);
+        assertEquals(ZonedDateTime.parse("2024-10-28T02:30+01:00[Europe/Berlin]"), schedule.next(first));
+    }
+
+    @Test
+    void leapDayIsFound() {
+        assertEquals(utc("2028-02-29T00:00"), CronSchedule.parse("0 0 29 2 *").next(utc("2024-03-01T00:00")));
+    }
+
+    @Test
+    void impossibleDateThrows() {
+        CronSchedule schedule = CronSchedule.parse("0 0 31 2 *");
+        assertThrows(IllegalStateException.class, () -> schedule.next(utc("2024-01-01T00:00")));
+    }
+
+    @Test
+    void invalidExpressionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CronSchedule.parse("0 0 * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronSchedule.parse("60 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronSchedule.parse("0 0 * * 8"));
+        assertThrows(IllegalArgumentException.class, () -> CronSchedule.parse("0 18-8 * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronSchedule.parse("0 0 * FOO *"));
+    }
+
+    private static ZonedDateTime utc(String localDateTime) {
+        return LocalDateTime.parse(localDateTime).atZone(UTC);
+    }
+
+    private static ZonedDateTime berlin(String localDateTime) {
+        return LocalDateTime.parse(localDateTime).atZone(BERLIN);
+    }
+}
@@ -0,0 +1,124 @@
+package com.damworks.backupsyncutility.sync;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DriveFolderCacheTest {
+    @TempDir
+    Path directory;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final AtomicInteger resolved = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void resolvesEachFolderOnce() throws IOException {
+        DriveFolderCache cache = new DriveFolderCache(cacheFile());
+
+        assertEquals("id-1", cache.get("root", "db1", this::resolve));
+        assertEquals("id-1", cache.get("root", "db1", this::resolve));
+        assertEquals("id-2", cache.get("root", "db2", this::resolve));
+        // Same name under another parent is another folder
+        assertEquals("id-3", cache.get("other", "db1", this::resolve));
+        assertEquals(3, resolved.get());
+    }
+
+    @Test
+    void keepsFolderIdsBetweenRuns() throws IOException {
+        new DriveFolderCache(cacheFile()).get("root", "db1", this::resolve);
+
+        DriveFolderCache reloaded = new DriveFolderCache(cacheFile());
+
+        assertEquals("id-1", reloaded.get("root", "db1", this::resolve));
+        assertEquals(1, resolved.get());
+    }
+
+    @Test
+    void resolvesAgainAfterInvalidation() throws IOException {
+        DriveFolderCache cache = new DriveFolderCache(cacheFile());
+        cache.get("root", "db1", this::resolve);
+
+        cache.invalidate("root", "db1");
+
+        assertEquals("id-2", cache.get("root", "db1", this::resolve));
+        assertEquals("id-2", new DriveFolderCache(cacheFile()).get("root", "db1", this::resolve));
+    }
+
+    @Test
+    void doesNotCacheFailedLookup() throws IOException {
+        DriveFolderCache cache = new DriveFolderCache(cacheFile());
+
+        assertThrows(IOException.class, () -> cache.get("root", "db1", () -> {
+            throw new IOException("quota exceeded");
+        }));
+
+        assertEquals("id-1", cache.get("root", "db1", this::resolve));
+    }
+
+    @Test
+    void concurrentLookupsResolveFolderOnce() throws Exception {
+        DriveFolderCache cache = new DriveFolderCache(cacheFile());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> lookups = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            lookups.add(executor.submit(() -> {
+                start.await();
+                return cache.get("root", "db1", this::resolveSlowly);
+            }));
+        }
+        start.countDown();
+
+        for (Future<String> lookup : lookups) {
+            assertEquals("id-1", lookup.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, resolved.get());
+    }
+
+    @Test
+    void ignoresUnreadableCacheFile() throws IOException {
+        Files.writeString(cacheFile(), "root/db1=\\uZZZZ\n");
+
+        DriveFolderCache cache = new DriveFolderCache(cacheFile());
+
+        assertEquals("id-1", cache.get("root", "db1", this::resolve));
+    }
+
+    private String resolve() {
+        return "id-" + resolved.incrementAndGet();
+    }
+
+    // Keeps the lookup in progress long enough for the other threads to ask for the same folder
+    private String resolveSlowly() throws IOException {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        return resolve();
+    }
+
+    private Path cacheFile() {
+        return directory.resolve("drive-folders.properties");
+    }
+}
@@ -0,0 +1,256 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.throttle.BandwidthSchedule;
+import com.damworks.backupsyncutility.throttle.RateLimiter;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DriveResumableUploadTest {
+    private static final int CHUNK = DriveResumableUpload.CHUNK_GRANULARITY;
+
+    @TempDir
+    Path directory;
+
+    private final FakeDrive server = new FakeDrive();
+    private final Drive drive = new Drive.Builder(server, GsonFactory.getDefaultInstance(), null)
+            .setApplicationName("test")
+            .build();
+
+    @Test
+    void roundsChunkSizeUpToGranularity() {
+        assertEquals(CHUNK, DriveResumableUpload.roundChunkSize(0));
+        assertEquals(CHUNK, DriveResumableUpload.roundChunkSize(1));
+        assertEquals(CHUNK, DriveResumableUpload.roundChunkSize(CHUNK));
+        assertEquals(2 * CHUNK, DriveResumableUpload.roundChunkSize(CHUNK + 1));
+    }
+
+    @Test
+    void uploadsFileInChunks() throws IOException {
+        byte[] data = data(2 * CHUNK + 1000);
+        Path file = write(data);
+
+        assertEquals("file-1", uploader().upload(file, metadata()));
+
+        assertEquals(1, server.sessions.size());
+        assertArrayEquals(data, server.content());
+        assertEquals(List.of("bytes 0-" + (CHUNK - 1) + "/" + data.length,
+                "bytes " + CHUNK + "-" + (2 * CHUNK - 1) + "/" + data.length,
+                "bytes " + 2 * CHUNK + "-" + (data.length - 1) + "/" + data.length), server.ranges);
+        assertTrue(stateFiles().isEmpty());
+    }
+
+    @Test
+    void resendsBytesTheServerDidNotAcknowledge() throws IOException {
+        byte[] data = data(2 * CHUNK);
+        Path file = write(data);
+        server.acknowledgeLimit = 1000;
+
+        uploader().upload(file, metadata());
+
+        assertArrayEquals(data, server.content());
+        assertEquals("bytes 1000-" + (1000 + CHUNK - 1) + "/" + data.length, server.ranges.get(1));
+    }
+
+    @Test
+    void resendsUnacknowledgedBytesOfStream() throws IOException {
+        byte[] data = data(2 * CHUNK + 10);
+        Path file = write(data);
+        server.acknowledgeLimit = 1000;
+
+        uploader().upload(new ByteArrayInputStream(data), file, metadata());
+
+        // The stream is read once; the unacknowledged tail comes from the previous chunk
+        assertArrayEquals(data, server.content());
+    }
+
+    @Test
+    void queriesStatusAfterLostResponse() throws IOException {
+        byte[] data = data(2 * CHUNK);
+        Path file = write(data);
+        server.loseResponses = 1;
+
+        uploader().upload(file, metadata());
+
+        // The first chunk was stored but its response lost; the status query tells to go on
+        assertArrayEquals(data, server.content());
+        assertEquals(List.of("bytes 0-" + (CHUNK - 1) + "/" + data.length, "bytes */" + data.length,
+                "bytes " + CHUNK + "-" + (2 * CHUNK - 1) + "/" + data.length), server.ranges);
+    }
+
+    @Test
+    void restartsExpiredSession() throws IOException {
+        byte[] data = data(2 * CHUNK);
+        Path file = write(data);
+        server.expireAfterPuts = 1;
+
+        assertEquals("file-2", uploader().upload(file, metadata()));
+
+        assertEquals(2, server.sessions.size());
+        assertArrayEquals(data, server.content());
+    }
+
+    @Test
+    void resumesFromStateFileOfInterruptedUpload() throws IOException {
+        byte[] data = data(3 * CHUNK);
+        Path file = write(data);
+        server.failAfterPuts = 1;
+
+        assertThrows(IOException.class, () -> uploader().upload(file, metadata()));
+        assertEquals(1, stateFiles().size());
+
+        server.failAfterPuts = Integer.MAX_VALUE;
+        server.ranges.clear();
+        uploader().resumePending();
+
+        assertEquals(1, server.sessions.size());
+        assertArrayEquals(data, server.content());
+        assertEquals("bytes */" + data.length, server.ranges.get(0));
+        assertEquals("bytes " + CHUNK + "-" + (2 * CHUNK - 1) + "/" + data.length, server.ranges.get(1));
+        assertTrue(stateFiles().isEmpty());
+    }
+
+    @Test
+    void discardsStateOfChangedFile() throws IOException {
+        Path file = write(data(2 * CHUNK));
+        server.failAfterPuts = 1;
+        assertThrows(IOException.class, () -> uploader().upload(file, metadata()));
+
+        Files.write(file, data(CHUNK));
+        server.failAfterPuts = Integer.MAX_VALUE;
+        uploader().resumePending();
+
+        assertTrue(stateFiles().isEmpty());
+        assertEquals(1, server.sessions.size());
+    }
+
+    private DriveResumableUpload uploader() {
+        return new DriveResumableUpload(drive, directory.resolve("state"), CHUNK,
+                new RateLimiter("test", BandwidthSchedule.UNLIMITED, null));
+    }
+
+    private Path write(byte[] data) throws IOException {
+        Path file = directory.resolve("db.sql.gz");
+        Files.write(file, data);
+        return file;
+    }
+
+    private List<Path> stateFiles() throws IOException {
+        Path state = directory.resolve("state");
+        if (!Files.isDirectory(state)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(state)) {
+            return files.toList();
+        }
+    }
+
+    private static File metadata() {
+        return new File().setName("db.sql.gz").setParents(List.of("folder"));
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Minimal resumable upload endpoint: keeps the bytes received per session.
+     */
+    private static class FakeDrive extends MockHttpTransport {
+        private final Map<String, ByteArrayOutputStream> sessions = new HashMap<>();
+        private final List<String> ranges = new ArrayList<>();
+        private String lastSession;
+        private int puts;
+        // Bytes of the next chunk that are acknowledged (the rest has to be sent again)
+        private int acknowledgeLimit = Integer.MAX_VALUE;
+        // Chunks that are stored but whose response is lost
+        private int loseResponses;
+        private int expireAfterPuts = Integer.MAX_VALUE;
+        private int failAfterPuts = Integer.MAX_VALUE;
+
+        byte[] content() {
+            return sessions.get(lastSession).toByteArray();
+        }
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    return method.equals("POST") ? startSession(this) : put(this);
+                }
+            };
+        }
+
+        private LowLevelHttpResponse startSession(MockLowLevelHttpRequest request) {
+            assertTrue(request.getUrl().contains("upload/drive/v3/files?uploadType=resumable"));
+            lastSession = "https://upload.test/session/" + (sessions.size() + 1);
+            sessions.put(lastSession, new ByteArrayOutputStream());
+            return new MockLowLevelHttpResponse().addHeader("Location", lastSession);
+        }
+
+        private LowLevelHttpResponse put(MockLowLevelHttpRequest request) throws IOException {
+            String range = request.getFirstHeaderValue("Content-Range");
+            ranges.add(range);
+            if (++puts > failAfterPuts) {
+                throw new IOException("Connection reset");
+            }
+            if (puts > expireAfterPuts) {
+                expireAfterPuts = Integer.MAX_VALUE;
+                return new MockLowLevelHttpResponse().setStatusCode(404);
+            }
+
+            ByteArrayOutputStream received = sessions.get(request.getUrl());
+            long size = Long.parseLong(range.substring(range.indexOf('/') + 1));
+            if (!range.startsWith("bytes */")) {
+                long first = Long.parseLong(range.substring(6, range.indexOf('-')));
+                assertEquals(received.size(), first, "chunk does not continue the received bytes");
+                ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+                request.getStreamingContent().writeTo(chunk);
+                received.write(chunk.toByteArray(), 0, Math.min(chunk.size(), acknowledgeLimit));
+                acknowledgeLimit = Integer.MAX_VALUE;
+                if (loseResponses > 0) {
+                    loseResponses--;
+                    throw new IOException("Read timed out");
+                }
+            }
+
+            if (received.size() == size) {
+                String id = "file-" + sessions.size();
+                return new MockLowLevelHttpResponse().setStatusCode(200)
+                        .setContentType("application/json").setContent("{\"id\":\"" + id + "\"}");
+            }
+            MockLowLevelHttpResponse response = new MockLowLevelHttpResponse().setStatusCode(308);
+            if (received.size() > 0) {
+                response.addHeader("Range", "bytes=0-" + (received.size() - 1));
+            }
+            return response;
+        }
+    }
+}
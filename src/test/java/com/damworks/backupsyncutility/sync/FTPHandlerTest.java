@@ -0,0 +1,341 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.verify.ChecksumOutputStream;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FTPHandlerTest {
+    private static final String REMOTE = "/backup/db/db.sql.gz";
+    private static final String PART = REMOTE + ".part";
+
+    @TempDir
+    Path directory;
+
+    private final FakeFTPClient server = new FakeFTPClient();
+    private final FakePool pool = new FakePool(server);
+    private final FTPHandler handler = new FTPHandler(pool);
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void uploadsToPartFileAndRenames() throws IOException {
+        byte[] data = data(10_000);
+
+        handler.upload(write(data).toString(), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        assertFalse(server.files.containsKey(PART));
+        assertEquals(List.of("STOR " + PART, "RNFR " + PART), server.commands);
+    }
+
+    @Test
+    void resumesWithRestAndStorWhenSupported() throws IOException {
+        byte[] data = data(10_000);
+        server.files.put(PART, Arrays.copyOf(data, 4000));
+        server.restStream = true;
+
+        handler.upload(write(data).toString(), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        assertEquals(List.of("REST 4000", "STOR " + PART, "RNFR " + PART), server.commands);
+    }
+
+    @Test
+    void resumesWithAppendWithoutRestStream() throws IOException {
+        byte[] data = data(10_000);
+        server.files.put(PART, Arrays.copyOf(data, 4000));
+
+        handler.upload(write(data).toString(), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        assertEquals(List.of("APPE " + PART, "RNFR " + PART), server.commands);
+    }
+
+    @Test
+    void startsOverWhenPartialCopyIsLonger() throws IOException {
+        byte[] data = data(10_000);
+        server.files.put(PART, data(20_000));
+        server.restStream = true;
+
+        handler.upload(write(data).toString(), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        assertEquals(List.of("STOR " + PART, "RNFR " + PART), server.commands);
+    }
+
+    @Test
+    void renamesCompletePartialCopyWithoutSendingIt() throws IOException {
+        byte[] data = data(10_000);
+        server.files.put(PART, data.clone());
+
+        handler.upload(write(data).toString(), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        assertEquals(List.of("RNFR " + PART), server.commands);
+    }
+
+    @Test
+    void checksResumedCopyBeforeRenaming() throws IOException {
+        byte[] data = data(10_000);
+        Path localFile = writeWithChecksums(data);
+        server.files.put(PART, Arrays.copyOf(data, 4000));
+        server.restStream = true;
+        server.hash = true;
+
+        handler.upload(localFile.toString(), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        assertEquals(List.of("REST 4000", "STOR " + PART, "HASH " + PART, "RNFR " + PART), server.commands);
+    }
+
+    @Test
+    void sendsMismatchedResumedCopyAgainInFull() throws IOException {
+        byte[] data = data(10_000);
+        Path localFile = writeWithChecksums(data);
+        // Left by an upload of other content under the same name
+        server.files.put(PART, data(4000));
+        server.restStream = true;
+        server.hash = true;
+
+        handler.upload(localFile.toString(), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        assertEquals(List.of("REST 4000", "STOR " + PART, "HASH " + PART, "STOR " + PART, "RNFR " + PART),
+                server.commands);
+        // Only the good copy was ever published under the real name
+        assertEquals(1, server.renamed.size());
+        assertArrayEquals(data, server.renamed.get(0));
+    }
+
+    @Test
+    void resumesStreamedUploadFromLocalFile() throws IOException {
+        byte[] data = data(10_000);
+        server.files.put(PART, Arrays.copyOf(data, 4000));
+        server.restStream = true;
+        ByteArrayInputStream stream = new ByteArrayInputStream(data);
+
+        handler.upload(stream, write(data), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        // The rest comes from the local file; the stream is left unread
+        assertEquals(data.length, stream.available());
+    }
+
+    @Test
+    void retryResumesBrokenTransfer() throws IOException {
+        byte[] data = data(10_000);
+        server.restStream = true;
+        server.breakAfterBytes = 6000;
+
+        handler.upload(write(data).toString(), REMOTE);
+
+        assertArrayEquals(data, server.files.get(REMOTE));
+        assertEquals(List.of("STOR " + PART, "REST 6000", "STOR " + PART, "RNFR " + PART), server.commands);
+        assertTrue(pool.invalidated > 0);
+    }
+
+    private Path write(byte[] data) throws IOException {
+        Path file = directory.resolve("db.sql.gz");
+        Files.write(file, data);
+        return file;
+    }
+
+    private Path writeWithChecksums(byte[] data) throws IOException {
+        Path file = write(data);
+        ChecksumOutputStream checksums = new ChecksumOutputStream(OutputStream.nullOutputStream());
+        checksums.write(data);
+        checksums.getChecksums().write(file);
+        return file;
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Hands out the same fake session instead of connecting.
+     */
+    private static class FakePool extends FTPConnectionPool {
+        private final FTPClient client;
+        private int invalidated;
+
+        FakePool(FTPClient client) {
+            super("localhost", 21, "user", "password", 1, 60);
+            this.client = client;
+        }
+
+        @Override
+        public FTPClient borrow() {
+            return client;
+        }
+
+        @Override
+        public void release(FTPClient client) {
+        }
+
+        @Override
+        public void invalidate(FTPClient client) {
+            invalidated++;
+        }
+    }
+
+    /**
+     * In-memory FTP server that records the transfer commands it receives.
+     */
+    private static class FakeFTPClient extends FTPClient {
+        private final Map<String, byte[]> files = new HashMap<>();
+        private final List<String> commands = new ArrayList<>();
+        private final List<byte[]> renamed = new ArrayList<>();
+        private boolean restStream;
+        private boolean hash;
+        // Bytes after which the next STOR breaks off, or 0
+        private int breakAfterBytes;
+        private long restartOffset;
+        private int replyCode = 200;
+        private String replyString = "200 OK";
+
+        @Override
+        public boolean changeWorkingDirectory(String pathname) {
+            return true;
+        }
+
+        @Override
+        public boolean makeDirectory(String pathname) {
+            return true;
+        }
+
+        @Override
+        public String getSize(String pathname) {
+            byte[] file = files.get(pathname);
+            return file != null ? Integer.toString(file.length) : null;
+        }
+
+        @Override
+        public String[] featureValues(String feature) {
+            if (feature.equals("REST") && restStream) {
+                return new String[]{"STREAM"};
+            }
+            if (feature.equals("HASH") && hash) {
+                return new String[]{"SHA-256*;MD5"};
+            }
+            return null;
+        }
+
+        @Override
+        public void setRestartOffset(long offset) {
+            restartOffset = offset;
+        }
+
+        @Override
+        public boolean storeFile(String remote, InputStream local) throws IOException {
+            if (restartOffset > 0) {
+                commands.add("REST " + restartOffset);
+            }
+            commands.add("STOR " + remote);
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            content.write(files.getOrDefault(remote, new byte[0]), 0, (int) restartOffset);
+            restartOffset = 0;
+            if (breakAfterBytes > 0) {
+                content.write(local.readNBytes(breakAfterBytes));
+                breakAfterBytes = 0;
+                files.put(remote, content.toByteArray());
+                throw new IOException("Connection reset");
+            }
+            local.transferTo(content);
+            files.put(remote, content.toByteArray());
+            return true;
+        }
+
+        @Override
+        public boolean appendFile(String remote, InputStream local) throws IOException {
+            commands.add("APPE " + remote);
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            content.write(files.getOrDefault(remote, new byte[0]));
+            local.transferTo(content);
+            files.put(remote, content.toByteArray());
+            return true;
+        }
+
+        @Override
+        public int sendCommand(String command, String args) {
+            if (command.equals("HASH") && files.containsKey(args)) {
+                commands.add("HASH " + args);
+                byte[] file = files.get(args);
+                return reply(213, "213 SHA-256 0-" + (file.length - 1) + " " + sha256(file) + " " + args);
+            }
+            return reply(502, "502 Command not implemented");
+        }
+
+        @Override
+        public boolean rename(String from, String to) {
+            commands.add("RNFR " + from);
+            byte[] file = files.remove(from);
+            files.put(to, file);
+            renamed.add(file);
+            return true;
+        }
+
+        @Override
+        public boolean deleteFile(String pathname) {
+            return files.remove(pathname) != null;
+        }
+
+        @Override
+        public int getReplyCode() {
+            return replyCode;
+        }
+
+        @Override
+        public String getReplyString() {
+            return replyString;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return false;
+        }
+
+        private int reply(int code, String text) {
+            replyCode = code;
+            replyString = text;
+            return code;
+        }
+
+        private static String sha256(byte[] data) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
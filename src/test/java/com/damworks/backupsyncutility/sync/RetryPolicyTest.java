@@ -0,0 +1,103 @@
+package com.damworks.backupsyncutility.sync;
+
+import com.damworks.backupsyncutility.verify.ChecksumMismatchException;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+    private final RetryPolicy policy = new RetryPolicy(3, 0, 0);
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    void retriesTransientFailuresUntilSuccess() throws IOException {
+        String result = policy.call("Test", "upload", e -> true, attempt -> {
+            attempts.incrementAndGet();
+            if (attempt < 3) {
+                throw new IOException("Connection reset");
+            }
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void throwsLastFailureAfterMaxAttempts() {
+        IOException last = new IOException("third");
+        IOException thrown = assertThrows(IOException.class, () -> policy.call("Test", "upload", e -> true, attempt -> {
+            attempts.incrementAndGet();
+            throw attempt < 3 ? new IOException("attempt " + attempt) : last;
+        }));
+
+        assertSame(last, thrown);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void doesNotRetryPermanentFailures() {
+        for (IOException failure : new IOException[]{new FileNotFoundException("gone"),
+                new ChecksumMismatchException("corrupt"), new InterruptedIOException("interrupted")}) {
+            attempts.set(0);
+            assertThrows(failure.getClass(), () -> policy.call("Test", "upload", e -> true, attempt -> {
+                attempts.incrementAndGet();
+                throw failure;
+            }));
+            assertEquals(1, attempts.get(), failure.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    void doesNotRetryWhatCallerRejects() {
+        assertThrows(IOException.class, () -> policy.call("Test", "upload", e -> false, attempt -> {
+            attempts.incrementAndGet();
+            throw new IOException("Connection reset");
+        }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void classifiesFailures() {
+        assertTrue(RetryPolicy.isTransient(new IOException("Connection reset")));
+        assertTrue(RetryPolicy.isTransient(new SocketTimeoutException("Read timed out")));
+        assertFalse(RetryPolicy.isTransient(new InterruptedIOException("interrupted")));
+        assertFalse(RetryPolicy.isTransient(new FileNotFoundException("gone")));
+        assertFalse(RetryPolicy.isTransient(new ChecksumMismatchException("corrupt")));
+    }
+
+    @Test
+    void delaysGrowWithJitterUpToMax() {
+        RetryPolicy backoff = new RetryPolicy(10, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, backoff.delayMillis(1));
+            assertBetween(200, 400, backoff.delayMillis(3));
+            assertBetween(500, 1000, backoff.delayMillis(5));
+            // No overflow for large attempt numbers
+            assertBetween(500, 1000, backoff.delayMillis(100));
+        }
+    }
+
+    @Test
+    void keepsAtLeastOneAttempt() throws IOException {
+        RetryPolicy once = new RetryPolicy(0, 0, 0);
+
+        assertEquals(1, once.getMaxAttempts());
+        assertEquals("ok", once.call("Test", "upload", e -> true, attempt -> "ok"));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, actual + " not in [" + min + ", " + max + "]");
+    }
+}
@@ -0,0 +1,94 @@
+package com.damworks.backupsyncutility.throttle;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BandwidthScheduleTest {
+    private static final long K = 1024;
+    private static final long M = 1024 * K;
+    private static final long G = 1024 * M;
+
+    @Test
+    void windowCrossingMidnight() {
+        BandwidthSchedule schedule = BandwidthSchedule.parse("50M@22:00-06:00, 5M");
+        assertEquals(50 * M, rateAt(schedule, "22:00"));
+        assertEquals(50 * M, rateAt(schedule, "23:59"));
+        assertEquals(50 * M, rateAt(schedule, "00:00"));
+        assertEquals(50 * M, rateAt(schedule, "05:59"));
+        // The end of a window is exclusive
+        assertEquals(5 * M, rateAt(schedule, "06:00"));
+        assertEquals(5 * M, rateAt(schedule, "21:59"));
+    }
+
+    @Test
+    void firstMatchingWindowWinsAndGapsAreUnlimited() {
+        BandwidthSchedule schedule = BandwidthSchedule.parse("20M@08:00-20:00,50M@20:00-23:00");
+        assertEquals(20 * M, rateAt(schedule, "08:00"));
+        assertEquals(50 * M, rateAt(schedule, "20:00"));
+        assertEquals(0, rateAt(schedule, "23:00"));
+        assertEquals(0, rateAt(schedule, "07:59"));
+
+        BandwidthSchedule overlapping = BandwidthSchedule.parse("1M@09:00-10:00,2M@00:00-23:59");
+        assertEquals(M, rateAt(overlapping, "09:30"));
+        assertEquals(2 * M, rateAt(overlapping, "10:00"));
+    }
+
+    @Test
+    void equalStartAndEndCoverTheWholeDay() {
+        BandwidthSchedule schedule = BandwidthSchedule.parse("3M@12:00-12:00");
+        assertEquals(3 * M, rateAt(schedule, "11:59"));
+        assertEquals(3 * M, rateAt(schedule, "12:00"));
+    }
+
+    @Test
+    void unitSuffixes() {
+        assertEquals(512, rate("512"));
+        assertEquals(64 * K, rate("64K"));
+        assertEquals(64 * K, rate("64k"));
+        assertEquals(64 * K, rate("64KB"));
+        assertEquals(20 * M, rate("20M"));
+        assertEquals(20 * M, rate("20MB/s"));
+        assertEquals(3 * M / 2, rate("1.5M"));
+        assertEquals(2 * G, rate("2G"));
+        assertEquals(0, rate("0"));
+        assertEquals(0, rate("unlimited"));
+    }
+
+    @Test
+    void formatRateUsesTheLargestExactUnit() {
+        assertEquals("20M", BandwidthSchedule.formatRate(20 * M));
+        assertEquals("1536K", BandwidthSchedule.formatRate(3 * M / 2));
+        assertEquals("1000", BandwidthSchedule.formatRate(1000));
+        assertEquals("unlimited", BandwidthSchedule.formatRate(0));
+        assertEquals("20M@22:00-06:00,5M", BandwidthSchedule.parse(" 20M @ 22:00-06:00 , 5M ").toString());
+    }
+
+    @Test
+    void blankIsUnlimited() {
+        assertSame(BandwidthSchedule.UNLIMITED, BandwidthSchedule.parse(null));
+        assertSame(BandwidthSchedule.UNLIMITED, BandwidthSchedule.parse("  "));
+        assertEquals(0, rateAt(BandwidthSchedule.UNLIMITED, "12:00"));
+    }
+
+    @Test
+    void invalidEntriesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BandwidthSchedule.parse("fast"));
+        assertThrows(IllegalArgumentException.class, () -> BandwidthSchedule.parse("-1M"));
+        assertThrows(IllegalArgumentException.class, () -> BandwidthSchedule.parse("5M@08:00"));
+        assertThrows(IllegalArgumentException.class, () -> BandwidthSchedule.parse("5M@8-20"));
+        assertThrows(IllegalArgumentException.class, () -> BandwidthSchedule.parse("5M@25:00-06:00"));
+    }
+
+    private static long rate(String rate) {
+        return rateAt(BandwidthSchedule.parse(rate), "12:00");
+    }
+
+    private static long rateAt(BandwidthSchedule schedule, String time) {
+        return schedule.rateAt(LocalTime.parse(time));
+    }
+}
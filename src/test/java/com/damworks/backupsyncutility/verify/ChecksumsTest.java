@@ -0,0 +1,75 @@
+package com.damworks.backupsyncutility.verify;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChecksumsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void streamComputesReferenceValues() throws IOException {
+        ChecksumOutputStream out = new ChecksumOutputStream(OutputStream.nullOutputStream());
+        out.write("abc".getBytes(StandardCharsets.US_ASCII));
+        Checksums checksums = out.getChecksums();
+
+        assertEquals(3, checksums.getSize());
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", checksums.getSha256());
+        assertEquals("44bc2cf5ad770999", checksums.getXxh64());
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", checksums.getMd5());
+        assertEquals("352441c2", checksums.getCrc32());
+    }
+
+    @Test
+    void sidecarRoundTrip() throws IOException {
+        Path file = directory.resolve("db (1)_20240101_020000.sql.gz");
+        Files.writeString(file, "dump");
+        Checksums checksums = new Checksums(4, "a".repeat(64), "0123456789abcdef", "b".repeat(32), "0000abcd");
+        checksums.write(file);
+
+        Path sidecar = Checksums.sidecarOf(file);
+        assertEquals(directory.resolve("db (1)_20240101_020000.sql.gz.checksums"), sidecar);
+        assertTrue(Files.readString(sidecar).startsWith("SIZE (db (1)_20240101_020000.sql.gz) = 4\n"));
+        assertFalse(Files.exists(sidecar.resolveSibling(sidecar.getFileName() + ".part")));
+
+        Checksums read = Checksums.read(file);
+        assertEquals(4, read.getSize());
+        assertEquals(checksums.getSha256(), read.getSha256());
+        assertEquals(checksums.getXxh64(), read.getXxh64());
+        assertEquals(checksums.getMd5(), read.getMd5());
+        assertEquals(checksums.getCrc32(), read.getCrc32());
+        assertTrue(read.matches(checksums));
+    }
+
+    @Test
+    void missingSidecarReadsAsNull() throws IOException {
+        assertNull(Checksums.read(directory.resolve("absent.sql.gz")));
+    }
+
+    @Test
+    void incompleteSidecarIsRejected() throws IOException {
+        Path file = directory.resolve("db.sql.gz");
+        Files.writeString(Checksums.sidecarOf(file), "XXH64 (db.sql.gz) = 0123456789abcdef\n");
+        assertThrows(IOException.class, () -> Checksums.read(file));
+    }
+
+    @Test
+    void verifyAcceptsCrcWithoutLeadingZeros() throws ChecksumMismatchException {
+        Checksums checksums = new Checksums(4, "a".repeat(64), "0123456789abcdef", "b".repeat(32), "0000abcd");
+        assertEquals("XCRC", checksums.verify("XCRC", "ABCD", "remote"));
+        assertNull(checksums.verify("SHA1", "ffff", "remote"));
+        assertThrows(ChecksumMismatchException.class, () -> checksums.verify("MD5", "c".repeat(32), "remote"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.damworks.backupsyncutility.verify;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XXHash64Test {
+
+    @Test
+    void matchesReferenceVectors() {
+        assertEquals(0xEF46DB3751D8E999L, hash(new byte[0]));
+        assertEquals(0xD24EC4F1A98C6E5BL, hash(ascii("a")));
+        assertEquals(0x44BC2CF5AD770999L, hash(ascii("abc")));
+        // 39 bytes: one 32-byte stripe, then a 4-byte and three 1-byte tail steps
+        assertEquals(0xFBCEA83C8A378BF1L, hash(ascii("Nobody inspects the spammish repetition")));
+        // Three full stripes and an 8-byte tail step
+        assertEquals(0x6AC1E58032166597L, hash(sequence(100)));
+    }
+
+    @Test
+    void resultDoesNotDependOnHowInputIsSplit() {
+        byte[] data = sequence(1000);
+        long expected = hash(data);
+        for (int split : new int[]{1, 7, 31, 32, 33, 64, 999}) {
+            XXHash64 xxh64 = new XXHash64();
+            for (int off = 0; off < data.length; off += split) {
+                xxh64.update(data, off, Math.min(split, data.length - off));
+            }
+            assertEquals(expected, xxh64.getValue(), "split " + split);
+        }
+
+        XXHash64 bytewise = new XXHash64();
+        for (byte b : data) {
+            bytewise.update(b);
+        }
+        assertEquals(expected, bytewise.getValue());
+    }
+
+    @Test
+    void resetStartsOver() {
+        XXHash64 xxh64 = new XXHash64();
+        xxh64.update(sequence(50), 0, 50);
+        xxh64.reset();
+        xxh64.update(ascii("abc"), 0, 3);
+        assertEquals(0x44BC2CF5AD770999L, xxh64.getValue());
+    }
+
+    private static long hash(byte[] data) {
+        XXHash64 xxh64 = new XXHash64();
+        xxh64.update(data, 0, data.length);
+        return xxh64.getValue();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] sequence(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}